@@ -0,0 +1,48 @@
+#!/usr/bin/env bash
+#
+# Compare throughput and p99 latency of the platform thread (default) and virtual thread execution modes.
+#
+# Builds the WAR, then for each mode starts the application, drives GET /movies/{id} and GET /movies?limit=100
+# with `hey` (https://github.com/rakyll/hey) and prints the requests/sec and latency distribution.
+# Virtual threads need Java 21 or later.
+#
+# Usage: load-test/compare-virtual-threads.sh [concurrency] [duration]
+#   e.g. load-test/compare-virtual-threads.sh 500 60s
+#
+set -euo pipefail
+
+CONCURRENCY=${1:-200}
+DURATION=${2:-30s}
+PORT=${PORT:-8080}
+BASE_URL="http://localhost:${PORT}"
+WAR=target/sample-rest-service.war
+
+cd "$(dirname "$0")/.."
+./mvnw -q -DskipTests package
+
+run_mode() {
+    local virtual_threads=$1
+
+    echo "=== movies.virtual-threads.enabled=${virtual_threads} (concurrency ${CONCURRENCY}, ${DURATION}) ==="
+    java -jar "${WAR}" --server.port="${PORT}" --movies.virtual-threads.enabled="${virtual_threads}" \
+        > "target/load-test-virtual-threads-${virtual_threads}.log" 2>&1 &
+    local pid=$!
+    trap "kill ${pid} 2>/dev/null || true" EXIT
+
+    until curl -sf "${BASE_URL}/movies/1" > /dev/null; do
+        sleep 1
+    done
+
+    for path in "/movies/1" "/movies?limit=100"; do
+        echo "--- GET ${path}"
+        hey -z "${DURATION}" -c "${CONCURRENCY}" "${BASE_URL}${path}" \
+            | grep -E "Requests/sec|Status code|\[2..\]|\[4..\]|\[5..\]|50%|99%"
+    done
+
+    kill "${pid}"
+    wait "${pid}" 2>/dev/null || true
+    trap - EXIT
+}
+
+run_mode false
+run_mode true
@@ -0,0 +1,96 @@
+package dev.jonclarke.samplerestservice.benchmark;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import dev.jonclarke.samplerestservice.caching.MovieResponseCache;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.http.MediaType;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+import org.springframework.web.context.WebApplicationContext;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.*;
+
+/**
+ * Full Spring MVC dispatch of the movie endpoints, from request mapping through the controller, repository and
+ * serialization, in both JSON and XML.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ControllerBenchmark {
+
+    private static final String NEW_MOVIE_JSON =
+            "{\"title\": \"New Movie\", \"description\": \"New Movie Description\", \"releaseDate\": \"2023-01-01T01:12:12\", \"availableOnDvd\": true}";
+    private static final String NEW_MOVIE_XML =
+            "<Movie><title>New Movie</title><description>New Movie Description</description><releaseDate>2023-01-01T01:12:12</releaseDate><availableOnDvd>true</availableOnDvd></Movie>";
+
+    @Param({ MediaType.APPLICATION_JSON_VALUE, MediaType.APPLICATION_XML_VALUE })
+    public String mediaType;
+
+    private MockMvc mockMvc;
+    private MovieResponseCache cache;
+    private ObjectMapper jsonMapper;
+
+    @Setup(Level.Trial)
+    public void setUp(MovieApplicationState state) {
+        mockMvc = MockMvcBuilders.webAppContextSetup((WebApplicationContext) state.context).build();
+        cache = state.context.getBean(MovieResponseCache.class);
+        jsonMapper = state.context.getBean(ObjectMapper.class);
+    }
+
+    @Benchmark
+    public MvcResult getSingleMovieCached(MovieApplicationState state) throws Exception {
+        return mockMvc.perform(get("/movies/" + state.randomId()).accept(mediaType)).andReturn();
+    }
+
+    @Benchmark
+    public MvcResult getSingleMovieUncached(MovieApplicationState state) throws Exception {
+        int id = state.randomId();
+        cache.invalidate(id);
+        return mockMvc.perform(get("/movies/" + id).accept(mediaType)).andReturn();
+    }
+
+    @Benchmark
+    public MvcResult getPage() throws Exception {
+        return mockMvc.perform(get("/movies?limit=100").accept(mediaType)).andReturn();
+    }
+
+    @Benchmark
+    public MvcResult getAll() throws Exception {
+        return mockMvc.perform(get("/movies").accept(mediaType)).andReturn();
+    }
+
+    @Benchmark
+    public MvcResult updateMovie(MovieApplicationState state) throws Exception {
+        return mockMvc.perform(put("/movies/" + state.randomId())
+                        .contentType(mediaType)
+                        .accept(mediaType)
+                        .content(movieBody()))
+                .andReturn();
+    }
+
+    /**
+     * Add a movie then delete it again, so the size of the table stays the same for the whole run.
+     * The new movie is returned as JSON whatever the request media type, to read its id.
+     */
+    @Benchmark
+    public MvcResult newThenDeleteMovie() throws Exception {
+        MvcResult created = mockMvc.perform(post("/movies")
+                        .contentType(mediaType)
+                        .accept(MediaType.APPLICATION_JSON)
+                        .content(movieBody()))
+                .andReturn();
+        int id = jsonMapper.readTree(created.getResponse().getContentAsByteArray()).get("id").asInt();
+        return mockMvc.perform(delete("/movies/" + id)).andReturn();
+    }
+
+    private String movieBody() {
+        return MediaType.APPLICATION_XML_VALUE.equals(mediaType) ? NEW_MOVIE_XML : NEW_MOVIE_JSON;
+    }
+}
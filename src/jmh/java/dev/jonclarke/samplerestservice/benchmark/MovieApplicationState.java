@@ -0,0 +1,54 @@
+package dev.jonclarke.samplerestservice.benchmark;
+
+import dev.jonclarke.samplerestservice.SampleRestServiceApplication;
+import dev.jonclarke.samplerestservice.dataaccess.MovieRepository;
+import dev.jonclarke.samplerestservice.models.MovieDataModel;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Runs the application (with its embedded H2 database) for the benchmarks that need it, seeded with a
+ * fixed number of movies.  The web server is started on a random port but the benchmarks call the
+ * controllers through MockMvc, so the network is not measured.
+ */
+@State(Scope.Benchmark)
+public class MovieApplicationState {
+
+    static final int SEED_SIZE = 1000;
+
+    ConfigurableApplicationContext context;
+    MovieRepository repository;
+    private int[] ids;
+
+    @Setup(Level.Trial)
+    public void start() {
+        context = new SpringApplicationBuilder(SampleRestServiceApplication.class)
+                .properties("server.port=0", "spring.main.banner-mode=off", "logging.level.root=warn")
+                .run();
+        repository = context.getBean(MovieRepository.class);
+
+        List<MovieDataModel> movies = new ArrayList<>(SEED_SIZE);
+        for (int i = 1; i <= SEED_SIZE; i++) {
+            movies.add(new MovieDataModel("Movie " + i, "Movie " + i + " Description",
+                    SerializationBenchmark.buildMovie(i).getReleaseDate(), i % 2 == 0));
+        }
+        ids = repository.saveAll(movies).stream().mapToInt(MovieDataModel::getId).toArray();
+    }
+
+    @TearDown(Level.Trial)
+    public void stop() {
+        context.close();
+    }
+
+    /**
+     * @return the id of one of the seeded movies, picked at random
+     */
+    int randomId() {
+        return ids[ThreadLocalRandom.current().nextInt(ids.length)];
+    }
+}
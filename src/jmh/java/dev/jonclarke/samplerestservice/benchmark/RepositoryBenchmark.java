@@ -0,0 +1,40 @@
+package dev.jonclarke.samplerestservice.benchmark;
+
+import dev.jonclarke.samplerestservice.models.MovieDataModel;
+import org.openjdk.jmh.annotations.*;
+
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * MovieRepository find, save, update and delete against the embedded H2 database.
+ * Saves are paired with a delete so the size of the table stays the same for the whole run.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class RepositoryBenchmark {
+
+    @Benchmark
+    public Optional<MovieDataModel> findById(MovieApplicationState state) {
+        return state.repository.findById(state.randomId());
+    }
+
+    @Benchmark
+    public int saveThenDelete(MovieApplicationState state) {
+        MovieDataModel movie = state.repository.save(
+                new MovieDataModel("New Movie", "New Movie Description", LocalDateTime.now(), true));
+        return state.repository.deleteMovieById(movie.getId(), null);
+    }
+
+    @Benchmark
+    public int updateById(MovieApplicationState state) {
+        int id = state.randomId();
+        return state.repository.updateById(id, "Movie " + id, "Movie " + id + " Description", LocalDateTime.now(), true,
+                null, Instant.now());
+    }
+}
@@ -0,0 +1,151 @@
+package dev.jonclarke.samplerestservice.benchmark;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.module.blackbird.BlackbirdModule;
+import dev.jonclarke.samplerestservice.models.MovieDataModel;
+import dev.jonclarke.samplerestservice.serialization.MovieHttpMessageConverter;
+import dev.jonclarke.samplerestservice.serialization.MovieSerializer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.core.ResolvableType;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpOutputMessage;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.GenericHttpMessageConverter;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import org.springframework.http.converter.json.MappingJackson2HttpMessageConverter;
+import org.springframework.http.converter.xml.MappingJackson2XmlHttpMessageConverter;
+import org.springframework.web.accept.ContentNegotiationManager;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.reflect.Type;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Jackson JSON and XML serialization of movies, without Spring MVC or the database.
+ * Covers a single movie, a list written in one go (as the Spring message converters do) and a list
+ * streamed one element at a time by the MovieSerializer.
+ * The springConverter benchmarks write through Spring's Jackson message converters, which look up and configure
+ * a writer for every response, and the movieConverter benchmarks through the MovieHttpMessageConverter, which
+ * reuses the serializer's writers.  Run with the gc profiler (as the benchmark profile does) to compare the bytes
+ * allocated per operation (gc.alloc.rate.norm), with and without the Blackbird module.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class SerializationBenchmark {
+
+    @Param({ MediaType.APPLICATION_JSON_VALUE, MediaType.APPLICATION_XML_VALUE })
+    public String mediaType;
+
+    @Param({ "100" })
+    public int listSize;
+
+    @Param({ "false", "true" })
+    public boolean blackbird;
+
+    private MediaType type;
+    private MovieSerializer serializer;
+    private ObjectWriter listWriter;
+    private GenericHttpMessageConverter<Object> springConverter;
+    private GenericHttpMessageConverter<Object> movieConverter;
+    private Type listType;
+    private HttpOutputMessage outputMessage;
+    private MovieDataModel movie;
+    private List<MovieDataModel> movies;
+
+    @Setup
+    public void setUp() {
+        type = MediaType.parseMediaType(mediaType);
+        // configured the same way as the mappers Spring Boot builds for the application
+        Jackson2ObjectMapperBuilder builder = Jackson2ObjectMapperBuilder.json()
+                .featuresToDisable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS);
+        if (blackbird) {
+            builder.modulesToInstall(new BlackbirdModule());
+        }
+        ObjectMapper jsonMapper = builder.build();
+        serializer = new MovieSerializer(jsonMapper, builder, new ContentNegotiationManager(), new SimpleMeterRegistry());
+        movieConverter = new MovieHttpMessageConverter(serializer);
+
+        ObjectMapper listMapper = MediaType.APPLICATION_XML.equals(type) ? builder.createXmlMapper(true).build() : jsonMapper;
+        listWriter = listMapper.writerFor(listMapper.getTypeFactory().constructCollectionType(List.class, MovieDataModel.class));
+        springConverter = MediaType.APPLICATION_XML.equals(type)
+                ? new MappingJackson2XmlHttpMessageConverter(listMapper)
+                : new MappingJackson2HttpMessageConverter(listMapper);
+        listType = ResolvableType.forClassWithGenerics(List.class, MovieDataModel.class).getType();
+        outputMessage = new DiscardingOutputMessage();
+
+        movie = buildMovie(1);
+        movies = new ArrayList<>(listSize);
+        for (int i = 1; i <= listSize; i++) {
+            movies.add(buildMovie(i));
+        }
+    }
+
+    @Benchmark
+    public byte[] writeSingle() {
+        return serializer.write(movie, type);
+    }
+
+    @Benchmark
+    public byte[] writeList() throws IOException {
+        return listWriter.writeValueAsBytes(movies);
+    }
+
+    @Benchmark
+    public void writeListStreamed() throws IOException {
+        serializer.writeAll(movies.stream(), type, OutputStream.nullOutputStream());
+    }
+
+    @Benchmark
+    public void writeSingleSpringConverter() throws IOException {
+        springConverter.write(movie, MovieDataModel.class, type, outputMessage);
+    }
+
+    @Benchmark
+    public void writeSingleMovieConverter() throws IOException {
+        movieConverter.write(movie, MovieDataModel.class, type, outputMessage);
+    }
+
+    @Benchmark
+    public void writeListSpringConverter() throws IOException {
+        springConverter.write(movies, listType, type, outputMessage);
+    }
+
+    @Benchmark
+    public void writeListMovieConverter() throws IOException {
+        movieConverter.write(movies, listType, type, outputMessage);
+    }
+
+    static MovieDataModel buildMovie(int id) {
+        return new MovieDataModel(id, "Movie " + id, "Movie " + id + " Description",
+                LocalDateTime.of(2023, 1, 1, 1, 10, 10).plusDays(id), id % 2 == 0);
+    }
+
+    /**
+     * A response that throws its body away, so only the converter's own allocations are measured
+     */
+    private static class DiscardingOutputMessage implements HttpOutputMessage {
+        private final HttpHeaders headers = new HttpHeaders();
+        private final OutputStream body = OutputStream.nullOutputStream();
+
+        @Override
+        public OutputStream getBody() {
+            return body;
+        }
+
+        @Override
+        public HttpHeaders getHeaders() {
+            return headers;
+        }
+    }
+}
@@ -0,0 +1,81 @@
+package dev.jonclarke.samplerestservice.benchmark;
+
+import dev.jonclarke.samplerestservice.models.MovieDataModel;
+import dev.jonclarke.samplerestservice.sharding.ShardedMovieStore;
+import org.openjdk.jmh.annotations.*;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Write throughput of the ShardedMovieStore as the number of shards grows, with several threads writing at once.
+ * Compare the scores for each value of shards: with one shard every write goes to the same database, as it does
+ * with MovieRepository.  Inserts are not paired with deletes, so the tables grow during the run as they do in
+ * production.  Each trial uses new in-memory databases.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@Threads(8)
+@State(Scope.Benchmark)
+public class ShardingBenchmark {
+
+    private static final int SEED_SIZE = 1000;
+    private static final int BATCH_SIZE = 50;
+    private static final int POOL_SIZE = 4;
+
+    @Param({"1", "2", "4", "8"})
+    public int shards;
+
+    private ShardedMovieStore store;
+    private int[] ids;
+
+    @Setup(Level.Trial)
+    public void start() {
+        // without DB_CLOSE_DELAY the databases are dropped when the store is closed
+        store = new ShardedMovieStore(shards, "jdbc:h2:mem:sharding-benchmark-" + System.nanoTime() + "-%d", POOL_SIZE);
+
+        List<MovieDataModel> movies = new ArrayList<>(SEED_SIZE);
+        for (int i = 1; i <= SEED_SIZE; i++) {
+            movies.add(buildMovie(i));
+        }
+        ids = store.insertAll(movies).stream().mapToInt(MovieDataModel::getId).toArray();
+    }
+
+    @TearDown(Level.Trial)
+    public void stop() {
+        store.close();
+    }
+
+    @Benchmark
+    public MovieDataModel insert() {
+        return store.insert(buildMovie(ThreadLocalRandom.current().nextInt(SEED_SIZE)));
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH_SIZE)
+    public List<MovieDataModel> insertAll() {
+        List<MovieDataModel> movies = new ArrayList<>(BATCH_SIZE);
+        for (int i = 0; i < BATCH_SIZE; i++) {
+            movies.add(buildMovie(i));
+        }
+        return store.insertAll(movies);
+    }
+
+    @Benchmark
+    public boolean update() {
+        int id = ids[ThreadLocalRandom.current().nextInt(ids.length)];
+        return store.update(new MovieDataModel(id, "Movie " + id, "Movie " + id + " Description", LocalDateTime.now(),
+                true), null);
+    }
+
+    private static MovieDataModel buildMovie(int i) {
+        return new MovieDataModel("Movie " + i, "Movie " + i + " Description",
+                SerializationBenchmark.buildMovie(i).getReleaseDate(), i % 2 == 0);
+    }
+}
@@ -0,0 +1,58 @@
+package dev.jonclarke.samplerestservice.loadtest;
+
+import com.fasterxml.jackson.core.JsonFactoryBuilder;
+import com.fasterxml.jackson.core.JsonGenerator;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.LocalDateTime;
+import java.util.Random;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Generates the catalogue the application is seeded with, as a gzipped NDJSON file that it imports when it starts
+ * (movies.transfer.startup-file).  The movies come from a fixed random seed, so every run with the same number of
+ * movies loads the same catalogue, and the file is kept in the output directory to be reused by later runs.
+ */
+final class CatalogueFile {
+
+    private static final long SEED = 20230601L;
+    private static final LocalDateTime FIRST_RELEASE = LocalDateTime.of(1950, 1, 1, 0, 0);
+    private static final int RELEASE_MINUTES = 75 * 365 * 24 * 60;
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private CatalogueFile() {
+    }
+
+    /**
+     * @return the catalogue file for this number of movies, generated if there is not one already
+     */
+    static Path generate(Path directory, int movies) throws IOException {
+        Path file = directory.resolve("catalogue-" + movies + ".ndjson.gz");
+        if (Files.exists(file)) {
+            return file;
+        }
+
+        System.out.printf("Generating a catalogue of %d movies%n", movies);
+        Path partial = directory.resolve(file.getFileName() + ".partial");
+        Random random = new Random(SEED);
+        try (OutputStream out = new GZIPOutputStream(Files.newOutputStream(partial), BUFFER_SIZE);
+             JsonGenerator generator = new JsonFactoryBuilder().rootValueSeparator("\n").build().createGenerator(out)) {
+            for (int i = 1; i <= movies; i++) {
+                generator.writeStartObject();
+                generator.writeStringField("title", "Movie " + i);
+                generator.writeStringField("description", "Movie " + i + " Description");
+                generator.writeStringField("releaseDate",
+                        FIRST_RELEASE.plusMinutes(random.nextInt(RELEASE_MINUTES)).toString());
+                generator.writeBooleanField("availableOnDvd", random.nextBoolean());
+                generator.writeEndObject();
+            }
+        }
+        // only a complete file is reused
+        Files.move(partial, file, StandardCopyOption.REPLACE_EXISTING);
+        return file;
+    }
+}
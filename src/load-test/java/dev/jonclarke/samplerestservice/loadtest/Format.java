@@ -0,0 +1,60 @@
+package dev.jonclarke.samplerestservice.loadtest;
+
+import java.util.Locale;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * The formats the workload is run in, used for both request and response bodies
+ */
+enum Format {
+    JSON("application/json", Pattern.compile("\"id\"\\s*:\\s*(\\d+)")) {
+        @Override
+        String movie(String title, String releaseDate, boolean availableOnDvd) {
+            return "{\"title\":\"" + title + "\",\"description\":\"" + title + " Description\",\"releaseDate\":\""
+                    + releaseDate + "\",\"availableOnDvd\":" + availableOnDvd + "}";
+        }
+    },
+    XML("application/xml", Pattern.compile("<id>(\\d+)</id>")) {
+        @Override
+        String movie(String title, String releaseDate, boolean availableOnDvd) {
+            return "<Movie><title>" + title + "</title><description>" + title + " Description</description>"
+                    + "<releaseDate>" + releaseDate + "</releaseDate><availableOnDvd>" + availableOnDvd
+                    + "</availableOnDvd></Movie>";
+        }
+    };
+
+    private final String mediaType;
+    private final Pattern id;
+
+    Format(String mediaType, Pattern id) {
+        this.mediaType = mediaType;
+        this.id = id;
+    }
+
+    String getMediaType() {
+        return mediaType;
+    }
+
+    /**
+     * @return a movie request body.  The title must not need escaping
+     */
+    abstract String movie(String title, String releaseDate, boolean availableOnDvd);
+
+    /**
+     * @return the id of the movie in a response body, or null if it has none
+     */
+    Integer movieId(String body) {
+        Matcher matcher = id.matcher(body);
+        return matcher.find() ? Integer.valueOf(matcher.group(1)) : null;
+    }
+
+    static Format forName(String name) {
+        return valueOf(name.toUpperCase(Locale.ROOT));
+    }
+
+    @Override
+    public String toString() {
+        return name().toLowerCase(Locale.ROOT);
+    }
+}
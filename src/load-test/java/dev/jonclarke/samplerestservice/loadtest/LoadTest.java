@@ -0,0 +1,126 @@
+package dev.jonclarke.samplerestservice.loadtest;
+
+import java.io.IOException;
+import java.net.http.HttpClient;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * End to end load test of the /movies endpoints.  Starts the packaged WAR in a separate JVM, seeded with a generated
+ * catalogue of movies, then for each format (JSON and XML) drives a mixed read and write workload at a fixed rate
+ * and reports the throughput and latency percentiles of each endpoint.
+ * <p>
+ * Latency is measured from when each request was due to be sent, not from when it was sent, so time spent waiting
+ * behind slow requests is counted (see Workload).  The report is written to report.json in the output directory,
+ * with the full latency distribution of each endpoint in .hgrm files, and is compared with a previous report
+ * when one is given.
+ * <p>
+ * Settings are read from system properties, which the load-test Maven profile sets from its own properties:
+ * loadtest.war, loadtest.output, loadtest.movies, loadtest.rate, loadtest.workers, loadtest.warmup,
+ * loadtest.duration (seconds), loadtest.formats, loadtest.mix, loadtest.port, loadtest.serverJvmArgs,
+ * loadtest.serverArgs, loadtest.version and loadtest.baseline.
+ */
+public class LoadTest {
+
+    /**
+     * The settings of a run, as recorded in its report
+     * @param mix relative weight of each operation in the workload
+     */
+    record Settings(Path war, Path output, int movies, int rate, int workers, Duration warmup, Duration duration,
+                    List<Format> formats, Map<Operation, Integer> mix, int port, List<String> serverJvmArgs,
+                    List<String> serverArgs, String version, Path baseline) {
+    }
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        Settings settings = readSettings();
+        Files.createDirectories(settings.output());
+
+        Path catalogue = CatalogueFile.generate(settings.output(), settings.movies());
+        HttpClient client = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_1_1)
+                .connectTimeout(Duration.ofSeconds(10))
+                .build();
+
+        Instant startedAt = Instant.now();
+        Map<Format, Workload.Result> results = new EnumMap<>(Format.class);
+        try (MovieServer server = MovieServer.start(settings, catalogue)) {
+            server.awaitReady(client);
+            int[] ids = server.movieIds(client);
+            System.out.printf("Catalogue of %d movies loaded%n", ids.length);
+            if (ids.length < settings.movies()) {
+                throw new IllegalStateException("Only " + ids.length + " of the " + settings.movies()
+                        + " movies were imported - see " + server.getLog());
+            }
+
+            // both formats run against the same server, one after the other.  Creates and deletes roughly balance,
+            // so the catalogue is much the same size for each
+            for (Format format : settings.formats()) {
+                System.out.printf("Running the %s workload: %d requests/s for %ds after %ds warm up%n", format,
+                        settings.rate(), settings.duration().toSeconds(), settings.warmup().toSeconds());
+                results.put(format, new Workload(client, server.getBaseUri(), settings, format, ids).run());
+            }
+        }
+
+        LoadTestReport report = LoadTestReport.of(settings, startedAt, results);
+        report.print(System.out);
+        report.write(settings.output(), results);
+        if (settings.baseline() != null) {
+            report.compareWith(LoadTestReport.read(settings.baseline()), System.out);
+        }
+    }
+
+    private static Settings readSettings() {
+        String baseline = System.getProperty("loadtest.baseline", "");
+        return new Settings(
+                Path.of(System.getProperty("loadtest.war", "target/sample-rest-service.war")),
+                Path.of(System.getProperty("loadtest.output", "target/load-test")),
+                Integer.getInteger("loadtest.movies", 10_000),
+                Integer.getInteger("loadtest.rate", 1000),
+                Integer.getInteger("loadtest.workers", 64),
+                Duration.ofSeconds(Integer.getInteger("loadtest.warmup", 30)),
+                Duration.ofSeconds(Integer.getInteger("loadtest.duration", 60)),
+                Arrays.stream(System.getProperty("loadtest.formats", "json,xml").split(","))
+                        .map(String::trim)
+                        .map(Format::forName)
+                        .toList(),
+                parseMix(System.getProperty("loadtest.mix", "list=15,get=60,create=10,update=10,delete=5")),
+                Integer.getInteger("loadtest.port", 18080),
+                splitArguments(System.getProperty("loadtest.serverJvmArgs", "")),
+                splitArguments(System.getProperty("loadtest.serverArgs", "")),
+                System.getProperty("loadtest.version", "unknown"),
+                baseline.isBlank() ? null : Path.of(baseline));
+    }
+
+    /**
+     * @param mix comma separated operation=weight pairs, e.g. "get=80,update=20"
+     */
+    private static Map<Operation, Integer> parseMix(String mix) {
+        Map<Operation, Integer> weights = new LinkedHashMap<>();
+        for (String entry : mix.split(",")) {
+            String[] parts = entry.trim().split("=");
+            if (parts.length != 2) {
+                throw new IllegalArgumentException("loadtest.mix entries must be operation=weight, not " + entry);
+            }
+            int weight = Integer.parseInt(parts[1].trim());
+            if (weight < 0) {
+                throw new IllegalArgumentException("loadtest.mix weights must not be negative");
+            }
+            weights.put(Operation.forName(parts[0].trim()), weight);
+        }
+        if (weights.values().stream().mapToInt(Integer::intValue).sum() == 0) {
+            throw new IllegalArgumentException("loadtest.mix must give at least one operation a weight");
+        }
+        return weights;
+    }
+
+    private static List<String> splitArguments(String arguments) {
+        return arguments.isBlank() ? List.of() : List.of(arguments.trim().split("\\s+"));
+    }
+}
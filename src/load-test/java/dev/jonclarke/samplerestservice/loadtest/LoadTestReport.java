@@ -0,0 +1,181 @@
+package dev.jonclarke.samplerestservice.loadtest;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import org.HdrHistogram.Histogram;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * The results of a load test run, with the settings it was run with, as written to report.json.
+ * Latencies are in milliseconds and throughputs in requests per second.
+ * <p>
+ * Reports are only comparable when they were run with the same settings on the same machine.  Comparing the
+ * latency and service time percentiles shows how much of the latency was spent waiting to be sent.
+ */
+record LoadTestReport(String version, Instant startedAt, String javaVersion, int availableProcessors, int movies,
+                      int rate, int workers, long warmupSeconds, long durationSeconds, Map<String, Integer> mix,
+                      Map<String, FormatReport> formats) {
+
+    private static final ObjectMapper MAPPER = new ObjectMapper()
+            .registerModule(new JavaTimeModule())
+            .disable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS)
+            .enable(SerializationFeature.INDENT_OUTPUT);
+    private static final double MICROS_PER_MILLI = 1000.0;
+
+    /**
+     * @param all every request in the format, whatever its operation
+     */
+    record FormatReport(OperationReport all, Map<String, OperationReport> operations) {
+    }
+
+    /**
+     * @param latency from when each request was due to be sent, including time spent waiting to be sent
+     * @param serviceTime from when each request was sent
+     */
+    record OperationReport(long requests, long errors, double throughput, Percentiles latency,
+                           Percentiles serviceTime) {
+    }
+
+    record Percentiles(double p50, double p90, double p99, double p999, double max) {
+        static Percentiles of(Histogram histogram) {
+            return new Percentiles(millis(histogram.getValueAtPercentile(50)), millis(histogram.getValueAtPercentile(90)),
+                    millis(histogram.getValueAtPercentile(99)), millis(histogram.getValueAtPercentile(99.9)),
+                    millis(histogram.getMaxValue()));
+        }
+
+        private static double millis(long micros) {
+            return micros / MICROS_PER_MILLI;
+        }
+    }
+
+    static LoadTestReport of(LoadTest.Settings settings, Instant startedAt, Map<Format, Workload.Result> results) {
+        Map<String, Integer> mix = new LinkedHashMap<>();
+        settings.mix().forEach((operation, weight) -> mix.put(operation.toString(), weight));
+
+        Map<String, FormatReport> formats = new LinkedHashMap<>();
+        results.forEach((format, result) -> {
+            double seconds = result.elapsed().toNanos() / 1e9;
+            Histogram allLatency = new Histogram(3);
+            Histogram allServiceTime = new Histogram(3);
+            long allErrors = 0;
+            Map<String, OperationReport> operations = new LinkedHashMap<>();
+            for (Map.Entry<Operation, Workload.Latencies> operation : result.operations().entrySet()) {
+                Workload.Latencies latencies = operation.getValue();
+                if (latencies.latency().getTotalCount() == 0) {
+                    continue;
+                }
+                operations.put(operation.getKey().toString(), report(latencies.latency(), latencies.serviceTime(),
+                        latencies.errors(), seconds));
+                allLatency.add(latencies.latency());
+                allServiceTime.add(latencies.serviceTime());
+                allErrors += latencies.errors();
+            }
+            formats.put(format.toString(), new FormatReport(report(allLatency, allServiceTime, allErrors, seconds),
+                    operations));
+        });
+
+        return new LoadTestReport(settings.version(), startedAt, Runtime.version().toString(),
+                Runtime.getRuntime().availableProcessors(), settings.movies(), settings.rate(), settings.workers(),
+                settings.warmup().toSeconds(), settings.duration().toSeconds(), mix, formats);
+    }
+
+    static LoadTestReport read(Path file) throws IOException {
+        return MAPPER.readValue(file.toFile(), LoadTestReport.class);
+    }
+
+    /**
+     * Write report.json, and the latency distribution of each operation in HdrHistogram's percentile format
+     * (format-operation.hgrm, in milliseconds), which can be plotted to compare runs across every percentile
+     */
+    void write(Path directory, Map<Format, Workload.Result> results) throws IOException {
+        Path report = directory.resolve("report.json");
+        MAPPER.writeValue(report.toFile(), this);
+
+        for (Map.Entry<Format, Workload.Result> result : results.entrySet()) {
+            for (Map.Entry<Operation, Workload.Latencies> operation : result.getValue().operations().entrySet()) {
+                Histogram latency = operation.getValue().latency();
+                if (latency.getTotalCount() == 0) {
+                    continue;
+                }
+                Path file = directory.resolve(result.getKey() + "-" + operation.getKey() + ".hgrm");
+                try (PrintStream out = new PrintStream(Files.newOutputStream(file))) {
+                    latency.outputPercentileDistribution(out, MICROS_PER_MILLI);
+                }
+            }
+        }
+        System.out.println("Load test report written to " + report);
+    }
+
+    void print(PrintStream out) {
+        out.printf("%nLoad test of %s: %d movies, %d requests/s, %d workers, %ds measured%n", version, movies, rate,
+                workers, durationSeconds);
+        for (Map.Entry<String, FormatReport> format : formats.entrySet()) {
+            out.printf("%n%-6s %-8s %10s %8s %10s %10s %10s %10s %10s%n", format.getKey(), "", "requests", "errors",
+                    "req/s", "p50 ms", "p99 ms", "p999 ms", "max ms");
+            format.getValue().operations().forEach((operation, report) -> print(out, operation, report));
+            print(out, "all", format.getValue().all());
+
+            if (format.getValue().all().throughput() < rate * 0.95) {
+                out.printf("WARNING: %s reached %.0f of the %d requests/s - add workers or lower the rate if the "
+                        + "workers rather than the server were the limit%n", format.getKey(),
+                        format.getValue().all().throughput(), rate);
+            }
+        }
+    }
+
+    /**
+     * Print the change in throughput and latency percentiles of each operation since an earlier report
+     */
+    void compareWith(LoadTestReport baseline, PrintStream out) {
+        out.printf("%nCompared with %s (started %s)%n", baseline.version(), baseline.startedAt());
+        if (baseline.movies() != movies || baseline.rate() != rate || baseline.workers() != workers
+                || !baseline.mix().equals(mix)) {
+            out.println("WARNING: the baseline was run with different settings, so the results may not be comparable");
+        }
+
+        for (Map.Entry<String, FormatReport> format : formats.entrySet()) {
+            FormatReport base = baseline.formats().get(format.getKey());
+            if (base == null) {
+                continue;
+            }
+            out.printf("%n%-6s %-8s %10s %10s %10s %10s%n", format.getKey(), "", "req/s", "p50", "p99", "p999");
+            format.getValue().operations().forEach((operation, report) ->
+                    compare(out, operation, report, base.operations().get(operation)));
+            compare(out, "all", format.getValue().all(), base.all());
+        }
+    }
+
+    private static OperationReport report(Histogram latency, Histogram serviceTime, long errors, double seconds) {
+        return new OperationReport(latency.getTotalCount(), errors, latency.getTotalCount() / seconds,
+                Percentiles.of(latency), Percentiles.of(serviceTime));
+    }
+
+    private static void print(PrintStream out, String operation, OperationReport report) {
+        Percentiles latency = report.latency();
+        out.printf("%-6s %-8s %10d %8d %10.1f %10.2f %10.2f %10.2f %10.2f%n", "", operation, report.requests(),
+                report.errors(), report.throughput(), latency.p50(), latency.p99(), latency.p999(), latency.max());
+    }
+
+    private static void compare(PrintStream out, String operation, OperationReport report, OperationReport base) {
+        if (base == null) {
+            out.printf("%-6s %-8s not in the baseline%n", "", operation);
+            return;
+        }
+        out.printf("%-6s %-8s %+9.1f%% %+9.1f%% %+9.1f%% %+9.1f%%%n", "", operation,
+                change(report.throughput(), base.throughput()), change(report.latency().p50(), base.latency().p50()),
+                change(report.latency().p99(), base.latency().p99()),
+                change(report.latency().p999(), base.latency().p999()));
+    }
+
+    private static double change(double actual, double base) {
+        return base == 0 ? 0 : (actual - base) / base * 100;
+    }
+}
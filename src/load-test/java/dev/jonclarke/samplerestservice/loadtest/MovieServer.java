@@ -0,0 +1,131 @@
+package dev.jonclarke.samplerestservice.loadtest;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.MappingIterator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.ConnectException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.IntStream;
+
+/**
+ * The application under test, run from the packaged WAR in a JVM of its own so that it does not share a heap,
+ * garbage collector or CPU time accounting with the load generator.  Its output goes to server.log in the
+ * output directory.
+ */
+final class MovieServer implements AutoCloseable {
+
+    private static final long READY_POLL_MILLIS = 1000;
+    private static final long STOP_TIMEOUT_SECONDS = 30;
+
+    private final Process process;
+    private final URI baseUri;
+    private final Path log;
+
+    private MovieServer(Process process, URI baseUri, Path log) {
+        this.process = process;
+        this.baseUri = baseUri;
+        this.log = log;
+    }
+
+    /**
+     * Start the application, importing the catalogue as it starts.  Rate limiting is turned off, as the load
+     * test sends every request as the same client, and the readiness probe is turned on, so the load test can tell
+     * when the import has finished.  The server arguments are added last, so they can override any of these.
+     */
+    static MovieServer start(LoadTest.Settings settings, Path catalogue) throws IOException {
+        List<String> command = new ArrayList<>();
+        command.add(Path.of(System.getProperty("java.home"), "bin", "java").toString());
+        command.addAll(settings.serverJvmArgs());
+        command.add("-jar");
+        command.add(settings.war().toAbsolutePath().toString());
+        command.add("--server.port=" + settings.port());
+        command.add("--spring.main.banner-mode=off");
+        command.add("--movies.rate-limit.enabled=false");
+        command.add("--movies.transfer.startup-file=file:" + catalogue.toAbsolutePath());
+        command.add("--management.endpoint.health.probes.enabled=true");
+        command.addAll(settings.serverArgs());
+
+        Path log = settings.output().resolve("server.log");
+        Process process = new ProcessBuilder(command)
+                .redirectErrorStream(true)
+                .redirectOutput(log.toFile())
+                .start();
+        return new MovieServer(process, URI.create("http://localhost:" + settings.port()), log);
+    }
+
+    URI getBaseUri() {
+        return baseUri;
+    }
+
+    Path getLog() {
+        return log;
+    }
+
+    /**
+     * Wait until the application is ready for traffic, which is once the catalogue has been imported
+     */
+    void awaitReady(HttpClient client) throws IOException, InterruptedException {
+        HttpRequest readiness = HttpRequest.newBuilder(baseUri.resolve("/actuator/health/readiness")).build();
+        long started = System.nanoTime();
+        while (true) {
+            if (!process.isAlive()) {
+                throw new IllegalStateException("The application stopped before it was ready - see " + log);
+            }
+            try {
+                if (client.send(readiness, HttpResponse.BodyHandlers.discarding()).statusCode() == 200) {
+                    System.out.printf("Application ready after %ds%n",
+                            TimeUnit.NANOSECONDS.toSeconds(System.nanoTime() - started));
+                    return;
+                }
+            } catch (ConnectException e) {
+                // not listening yet
+            }
+            Thread.sleep(READY_POLL_MILLIS);
+        }
+    }
+
+    /**
+     * @return the ids of every movie, read from a streamed export so that a large catalogue is not held in memory
+     */
+    int[] movieIds(HttpClient client) throws IOException, InterruptedException {
+        HttpRequest export = HttpRequest.newBuilder(baseUri.resolve("/movies/export?format=ndjson")).build();
+        HttpResponse<InputStream> response = client.send(export, HttpResponse.BodyHandlers.ofInputStream());
+        if (response.statusCode() != 200) {
+            throw new IllegalStateException("Could not export the movies: status " + response.statusCode());
+        }
+
+        IntStream.Builder ids = IntStream.builder();
+        try (MappingIterator<JsonNode> movies = new ObjectMapper().readerFor(JsonNode.class).readValues(response.body())) {
+            while (movies.hasNext()) {
+                ids.add(movies.next().path("id").asInt());
+            }
+        }
+        return ids.build().toArray();
+    }
+
+    /**
+     * Stop the application, letting it shut down gracefully if it can
+     */
+    @Override
+    public void close() {
+        process.destroy();
+        try {
+            if (!process.waitFor(STOP_TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+                process.destroyForcibly();
+            }
+        } catch (InterruptedException e) {
+            process.destroyForcibly();
+            Thread.currentThread().interrupt();
+        }
+    }
+}
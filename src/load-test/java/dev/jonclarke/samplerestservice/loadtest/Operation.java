@@ -0,0 +1,48 @@
+package dev.jonclarke.samplerestservice.loadtest;
+
+import java.util.Locale;
+
+/**
+ * The requests the workload is made of, one for each of the /movies endpoints
+ */
+enum Operation {
+    /**
+     * GET /movies?limit=100&amp;after={id} - a page of movies from a random point in the catalogue
+     */
+    LIST("GET /movies?limit=100&after={id}"),
+    /**
+     * GET /movies/{id} - a random seeded movie
+     */
+    GET("GET /movies/{id}"),
+    /**
+     * POST /movies - a new movie, which a later delete removes
+     */
+    CREATE("POST /movies"),
+    /**
+     * PUT /movies/{id} - a random seeded movie, without If-Match
+     */
+    UPDATE("PUT /movies/{id}"),
+    /**
+     * DELETE /movies/{id} - a movie created by the workload, so the seeded movies are never deleted
+     */
+    DELETE("DELETE /movies/{id}");
+
+    private final String request;
+
+    Operation(String request) {
+        this.request = request;
+    }
+
+    String getRequest() {
+        return request;
+    }
+
+    static Operation forName(String name) {
+        return valueOf(name.toUpperCase(Locale.ROOT));
+    }
+
+    @Override
+    public String toString() {
+        return name().toLowerCase(Locale.ROOT);
+    }
+}
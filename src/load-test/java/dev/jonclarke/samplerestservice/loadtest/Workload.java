@@ -0,0 +1,223 @@
+package dev.jonclarke.samplerestservice.loadtest;
+
+import org.HdrHistogram.ConcurrentHistogram;
+import org.HdrHistogram.Histogram;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Sends a mix of requests at a fixed rate in one format, and records how long each one took.
+ * <p>
+ * The workload is open: request i is due at start + i / rate whether or not earlier requests have been answered,
+ * and its latency is measured from when it was due.  A closed loop, which sends the next request when the last
+ * one is answered, sends fewer requests while the server is slow and so leaves out most of the time requests
+ * spend waiting (coordinated omission); with a fixed schedule a stall shows up in the latency of every request
+ * due during it.  The time from when each request was actually sent is recorded too, as the service time.
+ * <p>
+ * Requests are shared out between the worker threads in turn, each sending one request at a time, so there can be
+ * at most that many requests in progress.  If every worker is busy when a request is due it is sent late, and the
+ * delay is counted in its latency; if the achieved rate is well below the target, add workers or lower the rate.
+ * Latencies are recorded in microseconds, from the end of the warm up until the end of the run.
+ */
+final class Workload {
+
+    private static final int PAGE_SIZE = 100;
+    private static final Duration REQUEST_TIMEOUT = Duration.ofSeconds(30);
+    private static final int SIGNIFICANT_DIGITS = 3;
+
+    /**
+     * The latencies of one operation
+     * @param latency from when each request was due to when its response was read
+     * @param serviceTime from when each request was sent to when its response was read
+     */
+    record Latencies(Histogram latency, Histogram serviceTime, long errors) {
+    }
+
+    /**
+     * @param elapsed time from the end of the warm up until the last measured response was read
+     */
+    record Result(Map<Operation, Latencies> operations, Duration elapsed) {
+    }
+
+    private record Recorder(ConcurrentHistogram latency, ConcurrentHistogram serviceTime, LongAdder errors) {
+        Recorder() {
+            this(new ConcurrentHistogram(SIGNIFICANT_DIGITS), new ConcurrentHistogram(SIGNIFICANT_DIGITS), new LongAdder());
+        }
+
+        void record(long due, long sent, long answered, boolean succeeded) {
+            latency.recordValue(TimeUnit.NANOSECONDS.toMicros(answered - due));
+            serviceTime.recordValue(TimeUnit.NANOSECONDS.toMicros(answered - sent));
+            if (!succeeded) {
+                errors.increment();
+            }
+        }
+    }
+
+    private final HttpClient client;
+    private final URI baseUri;
+    private final LoadTest.Settings settings;
+    private final Format format;
+    private final int[] ids;
+    private final Operation[] operations;
+    private final int[] cumulativeWeights;
+    private final Map<Operation, Recorder> recorders = new EnumMap<>(Operation.class);
+    // movies created by the workload, which are the ones it deletes
+    private final ConcurrentLinkedQueue<Integer> created = new ConcurrentLinkedQueue<>();
+    private final LongAccumulator lastAnswered = new LongAccumulator(Math::max, Long.MIN_VALUE);
+
+    Workload(HttpClient client, URI baseUri, LoadTest.Settings settings, Format format, int[] ids) {
+        this.client = client;
+        this.baseUri = baseUri;
+        this.settings = settings;
+        this.format = format;
+        this.ids = ids;
+        this.operations = settings.mix().keySet().toArray(Operation[]::new);
+        this.cumulativeWeights = new int[operations.length];
+        int total = 0;
+        for (int i = 0; i < operations.length; i++) {
+            total += settings.mix().get(operations[i]);
+            cumulativeWeights[i] = total;
+        }
+        for (Operation operation : Operation.values()) {
+            recorders.put(operation, new Recorder());
+        }
+    }
+
+    /**
+     * Run the warm up and then the measured period, and wait for every request to be answered
+     */
+    Result run() throws InterruptedException {
+        double nanosPerRequest = TimeUnit.SECONDS.toNanos(1) / (double) settings.rate();
+        // leave the workers time to start before the first request is due
+        long start = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(100);
+        long measureFrom = start + settings.warmup().toNanos();
+        long end = measureFrom + settings.duration().toNanos();
+
+        int workers = settings.workers();
+        CountDownLatch finished = new CountDownLatch(workers);
+        for (int worker = 0; worker < workers; worker++) {
+            int first = worker;
+            Thread thread = new Thread(() -> {
+                try {
+                    sendRequests(first, workers, start, nanosPerRequest, measureFrom, end);
+                } finally {
+                    finished.countDown();
+                }
+            }, "load-test-" + format + "-" + worker);
+            thread.setDaemon(true);
+            thread.start();
+        }
+        finished.await();
+
+        Map<Operation, Latencies> operations = new EnumMap<>(Operation.class);
+        recorders.forEach((operation, recorder) -> operations.put(operation,
+                new Latencies(recorder.latency(), recorder.serviceTime(), recorder.errors().sum())));
+        return new Result(operations, Duration.ofNanos(Math.max(lastAnswered.get(), end) - measureFrom));
+    }
+
+    /**
+     * Send requests first, first + step, first + 2 * step ... each when it is due, until the end of the run
+     */
+    private void sendRequests(int first, int step, long start, double nanosPerRequest, long measureFrom, long end) {
+        Random random = new Random(first);
+        for (long i = first; ; i += step) {
+            long due = start + (long) (i * nanosPerRequest);
+            if (due >= end) {
+                return;
+            }
+            long wait;
+            while ((wait = due - System.nanoTime()) > 0) {
+                LockSupport.parkNanos(wait);
+            }
+
+            Operation operation = pickOperation(random);
+            Integer deleteId = null;
+            if (operation == Operation.DELETE) {
+                deleteId = created.poll();
+                // nothing created yet to delete, so create instead rather than delete a seeded movie
+                if (deleteId == null) {
+                    operation = Operation.CREATE;
+                }
+            }
+
+            long sent = System.nanoTime();
+            boolean succeeded;
+            try {
+                succeeded = send(operation, deleteId, random);
+            } catch (IOException e) {
+                succeeded = false;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+            long answered = System.nanoTime();
+
+            if (due >= measureFrom) {
+                recorders.get(operation).record(due, sent, answered, succeeded);
+                lastAnswered.accumulate(answered);
+            }
+        }
+    }
+
+    private Operation pickOperation(Random random) {
+        int pick = random.nextInt(cumulativeWeights[cumulativeWeights.length - 1]);
+        for (int i = 0; i < operations.length; i++) {
+            if (pick < cumulativeWeights[i]) {
+                return operations[i];
+            }
+        }
+        throw new IllegalStateException("No operation for " + pick);
+    }
+
+    /**
+     * @return whether the request succeeded
+     */
+    private boolean send(Operation operation, Integer deleteId, Random random) throws IOException, InterruptedException {
+        int id = ids[random.nextInt(ids.length)];
+        HttpRequest.Builder request = switch (operation) {
+            case LIST -> HttpRequest.newBuilder(baseUri.resolve("/movies?limit=" + PAGE_SIZE + "&after=" + (id - 1)));
+            case GET -> HttpRequest.newBuilder(baseUri.resolve("/movies/" + id));
+            case CREATE -> HttpRequest.newBuilder(baseUri.resolve("/movies"))
+                    .POST(movieBody("Load test movie", random));
+            case UPDATE -> HttpRequest.newBuilder(baseUri.resolve("/movies/" + id))
+                    .PUT(movieBody("Movie " + id, random));
+            case DELETE -> HttpRequest.newBuilder(baseUri.resolve("/movies/" + deleteId)).DELETE();
+        };
+        request.timeout(REQUEST_TIMEOUT).header("Accept", format.getMediaType());
+        if (operation == Operation.CREATE || operation == Operation.UPDATE) {
+            request.header("Content-Type", format.getMediaType());
+        }
+
+        if (operation != Operation.CREATE) {
+            return client.send(request.build(), HttpResponse.BodyHandlers.discarding()).statusCode() < 400;
+        }
+
+        HttpResponse<String> response = client.send(request.build(), HttpResponse.BodyHandlers.ofString());
+        Integer createdId = response.statusCode() < 400 ? format.movieId(response.body()) : null;
+        if (createdId == null) {
+            return false;
+        }
+        created.add(createdId);
+        return true;
+    }
+
+    private HttpRequest.BodyPublisher movieBody(String title, Random random) {
+        String releaseDate = LocalDateTime.of(2000, 1, 1, 0, 0).plusMinutes(random.nextInt(10_000_000)).toString();
+        return HttpRequest.BodyPublishers.ofString(format.movie(title, releaseDate, random.nextBoolean()));
+    }
+}
@@ -0,0 +1,14 @@
+package dev.jonclarke.samplerestservice;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+/**
+ * Thrown when the body of a batch request cannot be read
+ */
+@ResponseStatus(HttpStatus.BAD_REQUEST)
+public class InvalidMovieBatchException extends RuntimeException {
+    InvalidMovieBatchException(Throwable cause) {
+        super("Could not read batch request: " + cause.getMessage(), cause);
+    }
+}
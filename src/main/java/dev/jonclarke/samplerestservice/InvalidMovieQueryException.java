@@ -0,0 +1,14 @@
+package dev.jonclarke.samplerestservice;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+/**
+ * Thrown when the query parameters passed to a movie request are not valid
+ */
+@ResponseStatus(HttpStatus.BAD_REQUEST)
+public class InvalidMovieQueryException extends RuntimeException {
+    InvalidMovieQueryException(String message) {
+        super(message);
+    }
+}
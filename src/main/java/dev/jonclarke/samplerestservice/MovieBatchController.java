@@ -0,0 +1,68 @@
+package dev.jonclarke.samplerestservice;
+
+import dev.jonclarke.samplerestservice.dataaccess.MovieBatchProcessor;
+import dev.jonclarke.samplerestservice.models.MovieBatchResult;
+import dev.jonclarke.samplerestservice.models.MovieDataModel;
+import dev.jonclarke.samplerestservice.serialization.MovieSerializer;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.web.bind.annotation.*;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * Movie Batch Rest API Controller
+ * Provides bulk versions of the create, update and delete actions for loading large numbers of movies.
+ * Each action accepts a JSON array, an XML list or newline delimited JSON, and returns a result for every item.
+ *  - Add (HTTP Post)
+ *  - Update (HTTP Put)
+ *  - Delete (HTTP Delete) - the body is a list of ids
+ * Not available with movies.sharding.enabled, as the batches are written to the main database.
+ */
+@RestController
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.SERVLET)
+@ConditionalOnProperty(name = "movies.sharding.enabled", havingValue = "false", matchIfMissing = true)
+public class MovieBatchController {
+
+    private final MovieBatchProcessor processor;
+    private final MovieSerializer serializer;
+
+    MovieBatchController(MovieBatchProcessor processor, MovieSerializer serializer) {
+        this.processor = processor;
+        this.serializer = serializer;
+    }
+
+    @PostMapping(value = "/movies/batch",
+            consumes = { MediaType.APPLICATION_JSON_VALUE, MediaType.APPLICATION_XML_VALUE, MediaType.APPLICATION_NDJSON_VALUE },
+            produces = { MediaType.APPLICATION_JSON_VALUE, MediaType.APPLICATION_XML_VALUE })
+    List<MovieBatchResult> newMovies(@RequestHeader(HttpHeaders.CONTENT_TYPE) MediaType contentType, InputStream body) {
+        return processor.create(read(body, contentType, MovieDataModel.class));
+    }
+
+    @PutMapping(value = "/movies/batch",
+            consumes = { MediaType.APPLICATION_JSON_VALUE, MediaType.APPLICATION_XML_VALUE, MediaType.APPLICATION_NDJSON_VALUE },
+            produces = { MediaType.APPLICATION_JSON_VALUE, MediaType.APPLICATION_XML_VALUE })
+    List<MovieBatchResult> updateMovies(@RequestHeader(HttpHeaders.CONTENT_TYPE) MediaType contentType, InputStream body) {
+        return processor.update(read(body, contentType, MovieDataModel.class));
+    }
+
+    @DeleteMapping(value = "/movies/batch",
+            consumes = { MediaType.APPLICATION_JSON_VALUE, MediaType.APPLICATION_XML_VALUE, MediaType.APPLICATION_NDJSON_VALUE },
+            produces = { MediaType.APPLICATION_JSON_VALUE, MediaType.APPLICATION_XML_VALUE })
+    List<MovieBatchResult> deleteMovies(@RequestHeader(HttpHeaders.CONTENT_TYPE) MediaType contentType, InputStream body) {
+        return processor.delete(read(body, contentType, Integer.class));
+    }
+
+    private <T> Iterator<T> read(InputStream body, MediaType contentType, Class<T> type) {
+        try {
+            return serializer.readAll(body, contentType, type);
+        } catch (IOException e) {
+            throw new InvalidMovieBatchException(e);
+        }
+    }
+}
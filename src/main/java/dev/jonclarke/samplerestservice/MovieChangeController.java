@@ -0,0 +1,97 @@
+package dev.jonclarke.samplerestservice;
+
+import dev.jonclarke.samplerestservice.changefeed.MovieChangeFeed;
+import dev.jonclarke.samplerestservice.models.MovieChange;
+import dev.jonclarke.samplerestservice.models.MovieChangeSequence;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.http.MediaType;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.async.DeferredResult;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.time.Duration;
+import java.util.List;
+
+/**
+ * Movie Change Feed Rest API Controller
+ * Every create, update and delete is recorded in order, so a client can keep a copy of the catalogue in step by
+ * reading only the changes after the last one it has seen, instead of re-reading every movie.
+ *  - Changes (HTTP Get) - long-poll, or a server-sent event stream when the client accepts text/event-stream
+ *  - Latest sequence (HTTP Get) - the position to follow the feed from, taken before reading the catalogue
+ * A client whose position is older than the oldest change held gets 410 Gone, and must re-read the catalogue.
+ * Not available with movies.sharding.enabled, as changes to sharded movies are not recorded.
+ */
+@RestController
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.SERVLET)
+@ConditionalOnProperty(name = "movies.sharding.enabled", havingValue = "false", matchIfMissing = true)
+public class MovieChangeController {
+
+    static final int DEFAULT_CHANGE_COUNT = 100;
+    static final int MAX_CHANGE_COUNT = 1000;
+    static final int DEFAULT_WAIT_SECONDS = 30;
+    static final int MAX_WAIT_SECONDS = 60;
+
+    private final MovieChangeFeed changeFeed;
+
+    MovieChangeController(MovieChangeFeed changeFeed) {
+        this.changeFeed = changeFeed;
+    }
+
+    /**
+     * Long-poll for changes.  Returns as soon as there is at least one change after since, or an empty list once
+     * the wait is over.
+     * @param since sequence number of the last change already seen.  Defaults to the latest, to wait for the next change
+     * @param limit maximum number of changes to return
+     * @param wait longest time to wait, in seconds.  0 returns straight away
+     */
+    @GetMapping(value = "/movies/changes", produces = { MediaType.APPLICATION_JSON_VALUE, MediaType.APPLICATION_XML_VALUE })
+    DeferredResult<List<MovieChange>> getChanges(@RequestParam(required = false) Long since,
+                                                 @RequestParam(required = false) Integer limit,
+                                                 @RequestParam(required = false) Integer wait) {
+        int changeCount = limit == null ? DEFAULT_CHANGE_COUNT : limit;
+        if (changeCount < 1 || changeCount > MAX_CHANGE_COUNT) {
+            throw new InvalidMovieQueryException("limit must be between 1 and " + MAX_CHANGE_COUNT);
+        }
+        int waitSeconds = wait == null ? DEFAULT_WAIT_SECONDS : wait;
+        if (waitSeconds < 0 || waitSeconds > MAX_WAIT_SECONDS) {
+            throw new InvalidMovieQueryException("wait must be between 0 and " + MAX_WAIT_SECONDS + " seconds");
+        }
+
+        return changeFeed.poll(position(since), changeCount, Duration.ofSeconds(waitSeconds));
+    }
+
+    /**
+     * Stream changes as server-sent events, starting with those after since
+     * @param since sequence number of the last change already seen.  Defaults to the latest
+     * @param lastEventId sent by an EventSource when it reconnects, and used in place of since
+     */
+    @GetMapping(value = "/movies/changes", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    SseEmitter streamChanges(@RequestParam(required = false) Long since,
+                             @RequestHeader(value = "Last-Event-ID", required = false) Long lastEventId) {
+        return changeFeed.subscribe(position(lastEventId != null ? lastEventId : since));
+    }
+
+    @GetMapping(value = "/movies/changes/latest", produces = { MediaType.APPLICATION_JSON_VALUE, MediaType.APPLICATION_XML_VALUE })
+    MovieChangeSequence getLatestSequence() {
+        return new MovieChangeSequence(changeFeed.getLatestSequence());
+    }
+
+    /**
+     * Check the client's position is still covered by the changes held
+     */
+    private long position(Long since) {
+        if (since == null) {
+            return changeFeed.getLatestSequence();
+        }
+        if (since < 0) {
+            throw new InvalidMovieQueryException("since must not be negative");
+        }
+
+        long oldestAvailable = changeFeed.getOldestAvailableSequence();
+        if (since < oldestAvailable - 1 || since > changeFeed.getLatestSequence()) {
+            throw new MovieChangesExpiredException(since, oldestAvailable);
+        }
+        return since;
+    }
+}
@@ -0,0 +1,14 @@
+package dev.jonclarke.samplerestservice;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+/**
+ * Thrown when a conditional update or delete finds the movie is no longer at the version the client expected
+ */
+@ResponseStatus(HttpStatus.PRECONDITION_FAILED)
+public class MovieChangedException extends RuntimeException {
+    MovieChangedException(Integer id) {
+        super("Movie " + id + " has been changed since it was read");
+    }
+}
@@ -0,0 +1,15 @@
+package dev.jonclarke.samplerestservice;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+/**
+ * Thrown when a client asks for the changes after a position the change feed cannot follow on from - changes after
+ * it have been deleted, or it is beyond the latest change - so it must re-read the catalogue before following the feed
+ */
+@ResponseStatus(HttpStatus.GONE)
+public class MovieChangesExpiredException extends RuntimeException {
+    MovieChangesExpiredException(long since, long oldestAvailable) {
+        super("Changes after " + since + " cannot be read, the oldest change held is " + oldestAvailable);
+    }
+}
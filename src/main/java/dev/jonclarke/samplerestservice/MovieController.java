@@ -1,11 +1,51 @@
 package dev.jonclarke.samplerestservice;
 
+import dev.jonclarke.samplerestservice.caching.CachedMovie;
+import dev.jonclarke.samplerestservice.caching.MovieCacheStats;
+import dev.jonclarke.samplerestservice.caching.MovieResponseCache;
+import dev.jonclarke.samplerestservice.caching.RequestCoalescer;
+import dev.jonclarke.samplerestservice.dataaccess.MovieFilter;
 import dev.jonclarke.samplerestservice.dataaccess.MovieRepository;
+import dev.jonclarke.samplerestservice.dataaccess.MovieSearchRepository;
+import dev.jonclarke.samplerestservice.events.MovieChangedEvent;
+import dev.jonclarke.samplerestservice.events.MovieChangedEvent.ChangeType;
+import dev.jonclarke.samplerestservice.models.MovieCatalogueStats;
+import dev.jonclarke.samplerestservice.models.MovieCatalogueVersion;
 import dev.jonclarke.samplerestservice.models.MovieDataModel;
+import dev.jonclarke.samplerestservice.models.MovieProjection;
+import dev.jonclarke.samplerestservice.readmodel.MovieReadModel;
+import dev.jonclarke.samplerestservice.readmodel.MovieReadModelStats;
+import dev.jonclarke.samplerestservice.readmodel.MovieSnapshot;
+import dev.jonclarke.samplerestservice.serialization.MovieSerializer;
+import dev.jonclarke.samplerestservice.sharding.ShardedMovieStore;
+import dev.jonclarke.samplerestservice.statistics.MovieStatistics;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Sort;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.web.HttpMediaTypeNotAcceptableException;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.NativeWebRequest;
+import org.springframework.web.servlet.support.ServletUriComponentsBuilder;
 
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.time.Instant;
+import java.time.LocalDateTime;
 import java.util.List;
+import java.util.Set;
+import java.util.stream.Stream;
 
 /**
  * Movie Rest API Controller
@@ -14,59 +54,591 @@ import java.util.List;
  *  - Get One (HTTP Get)
  *  - Add (HTTP Post)
  *  - Update (HTTP Put)
+ *  - Partial Update (HTTP Patch)
  *  - Delete (HTTP Delete)
+ * Reads return strong ETags (and Last-Modified for a single movie) and answer conditional requests with 304 Not
+ * Modified.  Update, partial update and delete honour If-Match, failing with 412 Precondition Failed if the movie
+ * has changed since the client read it.
+ * Single movies and the list can also be read as CBOR (application/cbor) or Smile (application/x-jackson-smile).
+ * Add, update, partial update and delete each run in one transaction, so the change is recorded in the change feed
+ * (see MovieChangeController) if and only if it is committed.
+ * With movies.read-model.enabled, reads are served from the in-memory read model (see MovieReadModel) once it has
+ * loaded, and see each change shortly after it commits.
+ * With movies.sharding.enabled, the movies are read and written in the shards of ShardedMovieStore instead of the
+ * main database.  The shards are JDBC only, so sharded changes are not published as MovieChangedEvents (and so are
+ * not in the change feed or the search index), the response cache, coalescing and statistics are not used, and the
+ * whole list has no ETag.  The read model cannot be enabled with sharding, and the endpoints of the other
+ * controllers that only reach the main database are not registered.
  */
 @RestController
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.SERVLET)
 public class MovieController {
 
+    static final int DEFAULT_PAGE_SIZE = 100;
+    static final int MAX_PAGE_SIZE = 1000;
+
+    private static final String CATALOGUE_KEY = "catalogue";
+
     private final MovieRepository repository;
+    private final MovieSerializer serializer;
+    private final MovieResponseCache cache;
+    private final RequestCoalescer coalescer;
+    private final ApplicationEventPublisher eventPublisher;
+    private final MovieStatistics statistics;
+    private final TransactionTemplate readOnlyTransaction;
+    private final MovieSource repositorySource;
+    // null unless movies.read-model.enabled is set
+    private final MovieReadModel readModel;
+    // null unless movies.sharding.enabled is set
+    private final ShardedMovieStore shards;
 
-    MovieController(MovieRepository repository) {
+    MovieController(MovieRepository repository, MovieSerializer serializer, MovieResponseCache cache,
+                    RequestCoalescer coalescer, ApplicationEventPublisher eventPublisher, MovieStatistics statistics,
+                    PlatformTransactionManager transactionManager, ObjectProvider<MovieReadModel> readModel,
+                    ObjectProvider<ShardedMovieStore> shards) {
         this.repository = repository;
+        this.serializer = serializer;
+        this.cache = cache;
+        this.coalescer = coalescer;
+        this.eventPublisher = eventPublisher;
+        this.statistics = statistics;
+        this.readOnlyTransaction = new TransactionTemplate(transactionManager);
+        this.readOnlyTransaction.setReadOnly(true);
+        this.repositorySource = new RepositorySource(repository);
+        this.readModel = readModel.getIfAvailable();
+        this.shards = shards.getIfAvailable();
+        if (this.readModel != null && this.shards != null) {
+            // the read model follows the change feed of the main database, which sharded changes are not recorded in
+            throw new IllegalStateException("movies.read-model.enabled cannot be used with movies.sharding.enabled");
+        }
     }
 
-    @GetMapping(value = "/movies", produces = { MediaType.APPLICATION_JSON_VALUE, MediaType.APPLICATION_XML_VALUE })
-    public List<MovieDataModel> getAllMovies() {
-        return repository.findAll();
+    /**
+     * List movies ordered by id.  With no parameters the whole table is streamed to the client as it is read
+     * from the database.  Passing limit and/or after returns a single page using keyset pagination, with a
+     * Link header (rel="next") pointing at the following page when there may be more results.
+     * Passing any of the filters or a sort returns a single page of the matching movies, found with indexed queries.
+     * The ETag of the whole list comes from a single aggregate query, so an If-None-Match match is answered with 304
+     * before anything is read.  That of a page comes from the page's ids and versions.
+     * Identical page requests that arrive while one is being read share its result (see RequestCoalescer), so a
+     * burst of them costs one query and one serialization.  The whole list is streamed to each client separately.
+     * When the read model is enabled and loaded, the list is read from its snapshot instead of the database, unless
+     * it is sorted by title, and no transaction is started.
+     * When sharding is enabled, a page is searched for in every shard and the whole list is merged from every shard
+     * in id order, without an ETag.  Pages are not coalesced.
+     * @param limit maximum number of movies to return in the page
+     * @param after cursor - only movies after this id are returned.  Only allowed when sorting by id
+     * @param title case-insensitive prefix of the title
+     * @param releasedAfter only movies released after this time
+     * @param releasedBefore only movies released before this time
+     * @param availableOnDvd only movies with this DVD availability
+     * @param sort property to sort by - id, title or releaseDate - optionally followed by ",asc" or ",desc"
+     * @param fields sparse fieldset - comma separated names of the fields to return, e.g. "id,title".  Only those
+     *               columns are selected, into projections rather than entities
+     */
+    @GetMapping(value = "/movies", produces = { MediaType.APPLICATION_JSON_VALUE, MediaType.APPLICATION_XML_VALUE,
+            MediaType.APPLICATION_CBOR_VALUE, MovieSerializer.APPLICATION_SMILE_VALUE })
+    public void getAllMovies(@RequestParam(required = false) Integer limit, @RequestParam(required = false) Integer after,
+                             @RequestParam(required = false) String title,
+                             @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime releasedAfter,
+                             @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime releasedBefore,
+                             @RequestParam(required = false) Boolean availableOnDvd,
+                             @RequestParam(required = false) String sort,
+                             @RequestParam(required = false) String fields,
+                             NativeWebRequest request, HttpServletResponse response)
+            throws IOException, HttpMediaTypeNotAcceptableException {
+        MediaType mediaType = serializer.negotiate(request);
+        response.setHeader(HttpHeaders.VARY, HttpHeaders.ACCEPT);
+        MovieFilter filter = new MovieFilter(title, releasedAfter, releasedBefore, availableOnDvd);
+        // null when every field is wanted, which is served from the entities
+        Set<String> fieldSet = parseFields(fields);
+
+        if (limit == null && after == null && filter.isEmpty() && sort == null) {
+            writeCatalogue(fieldSet, mediaType, request, response);
+            return;
+        }
+
+        int pageSize = limit == null ? DEFAULT_PAGE_SIZE : limit;
+        if (pageSize < 1 || pageSize > MAX_PAGE_SIZE) {
+            throw new InvalidMovieQueryException("limit must be between 1 and " + MAX_PAGE_SIZE);
+        }
+
+        Sort order = parseSort(sort);
+        boolean sortedById = order.getOrderFor("id") != null;
+        if (after != null && !sortedById) {
+            throw new InvalidMovieQueryException("after can only be used when sorting by id");
+        }
+
+        // identical requests in progress at the same time share one read and one serialized page
+        MoviePage page = shards != null
+                ? readPage(new ShardSource(shards), pageSize, after, filter, order, fieldSet, mediaType)
+                : coalescer.execute("page", new PageKey(pageSize, after, filter, order, fieldSet, mediaType),
+                        () -> readPage(pageSize, after, filter, order, fieldSet, mediaType));
+        if (request.checkNotModified(page.eTag())) {
+            return;
+        }
+
+        // the id is the only keyset cursor, so there is no next link when sorting by anything else
+        if (page.lastId() != null && sortedById) {
+            addNextLink(response, pageSize, page.lastId());
+        }
+
+        response.setContentType(mediaType.toString());
+        response.getOutputStream().write(page.body());
     }
 
-    @GetMapping(value = "/movies/{id}", produces = { MediaType.APPLICATION_JSON_VALUE, MediaType.APPLICATION_XML_VALUE })
-    MovieDataModel getSingleMovie(@PathVariable Integer id) {
+    /**
+     * Get one movie.  The ETag and Last-Modified headers are kept with the cached body, so a conditional
+     * request for a cached movie is answered with 304 without touching the database or Jackson.
+     * Concurrent requests for the same movie and media type share one lookup.
+     * When the read model is enabled and loaded, the movie is read from its snapshot instead, bypassing the cache -
+     * the cache is cleared when a change commits, which may be before the snapshot has caught up with it.
+     * When sharding is enabled, the movie is read from the shard that owns it, bypassing the cache and coalescing.
+     */
+    @GetMapping(value = "/movies/{id}", produces = { MediaType.APPLICATION_JSON_VALUE, MediaType.APPLICATION_XML_VALUE,
+            MediaType.APPLICATION_CBOR_VALUE, MovieSerializer.APPLICATION_SMILE_VALUE })
+    ResponseEntity<byte[]> getSingleMovie(@PathVariable Integer id, NativeWebRequest request)
+            throws HttpMediaTypeNotAcceptableException {
+        MediaType mediaType = serializer.negotiate(request);
+
+        MovieSnapshot snapshot = currentSnapshot();
+        // identical requests in progress at the same time share one lookup and one serialized body
+        CachedMovie movie = shards != null ? shards.findById(id).map(item -> serialize(item, mediaType)).orElse(null)
+                : coalescer.execute("movie", new MovieKey(id, mediaType), () -> snapshot != null
+                ? serialize(snapshot.find(id), mediaType)
+                : cache.get(id, mediaType, () -> repository.findById(id).map(item -> serialize(item, mediaType)).orElse(null)));
+        if (movie == null) {
+            throw new MovieNotFoundException(id);
+        }
 
-        return repository.findById(id)
-                .orElseThrow(() -> new MovieNotFoundException(id));
+        // the message converter compares these with If-None-Match and If-Modified-Since and sends 304 if they match
+        ResponseEntity.BodyBuilder response = ResponseEntity.ok()
+                .contentType(mediaType)
+                .varyBy(HttpHeaders.ACCEPT)
+                .eTag(MovieETags.forMovie(movie.version(), mediaType));
+        if (movie.lastModified() != null) {
+            response.lastModified(movie.lastModified());
+        }
+        return response.body(movie.body());
+    }
+
+    @GetMapping(value = "/movies/cache/stats", produces = { MediaType.APPLICATION_JSON_VALUE, MediaType.APPLICATION_XML_VALUE })
+    MovieCacheStats getCacheStats() {
+        return cache.getStats();
+    }
+
+    @GetMapping(value = "/movies/read-model/stats", produces = { MediaType.APPLICATION_JSON_VALUE, MediaType.APPLICATION_XML_VALUE })
+    ResponseEntity<MovieReadModelStats> getReadModelStats() {
+        return readModel == null ? ResponseEntity.notFound().build() : ResponseEntity.ok(readModel.getStats());
+    }
+
+    /**
+     * Counts of movies by release year and DVD availability, from counters kept up to date as movies are written
+     * (see MovieStatistics), so the movie table is not read.  Not found when sharding is enabled, as the counters
+     * are only kept for the main database.
+     */
+    @GetMapping(value = "/movies/stats", produces = { MediaType.APPLICATION_JSON_VALUE, MediaType.APPLICATION_XML_VALUE })
+    ResponseEntity<MovieCatalogueStats> getStats() {
+        return shards != null ? ResponseEntity.notFound().build() : ResponseEntity.ok(statistics.getStats());
     }
 
+    @Transactional
     @PostMapping(value = "/movies",
             consumes = { MediaType.APPLICATION_JSON_VALUE, MediaType.APPLICATION_XML_VALUE },
             produces = { MediaType.APPLICATION_JSON_VALUE, MediaType.APPLICATION_XML_VALUE })
     MovieDataModel newMovie(@RequestBody MovieDataModel newMovie) {
-        return repository.save(newMovie);
+        if (shards != null) {
+            return shards.insert(newMovie);
+        }
+
+        MovieDataModel savedMovie = repository.save(newMovie);
+        eventPublisher.publishEvent(new MovieChangedEvent(ChangeType.CREATED, savedMovie.getId()));
+        statistics.movieChanged(null, savedMovie);
+        return savedMovie;
     }
 
+    @Transactional
     @PutMapping(value = "/movies/{id}",
             consumes = { MediaType.APPLICATION_JSON_VALUE, MediaType.APPLICATION_XML_VALUE },
             produces = { MediaType.APPLICATION_JSON_VALUE, MediaType.APPLICATION_XML_VALUE })
-    MovieDataModel updateMovie(@RequestBody MovieDataModel movie, @PathVariable Integer id) {
+    MovieDataModel updateMovie(@RequestBody MovieDataModel movie, @PathVariable Integer id,
+                               @RequestHeader(value = HttpHeaders.IF_MATCH, required = false) String ifMatch) {
+
+        Long version = MovieETags.expectedVersion(ifMatch);
+        if (shards != null) {
+            movie.setId(id);
+            if (!shards.update(movie, version)) {
+                throw notUpdated(id, version);
+            }
+            return movie;
+        }
+
+        // the movie as it was, returned by the update itself, so the statistics can take it out of its old group
+        MovieDataModel before = repository.updateReturningPrevious(id, movie.getTitle(), movie.getDescription(),
+                        movie.getReleaseDate(), movie.isAvailableOnDvd(), version, Instant.now())
+                .orElseThrow(() -> notUpdated(id, version));
 
-        return repository.findById(id)
-                .map(item -> {
-                    item.setTitle(movie.getTitle());
-                    item.setDescription(movie.getDescription());
-                    item.setReleaseDate(movie.getReleaseDate());
-                    item.setAvailableOnDvd(movie.isAvailableOnDvd());
-                    return repository.save(item);
-                })
-                .orElseThrow(() -> new MovieNotFoundException(id));
+        eventPublisher.publishEvent(new MovieChangedEvent(ChangeType.UPDATED, id));
+        movie.setId(id);
+        statistics.movieChanged(before, movie);
+        return movie;
     }
 
+    /**
+     * Update only the fields supplied in the request body.  Fields that are missing (or null) are left unchanged.
+     */
+    @Transactional
+    @PatchMapping(value = "/movies/{id}",
+            consumes = { MediaType.APPLICATION_JSON_VALUE, MediaType.APPLICATION_XML_VALUE },
+            produces = { MediaType.APPLICATION_JSON_VALUE, MediaType.APPLICATION_XML_VALUE })
+    MovieDataModel patchMovie(@RequestBody MovieDataModel movie, @PathVariable Integer id,
+                              @RequestHeader(value = HttpHeaders.IF_MATCH, required = false) String ifMatch) {
+
+        Long version = MovieETags.expectedVersion(ifMatch);
+        if (shards != null) {
+            return patchShardedMovie(movie, id, version);
+        }
+
+        Instant lastModified = Instant.now();
+        MovieDataModel before = repository.patchReturningPrevious(id, movie.getTitle(), movie.getDescription(),
+                        movie.getReleaseDate(), movie.isAvailableOnDvd(), version, lastModified)
+                .orElseThrow(() -> notUpdated(id, version));
+
+        eventPublisher.publishEvent(new MovieChangedEvent(ChangeType.UPDATED, id));
+        // the stored movie is the one the update started from with the supplied fields applied, so it is not read again
+        MovieDataModel patched = applyPatch(new MovieDataModel(id, before.getTitle(), before.getDescription(),
+                before.getReleaseDate(), before.isAvailableOnDvd(), before.getVersion() + 1, lastModified), movie);
+        statistics.movieChanged(before, patched);
+        return patched;
+    }
+
+    @Transactional
     @DeleteMapping(value = "/movies/{id}", produces = { MediaType.APPLICATION_JSON_VALUE, MediaType.APPLICATION_XML_VALUE })
-    void deleteMovie(@PathVariable Integer id) {
-        if (repository.findById(id).isEmpty()) {
-            throw new MovieNotFoundException(id);
+    void deleteMovie(@PathVariable Integer id,
+                     @RequestHeader(value = HttpHeaders.IF_MATCH, required = false) String ifMatch) {
+        Long version = MovieETags.expectedVersion(ifMatch);
+        if (shards != null) {
+            if (!shards.deleteById(id, version)) {
+                throw notUpdated(id, version);
+            }
+            return;
+        }
+
+        MovieDataModel before = repository.deleteReturningPrevious(id, version)
+                .orElseThrow(() -> notUpdated(id, version));
+
+        eventPublisher.publishEvent(new MovieChangedEvent(ChangeType.DELETED, id));
+        statistics.movieChanged(before, null);
+    }
+
+    /**
+     * Patch a movie in its shard.  The shard has no partial update, so the movie is read, the supplied fields
+     * applied to it and the whole movie written back at the version read.  If the movie changes in between, it is
+     * read again, unless the client expected a particular version.
+     */
+    private MovieDataModel patchShardedMovie(MovieDataModel patch, int id, Long version) {
+        while (true) {
+            MovieDataModel movie = shards.findById(id).orElseThrow(() -> new MovieNotFoundException(id));
+            if (version != null && movie.getVersion() != version) {
+                throw new MovieChangedException(id);
+            }
+
+            applyPatch(movie, patch);
+            if (shards.update(movie, movie.getVersion())) {
+                return shards.findById(id).orElseThrow(() -> new MovieNotFoundException(id));
+            }
+            if (version != null) {
+                throw notUpdated(id, version);
+            }
+        }
+    }
+
+    /**
+     * Write the whole movie list for getAllMovies, streamed from the read model's snapshot, the shards or the database
+     */
+    private void writeCatalogue(Set<String> fieldSet, MediaType mediaType, NativeWebRequest request,
+                                HttpServletResponse response) throws IOException {
+        if (shards != null) {
+            // there is no catalogue version across the shards, so no ETag
+            response.setContentType(mediaType.toString());
+            writeAll(new ShardSource(shards), fieldSet, mediaType, response.getOutputStream());
+            return;
+        }
+
+        MovieSnapshot snapshot = currentSnapshot();
+        MovieCatalogueVersion catalogue = snapshot != null ? snapshot.getCatalogueVersion()
+                : coalescer.execute("catalogue", CATALOGUE_KEY, repository::findCatalogueVersion);
+        String eTag = fieldSet == null ? MovieETags.forCatalogue(catalogue, mediaType)
+                : MovieETags.forCatalogue(catalogue, fieldSet, mediaType);
+        if (request.checkNotModified(eTag)) {
+            return;
         }
 
-        repository.deleteById(id);
+        response.setContentType(mediaType.toString());
+        if (snapshot != null) {
+            writeAll(new SnapshotSource(snapshot), fieldSet, mediaType, response.getOutputStream());
+            return;
+        }
+
+        // the transaction lasts while the list is written, as the movies are streamed from the database
+        try {
+            readOnlyTransaction.executeWithoutResult(status -> {
+                try {
+                    writeAll(repositorySource, fieldSet, mediaType, response.getOutputStream());
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    private void writeAll(MovieSource source, Set<String> fieldSet, MediaType mediaType, OutputStream out)
+            throws IOException {
+        if (fieldSet != null) {
+            try (Stream<MovieProjection> movies = source.all(fieldSet)) {
+                serializer.writeAllProjections(movies, fieldSet, mediaType, out);
+            }
+            return;
+        }
+        try (Stream<MovieDataModel> movies = source.all()) {
+            serializer.writeAll(movies, mediaType, out);
+        }
+    }
+
+    /**
+     * Read and serialize one page of the movie list, from the read model's snapshot or, in a read-only
+     * transaction, the database.  The read model has no title index, so a title sort is left to the database.
+     */
+    private MoviePage readPage(int pageSize, Integer after, MovieFilter filter, Sort order, Set<String> fieldSet,
+                               MediaType mediaType) {
+        MovieSnapshot snapshot = currentSnapshot();
+        if (snapshot != null && MovieSnapshot.canSort(order)) {
+            return readPage(new SnapshotSource(snapshot), pageSize, after, filter, order, fieldSet, mediaType);
+        }
+        return readOnlyTransaction.execute(status ->
+                readPage(repositorySource, pageSize, after, filter, order, fieldSet, mediaType));
+    }
+
+    private MoviePage readPage(MovieSource source, int pageSize, Integer after, MovieFilter filter, Sort order,
+                               Set<String> fieldSet, MediaType mediaType) {
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        try {
+            if (fieldSet != null) {
+                List<MovieProjection> page = source.page(fieldSet, filter, order, after, pageSize);
+                serializer.writeAllProjections(page.stream(), fieldSet, mediaType, body);
+                return new MoviePage(body.toByteArray(), MovieETags.forPage(page, fieldSet, mediaType),
+                        page.size() == pageSize ? page.get(page.size() - 1).id() : null);
+            }
+
+            List<MovieDataModel> page = source.page(filter, order, after, pageSize);
+            serializer.writeAll(page.stream(), mediaType, body);
+            return new MoviePage(body.toByteArray(), MovieETags.forPage(page, mediaType),
+                    page.size() == pageSize ? page.get(page.size() - 1).getId() : null);
+        } catch (IOException e) {
+            // not thrown when writing to memory
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * @return the read model's latest snapshot, or null if reads should go to the database
+     */
+    private MovieSnapshot currentSnapshot() {
+        return readModel == null ? null : readModel.getSnapshot();
     }
 
+    private CachedMovie serialize(MovieDataModel movie, MediaType mediaType) {
+        return movie == null ? null
+                : new CachedMovie(serializer.write(movie, mediaType), movie.getVersion(), movie.getLastModified());
+    }
+
+    /**
+     * Copy the fields of a partial update that are not null onto a movie
+     * @return the movie
+     */
+    private static MovieDataModel applyPatch(MovieDataModel movie, MovieDataModel patch) {
+        if (patch.getTitle() != null) {
+            movie.setTitle(patch.getTitle());
+        }
+        if (patch.getDescription() != null) {
+            movie.setDescription(patch.getDescription());
+        }
+        if (patch.getReleaseDate() != null) {
+            movie.setReleaseDate(patch.getReleaseDate());
+        }
+        if (patch.isAvailableOnDvd() != null) {
+            movie.setAvailableOnDvd(patch.isAvailableOnDvd());
+        }
+        return movie;
+    }
+
+    /**
+     * Point the Link header (rel="next") at the page after the one being returned
+     */
+    private static void addNextLink(HttpServletResponse response, int pageSize, int lastId) {
+        String next = ServletUriComponentsBuilder.fromCurrentRequest()
+                .replaceQueryParam("limit", pageSize)
+                .replaceQueryParam("after", lastId)
+                .toUriString();
+        response.setHeader(HttpHeaders.LINK, "<" + next + ">; rel=\"next\"");
+    }
+
+    /**
+     * Read the fields parameter, e.g. "id,title"
+     * @return the requested fields, or null if the parameter is missing or asks for every field
+     */
+    private static Set<String> parseFields(String fields) {
+        if (fields == null) {
+            return null;
+        }
+
+        try {
+            Set<String> fieldSet = MovieProjection.parseFields(fields);
+            return fieldSet.size() == MovieProjection.FIELDS.size() ? null : fieldSet;
+        } catch (IllegalArgumentException e) {
+            throw new InvalidMovieQueryException(e.getMessage());
+        }
+    }
+
+    /**
+     * Read the sort parameter, e.g. "releaseDate,desc".  Defaults to ascending id.
+     */
+    private static Sort parseSort(String sort) {
+        if (sort == null || sort.isBlank()) {
+            return Sort.by("id");
+        }
+
+        String[] parts = sort.split(",");
+        String property = parts[0].trim();
+        if (parts.length > 2 || !MovieSearchRepository.SORT_PROPERTIES.contains(property)) {
+            throw new InvalidMovieQueryException("sort must be one of " + MovieSearchRepository.SORT_PROPERTIES
+                    + ", optionally followed by ,asc or ,desc");
+        }
+
+        Sort.Direction direction = parts.length == 1 ? Sort.Direction.ASC
+                : Sort.Direction.fromOptionalString(parts[1].trim())
+                        .orElseThrow(() -> new InvalidMovieQueryException("sort direction must be asc or desc"));
+        return Sort.by(direction, property);
+    }
+
+    /**
+     * Work out why a conditional update or delete changed nothing - only checked once it has failed,
+     * so a successful write is still a single statement
+     */
+    private RuntimeException notUpdated(Integer id, Long version) {
+        boolean exists = version != null && (shards != null ? shards.findById(id).isPresent() : repository.existsById(id));
+        if (exists) {
+            return new MovieChangedException(id);
+        }
+        return new MovieNotFoundException(id);
+    }
+
+    /**
+     * Keys of the reads shared by identical requests
+     */
+    private record MovieKey(int id, MediaType mediaType) {
+    }
+
+    private record PageKey(int limit, Integer after, MovieFilter filter, Sort sort, Set<String> fields,
+                           MediaType mediaType) {
+    }
+
+    /**
+     * A serialized page of the movie list
+     * @param body the page, serialized as the requested media type
+     * @param eTag the page's ETag
+     * @param lastId id of the last movie if the page is full (so there may be another page), otherwise null
+     */
+    private record MoviePage(byte[] body, String eTag, Integer lastId) {
+    }
+
+    /**
+     * Where the movie list is read from - the database, the shards, or a snapshot of the read model.  All return the
+     * movies in the same order, so the ETags match whichever is used.
+     */
+    private interface MovieSource {
+        Stream<MovieDataModel> all();
+
+        Stream<MovieProjection> all(Set<String> fields);
+
+        List<MovieDataModel> page(MovieFilter filter, Sort sort, Integer after, int limit);
+
+        List<MovieProjection> page(Set<String> fields, MovieFilter filter, Sort sort, Integer after, int limit);
+    }
+
+    private static final class RepositorySource implements MovieSource {
+        private final MovieRepository repository;
+
+        RepositorySource(MovieRepository repository) {
+            this.repository = repository;
+        }
+
+        @Override
+        public Stream<MovieDataModel> all() {
+            return repository.streamAllByOrderByIdAsc();
+        }
+
+        @Override
+        public Stream<MovieProjection> all(Set<String> fields) {
+            return repository.streamProjections(fields);
+        }
+
+        @Override
+        public List<MovieDataModel> page(MovieFilter filter, Sort sort, Integer after, int limit) {
+            return filter.isEmpty() && sort.equals(Sort.by("id"))
+                    ? repository.findByIdGreaterThanOrderByIdAsc(after == null ? 0 : after, PageRequest.ofSize(limit))
+                    : repository.search(filter, sort, after, limit);
+        }
+
+        @Override
+        public List<MovieProjection> page(Set<String> fields, MovieFilter filter, Sort sort, Integer after, int limit) {
+            return repository.searchProjections(fields, filter, sort, after, limit);
+        }
+    }
+
+    private record ShardSource(ShardedMovieStore shards) implements MovieSource {
+        @Override
+        public Stream<MovieDataModel> all() {
+            return shards.streamAll();
+        }
+
+        @Override
+        public Stream<MovieProjection> all(Set<String> fields) {
+            return shards.streamAll().map(movie -> MovieProjection.of(movie, fields));
+        }
+
+        @Override
+        public List<MovieDataModel> page(MovieFilter filter, Sort sort, Integer after, int limit) {
+            return shards.search(filter, sort, after, limit);
+        }
+
+        @Override
+        public List<MovieProjection> page(Set<String> fields, MovieFilter filter, Sort sort, Integer after, int limit) {
+            return shards.search(filter, sort, after, limit).stream().map(movie -> MovieProjection.of(movie, fields)).toList();
+        }
+    }
+
+    private record SnapshotSource(MovieSnapshot snapshot) implements MovieSource {
+        @Override
+        public Stream<MovieDataModel> all() {
+            return snapshot.all();
+        }
+
+        @Override
+        public Stream<MovieProjection> all(Set<String> fields) {
+            return snapshot.all().map(movie -> MovieProjection.of(movie, fields));
+        }
+
+        @Override
+        public List<MovieDataModel> page(MovieFilter filter, Sort sort, Integer after, int limit) {
+            return snapshot.page(filter, sort, after, limit);
+        }
+
+        @Override
+        public List<MovieProjection> page(Set<String> fields, MovieFilter filter, Sort sort, Integer after, int limit) {
+            return snapshot.page(filter, sort, after, limit).stream().map(movie -> MovieProjection.of(movie, fields)).toList();
+        }
+    }
 }
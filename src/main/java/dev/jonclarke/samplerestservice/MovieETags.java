@@ -0,0 +1,97 @@
+package dev.jonclarke.samplerestservice;
+
+import dev.jonclarke.samplerestservice.models.MovieCatalogueVersion;
+import dev.jonclarke.samplerestservice.models.MovieDataModel;
+import dev.jonclarke.samplerestservice.models.MovieProjection;
+import org.springframework.http.MediaType;
+import org.springframework.util.DigestUtils;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Builds and reads the strong ETags sent with movie responses.
+ * The JSON and XML representations of the same data are different bytes, so the media type is part of every tag.
+ *  - a single movie is tagged with its version, e.g. "3-json"
+ *  - a list of movies is tagged with a digest of the ids and versions it covers, e.g. "5d41402a...-xml"
+ *  - a sparse fieldset list is tagged in the same way, with the requested fields added to the digest
+ */
+final class MovieETags {
+
+    private MovieETags() {
+    }
+
+    static String forMovie(long version, MediaType mediaType) {
+        return "\"" + version + "-" + mediaType.getSubtype() + "\"";
+    }
+
+    /**
+     * Tag for the whole movie list, from a summary of the table rather than its rows
+     */
+    static String forCatalogue(MovieCatalogueVersion catalogue, MediaType mediaType) {
+        return digest(catalogue.count() + ":" + catalogue.idSum() + ":" + catalogue.versionSum() + ":"
+                + catalogue.lastModified(), mediaType);
+    }
+
+    /**
+     * Tag for the whole movie list with only some fields of each movie
+     */
+    static String forCatalogue(MovieCatalogueVersion catalogue, Set<String> fields, MediaType mediaType) {
+        return digest(String.join(",", fields) + ";" + catalogue.count() + ":" + catalogue.idSum() + ":"
+                + catalogue.versionSum() + ":" + catalogue.lastModified(), mediaType);
+    }
+
+    /**
+     * Tag for one page of the movie list with only some fields of each movie
+     */
+    static String forPage(List<MovieProjection> page, Set<String> fields, MediaType mediaType) {
+        StringBuilder content = new StringBuilder(page.size() * 8 + 64).append(String.join(",", fields)).append(';');
+        for (MovieProjection movie : page) {
+            content.append(movie.id()).append(':').append(movie.version()).append(',');
+        }
+        return digest(content.toString(), mediaType);
+    }
+
+    /**
+     * Tag for one page of the movie list
+     */
+    static String forPage(List<MovieDataModel> page, MediaType mediaType) {
+        StringBuilder content = new StringBuilder(page.size() * 8);
+        for (MovieDataModel movie : page) {
+            content.append(movie.getId()).append(':').append(movie.getVersion()).append(',');
+        }
+        return digest(content.toString(), mediaType);
+    }
+
+    /**
+     * Read the version a client expects a movie to be at from an If-Match header.  An If-Match header is
+     * compared using strong comparison, so a weak tag or one for a list never matches.
+     * @param ifMatch value of the If-Match header
+     * @return null if there is no header or it is "*" (any version), otherwise the expected version,
+     * which is -1 if the header does not hold a movie tag
+     */
+    static Long expectedVersion(String ifMatch) {
+        if (ifMatch == null || ifMatch.isBlank() || ifMatch.trim().equals("*")) {
+            return null;
+        }
+
+        // only the first tag is used when several are listed
+        String tag = ifMatch.split(",")[0].trim();
+        if (tag.length() < 2 || !tag.startsWith("\"") || !tag.endsWith("\"")) {
+            return -1L;
+        }
+
+        String value = tag.substring(1, tag.length() - 1);
+        int separator = value.indexOf('-');
+        try {
+            return Long.parseLong(separator < 0 ? value : value.substring(0, separator));
+        } catch (NumberFormatException e) {
+            return -1L;
+        }
+    }
+
+    private static String digest(String content, MediaType mediaType) {
+        return "\"" + DigestUtils.md5DigestAsHex(content.getBytes(StandardCharsets.UTF_8)) + "-" + mediaType.getSubtype() + "\"";
+    }
+}
@@ -0,0 +1,63 @@
+package dev.jonclarke.samplerestservice;
+
+import dev.jonclarke.samplerestservice.models.MovieCatalogueVersion;
+import dev.jonclarke.samplerestservice.models.MovieDataModel;
+import dev.jonclarke.samplerestservice.models.MovieProjection;
+import org.springframework.aot.hint.BindingReflectionHintsRegistrar;
+import org.springframework.aot.hint.MemberCategory;
+import org.springframework.aot.hint.RuntimeHints;
+import org.springframework.aot.hint.RuntimeHintsRegistrar;
+import org.springframework.aot.hint.TypeReference;
+
+import java.util.List;
+
+/**
+ * Reflection and resource hints for a GraalVM native image, for the parts of the application Spring's AOT processing
+ * cannot see for itself:
+ *  - MovieDataModel is written by the MovieSerializer rather than a message converter, and is created by the
+ *    constructor expressions in MovieRepository's queries, as is MovieCatalogueVersion.  MovieProjection is also
+ *    only written by the MovieSerializer
+ *  - the Jackson XML module creates its StAX (Woodstox) factories through the javax.xml.stream service lookup
+ *  - Lucene creates its token attribute implementations by name
+ *  - the sample movies are imported at startup from a file on the classpath
+ */
+class MovieRuntimeHints implements RuntimeHintsRegistrar {
+
+    private static final List<String> STAX_FACTORIES = List.of(
+            "com.ctc.wstx.stax.WstxInputFactory",
+            "com.ctc.wstx.stax.WstxOutputFactory");
+
+    private static final List<String> LUCENE_ATTRIBUTES = List.of(
+            "org.apache.lucene.analysis.tokenattributes.PackedTokenAttributeImpl",
+            "org.apache.lucene.analysis.tokenattributes.CharTermAttributeImpl",
+            "org.apache.lucene.analysis.tokenattributes.OffsetAttributeImpl",
+            "org.apache.lucene.analysis.tokenattributes.PositionIncrementAttributeImpl",
+            "org.apache.lucene.analysis.tokenattributes.PositionLengthAttributeImpl",
+            "org.apache.lucene.analysis.tokenattributes.TermFrequencyAttributeImpl",
+            "org.apache.lucene.analysis.tokenattributes.TypeAttributeImpl",
+            "org.apache.lucene.analysis.tokenattributes.BytesTermAttributeImpl",
+            "org.apache.lucene.analysis.tokenattributes.FlagsAttributeImpl",
+            "org.apache.lucene.analysis.tokenattributes.KeywordAttributeImpl",
+            "org.apache.lucene.analysis.tokenattributes.PayloadAttributeImpl");
+
+    private static final String SAMPLE_MOVIES = "sample-movies.ndjson";
+
+    @Override
+    public void registerHints(RuntimeHints hints, ClassLoader classLoader) {
+        new BindingReflectionHintsRegistrar().registerReflectionHints(hints.reflection(), MovieDataModel.class,
+                MovieProjection.class);
+        hints.reflection().registerType(MovieDataModel.class, MemberCategory.INVOKE_DECLARED_CONSTRUCTORS);
+        hints.reflection().registerType(MovieCatalogueVersion.class, MemberCategory.INVOKE_DECLARED_CONSTRUCTORS);
+
+        hints.resources().registerPattern("META-INF/services/javax.xml.stream.*");
+        for (String factory : STAX_FACTORIES) {
+            hints.reflection().registerType(TypeReference.of(factory), MemberCategory.INVOKE_PUBLIC_CONSTRUCTORS);
+        }
+
+        for (String attribute : LUCENE_ATTRIBUTES) {
+            hints.reflection().registerType(TypeReference.of(attribute), MemberCategory.INVOKE_PUBLIC_CONSTRUCTORS);
+        }
+
+        hints.resources().registerPattern(SAMPLE_MOVIES);
+    }
+}
@@ -0,0 +1,74 @@
+package dev.jonclarke.samplerestservice;
+
+import dev.jonclarke.samplerestservice.dataaccess.MovieRepository;
+import dev.jonclarke.samplerestservice.models.MovieDataModel;
+import dev.jonclarke.samplerestservice.search.MovieSearchIndex;
+import org.apache.lucene.queryparser.classic.ParseException;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Movie Search Rest API Controller
+ * Provides ranked full-text search over movie titles and descriptions, answered from the search index
+ *  - Search (HTTP Get) - the best matches first
+ *  - Rebuild the index (HTTP Post) - runs in the background
+ * Not available with movies.sharding.enabled, as the index is built from the main database.
+ */
+@RestController
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.SERVLET)
+@ConditionalOnProperty(name = "movies.sharding.enabled", havingValue = "false", matchIfMissing = true)
+public class MovieSearchController {
+
+    static final int DEFAULT_RESULT_COUNT = 20;
+
+    private final MovieSearchIndex searchIndex;
+    private final MovieRepository repository;
+
+    MovieSearchController(MovieSearchIndex searchIndex, MovieRepository repository) {
+        this.searchIndex = searchIndex;
+        this.repository = repository;
+    }
+
+    /**
+     * Search for movies.  The index gives the ids of the best matches, and only those movies are read from the database.
+     * @param q query text, in the Lucene query syntax
+     * @param limit maximum number of movies to return
+     */
+    @GetMapping(value = "/movies/search", produces = { MediaType.APPLICATION_JSON_VALUE, MediaType.APPLICATION_XML_VALUE })
+    List<MovieDataModel> searchMovies(@RequestParam String q, @RequestParam(required = false) Integer limit) {
+        int resultCount = limit == null ? DEFAULT_RESULT_COUNT : limit;
+        if (resultCount < 1 || resultCount > MovieController.MAX_PAGE_SIZE) {
+            throw new InvalidMovieQueryException("limit must be between 1 and " + MovieController.MAX_PAGE_SIZE);
+        }
+        if (q.isBlank()) {
+            throw new InvalidMovieQueryException("q must not be blank");
+        }
+
+        List<Integer> ids;
+        try {
+            ids = searchIndex.search(q, resultCount);
+        } catch (ParseException e) {
+            throw new InvalidMovieQueryException("q is not a valid query: " + e.getMessage());
+        }
+
+        // put the movies back into rank order, skipping any deleted since they were found
+        Map<Integer, MovieDataModel> movies = repository.findAllById(ids).stream()
+                .collect(Collectors.toMap(MovieDataModel::getId, Function.identity()));
+        return ids.stream().map(movies::get).filter(Objects::nonNull).toList();
+    }
+
+    @PostMapping(value = "/movies/search/rebuild")
+    ResponseEntity<Void> rebuildSearchIndex() {
+        searchIndex.rebuild();
+        return ResponseEntity.accepted().build();
+    }
+}
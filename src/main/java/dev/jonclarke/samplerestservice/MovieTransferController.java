@@ -0,0 +1,98 @@
+package dev.jonclarke.samplerestservice;
+
+import dev.jonclarke.samplerestservice.models.MovieImportResult;
+import dev.jonclarke.samplerestservice.serialization.MovieFileFormat;
+import dev.jonclarke.samplerestservice.serialization.MovieFileSerializer;
+import dev.jonclarke.samplerestservice.transfer.MovieExporter;
+import dev.jonclarke.samplerestservice.transfer.MovieImporter;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.http.ContentDisposition;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.web.bind.annotation.*;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Movie Export and Import Rest API Controller
+ * Moves the whole catalogue between environments as a file of newline delimited JSON or CSV, optionally gzip
+ * compressed, streamed in both directions so neither the file nor the catalogue is ever held in memory.
+ *  - Export (HTTP Get) - every movie in id order, as a file download
+ *  - Import (HTTP Post) - adds the movies in the file, replacing any with the same id
+ * Not available with movies.sharding.enabled, as the files are read from and written to the main database.
+ */
+@RestController
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.SERVLET)
+@ConditionalOnProperty(name = "movies.sharding.enabled", havingValue = "false", matchIfMissing = true)
+public class MovieTransferController {
+
+    private static final String GZIP = "gzip";
+    private static final int GZIP_BUFFER_SIZE = 64 * 1024;
+
+    private final MovieExporter exporter;
+    private final MovieImporter importer;
+
+    MovieTransferController(MovieExporter exporter, MovieImporter importer) {
+        this.exporter = exporter;
+        this.importer = importer;
+    }
+
+    /**
+     * Export every movie
+     * @param format ndjson (the default) or csv
+     * @param after id of the last movie already exported, to carry on with an export that was interrupted
+     * @param gzip whether to gzip compress the file.  It is sent with Content-Encoding: gzip, so it can be saved
+     *             compressed, and as it is compressed here it does not rely on the server's compression settings
+     */
+    @GetMapping("/movies/export")
+    void exportMovies(@RequestParam(required = false) String format,
+                      @RequestParam(required = false) Integer after,
+                      @RequestParam(defaultValue = "false") boolean gzip,
+                      HttpServletResponse response) throws IOException {
+        MovieFileFormat fileFormat = format == null ? MovieFileFormat.NDJSON : MovieFileFormat.forName(format)
+                .orElseThrow(() -> new InvalidMovieQueryException("format must be ndjson or csv"));
+        if (after != null && after < 0) {
+            throw new InvalidMovieQueryException("after must not be negative");
+        }
+
+        response.setContentType(fileFormat.getMediaType().toString());
+        response.setHeader(HttpHeaders.CONTENT_DISPOSITION, ContentDisposition.attachment()
+                .filename("movies." + fileFormat.getExtension() + (gzip ? ".gz" : "")).build().toString());
+        if (!gzip) {
+            exporter.export(fileFormat, after == null ? 0 : after, response.getOutputStream());
+            return;
+        }
+
+        response.setHeader(HttpHeaders.CONTENT_ENCODING, GZIP);
+        try (OutputStream out = new GZIPOutputStream(response.getOutputStream(), GZIP_BUFFER_SIZE)) {
+            exporter.export(fileFormat, after == null ? 0 : after, out);
+        }
+    }
+
+    /**
+     * Import the movies in the request body.  Movies with an id keep it, replacing any existing movie with the same
+     * id, and movies without one are added with a new id.  Send Content-Encoding: gzip with a compressed body.
+     * @return the number of movies read, created, updated and failed, with the reasons for the first failures
+     */
+    @PostMapping(value = "/movies/import",
+            consumes = { MediaType.APPLICATION_NDJSON_VALUE, MovieFileSerializer.TEXT_CSV_VALUE },
+            produces = { MediaType.APPLICATION_JSON_VALUE, MediaType.APPLICATION_XML_VALUE })
+    MovieImportResult importMovies(@RequestHeader(HttpHeaders.CONTENT_TYPE) MediaType contentType,
+                                   @RequestHeader(value = HttpHeaders.CONTENT_ENCODING, required = false) String contentEncoding,
+                                   InputStream body) {
+        // the mapping only accepts the content types of the file formats
+        MovieFileFormat format = MovieFileFormat.forMediaType(contentType).orElseThrow();
+        try {
+            InputStream in = GZIP.equalsIgnoreCase(contentEncoding) ? new GZIPInputStream(body, GZIP_BUFFER_SIZE) : body;
+            return importer.importMovies(in, format);
+        } catch (IOException e) {
+            throw new InvalidMovieBatchException(e);
+        }
+    }
+}
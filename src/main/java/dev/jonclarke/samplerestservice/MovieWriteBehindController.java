@@ -0,0 +1,83 @@
+package dev.jonclarke.samplerestservice;
+
+import dev.jonclarke.samplerestservice.models.MovieDataModel;
+import dev.jonclarke.samplerestservice.sharding.ShardedMovieStore;
+import dev.jonclarke.samplerestservice.writebehind.MovieWriteBehindQueue;
+import dev.jonclarke.samplerestservice.writebehind.MovieWriteQueueStats;
+import dev.jonclarke.samplerestservice.writebehind.MovieWriteStatus;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.support.ServletUriComponentsBuilder;
+
+/**
+ * Movie Write-Behind Rest API Controller
+ * When write-behind is enabled, a new movie posted with the respond-async preference (e.g. "Prefer: respond-async",
+ * or "Prefer: respond-async, wait=5" alongside other preferences) is queued and written in the background instead of
+ * while the client waits.  Other requests to add a movie are handled by MovieController.
+ *  - Add (HTTP Post) - 202 Accepted, with the location of the movie's status
+ *  - Status (HTTP Get) - whether a queued movie has been written, and its id
+ *  - Queue stats (HTTP Get)
+ * Cannot be used with movies.sharding.enabled, as the queued movies are written to the main database.
+ */
+@RestController
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.SERVLET)
+@ConditionalOnProperty("movies.write-behind.enabled")
+public class MovieWriteBehindController {
+
+    static final String RESPOND_ASYNC = "respond-async";
+    static final String RETRY_AFTER_SECONDS = "1";
+
+    private final MovieWriteBehindQueue writeBehindQueue;
+
+    MovieWriteBehindController(MovieWriteBehindQueue writeBehindQueue, ObjectProvider<ShardedMovieStore> shards) {
+        if (shards.getIfAvailable() != null) {
+            // the queue writes to the main database, where sharded reads would not find the movies
+            throw new IllegalStateException("movies.write-behind.enabled cannot be used with movies.sharding.enabled");
+        }
+        this.writeBehindQueue = writeBehindQueue;
+    }
+
+    /**
+     * Queue a new movie.  Fails with 503 Service Unavailable, and a Retry-After header, when the queue is full.
+     */
+    @PreferenceMapping(RESPOND_ASYNC)
+    @PostMapping(value = "/movies",
+            consumes = { MediaType.APPLICATION_JSON_VALUE, MediaType.APPLICATION_XML_VALUE },
+            produces = { MediaType.APPLICATION_JSON_VALUE, MediaType.APPLICATION_XML_VALUE })
+    ResponseEntity<MovieWriteStatus> queueNewMovie(@RequestBody MovieDataModel newMovie) {
+        MovieWriteStatus status = writeBehindQueue.submit(newMovie);
+        if (status == null) {
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                    .header(HttpHeaders.RETRY_AFTER, RETRY_AFTER_SECONDS)
+                    .build();
+        }
+
+        return ResponseEntity.accepted()
+                .location(ServletUriComponentsBuilder.fromCurrentContextPath()
+                        .path("/movies/writes/{trackingId}")
+                        .buildAndExpand(status.trackingId())
+                        .toUri())
+                .header("Preference-Applied", RESPOND_ASYNC)
+                .body(status);
+    }
+
+    @GetMapping(value = "/movies/writes/{trackingId}", produces = { MediaType.APPLICATION_JSON_VALUE, MediaType.APPLICATION_XML_VALUE })
+    MovieWriteStatus getWriteStatus(@PathVariable String trackingId) {
+        MovieWriteStatus status = writeBehindQueue.getStatus(trackingId);
+        if (status == null) {
+            throw new MovieWriteNotFoundException(trackingId);
+        }
+        return status;
+    }
+
+    @GetMapping(value = "/movies/writes", produces = { MediaType.APPLICATION_JSON_VALUE, MediaType.APPLICATION_XML_VALUE })
+    MovieWriteQueueStats getWriteQueueStats() {
+        return writeBehindQueue.getStats();
+    }
+}
@@ -0,0 +1,14 @@
+package dev.jonclarke.samplerestservice;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+/**
+ * Thrown when a write-behind tracking id is not known, or its result has expired or been dropped
+ */
+@ResponseStatus(HttpStatus.NOT_FOUND)
+public class MovieWriteNotFoundException extends RuntimeException {
+    MovieWriteNotFoundException(String trackingId) {
+        super("Could not find queued movie " + trackingId);
+    }
+}
@@ -0,0 +1,98 @@
+package dev.jonclarke.samplerestservice;
+
+import jakarta.servlet.http.HttpServletRequest;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.boot.autoconfigure.web.servlet.WebMvcRegistrations;
+import org.springframework.core.annotation.AnnotatedElementUtils;
+import org.springframework.stereotype.Component;
+import org.springframework.web.cors.CorsUtils;
+import org.springframework.web.servlet.mvc.condition.RequestCondition;
+import org.springframework.web.servlet.mvc.method.annotation.RequestMappingHandlerMapping;
+
+import java.lang.reflect.Method;
+import java.util.Enumeration;
+
+/**
+ * Request condition for @PreferenceMapping: matches requests whose Prefer header lists the preference.
+ * The header is a comma separated list of preferences, each a name optionally followed by =value and ;parameters,
+ * and may be sent more than once, so "Prefer: respond-async, wait=5" and "Prefer: handling=lenient, respond-async"
+ * both ask for respond-async.  Preference names are not case sensitive.
+ * A mapping with the condition is more specific than the same mapping without it, so it is chosen when both match.
+ */
+final class PreferenceCondition implements RequestCondition<PreferenceCondition> {
+
+    static final String PREFER = "Prefer";
+
+    private final String preference;
+
+    PreferenceCondition(String preference) {
+        this.preference = preference;
+    }
+
+    @Override
+    public PreferenceCondition combine(PreferenceCondition other) {
+        // the condition on the method replaces any on the type
+        return other;
+    }
+
+    @Override
+    public PreferenceCondition getMatchingCondition(HttpServletRequest request) {
+        if (CorsUtils.isPreFlightRequest(request)) {
+            return this;
+        }
+        return isPreferred(request, preference) ? this : null;
+    }
+
+    @Override
+    public int compareTo(PreferenceCondition other, HttpServletRequest request) {
+        return 0;
+    }
+
+    /**
+     * @return whether any of the request's Prefer headers lists the preference
+     */
+    static boolean isPreferred(HttpServletRequest request, String preference) {
+        Enumeration<String> headers = request.getHeaders(PREFER);
+        while (headers != null && headers.hasMoreElements()) {
+            for (String element : headers.nextElement().split(",")) {
+                String name = element;
+                int end = indexOfAny(name, ';', '=');
+                if (end >= 0) {
+                    name = name.substring(0, end);
+                }
+                if (name.trim().equalsIgnoreCase(preference)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    private static int indexOfAny(String value, char first, char second) {
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == first || c == second) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Adds the condition to handler methods annotated with @PreferenceMapping
+     */
+    @Component
+    @ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.SERVLET)
+    static class Registrations implements WebMvcRegistrations {
+        @Override
+        public RequestMappingHandlerMapping getRequestMappingHandlerMapping() {
+            return new RequestMappingHandlerMapping() {
+                @Override
+                protected RequestCondition<?> getCustomMethodCondition(Method method) {
+                    PreferenceMapping mapping = AnnotatedElementUtils.findMergedAnnotation(method, PreferenceMapping.class);
+                    return mapping == null ? null : new PreferenceCondition(mapping.value());
+                }
+            };
+        }
+    }
+}
@@ -0,0 +1,22 @@
+package dev.jonclarke.samplerestservice;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Narrows a request mapping to requests whose Prefer header (RFC 7240) asks for a preference, wherever it comes in
+ * the list of preferences and whatever parameters it has.  Requests that do not ask for it go to the mapping without
+ * the annotation.  See PreferenceCondition.
+ */
+@Target(ElementType.METHOD)
+@Retention(RetentionPolicy.RUNTIME)
+@Documented
+public @interface PreferenceMapping {
+    /**
+     * @return name of the preference, e.g. respond-async
+     */
+    String value();
+}
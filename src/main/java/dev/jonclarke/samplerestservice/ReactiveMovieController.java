@@ -0,0 +1,96 @@
+package dev.jonclarke.samplerestservice;
+
+import dev.jonclarke.samplerestservice.dataaccess.ReactiveMovieRepository;
+import dev.jonclarke.samplerestservice.events.MovieChangedEvent;
+import dev.jonclarke.samplerestservice.events.MovieChangedEvent.ChangeType;
+import dev.jonclarke.samplerestservice.models.MovieDataModel;
+import dev.jonclarke.samplerestservice.sharding.ShardedMovieStore;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.http.MediaType;
+import org.springframework.http.codec.ServerSentEvent;
+import org.springframework.web.bind.annotation.*;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+/**
+ * Reactive Movie Rest API Controller
+ * Non-blocking version of the MovieController, used instead of it when the application is started with
+ * spring.main.web-application-type=reactive.  The actions are the same
+ *  - Get All (HTTP Get) - as a JSON array, newline delimited JSON or server-sent events
+ *  - Get One (HTTP Get)
+ *  - Add (HTTP Post)
+ *  - Update (HTTP Put)
+ *  - Delete (HTTP Delete)
+ * Lists are streamed from the database as the client reads them, so a slow client slows down the query rather than
+ * having the results build up in memory.  Only JSON is supported, as WebFlux has no Jackson XML codec.
+ * Cannot be used with movies.sharding.enabled, as R2DBC only reaches the main database.
+ */
+@RestController
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.REACTIVE)
+public class ReactiveMovieController {
+
+    private final ReactiveMovieRepository repository;
+    private final ApplicationEventPublisher eventPublisher;
+
+    ReactiveMovieController(ReactiveMovieRepository repository, ApplicationEventPublisher eventPublisher,
+                            ObjectProvider<ShardedMovieStore> shards) {
+        if (shards.getIfAvailable() != null) {
+            throw new IllegalStateException("The reactive stack cannot be used with movies.sharding.enabled");
+        }
+        this.repository = repository;
+        this.eventPublisher = eventPublisher;
+    }
+
+    @GetMapping(value = "/movies", produces = { MediaType.APPLICATION_JSON_VALUE, MediaType.APPLICATION_NDJSON_VALUE })
+    Flux<MovieDataModel> getAllMovies() {
+        return repository.findAll();
+    }
+
+    @GetMapping(value = "/movies", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    Flux<ServerSentEvent<MovieDataModel>> getAllMovieEvents() {
+        return repository.findAll()
+                .map(movie -> ServerSentEvent.builder(movie).id(String.valueOf(movie.getId())).build());
+    }
+
+    @GetMapping(value = "/movies/{id}", produces = MediaType.APPLICATION_JSON_VALUE)
+    Mono<MovieDataModel> getSingleMovie(@PathVariable Integer id) {
+        return repository.findById(id)
+                .switchIfEmpty(Mono.error(() -> new MovieNotFoundException(id)));
+    }
+
+    @PostMapping(value = "/movies", consumes = MediaType.APPLICATION_JSON_VALUE, produces = MediaType.APPLICATION_JSON_VALUE)
+    Mono<MovieDataModel> newMovie(@RequestBody MovieDataModel newMovie) {
+        return repository.insert(newMovie)
+                .doOnNext(savedMovie -> eventPublisher.publishEvent(new MovieChangedEvent(ChangeType.CREATED, savedMovie.getId())));
+    }
+
+    @PutMapping(value = "/movies/{id}", consumes = MediaType.APPLICATION_JSON_VALUE, produces = MediaType.APPLICATION_JSON_VALUE)
+    Mono<MovieDataModel> updateMovie(@RequestBody MovieDataModel movie, @PathVariable Integer id) {
+        return repository.updateById(id, movie)
+                .flatMap(updated -> {
+                    if (updated == 0) {
+                        return Mono.error(new MovieNotFoundException(id));
+                    }
+
+                    eventPublisher.publishEvent(new MovieChangedEvent(ChangeType.UPDATED, id));
+                    movie.setId(id);
+                    return Mono.just(movie);
+                });
+    }
+
+    @DeleteMapping(value = "/movies/{id}")
+    Mono<Void> deleteMovie(@PathVariable Integer id) {
+        return repository.deleteById(id)
+                .flatMap(deleted -> {
+                    if (deleted == 0) {
+                        return Mono.error(new MovieNotFoundException(id));
+                    }
+
+                    eventPublisher.publishEvent(new MovieChangedEvent(ChangeType.DELETED, id));
+                    return Mono.empty();
+                })
+                .then();
+    }
+}
@@ -2,30 +2,28 @@ package dev.jonclarke.samplerestservice;
 
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
-
-import dev.jonclarke.samplerestservice.dataaccess.MovieRepository;
-import dev.jonclarke.samplerestservice.models.MovieDataModel;
-import org.springframework.boot.CommandLineRunner;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
 import org.springframework.boot.web.servlet.support.SpringBootServletInitializer;
+import org.springframework.context.ApplicationListener;
 import org.springframework.context.annotation.Bean;
-
-import java.time.LocalDateTime;
-import java.time.format.DateTimeFormatter;
+import org.springframework.context.annotation.ImportRuntimeHints;
 
 @SpringBootApplication
+@ImportRuntimeHints(MovieRuntimeHints.class)
 public class SampleRestServiceApplication extends SpringBootServletInitializer {
 
 	public static void main(String[] args) {
 		SpringApplication.run(SampleRestServiceApplication.class, args);
 	}
 
+	/**
+	 * Stop as soon as the application has started, for a training run that records a class data sharing archive,
+	 * or once the startup import (see MovieStartupImport) has loaded a file
+	 */
 	@Bean
-	public CommandLineRunner demo(MovieRepository repository) {
-		// Insert some sample data
-		return (args) -> {
-			// save a few movies
-			repository.save(new MovieDataModel("Movie 1", "Movie 1 Description", LocalDateTime.parse("2023-01-01T01:10:10", DateTimeFormatter.ISO_DATE_TIME), true));
-			repository.save(new MovieDataModel("Movie 2", "Movie 2 Description", LocalDateTime.parse("2023-12-31T23:59:59", DateTimeFormatter.ISO_DATE_TIME), false));
-		};
+	@ConditionalOnProperty("movies.startup.exit-when-ready")
+	public ApplicationListener<ApplicationReadyEvent> exitWhenReady() {
+		return event -> System.exit(SpringApplication.exit(event.getApplicationContext()));
 	}
 }
@@ -0,0 +1,56 @@
+package dev.jonclarke.samplerestservice;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.task.TaskExecutionAutoConfiguration;
+import org.springframework.boot.web.embedded.tomcat.TomcatProtocolHandlerCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.task.AsyncTaskExecutor;
+import org.springframework.core.task.support.TaskExecutorAdapter;
+import org.springframework.scheduling.annotation.AsyncAnnotationBeanPostProcessor;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Opt-in virtual thread execution mode (requires Java 21 or later), enabled with movies.virtual-threads.enabled=true.
+ * The embedded Tomcat runs each request on a new virtual thread instead of its platform thread pool, so a request
+ * blocked on JDBC no longer holds a platform thread.  Spring's application task executor (used for async request
+ * processing) is switched to virtual threads too.  The number of requests in flight is then no longer limited by
+ * the thread pool, so the JDBC connection pool (spring.datasource.hikari.maximum-pool-size) becomes the limit on
+ * concurrent database work and should be sized for the database rather than for request concurrency.
+ * This only applies when running with the embedded Tomcat; a WAR deployed to an external Tomcat uses that
+ * server's executor configuration.
+ */
+@Configuration(proxyBeanMethods = false)
+@ConditionalOnProperty(name = "movies.virtual-threads.enabled", havingValue = "true")
+public class VirtualThreadsConfiguration {
+
+    private static final int VIRTUAL_THREADS_JAVA_VERSION = 21;
+
+    @Bean(destroyMethod = "shutdown")
+    ExecutorService virtualThreadExecutor() {
+        if (Runtime.version().feature() < VIRTUAL_THREADS_JAVA_VERSION) {
+            throw new IllegalStateException("movies.virtual-threads.enabled requires Java " + VIRTUAL_THREADS_JAVA_VERSION
+                    + " or later, but the application is running on Java " + Runtime.version().feature());
+        }
+
+        try {
+            // called reflectively so the project still builds for Java 17
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("Could not create the virtual thread executor", e);
+        }
+    }
+
+    @Bean
+    TomcatProtocolHandlerCustomizer<?> virtualThreadProtocolHandlerCustomizer(ExecutorService virtualThreadExecutor) {
+        return protocolHandler -> protocolHandler.setExecutor(virtualThreadExecutor);
+    }
+
+    @Bean(name = { TaskExecutionAutoConfiguration.APPLICATION_TASK_EXECUTOR_BEAN_NAME,
+            AsyncAnnotationBeanPostProcessor.DEFAULT_TASK_EXECUTOR_BEAN_NAME })
+    AsyncTaskExecutor applicationTaskExecutor(ExecutorService virtualThreadExecutor) {
+        return new TaskExecutorAdapter(virtualThreadExecutor);
+    }
+}
@@ -0,0 +1,13 @@
+package dev.jonclarke.samplerestservice.caching;
+
+import java.time.Instant;
+
+/**
+ * A serialized movie response, with the version and modification time needed to answer conditional requests
+ * without going back to the database.
+ * @param body the serialized movie
+ * @param version version of the movie that was serialized
+ * @param lastModified when that version was written, null if it is not known
+ */
+public record CachedMovie(byte[] body, long version, Instant lastModified) {
+}
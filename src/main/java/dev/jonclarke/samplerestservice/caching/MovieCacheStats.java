@@ -0,0 +1,12 @@
+package dev.jonclarke.samplerestservice.caching;
+
+/**
+ * Snapshot of the movie response cache counters, used to size the cache
+ * @param size approximate number of cached responses
+ * @param hitCount number of lookups served from the cache
+ * @param missCount number of lookups that had to load the movie from the database
+ * @param evictionCount number of responses removed because of the size or time-to-live limits
+ * @param hitRate ratio of hits to lookups
+ */
+public record MovieCacheStats(long size, long hitCount, long missCount, long evictionCount, double hitRate) {
+}
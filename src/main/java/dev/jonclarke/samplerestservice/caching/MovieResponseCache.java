@@ -0,0 +1,84 @@
+package dev.jonclarke.samplerestservice.caching;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import dev.jonclarke.samplerestservice.events.MovieChangedEvent;
+import dev.jonclarke.samplerestservice.serialization.MovieSerializer;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.function.Supplier;
+
+/**
+ * Read-through cache of serialized single movie responses, keyed by movie id and media type.
+ * A hit returns the response body as it was written the first time, skipping both the database and Jackson,
+ * along with the version and modification time of the movie so conditional requests can be answered from it.
+ * Entries are evicted when the cache grows beyond its maximum size or after the time-to-live, and every
+ * representation of a movie is invalidated once a change to it has been committed.
+ * The hit ratio, size and evictions are published as the cache metrics of the "movies.response" cache.
+ */
+@Component
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.SERVLET)
+public class MovieResponseCache {
+
+    private record Key(int id, MediaType mediaType) {
+    }
+
+    private final Cache<Key, CachedMovie> cache;
+    private final List<MediaType> mediaTypes;
+
+    public MovieResponseCache(MovieSerializer serializer,
+                              @Value("${movies.cache.maximum-size:10000}") long maximumSize,
+                              @Value("${movies.cache.time-to-live:10m}") Duration timeToLive,
+                              MeterRegistry meterRegistry) {
+        this.mediaTypes = serializer.getSupportedMediaTypes();
+        this.cache = Caffeine.newBuilder()
+                .maximumSize(maximumSize)
+                .expireAfterWrite(timeToLive)
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, cache, "movies.response");
+    }
+
+    /**
+     * Get the serialized movie, loading it if it is not already cached.  Concurrent requests for the same
+     * entry wait for a single load rather than all going to the database.
+     * @param id id of the movie
+     * @param mediaType media type the body was serialized as
+     * @param loader loads and serializes the movie, returning null if it does not exist (which is not cached)
+     * @return the response, or null if the movie does not exist
+     */
+    public CachedMovie get(int id, MediaType mediaType, Supplier<CachedMovie> loader) {
+        return cache.get(new Key(id, mediaType), key -> loader.get());
+    }
+
+    /**
+     * Remove every cached representation of the movie
+     * @param id id of the movie
+     */
+    public void invalidate(int id) {
+        cache.invalidateAll(mediaTypes.stream().map(mediaType -> new Key(id, mediaType)).toList());
+    }
+
+    public void invalidateAll() {
+        cache.invalidateAll();
+    }
+
+    public MovieCacheStats getStats() {
+        CacheStats stats = cache.stats();
+        return new MovieCacheStats(cache.estimatedSize(), stats.hitCount(), stats.missCount(), stats.evictionCount(), stats.hitRate());
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onMovieChanged(MovieChangedEvent event) {
+        invalidate(event.id());
+    }
+}
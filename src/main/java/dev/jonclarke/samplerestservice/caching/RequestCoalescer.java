@@ -0,0 +1,119 @@
+package dev.jonclarke.samplerestservice.caching;
+
+import dev.jonclarke.samplerestservice.events.MovieChangedEvent;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+/**
+ * Single-flight coalescing of identical reads.  The first request for a key runs the read on its own thread, and
+ * requests for the same key that arrive while it is running wait for its result (or its exception) instead of
+ * repeating it.  Nothing is kept once the read completes, so unlike a cache a result is only ever shared between
+ * requests that were in progress at the same time.
+ * <p>
+ * A read that is already running may have started before a change was committed, so a request could otherwise be
+ * given a result from before a change that completed before the request arrived.  Once a movie change has been
+ * committed the reads in progress are forgotten: requests already waiting still get their result, but requests that
+ * arrive from then on start a fresh read.  Changes made by other instances are not seen, so there a result can be
+ * out of date by one read in progress.
+ * <p>
+ * Each read is counted by operation in the movies.read.coalescing counter, tagged result=loaded for the requests
+ * that ran the read and result=coalesced for those that shared another request's result.
+ */
+@Component
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.SERVLET)
+public class RequestCoalescer {
+
+    private record Key(String operation, Object key) {
+    }
+
+    private final boolean enabled;
+    private final MeterRegistry meterRegistry;
+    private final Map<Key, CompletableFuture<Object>> inFlight = new ConcurrentHashMap<>();
+    // by operation, so each counter is registered once rather than looked up in the registry on every read
+    private final Map<String, Counter> loadedCounters = new ConcurrentHashMap<>();
+    private final Map<String, Counter> coalescedCounters = new ConcurrentHashMap<>();
+
+    public RequestCoalescer(@Value("${movies.coalescing.enabled:true}") boolean enabled, MeterRegistry meterRegistry) {
+        this.enabled = enabled;
+        this.meterRegistry = meterRegistry;
+    }
+
+    /**
+     * Run a read, or wait for the same read that is already running
+     * @param operation name of the kind of read, used for the metrics and to keep keys of different reads apart
+     * @param key identifies the read - requests with equal keys share a result
+     * @param loader runs the read
+     * @return the result of the read
+     */
+    @SuppressWarnings("unchecked")
+    public <T> T execute(String operation, Object key, Supplier<T> loader) {
+        if (!enabled) {
+            return loader.get();
+        }
+
+        Key inFlightKey = new Key(operation, key);
+        CompletableFuture<Object> loading = new CompletableFuture<>();
+        CompletableFuture<Object> running = inFlight.putIfAbsent(inFlightKey, loading);
+        if (running != null) {
+            coalescedCounters.computeIfAbsent(operation, name -> counter(name, "coalesced")).increment();
+            return (T) join(running);
+        }
+
+        loadedCounters.computeIfAbsent(operation, name -> counter(name, "loaded")).increment();
+        try {
+            T result = loader.get();
+            loading.complete(result);
+            return result;
+        } catch (RuntimeException | Error e) {
+            loading.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlight.remove(inFlightKey, loading);
+        }
+    }
+
+    /**
+     * Forget the reads in progress once a change has been committed, as they may have read the movies before it.
+     * Each read still completes for the requests already waiting on it, and only removes itself if it is still the
+     * read in progress for its key.
+     */
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onMovieChanged(MovieChangedEvent event) {
+        inFlight.clear();
+    }
+
+    /**
+     * Wait for another request's read, throwing the same exception it did if it failed
+     */
+    private static Object join(CompletableFuture<Object> running) {
+        try {
+            return running.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            if (e.getCause() instanceof Error cause) {
+                throw cause;
+            }
+            throw e;
+        }
+    }
+
+    private Counter counter(String operation, String result) {
+        return Counter.builder("movies.read.coalescing")
+                .description("Reads run, and requests that shared a read already in progress")
+                .tag("operation", operation)
+                .tag("result", result)
+                .register(meterRegistry);
+    }
+}
@@ -0,0 +1,397 @@
+package dev.jonclarke.samplerestservice.changefeed;
+
+import dev.jonclarke.samplerestservice.dataaccess.MovieChangeRepository;
+import dev.jonclarke.samplerestservice.events.MovieChangesRecordedEvent;
+import dev.jonclarke.samplerestservice.models.MovieChange;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Component;
+import org.springframework.web.context.request.async.DeferredResult;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+/**
+ * Delivers the movie change feed to waiting clients, either as long-poll responses or as server-sent event streams.
+ * <p>
+ * Clients that are waiting hold no request thread.  When changes are committed by this instance the waiting clients
+ * are served straight away, and the latest sequence number is also polled from the database, so changes committed
+ * by other instances sharing the database are delivered within the poll interval.
+ * <p>
+ * A single feed thread reads each new batch of changes from the database once and shares it: a waiting long-poll is
+ * given the changes after its position, and each event stream has the batch added to a buffer of its own.  The
+ * streams are written by a small pool of sender threads, one stream at a time, so a client that reads slowly only
+ * holds up itself.  A stream whose buffer grows past its limit is closed, and the client reconnects with
+ * Last-Event-ID.  A client that starts (or reconnects) behind the latest batch reads the changes it has missed
+ * from the database on a sender thread, before it is served from the shared batches.
+ */
+@Component
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.SERVLET)
+@ConditionalOnProperty(name = "movies.sharding.enabled", havingValue = "false", matchIfMissing = true)
+public class MovieChangeFeed {
+
+    private static final Logger log = LoggerFactory.getLogger(MovieChangeFeed.class);
+
+    /**
+     * A long-poll request waiting for the changes after a sequence number
+     */
+    private record Waiter(long since, int limit, DeferredResult<List<MovieChange>> result) {
+    }
+
+    /**
+     * A server-sent event stream.  Only one sender thread at a time writes to it, and the changes waiting to be sent
+     * and whether it has caught up with the shared batches are guarded by the subscriber.
+     */
+    private static class Subscriber {
+        private final SseEmitter emitter;
+        private final Queue<MovieChange> buffer = new ArrayDeque<>();
+        private final AtomicBoolean sending = new AtomicBoolean();
+        // the last change sent, only used by the sender
+        private long position;
+        // the last change added to the buffer, once caught up
+        private long buffered;
+        private boolean caughtUp;
+        private volatile boolean dropped;
+
+        Subscriber(SseEmitter emitter, long position) {
+            this.emitter = emitter;
+            this.position = position;
+        }
+
+        /**
+         * Add the changes not yet buffered, if the subscriber has caught up with the shared batches
+         * @return false if the buffer is now over its limit
+         */
+        synchronized boolean offer(List<MovieChange> changes, int bufferLimit) {
+            if (!caughtUp) {
+                return true;
+            }
+            for (MovieChange change : changes) {
+                if (change.getSequence() > buffered) {
+                    buffer.add(change);
+                    buffered = change.getSequence();
+                }
+            }
+            return buffer.size() <= bufferLimit;
+        }
+
+        synchronized MovieChange next() {
+            return buffer.poll();
+        }
+
+        synchronized boolean isBufferEmpty() {
+            return buffer.isEmpty();
+        }
+
+        /**
+         * Switch to the shared batches, if the changes sent reach the latest batch the feed has read
+         * @return whether the subscriber has caught up
+         */
+        synchronized boolean catchUp(LongSupplier latestRead) {
+            // read under the lock, so a batch the feed reads after this is offered to the subscriber
+            if (latestRead.getAsLong() > position) {
+                return false;
+            }
+            caughtUp = true;
+            buffered = position;
+            return true;
+        }
+
+        synchronized boolean isCaughtUp() {
+            return caughtUp;
+        }
+
+        synchronized void drop() {
+            dropped = true;
+            buffer.clear();
+        }
+    }
+
+    private final MovieChangeRepository repository;
+    private final int batchSize;
+    private final int bufferLimit;
+    private final Duration streamTimeout;
+    private final Queue<Waiter> waiters = new ConcurrentLinkedQueue<>();
+    private final Queue<Subscriber> subscribers = new ConcurrentLinkedQueue<>();
+    private final AtomicLong latestSequence = new AtomicLong();
+    // sequence of the last change read by the feed thread and shared with the clients
+    private volatile long latestRead;
+    private final ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "movie-change-feed");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final ExecutorService senders;
+
+    public MovieChangeFeed(MovieChangeRepository repository,
+                           @Value("${movies.changes.batch-size:100}") int batchSize,
+                           @Value("${movies.changes.poll-interval:1s}") Duration pollInterval,
+                           @Value("${movies.changes.stream-timeout:30m}") Duration streamTimeout,
+                           @Value("${movies.changes.sender-threads:4}") int senderThreads,
+                           @Value("${movies.changes.stream-buffer:1000}") int bufferLimit) {
+        this.repository = repository;
+        this.batchSize = batchSize;
+        this.bufferLimit = bufferLimit;
+        this.streamTimeout = streamTimeout;
+        this.latestRead = repository.findLatestSequence();
+        this.latestSequence.set(latestRead);
+        AtomicInteger threads = new AtomicInteger();
+        this.senders = Executors.newFixedThreadPool(senderThreads, runnable -> {
+            Thread thread = new Thread(runnable, "movie-change-sender-" + threads.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        executor.scheduleWithFixedDelay(this::checkForChanges, pollInterval.toMillis(), pollInterval.toMillis(),
+                TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * @return sequence number of the latest change
+     */
+    public long getLatestSequence() {
+        return repository.findLatestSequence();
+    }
+
+    /**
+     * @return sequence number of the oldest change that can still be read.  Changes before it have been deleted.
+     */
+    public long getOldestAvailableSequence() {
+        Long oldest = repository.findOldestSequence();
+        return oldest != null ? oldest : repository.findLatestSequence() + 1;
+    }
+
+    /**
+     * Read the changes after a sequence number, without waiting
+     * @param since sequence number of the last change already seen
+     * @param limit maximum number of changes to return
+     * @return changes in sequence order
+     */
+    public List<MovieChange> read(long since, int limit) {
+        return repository.findBySequenceGreaterThanOrderBySequenceAsc(since, PageRequest.ofSize(limit));
+    }
+
+    /**
+     * Long-poll for the changes after a sequence number.  The result is set as soon as there is at least one change,
+     * or to an empty list if there are none before the wait is over.
+     * @param since sequence number of the last change already seen
+     * @param limit maximum number of changes to return
+     * @param wait longest time to wait for a change
+     * @return the pending result
+     */
+    public DeferredResult<List<MovieChange>> poll(long since, int limit, Duration wait) {
+        DeferredResult<List<MovieChange>> result = new DeferredResult<>(wait.toMillis());
+        List<MovieChange> changes = read(since, limit);
+        if (!changes.isEmpty() || wait.isZero()) {
+            result.setResult(changes);
+            return result;
+        }
+
+        Waiter waiter = new Waiter(since, limit, result);
+        result.onTimeout(() -> result.setResult(List.of()));
+        result.onCompletion(() -> waiters.remove(waiter));
+        waiters.add(waiter);
+
+        // a change may have been read by the feed between reading and being added to the waiters
+        if (latestRead > since) {
+            senders.execute(() -> readFor(waiter));
+        }
+        return result;
+    }
+
+    /**
+     * Stream the changes after a sequence number as server-sent events, starting with those already recorded.
+     * Each event is named "change" and has the change's sequence number as its id, so a client that reconnects
+     * with Last-Event-ID carries on from the last change it received.
+     * @param since sequence number of the last change already seen
+     * @return the event stream
+     */
+    public SseEmitter subscribe(long since) {
+        SseEmitter emitter = new SseEmitter(streamTimeout.toMillis());
+        Subscriber subscriber = new Subscriber(emitter, since);
+        emitter.onCompletion(() -> subscribers.remove(subscriber));
+        emitter.onTimeout(emitter::complete);
+        emitter.onError(e -> subscribers.remove(subscriber));
+        subscribers.add(subscriber);
+
+        startSending(subscriber);
+        return emitter;
+    }
+
+    @EventListener
+    public void onChangesRecorded(MovieChangesRecordedEvent event) {
+        if (latestSequence.getAndAccumulate(event.latestSequence(), Math::max) < event.latestSequence()) {
+            executor.execute(this::deliver);
+        }
+    }
+
+    @PreDestroy
+    public void close() {
+        executor.shutdownNow();
+        senders.shutdownNow();
+        subscribers.forEach(subscriber -> subscriber.emitter.complete());
+    }
+
+    /**
+     * Pick up changes committed by other instances sharing the database
+     */
+    private void checkForChanges() {
+        try {
+            latestSequence.accumulateAndGet(repository.findLatestSequence(), Math::max);
+            deliver();
+        } catch (RuntimeException e) {
+            log.warn("Could not check for movie changes", e);
+        }
+    }
+
+    /**
+     * Read the changes after the last batch read, a batch at a time, and share each batch with every client.
+     * Runs on the feed thread.
+     */
+    private void deliver() {
+        try {
+            List<MovieChange> changes;
+            do {
+                long since = latestRead;
+                if (latestSequence.get() <= since) {
+                    return;
+                }
+                changes = read(since, batchSize);
+                if (changes.isEmpty()) {
+                    return;
+                }
+                // moved on before the batch is shared, so a client catching up either sees it or is given the batch
+                latestRead = changes.get(changes.size() - 1).getSequence();
+                share(since, changes);
+            } while (changes.size() == batchSize);
+        } catch (RuntimeException e) {
+            log.warn("Could not read movie changes", e);
+        }
+    }
+
+    private void share(long since, List<MovieChange> changes) {
+        for (Waiter waiter : waiters) {
+            if (waiter.result().isSetOrExpired()) {
+                continue;
+            }
+            if (waiter.since() < since) {
+                // behind the batch, so reads the changes it has missed for itself
+                senders.execute(() -> readFor(waiter));
+                continue;
+            }
+            List<MovieChange> after = changes.stream()
+                    .filter(change -> change.getSequence() > waiter.since())
+                    .limit(waiter.limit())
+                    .toList();
+            if (!after.isEmpty()) {
+                waiter.result().setResult(after);
+            }
+        }
+
+        for (Subscriber subscriber : subscribers) {
+            if (!subscriber.offer(changes, bufferLimit)) {
+                // fallen too far behind to be worth buffering for - closed by its sender, and the client reconnects
+                log.info("Closing a movie change stream that has fallen {} changes behind", bufferLimit);
+                subscribers.remove(subscriber);
+                subscriber.drop();
+            }
+            startSending(subscriber);
+        }
+    }
+
+    /**
+     * Answer a long-poll from the database.  Runs on a sender thread.
+     */
+    private void readFor(Waiter waiter) {
+        if (waiter.result().isSetOrExpired()) {
+            return;
+        }
+        try {
+            List<MovieChange> changes = read(waiter.since(), waiter.limit());
+            if (!changes.isEmpty()) {
+                waiter.result().setResult(changes);
+            }
+        } catch (RuntimeException e) {
+            waiter.result().setErrorResult(e);
+        }
+    }
+
+    /**
+     * Have a sender thread send a subscriber its changes, unless one is already doing so
+     */
+    private void startSending(Subscriber subscriber) {
+        if (subscriber.sending.compareAndSet(false, true)) {
+            senders.execute(() -> send(subscriber));
+        }
+    }
+
+    /**
+     * Send a subscriber every change after its position: first those it has missed, read from the database, and then
+     * those in its buffer.  Runs on a sender thread.
+     */
+    private void send(Subscriber subscriber) {
+        try {
+            while (true) {
+                while (!subscriber.isCaughtUp() && !subscriber.dropped) {
+                    List<MovieChange> changes = read(subscriber.position, batchSize);
+                    for (MovieChange change : changes) {
+                        send(subscriber, change);
+                    }
+                    if (changes.size() < batchSize && !subscriber.catchUp(() -> latestRead) && changes.isEmpty()) {
+                        // the changes it is missing have been deleted, so the client has to start again
+                        subscribers.remove(subscriber);
+                        subscriber.emitter.complete();
+                        return;
+                    }
+                }
+
+                MovieChange change;
+                while (!subscriber.dropped && (change = subscriber.next()) != null) {
+                    send(subscriber, change);
+                }
+                if (subscriber.dropped) {
+                    subscriber.emitter.complete();
+                    return;
+                }
+
+                subscriber.sending.set(false);
+                // a batch may have been offered after the buffer was emptied, but before sending was cleared
+                if (subscriber.isBufferEmpty() || !subscriber.sending.compareAndSet(false, true)) {
+                    return;
+                }
+            }
+        } catch (IOException e) {
+            // the client has gone, and the container completes the stream
+            subscribers.remove(subscriber);
+        } catch (RuntimeException e) {
+            subscribers.remove(subscriber);
+            subscriber.emitter.completeWithError(e);
+        }
+    }
+
+    private static void send(Subscriber subscriber, MovieChange change) throws IOException {
+        subscriber.emitter.send(SseEmitter.event()
+                .id(Long.toString(change.getSequence()))
+                .name("change")
+                .data(change));
+        subscriber.position = change.getSequence();
+    }
+}
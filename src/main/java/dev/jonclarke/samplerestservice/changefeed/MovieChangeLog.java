@@ -0,0 +1,170 @@
+package dev.jonclarke.samplerestservice.changefeed;
+
+import dev.jonclarke.samplerestservice.dataaccess.MovieChangeRepository;
+import dev.jonclarke.samplerestservice.events.MovieChangedEvent;
+import dev.jonclarke.samplerestservice.events.MovieChangesRecordedEvent;
+import dev.jonclarke.samplerestservice.models.MovieChange;
+import jakarta.annotation.PreDestroy;
+import jakarta.persistence.EntityManager;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Records every change made to movies in the movie_change table (a transactional outbox), in the same transaction
+ * as the change itself, so the change feed holds a change if and only if it was committed.
+ * <p>
+ * The changes made in a transaction are collected as they are published and written just before it commits, in a
+ * single step: the sequence numbers are taken from the counter row, which stays locked until the commit, and then
+ * the rows are inserted.  A transaction therefore cannot number its changes until every transaction that numbered
+ * its changes before it has committed, so changes become visible in sequence order and a consumer reading past the
+ * last sequence it has seen never misses one.
+ * <p>
+ * A change published outside a transaction (the reactive stack) is recorded in a transaction of its own straight
+ * afterwards, on a background thread, so it is not atomic with the change.
+ * Changes older than the retention period are deleted in the background.
+ */
+@Component
+public class MovieChangeLog {
+
+    private static final Logger log = LoggerFactory.getLogger(MovieChangeLog.class);
+
+    private final MovieChangeRepository repository;
+    private final EntityManager entityManager;
+    private final ApplicationEventPublisher eventPublisher;
+    private final TransactionTemplate transactionTemplate;
+    private final Duration retention;
+    private final ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "movie-change-log");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    public MovieChangeLog(MovieChangeRepository repository, EntityManager entityManager,
+                          ApplicationEventPublisher eventPublisher, PlatformTransactionManager transactionManager,
+                          @Value("${movies.changes.retention:7d}") Duration retention) {
+        this.repository = repository;
+        this.entityManager = entityManager;
+        this.eventPublisher = eventPublisher;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.retention = retention;
+        executor.scheduleWithFixedDelay(this::deleteExpired, 1, 60, TimeUnit.MINUTES);
+    }
+
+    /**
+     * Add a change to those to be recorded when the current transaction commits
+     */
+    @EventListener
+    public void onMovieChanged(MovieChangedEvent event) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            recordSeparately(event);
+            return;
+        }
+
+        pendingChanges().add(event);
+    }
+
+    /**
+     * Record a change made outside a transaction, in a transaction of its own on the background thread, so
+     * the caller (which may be a reactive event loop) is not blocked on the database
+     * @return completes once the change has been recorded
+     */
+    CompletableFuture<Void> recordSeparately(MovieChangedEvent event) {
+        return CompletableFuture.runAsync(() -> {
+            try {
+                transactionTemplate.executeWithoutResult(status -> pendingChanges().add(event));
+            } catch (RuntimeException e) {
+                log.warn("Could not record movie change {}", event, e);
+                throw e;
+            }
+        }, executor);
+    }
+
+    /**
+     * Delete the changes recorded longer ago than the retention period
+     * @return number of changes deleted
+     */
+    public int deleteExpired() {
+        try {
+            int deleted = repository.deleteChangedBefore(Instant.now().minus(retention));
+            if (deleted > 0) {
+                log.info("Deleted {} movie changes older than {}", deleted, retention);
+            }
+            return deleted;
+        } catch (RuntimeException e) {
+            log.warn("Could not delete expired movie changes", e);
+            return 0;
+        }
+    }
+
+    @PreDestroy
+    public void close() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * The changes waiting to be recorded when the current transaction commits.  The first change in a
+     * transaction registers the synchronization that records them.
+     */
+    @SuppressWarnings("unchecked")
+    private List<MovieChangedEvent> pendingChanges() {
+        List<MovieChangedEvent> pending = (List<MovieChangedEvent>) TransactionSynchronizationManager.getResource(this);
+        if (pending != null) {
+            return pending;
+        }
+
+        List<MovieChangedEvent> changes = new ArrayList<>();
+        TransactionSynchronizationManager.bindResource(this, changes);
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            private long latestSequence;
+
+            @Override
+            public void beforeCommit(boolean readOnly) {
+                latestSequence = record(changes);
+            }
+
+            @Override
+            public void afterCommit() {
+                eventPublisher.publishEvent(new MovieChangesRecordedEvent(latestSequence));
+            }
+
+            @Override
+            public void afterCompletion(int status) {
+                TransactionSynchronizationManager.unbindResourceIfPossible(MovieChangeLog.this);
+            }
+        });
+        return changes;
+    }
+
+    /**
+     * Number and insert the changes.  Runs in the transaction that made them, just before it commits.
+     * @return sequence number of the last change
+     */
+    private long record(List<MovieChangedEvent> changes) {
+        repository.reserveSequences(changes.size());
+        long latestSequence = repository.findLatestSequence();
+
+        long sequence = latestSequence - changes.size();
+        Instant changedAt = Instant.now();
+        for (MovieChangedEvent change : changes) {
+            entityManager.persist(new MovieChange(++sequence, change.id(), change.type(), changedAt));
+        }
+        return latestSequence;
+    }
+}
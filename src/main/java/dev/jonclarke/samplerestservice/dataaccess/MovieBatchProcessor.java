@@ -0,0 +1,218 @@
+package dev.jonclarke.samplerestservice.dataaccess;
+
+import dev.jonclarke.samplerestservice.events.MovieChangedEvent;
+import dev.jonclarke.samplerestservice.events.MovieChangedEvent.ChangeType;
+import dev.jonclarke.samplerestservice.models.MovieBatchResult;
+import dev.jonclarke.samplerestservice.models.MovieBatchResult.Status;
+import dev.jonclarke.samplerestservice.models.MovieDataModel;
+import dev.jonclarke.samplerestservice.statistics.MovieStatistics;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceException;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.dao.DataAccessException;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.TransactionException;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Creates, updates and deletes movies in bulk.
+ * Items are read from the iterator and written in chunks, one transaction per chunk, so that inserts and
+ * updates go to the database as JDBC batches and only one chunk is held in memory at a time.  If a chunk
+ * fails, its items are retried one per transaction so a single bad item does not fail the rest of the chunk.
+ */
+@Component
+public class MovieBatchProcessor {
+
+    /**
+     * Writes one chunk of items inside a transaction, returning a result for every item
+     */
+    @FunctionalInterface
+    private interface ChunkWriter<T> {
+        List<MovieBatchResult> write(List<T> chunk, int firstIndex);
+    }
+
+    private final MovieRepository repository;
+    private final EntityManager entityManager;
+    private final TransactionTemplate transactionTemplate;
+    private final ApplicationEventPublisher eventPublisher;
+    private final MovieStatistics statistics;
+    private final int chunkSize;
+
+    public MovieBatchProcessor(MovieRepository repository, EntityManager entityManager,
+                               TransactionTemplate transactionTemplate, ApplicationEventPublisher eventPublisher,
+                               MovieStatistics statistics, @Value("${movies.batch.chunk-size:500}") int chunkSize) {
+        this.repository = repository;
+        this.entityManager = entityManager;
+        this.transactionTemplate = transactionTemplate;
+        this.eventPublisher = eventPublisher;
+        this.statistics = statistics;
+        this.chunkSize = chunkSize;
+    }
+
+    /**
+     * Insert new movies.  Any id supplied with a movie is ignored.
+     * @param movies movies to insert
+     * @return one result per movie, in request order
+     */
+    public List<MovieBatchResult> create(Iterator<MovieDataModel> movies) {
+        return process(movies, this::createChunk);
+    }
+
+    /**
+     * Update existing movies, identified by their id
+     * @param movies movies to update
+     * @return one result per movie, in request order
+     */
+    public List<MovieBatchResult> update(Iterator<MovieDataModel> movies) {
+        return process(movies, this::updateChunk);
+    }
+
+    /**
+     * Delete movies by id
+     * @param ids ids of the movies to delete
+     * @return one result per id, in request order
+     */
+    public List<MovieBatchResult> delete(Iterator<Integer> ids) {
+        return process(ids, this::deleteChunk);
+    }
+
+    private <T> List<MovieBatchResult> process(Iterator<T> items, ChunkWriter<T> writer) {
+        List<MovieBatchResult> results = new ArrayList<>();
+        List<T> chunk = new ArrayList<>(chunkSize);
+        RuntimeException readFailure = null;
+
+        while (true) {
+            try {
+                if (!items.hasNext()) {
+                    break;
+                }
+                chunk.add(items.next());
+            } catch (RuntimeException e) {
+                // the rest of the body cannot be read, so write what has been read so far and report where it stopped
+                readFailure = e;
+                break;
+            }
+
+            if (chunk.size() == chunkSize) {
+                results.addAll(writeChunk(chunk, results.size(), writer));
+                chunk.clear();
+            }
+        }
+
+        results.addAll(writeChunk(chunk, results.size(), writer));
+        if (readFailure != null) {
+            results.add(MovieBatchResult.failed(results.size(), null, "Could not read item: " + readFailure.getMessage()));
+        }
+        return results;
+    }
+
+    private <T> List<MovieBatchResult> writeChunk(List<T> chunk, int firstIndex, ChunkWriter<T> writer) {
+        if (chunk.isEmpty()) {
+            return List.of();
+        }
+
+        try {
+            return transactionTemplate.execute(status -> {
+                List<MovieBatchResult> results = writer.write(chunk, firstIndex);
+                // write the chunk as JDBC batches and stop the persistence context growing between chunks
+                entityManager.flush();
+                entityManager.clear();
+                return results;
+            });
+        } catch (DataAccessException | PersistenceException | TransactionException e) {
+            if (chunk.size() == 1) {
+                return List.of(MovieBatchResult.failed(firstIndex, null, e.getMessage()));
+            }
+
+            List<MovieBatchResult> results = new ArrayList<>(chunk.size());
+            for (int i = 0; i < chunk.size(); i++) {
+                results.addAll(writeChunk(Collections.singletonList(chunk.get(i)), firstIndex + i, writer));
+            }
+            return results;
+        }
+    }
+
+    private List<MovieBatchResult> createChunk(List<MovieDataModel> chunk, int firstIndex) {
+        List<MovieBatchResult> results = new ArrayList<>(chunk.size());
+        for (int i = 0; i < chunk.size(); i++) {
+            MovieDataModel movie = chunk.get(i);
+            if (movie == null) {
+                results.add(MovieBatchResult.failed(firstIndex + i, null, "Missing movie"));
+                continue;
+            }
+
+            // always insert, even if the item is being retried after its chunk failed
+            movie.setId(0);
+            MovieDataModel savedMovie = repository.save(movie);
+            eventPublisher.publishEvent(new MovieChangedEvent(ChangeType.CREATED, savedMovie.getId()));
+            statistics.movieChanged(null, savedMovie);
+            results.add(MovieBatchResult.of(firstIndex + i, savedMovie.getId(), Status.CREATED));
+        }
+        return results;
+    }
+
+    private List<MovieBatchResult> updateChunk(List<MovieDataModel> chunk, int firstIndex) {
+        List<Integer> ids = chunk.stream().filter(Objects::nonNull).map(MovieDataModel::getId).toList();
+        Map<Integer, MovieDataModel> existingMovies = repository.findAllById(ids).stream()
+                .collect(Collectors.toMap(MovieDataModel::getId, Function.identity()));
+
+        List<MovieBatchResult> results = new ArrayList<>(chunk.size());
+        for (int i = 0; i < chunk.size(); i++) {
+            MovieDataModel movie = chunk.get(i);
+            if (movie == null) {
+                results.add(MovieBatchResult.failed(firstIndex + i, null, "Missing movie"));
+                continue;
+            }
+
+            MovieDataModel item = existingMovies.get(movie.getId());
+            if (item == null) {
+                results.add(MovieBatchResult.of(firstIndex + i, movie.getId(), Status.NOT_FOUND));
+                continue;
+            }
+
+            // counted before the item is changed, as it is the movie as it was.  The changes are flushed as batched
+            // updates when the chunk is written, checking the version, so the movie cannot have changed in between
+            statistics.movieChanged(item, movie);
+            item.setTitle(movie.getTitle());
+            item.setDescription(movie.getDescription());
+            item.setReleaseDate(movie.getReleaseDate());
+            item.setAvailableOnDvd(movie.isAvailableOnDvd());
+            eventPublisher.publishEvent(new MovieChangedEvent(ChangeType.UPDATED, item.getId()));
+            results.add(MovieBatchResult.of(firstIndex + i, item.getId(), Status.UPDATED));
+        }
+        return results;
+    }
+
+    private List<MovieBatchResult> deleteChunk(List<Integer> chunk, int firstIndex) {
+        List<Integer> ids = chunk.stream().filter(Objects::nonNull).toList();
+        // a single delete statement for the whole chunk, which returns the movies as they were for the statistics
+        Map<Integer, MovieDataModel> existingMovies = repository.deleteAllReturningPrevious(ids).stream()
+                .collect(Collectors.toMap(MovieDataModel::getId, Function.identity()));
+
+        List<MovieBatchResult> results = new ArrayList<>(chunk.size());
+        for (int i = 0; i < chunk.size(); i++) {
+            Integer id = chunk.get(i);
+            if (id == null) {
+                results.add(MovieBatchResult.failed(firstIndex + i, null, "Missing id"));
+            } else if (existingMovies.containsKey(id)) {
+                eventPublisher.publishEvent(new MovieChangedEvent(ChangeType.DELETED, id));
+                statistics.movieChanged(existingMovies.remove(id), null);
+                results.add(MovieBatchResult.of(firstIndex + i, id, Status.DELETED));
+            } else {
+                // either not there to begin with, or listed more than once in the request
+                results.add(MovieBatchResult.of(firstIndex + i, id, Status.NOT_FOUND));
+            }
+        }
+        return results;
+    }
+}
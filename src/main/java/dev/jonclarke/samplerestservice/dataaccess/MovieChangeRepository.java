@@ -0,0 +1,57 @@
+package dev.jonclarke.samplerestservice.dataaccess;
+
+import dev.jonclarke.samplerestservice.models.MovieChange;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.Instant;
+import java.util.List;
+
+public interface MovieChangeRepository extends JpaRepository<MovieChange, Long> {
+
+    /**
+     * Read the change feed from a position
+     * @param since sequence number of the last change already seen
+     * @param pageable maximum number of changes to return, the page number is ignored
+     * @return changes in sequence order
+     */
+    List<MovieChange> findBySequenceGreaterThanOrderBySequenceAsc(long since, Pageable pageable);
+
+    /**
+     * Take the next sequence numbers.  The counter row stays locked until the transaction ends, so no other
+     * transaction can number its changes until this one has committed, and changes are committed in sequence order.
+     * Must be called inside a transaction, as late in it as possible.
+     * @param count number of sequence numbers to take
+     * @return number of rows updated
+     */
+    @Transactional
+    @Modifying
+    @Query(value = "update movie_change_sequence set last_sequence = last_sequence + :count where id = 1", nativeQuery = true)
+    int reserveSequences(@Param("count") int count);
+
+    /**
+     * @return sequence number of the latest change, including any that have since been deleted
+     */
+    @Query(value = "select last_sequence from movie_change_sequence where id = 1", nativeQuery = true)
+    long findLatestSequence();
+
+    /**
+     * @return sequence number of the oldest change still held, or null if none are
+     */
+    @Query("select min(c.sequence) from MovieChange c")
+    Long findOldestSequence();
+
+    /**
+     * Delete the changes recorded before a time
+     * @param cutoff time before which changes are deleted
+     * @return number of changes deleted
+     */
+    @Transactional
+    @Modifying
+    @Query("delete from MovieChange c where c.changedAt < :cutoff")
+    int deleteChangedBefore(@Param("cutoff") Instant cutoff);
+}
@@ -0,0 +1,17 @@
+package dev.jonclarke.samplerestservice.dataaccess;
+
+import java.time.LocalDateTime;
+
+/**
+ * Conditions for a movie search.  Every condition is optional and those that are set must all match.
+ * @param title case-insensitive prefix of the title
+ * @param releasedAfter only movies released after this time
+ * @param releasedBefore only movies released before this time
+ * @param availableOnDvd only movies with this DVD availability
+ */
+public record MovieFilter(String title, LocalDateTime releasedAfter, LocalDateTime releasedBefore, Boolean availableOnDvd) {
+
+    public boolean isEmpty() {
+        return (title == null || title.isEmpty()) && releasedAfter == null && releasedBefore == null && availableOnDvd == null;
+    }
+}
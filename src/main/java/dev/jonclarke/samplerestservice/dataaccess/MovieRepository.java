@@ -1,7 +1,86 @@
 package dev.jonclarke.samplerestservice.dataaccess;
 
+import dev.jonclarke.samplerestservice.models.MovieCatalogueVersion;
 import dev.jonclarke.samplerestservice.models.MovieDataModel;
+import jakarta.persistence.QueryHint;
+import org.hibernate.jpa.HibernateHints;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
 
-public interface MovieRepository extends JpaRepository<MovieDataModel, Integer> {
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.stream.Stream;
+
+public interface MovieRepository extends JpaRepository<MovieDataModel, Integer>, MovieSearchRepository,
+        MovieWriteRepository {
+
+    /**
+     * Number of rows the JDBC driver is asked to fetch per round trip when streaming the movie table
+     */
+    String STREAM_FETCH_SIZE = "500";
+
+    /**
+     * Keyset (seek) pagination - return the next page of movies with an id greater than the cursor.
+     * Only the rows for the requested page are read, no matter how deep into the table the cursor is.
+     * @param after id of the last movie on the previous page (0 for the first page)
+     * @param pageable page size to return, the page number is ignored
+     * @return movies ordered by id
+     */
+    List<MovieDataModel> findByIdGreaterThanOrderByIdAsc(int after, Pageable pageable);
+
+    /**
+     * Stream every movie ordered by id.  The rows are read from a forward-only cursor and are
+     * built with a constructor expression, so they are never attached to the persistence context
+     * and memory use stays flat however large the table is.
+     * Must be called inside a transaction and the stream must be closed once consumed.
+     * @return stream of detached movies
+     */
+    @Query("select new dev.jonclarke.samplerestservice.models.MovieDataModel(m.id, m.title, m.description, m.releaseDate, m.availableOnDvd, "
+            + "m.version, m.lastModified) from MovieDataModel m order by m.id")
+    @QueryHints({
+            @QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = STREAM_FETCH_SIZE),
+            @QueryHint(name = HibernateHints.HINT_READ_ONLY, value = "true")
+    })
+    Stream<MovieDataModel> streamAllByOrderByIdAsc();
+
+    /**
+     * Summarise the movie table with a single aggregate query, for the ETag of the movie list
+     * @return the current version of the table
+     */
+    @Query("select new dev.jonclarke.samplerestservice.models.MovieCatalogueVersion(count(m), coalesce(sum(m.id), 0), "
+            + "coalesce(sum(m.version), 0), max(m.lastModified)) from MovieDataModel m")
+    MovieCatalogueVersion findCatalogueVersion();
+
+    /**
+     * Replace every field of a movie with a single update statement, without loading it first.
+     * Bulk updates bypass Hibernate's versioning, so the version and modification time are set here.
+     * @param version the version the movie must still be at for it to be updated, or null to update any version
+     * @param lastModified modification time to record
+     * @return number of movies updated - 0 if the movie does not exist or is not at the expected version
+     */
+    @Transactional
+    @Modifying(clearAutomatically = true)
+    @Query("update MovieDataModel m set m.title = :title, m.titleKey = lower(:title), m.description = :description, "
+            + "m.releaseDate = :releaseDate, m.availableOnDvd = :availableOnDvd, "
+            + "m.version = m.version + 1, m.lastModified = :lastModified "
+            + "where m.id = :id and (:version is null or m.version = :version)")
+    int updateById(@Param("id") int id, @Param("title") String title, @Param("description") String description,
+                   @Param("releaseDate") LocalDateTime releaseDate, @Param("availableOnDvd") Boolean availableOnDvd,
+                   @Param("version") Long version, @Param("lastModified") Instant lastModified);
+
+    /**
+     * Delete a movie with a single delete statement, without loading it first
+     * @param version the version the movie must still be at for it to be deleted, or null to delete any version
+     * @return number of movies deleted - 0 if the movie does not exist or is not at the expected version
+     */
+    @Transactional
+    @Modifying(clearAutomatically = true)
+    @Query("delete from MovieDataModel m where m.id = :id and (:version is null or m.version = :version)")
+    int deleteMovieById(@Param("id") int id, @Param("version") Long version);
 }
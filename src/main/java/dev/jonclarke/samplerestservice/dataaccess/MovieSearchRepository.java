@@ -0,0 +1,47 @@
+package dev.jonclarke.samplerestservice.dataaccess;
+
+import dev.jonclarke.samplerestservice.models.MovieDataModel;
+import dev.jonclarke.samplerestservice.models.MovieProjection;
+import org.springframework.data.domain.Sort;
+
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Stream;
+
+/**
+ * Filtered and sorted movie queries, built so that each condition can be answered from an index
+ */
+public interface MovieSearchRepository {
+
+    /**
+     * Properties movies can be sorted by
+     */
+    Set<String> SORT_PROPERTIES = Set.of("id", "title", "releaseDate");
+
+    /**
+     * Find the movies matching the filter.  Movies are always ordered by id after the requested sort, so the
+     * order is stable from one page to the next.
+     * @param filter conditions the movies must match
+     * @param sort order to return the movies in, by any of the SORT_PROPERTIES (title is sorted case-insensitively)
+     * @param after keyset cursor - only movies after this id in the id order, may be null.  Only allowed when sorting by id
+     * @param limit maximum number of movies to return
+     * @return the matching movies
+     */
+    List<MovieDataModel> search(MovieFilter filter, Sort sort, Integer after, int limit);
+
+    /**
+     * Find the movies matching the filter, in the same order as search, selecting only the requested columns.
+     * The id and version are always selected, for the page's cursor and ETag.
+     * @param fields the MovieProjection.FIELDS to select
+     * @return projections of the matching movies
+     */
+    List<MovieProjection> searchProjections(Set<String> fields, MovieFilter filter, Sort sort, Integer after, int limit);
+
+    /**
+     * Stream every movie ordered by id, selecting only the requested columns.
+     * Must be called inside a transaction and the stream must be closed once consumed.
+     * @param fields the MovieProjection.FIELDS to select
+     * @return stream of projections
+     */
+    Stream<MovieProjection> streamProjections(Set<String> fields);
+}
@@ -0,0 +1,159 @@
+package dev.jonclarke.samplerestservice.dataaccess;
+
+import dev.jonclarke.samplerestservice.models.MovieDataModel;
+import dev.jonclarke.samplerestservice.models.MovieProjection;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.Tuple;
+import jakarta.persistence.criteria.CriteriaBuilder;
+import jakarta.persistence.criteria.CriteriaQuery;
+import jakarta.persistence.criteria.Order;
+import jakarta.persistence.criteria.Path;
+import jakarta.persistence.criteria.Predicate;
+import jakarta.persistence.criteria.Root;
+import jakarta.persistence.criteria.Selection;
+import org.hibernate.jpa.HibernateHints;
+import org.springframework.data.domain.Sort;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Stream;
+
+/**
+ * Criteria API implementation of MovieSearchRepository, picked up by Spring Data as a fragment of MovieRepository.
+ * Only the conditions that are set are added to the query, and each one is written so that it can use an index:
+ *  - title is a range on the lower case title key, rather than lower(title) like '...%' which would scan every row
+ *  - releasedAfter/releasedBefore are ranges on the release date
+ *  - availableOnDvd leads the (availableOnDvd, releaseDate) index, so it can be combined with a release date range
+ * Unlike a Pageable query, no count query is run.
+ * The projection queries select only the requested columns into tuples, so neither the unused columns nor any
+ * entities are loaded.
+ */
+class MovieSearchRepositoryImpl implements MovieSearchRepository {
+
+    private static final String VERSION = "version";
+
+    private final EntityManager entityManager;
+
+    MovieSearchRepositoryImpl(EntityManager entityManager) {
+        this.entityManager = entityManager;
+    }
+
+    @Override
+    public List<MovieDataModel> search(MovieFilter filter, Sort sort, Integer after, int limit) {
+        CriteriaBuilder builder = entityManager.getCriteriaBuilder();
+        CriteriaQuery<MovieDataModel> query = builder.createQuery(MovieDataModel.class);
+        Root<MovieDataModel> movie = query.from(MovieDataModel.class);
+
+        query.select(movie).where(conditions(builder, movie, filter, sort, after)).orderBy(orders(builder, movie, sort));
+        return entityManager.createQuery(query)
+                .setMaxResults(limit)
+                .getResultList();
+    }
+
+    @Override
+    public List<MovieProjection> searchProjections(Set<String> fields, MovieFilter filter, Sort sort, Integer after, int limit) {
+        CriteriaBuilder builder = entityManager.getCriteriaBuilder();
+        CriteriaQuery<Tuple> query = builder.createTupleQuery();
+        Root<MovieDataModel> movie = query.from(MovieDataModel.class);
+
+        Set<String> columns = new LinkedHashSet<>(fields);
+        columns.add("id");
+        columns.add(VERSION);
+        query.multiselect(selections(movie, columns))
+                .where(conditions(builder, movie, filter, sort, after))
+                .orderBy(orders(builder, movie, sort));
+        return entityManager.createQuery(query)
+                .setMaxResults(limit)
+                .getResultStream()
+                .map(tuple -> toProjection(tuple, columns))
+                .toList();
+    }
+
+    @Override
+    public Stream<MovieProjection> streamProjections(Set<String> fields) {
+        CriteriaBuilder builder = entityManager.getCriteriaBuilder();
+        CriteriaQuery<Tuple> query = builder.createTupleQuery();
+        Root<MovieDataModel> movie = query.from(MovieDataModel.class);
+
+        query.multiselect(selections(movie, fields)).orderBy(builder.asc(movie.get("id")));
+        return entityManager.createQuery(query)
+                .setHint(HibernateHints.HINT_FETCH_SIZE, MovieRepository.STREAM_FETCH_SIZE)
+                .getResultStream()
+                .map(tuple -> toProjection(tuple, fields));
+    }
+
+    private static Predicate[] conditions(CriteriaBuilder builder, Root<MovieDataModel> movie, MovieFilter filter,
+                                          Sort sort, Integer after) {
+        List<Predicate> conditions = new ArrayList<>();
+        if (filter.title() != null && !filter.title().isEmpty()) {
+            addPrefixCondition(builder, movie.<String>get("titleKey"), MovieDataModel.toTitleKey(filter.title()), conditions);
+        }
+        if (filter.releasedAfter() != null) {
+            conditions.add(builder.greaterThan(movie.<LocalDateTime>get("releaseDate"), filter.releasedAfter()));
+        }
+        if (filter.releasedBefore() != null) {
+            conditions.add(builder.lessThan(movie.<LocalDateTime>get("releaseDate"), filter.releasedBefore()));
+        }
+        if (filter.availableOnDvd() != null) {
+            conditions.add(builder.equal(movie.get("availableOnDvd"), filter.availableOnDvd()));
+        }
+
+        if (after != null) {
+            conditions.add(idDirection(sort).isAscending()
+                    ? builder.greaterThan(movie.<Integer>get("id"), after)
+                    : builder.lessThan(movie.<Integer>get("id"), after));
+        }
+        return conditions.toArray(Predicate[]::new);
+    }
+
+    private static List<Order> orders(CriteriaBuilder builder, Root<MovieDataModel> movie, Sort sort) {
+        List<Order> orders = new ArrayList<>();
+        for (Sort.Order order : sort) {
+            if (order.getProperty().equals("id")) {
+                continue;
+            }
+            Path<?> property = movie.get(order.getProperty().equals("title") ? "titleKey" : order.getProperty());
+            orders.add(order.isAscending() ? builder.asc(property) : builder.desc(property));
+        }
+        orders.add(idDirection(sort).isAscending() ? builder.asc(movie.get("id")) : builder.desc(movie.get("id")));
+        return orders;
+    }
+
+    private static Sort.Direction idDirection(Sort sort) {
+        return sort.getOrderFor("id") == null ? Sort.Direction.ASC : sort.getOrderFor("id").getDirection();
+    }
+
+    private static List<Selection<?>> selections(Root<MovieDataModel> movie, Set<String> columns) {
+        List<Selection<?>> selections = new ArrayList<>(columns.size());
+        for (String column : columns) {
+            selections.add(movie.get(column).alias(column));
+        }
+        return selections;
+    }
+
+    private static MovieProjection toProjection(Tuple tuple, Set<String> columns) {
+        return new MovieProjection(
+                columns.contains("id") ? tuple.get("id", Integer.class) : null,
+                columns.contains("title") ? tuple.get("title", String.class) : null,
+                columns.contains("description") ? tuple.get("description", String.class) : null,
+                columns.contains("releaseDate") ? tuple.get("releaseDate", LocalDateTime.class) : null,
+                columns.contains("availableOnDvd") ? tuple.get("availableOnDvd", Boolean.class) : null,
+                columns.contains(VERSION) ? tuple.get(VERSION, Long.class) : null);
+    }
+
+    /**
+     * Match values starting with the prefix, as a range from the prefix up to (but not including) the prefix with
+     * its last character incremented, which an index on the column can answer directly
+     */
+    private static void addPrefixCondition(CriteriaBuilder builder, Path<String> path, String prefix, List<Predicate> conditions) {
+        conditions.add(builder.greaterThanOrEqualTo(path, prefix));
+
+        char last = prefix.charAt(prefix.length() - 1);
+        if (last != Character.MAX_VALUE) {
+            conditions.add(builder.lessThan(path, prefix.substring(0, prefix.length() - 1) + (char) (last + 1)));
+        }
+    }
+}
@@ -0,0 +1,54 @@
+package dev.jonclarke.samplerestservice.dataaccess;
+
+import dev.jonclarke.samplerestservice.models.MovieDataModel;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Updates and deletes that also return the movie as it was before the change, read by the statement that makes the
+ * change, so the caller learns what it replaced (for MovieStatistics) without reading or locking the row first.
+ * Like the other bulk statements they bypass Hibernate's versioning, so the version and modification time are set here.
+ */
+public interface MovieWriteRepository {
+
+    /**
+     * Replace every field of a movie with a single statement
+     * @param version the version the movie must still be at for it to be updated, or null to update any version
+     * @param lastModified modification time to record
+     * @return the movie as it was, or empty if it does not exist or is not at the expected version
+     */
+    @Transactional
+    Optional<MovieDataModel> updateReturningPrevious(int id, String title, String description, LocalDateTime releaseDate,
+                                                     Boolean availableOnDvd, Long version, Instant lastModified);
+
+    /**
+     * Update only the fields of a movie that are not null, with a single statement
+     * @param version the version the movie must still be at for it to be updated, or null to update any version
+     * @param lastModified modification time to record
+     * @return the movie as it was, or empty if it does not exist or is not at the expected version
+     */
+    @Transactional
+    Optional<MovieDataModel> patchReturningPrevious(int id, String title, String description, LocalDateTime releaseDate,
+                                                    Boolean availableOnDvd, Long version, Instant lastModified);
+
+    /**
+     * Delete a movie with a single statement
+     * @param version the version the movie must still be at for it to be deleted, or null to delete any version
+     * @return the movie as it was, or empty if it does not exist or is not at the expected version
+     */
+    @Transactional
+    Optional<MovieDataModel> deleteReturningPrevious(int id, Long version);
+
+    /**
+     * Delete movies with a single statement
+     * @param ids ids to delete, which need not all exist
+     * @return the movies that were deleted, as they were
+     */
+    @Transactional
+    List<MovieDataModel> deleteAllReturningPrevious(Collection<Integer> ids);
+}
@@ -0,0 +1,145 @@
+package dev.jonclarke.samplerestservice.dataaccess;
+
+import dev.jonclarke.samplerestservice.models.MovieDataModel;
+import jakarta.persistence.EntityManager;
+import org.hibernate.dialect.PostgreSQLDialect;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.hibernate.query.NativeQuery;
+import org.hibernate.type.StandardBasicTypes;
+
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+
+/**
+ * Native SQL implementation of MovieWriteRepository, picked up by Spring Data as a fragment of MovieRepository.
+ * Each change and the read of the rows it replaced are one statement, so there is one round trip and the row is only
+ * locked by the change itself - a movie at another version is neither changed nor locked.  PostgreSQL returns the old
+ * rows from update ... from (the row selected for update) and from delete ... returning, and H2 from a select on the
+ * old table of the change.
+ * The statements are native queries, so Hibernate flushes before running them, and the persistence context is cleared
+ * afterwards (as with @Modifying(clearAutomatically = true)) so it holds no stale copy of a changed movie.
+ */
+class MovieWriteRepositoryImpl implements MovieWriteRepository {
+
+    private static final List<String> COLUMNS = List.of("id", "title", "description", "release_date", "available_on_dvd",
+            "version", "last_modified");
+    private static final String UPDATE = "title = :title, title_key = lower(:title), description = :description, "
+            + "release_date = :releaseDate, available_on_dvd = :availableOnDvd, "
+            + "version = m.version + 1, last_modified = :lastModified";
+    private static final String PATCH = "title = coalesce(:title, m.title), title_key = lower(coalesce(:title, m.title)), "
+            + "description = coalesce(:description, m.description), "
+            + "release_date = coalesce(:releaseDate, m.release_date), "
+            + "available_on_dvd = coalesce(:availableOnDvd, m.available_on_dvd), "
+            + "version = m.version + 1, last_modified = :lastModified";
+
+    private final EntityManager entityManager;
+    private final boolean postgres;
+
+    MovieWriteRepositoryImpl(EntityManager entityManager) {
+        this.entityManager = entityManager;
+        this.postgres = entityManager.getEntityManagerFactory().unwrap(SessionFactoryImplementor.class)
+                .getJdbcServices().getDialect() instanceof PostgreSQLDialect;
+    }
+
+    @Override
+    public Optional<MovieDataModel> updateReturningPrevious(int id, String title, String description,
+                                                            LocalDateTime releaseDate, Boolean availableOnDvd,
+                                                            Long version, Instant lastModified) {
+        return single(update(UPDATE, version), query -> setMovie(query, id, title, description, releaseDate,
+                availableOnDvd, version, lastModified));
+    }
+
+    @Override
+    public Optional<MovieDataModel> patchReturningPrevious(int id, String title, String description,
+                                                           LocalDateTime releaseDate, Boolean availableOnDvd,
+                                                           Long version, Instant lastModified) {
+        return single(update(PATCH, version), query -> setMovie(query, id, title, description, releaseDate,
+                availableOnDvd, version, lastModified));
+    }
+
+    @Override
+    public Optional<MovieDataModel> deleteReturningPrevious(int id, Long version) {
+        return single(delete(byId(version)), query -> setId(query, id, version));
+    }
+
+    @Override
+    public List<MovieDataModel> deleteAllReturningPrevious(Collection<Integer> ids) {
+        if (ids.isEmpty()) {
+            return List.of();
+        }
+        return execute(delete("id in (:ids)"), query -> query.setParameterList("ids", ids));
+    }
+
+    private String update(String assignments, Long version) {
+        String condition = byId(version);
+        if (postgres) {
+            return "update movie_data_model m set " + assignments + " from (select " + String.join(", ", COLUMNS)
+                    + " from movie_data_model where " + condition + " for update) old where m.id = old.id returning "
+                    + COLUMNS.stream().map(column -> "old." + column).collect(Collectors.joining(", "));
+        }
+        return "select " + String.join(", ", COLUMNS) + " from old table (update movie_data_model m set " + assignments
+                + " where " + condition + ")";
+    }
+
+    private String delete(String condition) {
+        if (postgres) {
+            return "delete from movie_data_model where " + condition + " returning " + String.join(", ", COLUMNS);
+        }
+        return "select " + String.join(", ", COLUMNS) + " from old table (delete from movie_data_model where "
+                + condition + ")";
+    }
+
+    private static String byId(Long version) {
+        return version == null ? "id = :id" : "id = :id and version = :version";
+    }
+
+    private static void setMovie(NativeQuery<Object[]> query, int id, String title, String description,
+                                 LocalDateTime releaseDate, Boolean availableOnDvd, Long version, Instant lastModified) {
+        setId(query, id, version);
+        // typed, so a null is sent as the column's type rather than one the database has to guess
+        query.setParameter("title", title, StandardBasicTypes.STRING);
+        query.setParameter("description", description, StandardBasicTypes.STRING);
+        query.setParameter("releaseDate", releaseDate, StandardBasicTypes.LOCAL_DATE_TIME);
+        query.setParameter("availableOnDvd", availableOnDvd, StandardBasicTypes.BOOLEAN);
+        query.setParameter("lastModified", lastModified, StandardBasicTypes.INSTANT);
+    }
+
+    private static void setId(NativeQuery<Object[]> query, int id, Long version) {
+        query.setParameter("id", id, StandardBasicTypes.INTEGER);
+        if (version != null) {
+            query.setParameter("version", version, StandardBasicTypes.LONG);
+        }
+    }
+
+    private Optional<MovieDataModel> single(String sql, Consumer<NativeQuery<Object[]>> parameters) {
+        return execute(sql, parameters).stream().findFirst();
+    }
+
+    /**
+     * Run a change and read back the rows it replaced
+     */
+    @SuppressWarnings("unchecked")
+    private List<MovieDataModel> execute(String sql, Consumer<NativeQuery<Object[]>> parameters) {
+        NativeQuery<Object[]> query = entityManager.createNativeQuery(sql).unwrap(NativeQuery.class)
+                .addScalar("id", StandardBasicTypes.INTEGER)
+                .addScalar("title", StandardBasicTypes.STRING)
+                .addScalar("description", StandardBasicTypes.STRING)
+                .addScalar("release_date", StandardBasicTypes.LOCAL_DATE_TIME)
+                .addScalar("available_on_dvd", StandardBasicTypes.BOOLEAN)
+                .addScalar("version", StandardBasicTypes.LONG)
+                .addScalar("last_modified", StandardBasicTypes.INSTANT);
+        parameters.accept(query);
+
+        List<MovieDataModel> previous = query.getResultList().stream()
+                .map(row -> new MovieDataModel((Integer) row[0], (String) row[1], (String) row[2],
+                        (LocalDateTime) row[3], (Boolean) row[4], (Long) row[5], (Instant) row[6]))
+                .toList();
+        entityManager.clear();
+        return previous;
+    }
+}
@@ -0,0 +1,150 @@
+package dev.jonclarke.samplerestservice.dataaccess;
+
+import dev.jonclarke.samplerestservice.models.MovieDataModel;
+import io.r2dbc.spi.Row;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.r2dbc.core.DatabaseClient;
+import org.springframework.r2dbc.core.DatabaseClient.GenericExecuteSpec;
+import org.springframework.stereotype.Repository;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.LocalDateTime;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Non-blocking (R2DBC) counterpart of MovieRepository, used when the application runs as a reactive web application.
+ * It works on the same table as the JPA entity.  New ids come from the same sequence, with each value of the
+ * sequence covering a block of ids in the same way as Hibernate's pooled optimizer, so ids never clash with
+ * those allocated by MovieRepository.
+ */
+@Repository
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.REACTIVE)
+public class ReactiveMovieRepository {
+
+    private static final String SELECT_MOVIES = "SELECT id, title, description, release_date, available_on_dvd, version, last_modified "
+            + "FROM movie_data_model";
+
+    /**
+     * Ids allocated from one value of the sequence - next is the next id to hand out, up to and including last
+     */
+    private record IdBlock(AtomicInteger next, int last) {
+    }
+
+    private final DatabaseClient databaseClient;
+    private final String nextSequenceValue;
+    private final AtomicReference<IdBlock> idBlock = new AtomicReference<>(new IdBlock(new AtomicInteger(1), 0));
+
+    public ReactiveMovieRepository(DatabaseClient databaseClient) {
+        this.databaseClient = databaseClient;
+        // PostgreSQL does not support the standard syntax for reading the next value of a sequence
+        String database = databaseClient.getConnectionFactory().getMetadata().getName();
+        this.nextSequenceValue = database.toLowerCase(Locale.ROOT).contains("postgres")
+                ? "SELECT nextval('" + MovieDataModel.ID_SEQUENCE + "')"
+                : "SELECT NEXT VALUE FOR " + MovieDataModel.ID_SEQUENCE;
+    }
+
+    /**
+     * Stream every movie ordered by id.  Rows are read from the database as the subscriber requests them.
+     */
+    public Flux<MovieDataModel> findAll() {
+        return databaseClient.sql(SELECT_MOVIES + " ORDER BY id")
+                .map((row, metadata) -> toMovie(row))
+                .all();
+    }
+
+    public Mono<MovieDataModel> findById(int id) {
+        return databaseClient.sql(SELECT_MOVIES + " WHERE id = :id")
+                .bind("id", id)
+                .map((row, metadata) -> toMovie(row))
+                .one();
+    }
+
+    /**
+     * Insert a new movie.  Any id supplied with the movie is ignored.
+     * @return the movie as it was saved, with its new id
+     */
+    public Mono<MovieDataModel> insert(MovieDataModel movie) {
+        return nextId().flatMap(id -> {
+            OffsetDateTime now = OffsetDateTime.now(ZoneOffset.UTC);
+            return bindMovie(databaseClient.sql("INSERT INTO movie_data_model "
+                            + "(id, title, title_key, description, release_date, available_on_dvd, version, last_modified) "
+                            + "VALUES (:id, :title, LOWER(:title), :description, :releaseDate, :availableOnDvd, 0, :lastModified)"), movie)
+                    .bind("id", id)
+                    .bind("lastModified", now)
+                    .fetch()
+                    .rowsUpdated()
+                    .thenReturn(new MovieDataModel(id, movie.getTitle(), movie.getDescription(),
+                            movie.getReleaseDate(), movie.isAvailableOnDvd(), 0, now.toInstant()));
+        });
+    }
+
+    /**
+     * Replace every field of a movie, moving it on to its next version in the same way as MovieRepository
+     * @return number of movies updated - 0 if the movie does not exist
+     */
+    public Mono<Long> updateById(int id, MovieDataModel movie) {
+        return bindMovie(databaseClient.sql("UPDATE movie_data_model SET title = :title, title_key = LOWER(:title), "
+                        + "description = :description, release_date = :releaseDate, available_on_dvd = :availableOnDvd, "
+                        + "version = version + 1, last_modified = :lastModified WHERE id = :id"), movie)
+                .bind("id", id)
+                .bind("lastModified", OffsetDateTime.now(ZoneOffset.UTC))
+                .fetch()
+                .rowsUpdated();
+    }
+
+    /**
+     * @return number of movies deleted - 0 if the movie does not exist
+     */
+    public Mono<Long> deleteById(int id) {
+        return databaseClient.sql("DELETE FROM movie_data_model WHERE id = :id")
+                .bind("id", id)
+                .fetch()
+                .rowsUpdated();
+    }
+
+    private Mono<Integer> nextId() {
+        return Mono.defer(() -> {
+            IdBlock block = idBlock.get();
+            int id = block.next().getAndIncrement();
+            if (id <= block.last()) {
+                return Mono.just(id);
+            }
+
+            // the block is used up, so take the next value of the sequence, which covers the ids up to and including it
+            return databaseClient.sql(nextSequenceValue)
+                    .map((row, metadata) -> row.get(0, Long.class))
+                    .one()
+                    .map(last -> {
+                        int first = Math.max(1, (int) (last - MovieDataModel.ID_ALLOCATION_SIZE + 1));
+                        IdBlock newBlock = new IdBlock(new AtomicInteger(first), last.intValue());
+                        int newId = newBlock.next().getAndIncrement();
+                        idBlock.set(newBlock);
+                        return newId;
+                    });
+        });
+    }
+
+    private static GenericExecuteSpec bindMovie(GenericExecuteSpec spec, MovieDataModel movie) {
+        spec = bindNullable(spec, "title", movie.getTitle(), String.class);
+        spec = bindNullable(spec, "description", movie.getDescription(), String.class);
+        spec = bindNullable(spec, "releaseDate", movie.getReleaseDate(), LocalDateTime.class);
+        return bindNullable(spec, "availableOnDvd", movie.isAvailableOnDvd(), Boolean.class);
+    }
+
+    private static <T> GenericExecuteSpec bindNullable(GenericExecuteSpec spec, String name, T value, Class<T> type) {
+        return value == null ? spec.bindNull(name, type) : spec.bind(name, value);
+    }
+
+    private static MovieDataModel toMovie(Row row) {
+        OffsetDateTime lastModified = row.get("last_modified", OffsetDateTime.class);
+        return new MovieDataModel(row.get("id", Integer.class), row.get("title", String.class),
+                row.get("description", String.class), row.get("release_date", LocalDateTime.class),
+                row.get("available_on_dvd", Boolean.class), row.get("version", Long.class),
+                lastModified == null ? null : lastModified.toInstant());
+    }
+}
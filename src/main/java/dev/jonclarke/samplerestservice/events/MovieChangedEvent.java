@@ -0,0 +1,17 @@
+package dev.jonclarke.samplerestservice.events;
+
+/**
+ * Published whenever a movie is created, updated or deleted.
+ * Listeners that keep derived state (caches etc.) in step with the database should use
+ * {@code @TransactionalEventListener} so they only react once the change has been committed.
+ * @param type the kind of change
+ * @param id id of the movie that changed
+ */
+public record MovieChangedEvent(ChangeType type, int id) {
+
+    public enum ChangeType {
+        CREATED,
+        UPDATED,
+        DELETED
+    }
+}
@@ -0,0 +1,8 @@
+package dev.jonclarke.samplerestservice.events;
+
+/**
+ * Published once changes recorded in the movie change feed have been committed
+ * @param latestSequence sequence number of the last change committed
+ */
+public record MovieChangesRecordedEvent(long latestSequence) {
+}
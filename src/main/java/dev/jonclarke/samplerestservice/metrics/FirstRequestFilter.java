@@ -0,0 +1,63 @@
+package dev.jonclarke.samplerestservice.metrics;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.TimeGauge;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Measures the time from the process starting to the first request being answered, which covers everything a
+ * newly scaled out instance does before it is useful - starting the JVM (or native image), Spring, Hibernate and the
+ * database - and compares startup modes.  The time is logged and published as the movies.startup.first.request gauge.
+ */
+public class FirstRequestFilter extends OncePerRequestFilter {
+
+    private static final Logger logger = LoggerFactory.getLogger(FirstRequestFilter.class);
+
+    private final AtomicBoolean answered = new AtomicBoolean();
+    private final AtomicLong timeToFirstRequest = new AtomicLong(-1);
+
+    public FirstRequestFilter(MeterRegistry meterRegistry) {
+        // not a number until the first request has been answered
+        TimeGauge.builder("movies.startup.first.request", timeToFirstRequest, TimeUnit.MILLISECONDS,
+                        time -> time.get() < 0 ? Double.NaN : time.get())
+                .description("Time from the process starting to the first request being answered")
+                .register(meterRegistry);
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain)
+            throws ServletException, IOException {
+        try {
+            filterChain.doFilter(request, response);
+        } finally {
+            if (!answered.get() && answered.compareAndSet(false, true)) {
+                Duration elapsed = Duration.between(processStart(), Instant.now());
+                timeToFirstRequest.set(elapsed.toMillis());
+                logger.info("First request answered {} ms after the process started", elapsed.toMillis());
+            }
+        }
+    }
+
+    /**
+     * The operating system's start time for the process, which a native image also reports, falling back to the
+     * JVM's own start time
+     */
+    private static Instant processStart() {
+        return ProcessHandle.current().info().startInstant()
+                .orElseGet(() -> Instant.ofEpochMilli(ManagementFactory.getRuntimeMXBean().getStartTime()));
+    }
+}
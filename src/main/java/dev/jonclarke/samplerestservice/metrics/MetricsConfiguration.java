@@ -0,0 +1,42 @@
+package dev.jonclarke.samplerestservice.metrics;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import org.hibernate.cfg.AvailableSettings;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.boot.autoconfigure.orm.jpa.HibernatePropertiesCustomizer;
+import org.springframework.boot.web.servlet.FilterRegistrationBean;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * Application specific metrics, on top of those Spring Boot publishes for requests, repositories, the connection
+ * pool and Hibernate.  Hibernate is given a statement inspector that counts the statements each request runs, and
+ * the time taken to answer the first request after starting is recorded to compare startup modes.
+ */
+@Configuration(proxyBeanMethods = false)
+public class MetricsConfiguration {
+
+    @Bean
+    StatementCounter statementCounter() {
+        return new StatementCounter();
+    }
+
+    @Bean
+    HibernatePropertiesCustomizer statementCounterCustomizer(StatementCounter statementCounter) {
+        // an inspector configured in the properties takes precedence
+        return properties -> properties.putIfAbsent(AvailableSettings.STATEMENT_INSPECTOR, statementCounter);
+    }
+
+    @Bean
+    @ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.SERVLET)
+    FilterRegistrationBean<StatementCountFilter> statementCountFilter(StatementCounter statementCounter,
+                                                                      MeterRegistry meterRegistry) {
+        return new FilterRegistrationBean<>(new StatementCountFilter(statementCounter, meterRegistry));
+    }
+
+    @Bean
+    @ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.SERVLET)
+    FilterRegistrationBean<FirstRequestFilter> firstRequestFilter(MeterRegistry meterRegistry) {
+        return new FilterRegistrationBean<>(new FirstRequestFilter(meterRegistry));
+    }
+}
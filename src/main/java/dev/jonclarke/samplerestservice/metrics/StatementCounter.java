@@ -0,0 +1,32 @@
+package dev.jonclarke.samplerestservice.metrics;
+
+import org.hibernate.resource.jdbc.spi.StatementInspector;
+
+/**
+ * Counts the SQL statements Hibernate prepares on the current thread, so the number run by each request can
+ * be recorded.  Counting is a thread local increment, so it is cheap enough to leave on.
+ */
+public class StatementCounter implements StatementInspector {
+
+    private static final ThreadLocal<int[]> COUNT = ThreadLocal.withInitial(() -> new int[1]);
+
+    @Override
+    public String inspect(String sql) {
+        COUNT.get()[0]++;
+        return sql;
+    }
+
+    /**
+     * Start counting again for the current thread
+     */
+    public void reset() {
+        COUNT.get()[0] = 0;
+    }
+
+    /**
+     * @return number of statements prepared on the current thread since the last reset
+     */
+    public int getCount() {
+        return COUNT.get()[0];
+    }
+}
@@ -0,0 +1,27 @@
+package dev.jonclarke.samplerestservice.models;
+
+/**
+ * Result of one item of a batch create, update or delete request
+ * @param index position of the item in the request, starting at 0
+ * @param id id of the movie, if known
+ * @param status outcome of the item
+ * @param message reason the item failed, null otherwise
+ */
+public record MovieBatchResult(int index, Integer id, Status status, String message) {
+
+    public enum Status {
+        CREATED,
+        UPDATED,
+        DELETED,
+        NOT_FOUND,
+        FAILED
+    }
+
+    public static MovieBatchResult of(int index, Integer id, Status status) {
+        return new MovieBatchResult(index, id, status, null);
+    }
+
+    public static MovieBatchResult failed(int index, Integer id, String message) {
+        return new MovieBatchResult(index, id, Status.FAILED, message);
+    }
+}
@@ -0,0 +1,26 @@
+package dev.jonclarke.samplerestservice.models;
+
+import java.time.Instant;
+import java.util.List;
+
+/**
+ * Counts of the movies in the catalogue, for dashboards
+ * @param total number of movies
+ * @param availableOnDvd number of movies available on DVD
+ * @param notAvailableOnDvd number of movies not available on DVD
+ * @param dvdAvailabilityUnknown number of movies with no DVD availability
+ * @param noReleaseDate number of movies with no release date
+ * @param releaseYears number of movies released in each year that has any, in year order
+ * @param reconciledAt when the counts were last rebuilt from the database, null until they first have been
+ */
+public record MovieCatalogueStats(long total, long availableOnDvd, long notAvailableOnDvd, long dvdAvailabilityUnknown,
+                                  long noReleaseDate, List<ReleaseYear> releaseYears, Instant reconciledAt) {
+
+    /**
+     * @param year release year
+     * @param movies number of movies released in the year
+     * @param availableOnDvd number of those movies that are available on DVD
+     */
+    public record ReleaseYear(int year, long movies, long availableOnDvd) {
+    }
+}
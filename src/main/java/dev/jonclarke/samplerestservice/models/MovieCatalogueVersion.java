@@ -0,0 +1,14 @@
+package dev.jonclarke.samplerestservice.models;
+
+import java.time.Instant;
+
+/**
+ * Summary of the whole movie table that changes whenever a movie is added, updated or deleted.
+ * Used to build the ETag of the movie list without reading every row.
+ * @param count number of movies
+ * @param idSum sum of the movie ids - changes when movies are added or deleted, even if the count does not
+ * @param versionSum sum of the movie versions - changes when any movie is updated
+ * @param lastModified most recent modification time of any movie, null if there are none
+ */
+public record MovieCatalogueVersion(Long count, Long idSum, Long versionSum, Instant lastModified) {
+}
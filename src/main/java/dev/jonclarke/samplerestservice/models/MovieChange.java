@@ -0,0 +1,55 @@
+package dev.jonclarke.samplerestservice.models;
+
+import com.fasterxml.jackson.dataformat.xml.annotation.JacksonXmlRootElement;
+import dev.jonclarke.samplerestservice.events.MovieChangedEvent.ChangeType;
+import jakarta.persistence.Entity;
+import jakarta.persistence.EnumType;
+import jakarta.persistence.Enumerated;
+import jakarta.persistence.Id;
+import jakarta.persistence.Index;
+import jakarta.persistence.Table;
+
+import java.time.Instant;
+
+/**
+ * One entry in the movie change feed.  Entries are numbered in the order their transactions committed, so a
+ * consumer that has seen every change up to a sequence number only needs the changes after it.
+ */
+@JacksonXmlRootElement(localName = "Change")
+@Entity
+@Table(indexes = @Index(name = "idx_movie_change_changed_at", columnList = "changedAt"))
+public class MovieChange {
+    @Id
+    private long sequence;
+    private int movieId;
+    @Enumerated(EnumType.STRING)
+    private ChangeType changeType;
+    private Instant changedAt;
+
+    public MovieChange() {
+
+    }
+
+    public MovieChange(final long sequence, final int movieId, final ChangeType changeType, final Instant changedAt) {
+        this.sequence = sequence;
+        this.movieId = movieId;
+        this.changeType = changeType;
+        this.changedAt = changedAt;
+    }
+
+    public long getSequence() {
+        return sequence;
+    }
+
+    public int getMovieId() {
+        return movieId;
+    }
+
+    public ChangeType getChangeType() {
+        return changeType;
+    }
+
+    public Instant getChangedAt() {
+        return changedAt;
+    }
+}
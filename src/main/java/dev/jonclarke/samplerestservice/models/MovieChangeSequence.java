@@ -0,0 +1,8 @@
+package dev.jonclarke.samplerestservice.models;
+
+/**
+ * Position in the movie change feed
+ * @param sequence sequence number of the latest change
+ */
+public record MovieChangeSequence(long sequence) {
+}
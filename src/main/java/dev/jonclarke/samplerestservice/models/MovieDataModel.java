@@ -1,13 +1,22 @@
 package dev.jonclarke.samplerestservice.models;
 
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.dataformat.xml.annotation.JacksonXmlRootElement;
 import jakarta.persistence.Entity;
 import jakarta.persistence.GeneratedValue;
 import jakarta.persistence.GenerationType;
 import jakarta.persistence.Id;
-
+import jakarta.persistence.Index;
+import jakarta.persistence.PrePersist;
+import jakarta.persistence.PreUpdate;
+import jakarta.persistence.SequenceGenerator;
+import jakarta.persistence.Table;
+import jakarta.persistence.Version;
+
+import java.time.Instant;
 import java.time.LocalDateTime;
+import java.util.Locale;
 import java.util.Objects;
 
 /**
@@ -16,15 +25,38 @@ import java.util.Objects;
 
 @JacksonXmlRootElement(localName="Movie")
 @Entity
+@Table(indexes = {
+        @Index(name = "idx_movie_release_date", columnList = "releaseDate"),
+        @Index(name = "idx_movie_dvd_release_date", columnList = "availableOnDvd, releaseDate"),
+        @Index(name = "idx_movie_title_key", columnList = "titleKey")
+})
 public class MovieDataModel {
+    /**
+     * Name of the database sequence movie ids are allocated from, and how many ids each value of it covers
+     */
+    public static final String ID_SEQUENCE = "movie_id_seq";
+    public static final int ID_ALLOCATION_SIZE = 50;
+
+    // a pooled sequence (rather than an identity column) lets Hibernate batch inserts
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = ID_SEQUENCE)
+    @SequenceGenerator(name = ID_SEQUENCE, sequenceName = ID_SEQUENCE, allocationSize = ID_ALLOCATION_SIZE)
     private int id;
     private String title;
     private String description;
     private LocalDateTime releaseDate;
     private Boolean availableOnDvd;
 
+    // the version and modification time are sent as the ETag and Last-Modified headers rather than in the body
+    @Version
+    @JsonIgnore
+    private long version;
+    @JsonIgnore
+    private Instant lastModified;
+    // lower case copy of the title, so case-insensitive title searches can use an index
+    @JsonIgnore
+    private String titleKey;
+
     public MovieDataModel() {
 
     }
@@ -36,6 +68,21 @@ public class MovieDataModel {
         this.availableOnDvd = availableOnDvd;
     }
 
+    public MovieDataModel(final int id, final String title, final String description, final LocalDateTime releaseDate, final Boolean availableOnDvd) {
+        this.id = id;
+        this.title = title;
+        this.description = description;
+        this.releaseDate = releaseDate;
+        this.availableOnDvd = availableOnDvd;
+    }
+
+    public MovieDataModel(final int id, final String title, final String description, final LocalDateTime releaseDate,
+                          final Boolean availableOnDvd, final long version, final Instant lastModified) {
+        this(id, title, description, releaseDate, availableOnDvd);
+        this.version = version;
+        this.lastModified = lastModified;
+    }
+
     public int getId() {
         return id;
     }
@@ -76,6 +123,42 @@ public class MovieDataModel {
         this.availableOnDvd = availableOnDvd;
     }
 
+    public long getVersion() {
+        return version;
+    }
+
+    public void setVersion(long version) {
+        this.version = version;
+    }
+
+    public Instant getLastModified() {
+        return lastModified;
+    }
+
+    public void setLastModified(Instant lastModified) {
+        this.lastModified = lastModified;
+    }
+
+    public String getTitleKey() {
+        return titleKey;
+    }
+
+    /**
+     * The value stored in the title key column for a title
+     * @param title movie title, may be null
+     * @return the title in lower case
+     */
+    public static String toTitleKey(String title) {
+        return title == null ? null : title.toLowerCase(Locale.ROOT);
+    }
+
+    @PrePersist
+    @PreUpdate
+    void touch() {
+        lastModified = Instant.now();
+        titleKey = toTitleKey(title);
+    }
+
     @Override
     public boolean equals(Object o) {
 
@@ -0,0 +1,14 @@
+package dev.jonclarke.samplerestservice.models;
+
+import java.util.List;
+
+/**
+ * Result of a bulk import.  Unlike a batch request there is no result per movie, as a file can hold millions.
+ * @param rows number of rows read from the file
+ * @param created number of movies added
+ * @param updated number of existing movies replaced by a movie with the same id
+ * @param failed number of rows that could not be read or written
+ * @param errors the reason each row failed, for the first failures only
+ */
+public record MovieImportResult(long rows, long created, long updated, long failed, List<String> errors) {
+}
@@ -0,0 +1,70 @@
+package dev.jonclarke.samplerestservice.models;
+
+import com.fasterxml.jackson.annotation.JsonFilter;
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.dataformat.xml.annotation.JacksonXmlRootElement;
+
+import java.time.LocalDateTime;
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * A movie read with only some of its columns, for sparse fieldset requests (e.g. /movies?fields=id,title).
+ * Projections are built from the selected columns, not loaded as entities, so they are never attached to the
+ * persistence context.  The fields that were not selected are null, and are left out when the projection is
+ * written through the FIELDS_FILTER property filter, which the MovieSerializer configures with the requested fields.
+ * The version is only read for the ETag of a page, and is never written.
+ */
+@JacksonXmlRootElement(localName = "Movie")
+@JsonFilter(MovieProjection.FIELDS_FILTER)
+public record MovieProjection(Integer id, String title, String description, LocalDateTime releaseDate,
+                              Boolean availableOnDvd, @JsonIgnore Long version) {
+
+    public static final String FIELDS_FILTER = "movieFields";
+
+    /**
+     * Names of the fields that can be requested, in the order they are written
+     */
+    public static final List<String> FIELDS = List.of("id", "title", "description", "releaseDate", "availableOnDvd");
+
+    /**
+     * Read a fields parameter, e.g. "id,title"
+     * @param fields comma separated field names
+     * @return the requested fields, in the order they are written
+     * @throws IllegalArgumentException if any of the names is not one of the FIELDS, or none are given
+     */
+    public static Set<String> parseFields(String fields) {
+        Set<String> requested = new LinkedHashSet<>();
+        Arrays.stream(fields.split(",")).map(String::trim).filter(field -> !field.isEmpty()).forEach(field -> {
+            if (!FIELDS.contains(field)) {
+                throw new IllegalArgumentException("Unknown field " + field + ", fields must be from " + FIELDS);
+            }
+            requested.add(field);
+        });
+        if (requested.isEmpty()) {
+            throw new IllegalArgumentException("At least one field must be given, from " + FIELDS);
+        }
+
+        Set<String> ordered = new LinkedHashSet<>(FIELDS);
+        ordered.retainAll(requested);
+        return ordered;
+    }
+
+    /**
+     * Project a movie that has already been read in full, as the page queries would - with the requested
+     * fields, the id and the version
+     * @param movie movie to copy from
+     * @param fields names of the fields to copy, from FIELDS
+     * @return the projection
+     */
+    public static MovieProjection of(MovieDataModel movie, Set<String> fields) {
+        return new MovieProjection(movie.getId(),
+                fields.contains("title") ? movie.getTitle() : null,
+                fields.contains("description") ? movie.getDescription() : null,
+                fields.contains("releaseDate") ? movie.getReleaseDate() : null,
+                fields.contains("availableOnDvd") ? movie.isAvailableOnDvd() : null,
+                movie.getVersion());
+    }
+}
@@ -0,0 +1,88 @@
+package dev.jonclarke.samplerestservice.ratelimiting;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Lock-free limit on the number of requests in progress at once.
+ * In adaptive mode the limit follows the latency of the requests (additive increase, multiplicative decrease): each
+ * request slower than the target cuts the limit by 10%, down to the minimum, and each request that completes on time
+ * while the limiter is at least half full raises it by one, up to the maximum.  So as the service slows down under
+ * load, fewer requests are let in at once, and the excess is refused straight away rather than queueing.
+ */
+public class ConcurrencyLimiter {
+
+    private static final double BACKOFF_RATIO = 0.9;
+
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final AtomicInteger limit;
+    private final int minLimit;
+    private final int maxLimit;
+    private final long targetLatencyNanos;
+
+    /**
+     * A fixed limit
+     * @param limit maximum number of requests in progress at once
+     */
+    public ConcurrencyLimiter(int limit) {
+        this(limit, limit, 0);
+    }
+
+    /**
+     * An adaptive limit, starting at the maximum
+     * @param minLimit lowest the limit is cut to
+     * @param maxLimit highest the limit is raised to
+     * @param targetLatencyNanos latency above which the limit is cut, or 0 for a fixed limit
+     */
+    public ConcurrencyLimiter(int minLimit, int maxLimit, long targetLatencyNanos) {
+        if (minLimit < 1 || maxLimit < minLimit) {
+            throw new IllegalArgumentException("The concurrency limits must be positive, with the minimum no more than the maximum");
+        }
+
+        this.limit = new AtomicInteger(maxLimit);
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+        this.targetLatencyNanos = targetLatencyNanos;
+    }
+
+    /**
+     * Start a request if the limit allows it.  Every successful call must be followed by a call to release.
+     * @return true if the request can go ahead
+     */
+    public boolean tryAcquire() {
+        while (true) {
+            int current = inFlight.get();
+            if (current >= limit.get()) {
+                return false;
+            }
+            if (inFlight.compareAndSet(current, current + 1)) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Finish a request started by tryAcquire
+     * @param latencyNanos how long the request took
+     */
+    public void release(long latencyNanos) {
+        int current = inFlight.getAndDecrement();
+        if (targetLatencyNanos <= 0) {
+            return;
+        }
+
+        if (latencyNanos > targetLatencyNanos) {
+            limit.getAndUpdate(value -> Math.max(minLimit, (int) (value * BACKOFF_RATIO)));
+        } else if (current * 2 >= limit.get()) {
+            // only raise the limit when it is what is holding requests back
+            limit.getAndUpdate(value -> Math.min(maxLimit, value + 1));
+        }
+    }
+
+    public int getLimit() {
+        return limit.get();
+    }
+
+    public int getInFlight() {
+        return inFlight.get();
+    }
+}
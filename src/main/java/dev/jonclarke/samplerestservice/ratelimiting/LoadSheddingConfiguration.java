@@ -0,0 +1,48 @@
+package dev.jonclarke.samplerestservice.ratelimiting;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.boot.web.servlet.FilterRegistrationBean;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.Ordered;
+
+import java.time.Duration;
+
+/**
+ * Rate and concurrency limits for the /movies endpoints, applied ahead of every other filter so that a refused
+ * request does no other work.
+ */
+@Configuration(proxyBeanMethods = false)
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.SERVLET)
+@ConditionalOnProperty(name = "movies.rate-limit.enabled", matchIfMissing = true)
+public class LoadSheddingConfiguration {
+
+    @Bean
+    FilterRegistrationBean<LoadSheddingFilter> loadSheddingFilter(
+            @Value("${movies.rate-limit.client.permits-per-second:50}") double clientPermitsPerSecond,
+            @Value("${movies.rate-limit.client.burst:100}") int clientBurst,
+            @Value("${movies.rate-limit.client.header:}") String clientHeader,
+            @Value("${movies.rate-limit.global.permits-per-second:2000}") double globalPermitsPerSecond,
+            @Value("${movies.rate-limit.global.burst:4000}") int globalBurst,
+            @Value("${movies.rate-limit.concurrency.min:4}") int minConcurrency,
+            @Value("${movies.rate-limit.concurrency.max:50}") int maxConcurrency,
+            @Value("${movies.rate-limit.concurrency.bulk:4}") int bulkConcurrency,
+            @Value("${movies.rate-limit.adaptive.enabled:true}") boolean adaptive,
+            @Value("${movies.rate-limit.adaptive.target-latency:500ms}") Duration targetLatency,
+            MeterRegistry meterRegistry) {
+        ConcurrencyLimiter concurrencyLimiter = adaptive
+                ? new ConcurrencyLimiter(minConcurrency, maxConcurrency, targetLatency.toNanos())
+                : new ConcurrencyLimiter(maxConcurrency);
+        LoadSheddingFilter filter = new LoadSheddingFilter(new TokenBucket(globalPermitsPerSecond, globalBurst),
+                concurrencyLimiter, new ConcurrencyLimiter(bulkConcurrency), clientPermitsPerSecond, clientBurst,
+                clientHeader, meterRegistry);
+
+        FilterRegistrationBean<LoadSheddingFilter> registration = new FilterRegistrationBean<>(filter);
+        registration.addUrlPatterns("/movies", "/movies/*");
+        registration.setOrder(Ordered.HIGHEST_PRECEDENCE);
+        return registration;
+    }
+}
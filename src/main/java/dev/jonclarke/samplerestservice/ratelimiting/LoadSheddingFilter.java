@@ -0,0 +1,216 @@
+package dev.jonclarke.samplerestservice.ratelimiting;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.servlet.AsyncEvent;
+import jakarta.servlet.AsyncListener;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.util.StringUtils;
+import org.springframework.web.filter.OncePerRequestFilter;
+import org.springframework.web.util.UrlPathHelper;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Refuses requests the service should not take on, before they reach the controllers and the database:
+ *  - a client that has used up its own token bucket gets 429 Too Many Requests
+ *  - once the global token bucket is used up, or the concurrency limit is reached, requests get 503 Service Unavailable
+ * Bulk requests - the whole catalogue streamed by GET /movies, export, import, batches, rebuilding the search
+ * index and the change feed, whether streamed or long-polled - take as long as the data they move or the changes
+ * they wait for, however lightly loaded the service is.  They have a fixed concurrency limit of their own, so their
+ * latency does not cut the adaptive limit of the other requests.
+ * A request that carries on asynchronously (a long-poll or an event stream) holds its permit until it completes,
+ * times out or fails, rather than until the request thread is given back.
+ * Both responses have a Retry-After header and no body, so refusing a request costs next to nothing.
+ * A request refused by the global or concurrency limit gives back the permits it took from the buckets, so it does
+ * not count against the client's rate.
+ * Clients are identified by their address.  A header naming the client is only used when one is configured, as it
+ * has to be set by something the service trusts (such as a proxy that authenticates clients) - a client choosing its
+ * own id could send a new one with every request and never run out.  Buckets are dropped once they have been idle
+ * for a minute.
+ * Refused requests are counted in movies.requests.shed, tagged with the reason.
+ */
+public class LoadSheddingFilter extends OncePerRequestFilter {
+
+    private static final Duration CLIENT_IDLE_TIME = Duration.ofMinutes(1);
+    private static final long MAX_CLIENTS = 100_000;
+    private static final List<String> BULK_PATHS = List.of("/movies/export", "/movies/import", "/movies/batch",
+            "/movies/search/rebuild");
+    // the parameters that make GET /movies return a page rather than the whole catalogue
+    private static final Set<String> PAGE_PARAMETERS = Set.of("limit", "after", "title", "releasedAfter",
+            "releasedBefore", "availableOnDvd", "sort");
+    private static final UrlPathHelper PATH_HELPER = new UrlPathHelper();
+
+    private final TokenBucket globalBucket;
+    private final ConcurrencyLimiter concurrencyLimiter;
+    private final ConcurrencyLimiter bulkLimiter;
+    private final Cache<String, TokenBucket> clientBuckets;
+    private final double clientPermitsPerSecond;
+    private final int clientBurst;
+    private final String clientHeader;
+    private final Counter clientRateShed;
+    private final Counter globalRateShed;
+    private final Counter concurrencyShed;
+    private final Counter bulkConcurrencyShed;
+
+    public LoadSheddingFilter(TokenBucket globalBucket, ConcurrencyLimiter concurrencyLimiter,
+                              ConcurrencyLimiter bulkLimiter, double clientPermitsPerSecond, int clientBurst,
+                              String clientHeader, MeterRegistry meterRegistry) {
+        this.globalBucket = globalBucket;
+        this.concurrencyLimiter = concurrencyLimiter;
+        this.bulkLimiter = bulkLimiter;
+        this.clientPermitsPerSecond = clientPermitsPerSecond;
+        this.clientBurst = clientBurst;
+        this.clientHeader = clientHeader;
+        this.clientBuckets = Caffeine.newBuilder()
+                .maximumSize(MAX_CLIENTS)
+                .expireAfterAccess(CLIENT_IDLE_TIME)
+                .build();
+
+        this.clientRateShed = shedCounter(meterRegistry, "client_rate");
+        this.globalRateShed = shedCounter(meterRegistry, "global_rate");
+        this.concurrencyShed = shedCounter(meterRegistry, "concurrency");
+        this.bulkConcurrencyShed = shedCounter(meterRegistry, "bulk_concurrency");
+        Gauge.builder("movies.requests.concurrency.limit", concurrencyLimiter, ConcurrencyLimiter::getLimit)
+                .description("Number of requests allowed to be in progress at once")
+                .register(meterRegistry);
+        Gauge.builder("movies.requests.in.flight", concurrencyLimiter, ConcurrencyLimiter::getInFlight)
+                .description("Number of requests in progress")
+                .register(meterRegistry);
+        Gauge.builder("movies.requests.bulk.in.flight", bulkLimiter, ConcurrencyLimiter::getInFlight)
+                .description("Number of bulk requests in progress")
+                .register(meterRegistry);
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain)
+            throws ServletException, IOException {
+        TokenBucket clientBucket = clientBuckets.get(clientId(request),
+                client -> new TokenBucket(clientPermitsPerSecond, clientBurst));
+        long wait = clientBucket.tryAcquire();
+        if (wait > 0) {
+            shed(response, HttpStatus.TOO_MANY_REQUESTS, wait, clientRateShed);
+            return;
+        }
+
+        wait = globalBucket.tryAcquire();
+        if (wait > 0) {
+            clientBucket.refund();
+            shed(response, HttpStatus.SERVICE_UNAVAILABLE, wait, globalRateShed);
+            return;
+        }
+
+        boolean bulk = isBulk(request);
+        ConcurrencyLimiter limiter = bulk ? bulkLimiter : concurrencyLimiter;
+        if (!limiter.tryAcquire()) {
+            clientBucket.refund();
+            globalBucket.refund();
+            shed(response, HttpStatus.SERVICE_UNAVAILABLE, TimeUnit.SECONDS.toNanos(1),
+                    bulk ? bulkConcurrencyShed : concurrencyShed);
+            return;
+        }
+
+        long started = System.nanoTime();
+        try {
+            filterChain.doFilter(request, response);
+        } finally {
+            if (request.isAsyncStarted()) {
+                request.getAsyncContext().addListener(new ReleaseWhenComplete(limiter, started));
+            } else {
+                limiter.release(System.nanoTime() - started);
+            }
+        }
+    }
+
+    /**
+     * @return whether the request is one whose time depends on how much data it moves rather than on the load
+     */
+    static boolean isBulk(HttpServletRequest request) {
+        String path = PATH_HELPER.getPathWithinApplication(request);
+        for (String bulkPath : BULK_PATHS) {
+            if (path.startsWith(bulkPath)) {
+                return true;
+            }
+        }
+
+        if (path.equals("/movies/changes")) {
+            return true;
+        }
+        return path.equals("/movies") && HttpMethod.GET.matches(request.getMethod())
+                && request.getParameterMap().keySet().stream().noneMatch(PAGE_PARAMETERS::contains);
+    }
+
+    private String clientId(HttpServletRequest request) {
+        String client = StringUtils.hasText(clientHeader) ? request.getHeader(clientHeader) : null;
+        return StringUtils.hasText(client) ? client : request.getRemoteAddr();
+    }
+
+    private static void shed(HttpServletResponse response, HttpStatus status, long waitNanos, Counter counter) {
+        counter.increment();
+        response.setStatus(status.value());
+        // Retry-After is in whole seconds, so round up
+        response.setHeader(HttpHeaders.RETRY_AFTER, Long.toString(Math.max(1, (waitNanos + 999_999_999) / 1_000_000_000)));
+    }
+
+    /**
+     * Releases the permit of an asynchronous request once it has finished, whichever way it finishes
+     */
+    private static final class ReleaseWhenComplete implements AsyncListener {
+        private final ConcurrencyLimiter limiter;
+        private final long started;
+        private final AtomicBoolean released = new AtomicBoolean();
+
+        ReleaseWhenComplete(ConcurrencyLimiter limiter, long started) {
+            this.limiter = limiter;
+            this.started = started;
+        }
+
+        @Override
+        public void onComplete(AsyncEvent event) {
+            release();
+        }
+
+        @Override
+        public void onTimeout(AsyncEvent event) {
+            release();
+        }
+
+        @Override
+        public void onError(AsyncEvent event) {
+            release();
+        }
+
+        @Override
+        public void onStartAsync(AsyncEvent event) {
+            // asynchronous mode was started again, which drops the listeners, so the request is still in progress
+            event.getAsyncContext().addListener(this);
+        }
+
+        private void release() {
+            if (released.compareAndSet(false, true)) {
+                limiter.release(System.nanoTime() - started);
+            }
+        }
+    }
+
+    private static Counter shedCounter(MeterRegistry meterRegistry, String reason) {
+        return Counter.builder("movies.requests.shed")
+                .description("Requests refused by the rate and concurrency limits")
+                .tag("reason", reason)
+                .register(meterRegistry);
+    }
+}
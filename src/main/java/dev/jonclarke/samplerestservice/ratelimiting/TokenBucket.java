@@ -0,0 +1,72 @@
+package dev.jonclarke.samplerestservice.ratelimiting;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+/**
+ * Lock-free token bucket rate limiter.
+ * Rather than counting tokens, the bucket keeps the time at which it will next be full (the generic cell rate
+ * algorithm, which allows exactly the same requests as a token bucket).  Each permit moves that time on by one
+ * refill interval, and a permit is refused if the bucket would then be full further ahead than the burst allows.
+ * Taking a permit is a single compare-and-set, so callers never block each other.
+ */
+public class TokenBucket {
+
+    private final LongSupplier clock;
+    private final long intervalNanos;
+    private final long toleranceNanos;
+    private final AtomicLong fullAt;
+
+    /**
+     * @param permitsPerSecond rate at which the bucket refills
+     * @param burst number of permits the bucket holds when full
+     */
+    public TokenBucket(double permitsPerSecond, int burst) {
+        this(permitsPerSecond, burst, System::nanoTime);
+    }
+
+    /**
+     * @param permitsPerSecond rate at which the bucket refills
+     * @param burst number of permits the bucket holds when full
+     * @param clock source of the current time in nanoseconds
+     */
+    TokenBucket(double permitsPerSecond, int burst, LongSupplier clock) {
+        if (permitsPerSecond <= 0 || burst < 1) {
+            throw new IllegalArgumentException("The rate and burst of a token bucket must be positive");
+        }
+
+        this.clock = clock;
+        this.intervalNanos = Math.max(1, Math.round(TimeUnit.SECONDS.toNanos(1) / permitsPerSecond));
+        this.toleranceNanos = intervalNanos * burst;
+        this.fullAt = new AtomicLong(clock.getAsLong());
+    }
+
+    /**
+     * Take a permit if one is available
+     * @return 0 if a permit was taken, otherwise the number of nanoseconds until one will be available
+     */
+    public long tryAcquire() {
+        while (true) {
+            long now = clock.getAsLong();
+            long current = fullAt.get();
+            // a bucket that has been full for a while is no fuller than full
+            long next = (current - now < 0 ? now : current) + intervalNanos;
+            long wait = next - now - toleranceNanos;
+            if (wait > 0) {
+                return wait;
+            }
+            if (fullAt.compareAndSet(current, next)) {
+                return 0;
+            }
+        }
+    }
+
+    /**
+     * Give back a permit taken by tryAcquire, for a request that was refused by a later check.
+     * A bucket that has refilled since is not made any fuller than full.
+     */
+    public void refund() {
+        fullAt.addAndGet(-intervalNanos);
+    }
+}
@@ -0,0 +1,204 @@
+package dev.jonclarke.samplerestservice.readmodel;
+
+import dev.jonclarke.samplerestservice.dataaccess.MovieChangeRepository;
+import dev.jonclarke.samplerestservice.dataaccess.MovieRepository;
+import dev.jonclarke.samplerestservice.events.MovieChangesRecordedEvent;
+import dev.jonclarke.samplerestservice.models.MovieChange;
+import dev.jonclarke.samplerestservice.models.MovieDataModel;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.BaseUnits;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Stream;
+
+/**
+ * The read side of the movie catalogue: a MovieSnapshot of every movie, held in memory so single movies and
+ * lists can be read without the database, Hibernate or any lock.
+ * <p>
+ * The first snapshot is built in the background when the application starts, from the position in the change
+ * feed (see MovieChangeLog) at that time.  After that the read model follows the change feed: once a change has
+ * been committed, the movies changed since the snapshot's position are re-read and merged into a new snapshot,
+ * which is swapped in with a single volatile write.  The feed is also polled, to pick up changes made by other
+ * instances.  Readers see a change a moment after it is committed rather than straight away.
+ * <p>
+ * Until the first snapshot has been built, getSnapshot returns null and reads go to the database as before.
+ */
+@Component
+@ConditionalOnProperty("movies.read-model.enabled")
+public class MovieReadModel {
+
+    private static final Logger log = LoggerFactory.getLogger(MovieReadModel.class);
+
+    private final MovieRepository repository;
+    private final MovieChangeRepository changeRepository;
+    private final TransactionTemplate readOnlyTransaction;
+    private final int batchSize;
+    private final ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "movie-read-model");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final AtomicBoolean updateScheduled = new AtomicBoolean();
+    private volatile MovieSnapshot snapshot;
+    // only written by the read model thread
+    private volatile long appliedSequence;
+    private volatile Instant updatedAt;
+
+    public MovieReadModel(MovieRepository repository, MovieChangeRepository changeRepository,
+                          PlatformTransactionManager transactionManager,
+                          @Value("${movies.read-model.batch-size:1000}") int batchSize,
+                          @Value("${movies.read-model.poll-interval:1s}") Duration pollInterval,
+                          MeterRegistry meterRegistry) {
+        this.repository = repository;
+        this.changeRepository = changeRepository;
+        this.readOnlyTransaction = new TransactionTemplate(transactionManager);
+        this.readOnlyTransaction.setReadOnly(true);
+        this.batchSize = batchSize;
+        Gauge.builder("movies.read.model.size", this, model -> model.getStats().size())
+                .description("Movies held by the in-memory read model")
+                .register(meterRegistry);
+        Gauge.builder("movies.read.model.footprint", this, model -> model.getStats().footprintBytes())
+                .description("Estimated heap used by the in-memory read model")
+                .baseUnit(BaseUnits.BYTES)
+                .register(meterRegistry);
+        executor.scheduleWithFixedDelay(this::applyChanges, pollInterval.toMillis(), pollInterval.toMillis(),
+                TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * @return the latest snapshot, or null if the first one has not been built yet
+     */
+    public MovieSnapshot getSnapshot() {
+        return snapshot;
+    }
+
+    public MovieReadModelStats getStats() {
+        MovieSnapshot current = snapshot;
+        return current == null ? new MovieReadModelStats(false, 0, 0, appliedSequence, null)
+                : new MovieReadModelStats(true, current.size(), current.getFootprintBytes(), appliedSequence, updatedAt);
+    }
+
+    /**
+     * Build a new snapshot of every movie in the background
+     * @return completes with the number of movies in the new snapshot once it is in use
+     */
+    public CompletableFuture<Integer> reload() {
+        return CompletableFuture.supplyAsync(this::load, executor);
+    }
+
+    /**
+     * Apply the changes recorded so far in the background
+     * @return completes once every change committed before the call can be read from the snapshot
+     */
+    public CompletableFuture<Void> refresh() {
+        return CompletableFuture.runAsync(this::applyChanges, executor);
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void onApplicationReady() {
+        reload().exceptionally(e -> {
+            log.error("Could not build the movie read model", e);
+            return null;
+        });
+    }
+
+    @EventListener
+    public void onChangesRecorded(MovieChangesRecordedEvent event) {
+        if (updateScheduled.compareAndSet(false, true)) {
+            executor.execute(this::applyChanges);
+        }
+    }
+
+    @PreDestroy
+    public void close() {
+        executor.shutdownNow();
+    }
+
+    private int load() {
+        long started = System.nanoTime();
+        readOnlyTransaction.executeWithoutResult(status -> {
+            // read the position first, so any change committed while the movies are read is applied again after
+            long sequence = changeRepository.findLatestSequence();
+            try (Stream<MovieDataModel> movies = repository.streamAllByOrderByIdAsc()) {
+                swap(MovieSnapshot.of(movies), sequence);
+            }
+        });
+        log.info("Loaded {} movies ({} bytes) into the read model in {} ms", snapshot.size(),
+                snapshot.getFootprintBytes(), (System.nanoTime() - started) / 1_000_000);
+
+        applyChanges();
+        return snapshot.size();
+    }
+
+    private void applyChanges() {
+        // changes recorded from here on schedule another run
+        updateScheduled.set(false);
+        if (snapshot == null) {
+            return;
+        }
+
+        try {
+            Long oldest = readOnlyTransaction.execute(status -> changeRepository.findOldestSequence());
+            if (oldest != null && oldest > appliedSequence + 1) {
+                log.warn("Changes after {} have expired from the change feed, so the read model is being reloaded",
+                        appliedSequence);
+                load();
+                return;
+            }
+
+            boolean more = true;
+            while (more) {
+                more = Boolean.TRUE.equals(readOnlyTransaction.execute(status -> applyNextChanges()));
+            }
+        } catch (RuntimeException e) {
+            log.error("Could not update the movie read model", e);
+        }
+    }
+
+    /**
+     * Re-read the movies changed in the next batch of changes and swap in a snapshot with them merged in
+     * @return whether there may be more changes to apply
+     */
+    private boolean applyNextChanges() {
+        List<MovieChange> changes = changeRepository.findBySequenceGreaterThanOrderBySequenceAsc(appliedSequence,
+                PageRequest.ofSize(batchSize));
+        if (changes.isEmpty()) {
+            return false;
+        }
+
+        // a movie that is no longer there has been deleted
+        SortedMap<Integer, MovieDataModel> changed = new TreeMap<>();
+        changes.forEach(change -> changed.put(change.getMovieId(), null));
+        repository.findAllById(changed.keySet()).forEach(movie -> changed.put(movie.getId(), movie));
+
+        swap(snapshot.withChanges(changed), changes.get(changes.size() - 1).getSequence());
+        return changes.size() == batchSize;
+    }
+
+    private void swap(MovieSnapshot updated, long sequence) {
+        snapshot = updated;
+        appliedSequence = sequence;
+        updatedAt = Instant.now();
+    }
+}
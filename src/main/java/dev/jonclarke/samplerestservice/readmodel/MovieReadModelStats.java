@@ -0,0 +1,14 @@
+package dev.jonclarke.samplerestservice.readmodel;
+
+import java.time.Instant;
+
+/**
+ * The state of the in-memory read model
+ * @param loaded whether the first snapshot has been built, and reads are being served from the read model
+ * @param size number of movies in the current snapshot
+ * @param footprintBytes estimated heap used by the current snapshot
+ * @param appliedSequence change feed sequence number of the latest change in the current snapshot
+ * @param updatedAt when the current snapshot was swapped in, null if none has been
+ */
+public record MovieReadModelStats(boolean loaded, int size, long footprintBytes, long appliedSequence, Instant updatedAt) {
+}
@@ -0,0 +1,738 @@
+package dev.jonclarke.samplerestservice.readmodel;
+
+import dev.jonclarke.samplerestservice.dataaccess.MovieFilter;
+import dev.jonclarke.samplerestservice.models.MovieCatalogueVersion;
+import dev.jonclarke.samplerestservice.models.MovieDataModel;
+import org.springframework.data.domain.Sort;
+
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+/**
+ * An immutable copy of the whole movie catalogue, held in memory for the read model.
+ * <p>
+ * Movies are packed column by column into arrays rather than held as entities, in chunks of consecutive movies in
+ * id order.  A movie is found by a binary search on the first id of each chunk and then on the ids of its chunk,
+ * all primitive ints, and times are held as microseconds since the epoch (the precision of the database columns).
+ * A second index holds the release date and id of every movie in release date order (ties in id order), chunked in
+ * the same way, so release date ranges and release date sorts need no scan of the whole catalogue.
+ * <p>
+ * A snapshot is never changed once built - changes produce a new snapshot, so readers need no locks.  The new
+ * snapshot copies only the chunks the changes fall in and shares every other chunk with the old one, so a batch of
+ * changes costs the chunks it touches plus the arrays of chunk references, rather than a copy of every movie.  Each
+ * chunk keeps its own totals for the catalogue version and the footprint, so those are added up over the chunks
+ * rather than the movies.  Movies are only built as MovieDataModels as they are read.
+ */
+public final class MovieSnapshot {
+
+    /**
+     * Most movies in a chunk.  Chunks other than the last hold at least half as many.  A batch of changes copies
+     * a chunk for each change plus an array entry for every chunk, so small chunks suit batches of changes spread
+     * over a large catalogue
+     */
+    static final int CHUNK_SIZE = 128;
+
+    private static final long NO_TIME = Long.MIN_VALUE;
+    private static final byte DVD_UNKNOWN = 0;
+    private static final byte DVD_NO = 1;
+    private static final byte DVD_YES = 2;
+
+    // rough sizes for the footprint estimate, assuming compressed references and Latin-1 strings
+    private static final int OBJECT_HEADER_BYTES = 16;
+    private static final int REFERENCE_BYTES = 4;
+    private static final int STRING_BYTES = 40;
+
+    private static final MovieSnapshot EMPTY = new MovieSnapshot(CHUNK_SIZE, new Chunk[0], new DateChunk[0]);
+
+    private final int chunkSize;
+    private final Chunk[] chunks;
+    private final int[] firstIds;
+    private final DateChunk[] dateChunks;
+    // position in the release date order of the first movie of each date chunk
+    private final int[] dateChunkStarts;
+    private final int size;
+    private final MovieCatalogueVersion catalogueVersion;
+    private final long footprintBytes;
+
+    private MovieSnapshot(int chunkSize, Chunk[] chunks, DateChunk[] dateChunks) {
+        this.chunkSize = chunkSize;
+        this.chunks = chunks;
+        this.dateChunks = dateChunks;
+        this.firstIds = new int[chunks.length];
+        this.dateChunkStarts = new int[dateChunks.length];
+
+        // the same summary the repository's aggregate query returns, so the ETags match whichever one is read
+        int count = 0;
+        long idSum = 0;
+        long versionSum = 0;
+        long latest = NO_TIME;
+        long bytes = 6L * OBJECT_HEADER_BYTES + (long) (chunks.length + dateChunks.length) * (REFERENCE_BYTES + Integer.BYTES);
+        for (int i = 0; i < chunks.length; i++) {
+            Chunk chunk = chunks[i];
+            firstIds[i] = chunk.ids[0];
+            count += chunk.ids.length;
+            idSum += chunk.idSum;
+            versionSum += chunk.versionSum;
+            latest = Math.max(latest, chunk.latest);
+            bytes += chunk.footprintBytes;
+        }
+        int position = 0;
+        for (int i = 0; i < dateChunks.length; i++) {
+            dateChunkStarts[i] = position;
+            position += dateChunks[i].ids.length;
+            bytes += dateChunks[i].footprintBytes();
+        }
+        this.size = count;
+        this.catalogueVersion = new MovieCatalogueVersion((long) count, idSum, versionSum, toInstant(latest));
+        this.footprintBytes = bytes;
+    }
+
+    /**
+     * @return a snapshot with no movies
+     */
+    public static MovieSnapshot empty() {
+        return EMPTY;
+    }
+
+    /**
+     * Build a snapshot from every movie
+     * @param movies the movies in ascending id order, as read by MovieRepository.streamAllByOrderByIdAsc
+     * @return the new snapshot
+     * @throws IllegalArgumentException if the movies are not in ascending id order
+     */
+    public static MovieSnapshot of(Stream<MovieDataModel> movies) {
+        return of(movies, CHUNK_SIZE);
+    }
+
+    /**
+     * Build a snapshot from every movie, with chunks of a given size
+     */
+    static MovieSnapshot of(Stream<MovieDataModel> movies, int chunkSize) {
+        Columns columns = new Columns(1024);
+        movies.forEachOrdered(columns::add);
+
+        ReleaseDates releaseDates = new ReleaseDates(columns.size);
+        IntStream.range(0, columns.size).boxed()
+                .sorted((position, other) -> compareReleaseDates(columns.releaseDates[position], columns.ids[position],
+                        columns.releaseDates[other], columns.ids[other]))
+                .forEachOrdered(position -> releaseDates.add(columns.releaseDates[position], columns.ids[position]));
+
+        List<Chunk> chunks = new ArrayList<>();
+        columns.moveTo(chunks, chunkSize);
+        List<DateChunk> dateChunks = new ArrayList<>();
+        releaseDates.moveTo(dateChunks, chunkSize);
+        return new MovieSnapshot(chunkSize, chunks.toArray(new Chunk[0]), dateChunks.toArray(new DateChunk[0]));
+    }
+
+    /**
+     * @return number of movies in the snapshot
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return estimated heap used by the snapshot, in bytes
+     */
+    public long getFootprintBytes() {
+        return footprintBytes;
+    }
+
+    /**
+     * @return the summary of the catalogue used for the ETag of the movie list
+     */
+    public MovieCatalogueVersion getCatalogueVersion() {
+        return catalogueVersion;
+    }
+
+    /**
+     * @param id movie id
+     * @return the movie, or null if there is no movie with the id
+     */
+    public MovieDataModel find(int id) {
+        if (chunks.length == 0) {
+            return null;
+        }
+        Chunk chunk = chunks[chunkOf(id)];
+        int row = Arrays.binarySearch(chunk.ids, id);
+        return row < 0 ? null : chunk.movie(row);
+    }
+
+    /**
+     * @return every movie in ascending id order
+     */
+    public Stream<MovieDataModel> all() {
+        return Arrays.stream(chunks).flatMap(chunk -> IntStream.range(0, chunk.ids.length).mapToObj(chunk::movie));
+    }
+
+    /**
+     * Whether page can sort in this order.  Only the id and release date are indexed, so a title sort has to be
+     * left to the database.
+     */
+    public static boolean canSort(Sort sort) {
+        return sort.stream().allMatch(order -> order.getProperty().equals("id") || order.getProperty().equals("releaseDate"));
+    }
+
+    /**
+     * Find a page of movies, in the same order as MovieRepository.search
+     * @param filter conditions the movies must match
+     * @param sort the order of the page, by id or release date (ties in ascending id order)
+     * @param after only movies after this id in the sort order, or null for the first page
+     * @param limit maximum number of movies to return
+     * @return the page
+     * @throws IllegalArgumentException if the sort is not one canSort allows
+     */
+    public List<MovieDataModel> page(MovieFilter filter, Sort sort, Integer after, int limit) {
+        if (!canSort(sort)) {
+            throw new IllegalArgumentException("Cannot sort the movie snapshot by " + sort);
+        }
+
+        Sort.Order idOrder = sort.getOrderFor("id");
+        boolean idAscending = idOrder == null || idOrder.isAscending();
+        RowPredicate matches = matcher(filter, after, idAscending);
+        List<MovieDataModel> page = new ArrayList<>(Math.min(limit, 256));
+        if (chunks.length == 0) {
+            return page;
+        }
+
+        Sort.Order dateOrder = sort.getOrderFor("releaseDate");
+        if (dateOrder == null) {
+            if (idAscending) {
+                int c = after == null ? 0 : chunkOf(after);
+                int row = after == null ? 0 : rowAfter(chunks[c], after);
+                while (c < chunks.length && page.size() < limit) {
+                    for (; row < chunks[c].ids.length && page.size() < limit; row++) {
+                        addIfMatches(page, matches, chunks[c], row);
+                    }
+                    c++;
+                    row = 0;
+                }
+            } else {
+                int c = after == null ? chunks.length - 1 : chunkOf(after);
+                int row = after == null ? chunks[c].ids.length - 1 : rowBefore(chunks[c], after);
+                while (c >= 0 && page.size() < limit) {
+                    for (; row >= 0 && page.size() < limit; row--) {
+                        addIfMatches(page, matches, chunks[c], row);
+                    }
+                    if (--c >= 0) {
+                        row = chunks[c].ids.length - 1;
+                    }
+                }
+            }
+            return page;
+        }
+
+        int from = filter.releasedAfter() == null
+                ? (filter.releasedBefore() == null ? 0 : firstReleasedAfter(NO_TIME))
+                : firstReleasedAfter(toMicros(filter.releasedAfter()));
+        int to = filter.releasedBefore() == null ? size
+                : firstReleasedAfter(toMicros(filter.releasedBefore()) - 1);
+        if (dateOrder.isAscending()) {
+            for (int i = from; i < to && page.size() < limit; i++) {
+                addMovieIfMatches(page, matches, idInReleaseDateOrder(i));
+            }
+            return page;
+        }
+
+        // newest first, but movies released at the same time stay in ascending id order
+        int end = to;
+        while (end > from && page.size() < limit) {
+            int start = end - 1;
+            long releaseDate = releaseDateInReleaseDateOrder(start);
+            while (start > from && releaseDateInReleaseDateOrder(start - 1) == releaseDate) {
+                start--;
+            }
+            for (int i = start; i < end && page.size() < limit; i++) {
+                addMovieIfMatches(page, matches, idInReleaseDateOrder(i));
+            }
+            end = start;
+        }
+        return page;
+    }
+
+    /**
+     * Apply changes to a copy of the snapshot.  Only the chunks the changed movies fall in are copied, with the
+     * changes merged in, and the rest are shared with this snapshot.  A movie whose release date has not changed
+     * keeps its place in the release date order, so its date chunk is not copied at all.
+     * @param changes the changed movies by id, with a null value for each movie that has been deleted
+     * @return the new snapshot
+     */
+    public MovieSnapshot withChanges(SortedMap<Integer, MovieDataModel> changes) {
+        if (changes.isEmpty()) {
+            return this;
+        }
+
+        List<DateChange> dateChanges = new ArrayList<>();
+        for (Map.Entry<Integer, MovieDataModel> change : changes.entrySet()) {
+            int id = change.getKey();
+            Chunk chunk = chunks.length == 0 ? null : chunks[chunkOf(id)];
+            int row = chunk == null ? -1 : Arrays.binarySearch(chunk.ids, id);
+            long releaseDate = change.getValue() == null ? NO_TIME : toMicros(change.getValue().getReleaseDate());
+            if (row >= 0 && change.getValue() != null && chunk.releaseDates[row] == releaseDate) {
+                continue;
+            }
+            if (row >= 0) {
+                dateChanges.add(new DateChange(chunk.releaseDates[row], id, false));
+            }
+            if (change.getValue() != null) {
+                dateChanges.add(new DateChange(releaseDate, id, true));
+            }
+        }
+        dateChanges.sort(null);
+
+        return new MovieSnapshot(chunkSize, mergeChunks(changes), mergeDateChunks(dateChanges));
+    }
+
+    /**
+     * Copy the chunks the changes fall in with the changes merged into them, and share the rest.  A chunk that
+     * ends up with fewer than half the movies of a full one is merged with the next, and one that ends up with
+     * more than a full one is split.
+     */
+    private Chunk[] mergeChunks(SortedMap<Integer, MovieDataModel> changes) {
+        List<Chunk> merged = new ArrayList<>(chunks.length + changes.size() / chunkSize + 1);
+        Columns pending = new Columns(2 * chunkSize);
+        Iterator<Map.Entry<Integer, MovieDataModel>> remaining = changes.entrySet().iterator();
+        Map.Entry<Integer, MovieDataModel> change = remaining.next();
+
+        for (int c = 0; c < chunks.length; c++) {
+            Chunk chunk = chunks[c];
+            // a chunk holds the ids from its first up to the first of the next chunk.  The first and last chunks
+            // also take any new ids before or after them
+            int end = c + 1 < chunks.length ? firstIds[c + 1] : Integer.MAX_VALUE;
+            boolean last = c + 1 == chunks.length;
+            if (pending.size == 0 && (change == null || !last && change.getKey() >= end)) {
+                merged.add(chunk);
+                continue;
+            }
+
+            for (int row = 0; row < chunk.ids.length; row++) {
+                while (change != null && change.getKey() < chunk.ids[row]) {
+                    pending.add(change.getValue());
+                    change = remaining.hasNext() ? remaining.next() : null;
+                }
+                if (change != null && change.getKey() == chunk.ids[row]) {
+                    pending.add(change.getValue());
+                    change = remaining.hasNext() ? remaining.next() : null;
+                } else {
+                    pending.copy(chunk, row);
+                }
+            }
+            while (change != null && (last || change.getKey() < end)) {
+                pending.add(change.getValue());
+                change = remaining.hasNext() ? remaining.next() : null;
+            }
+            if (pending.size >= Math.max(1, chunkSize / 2)) {
+                pending.moveTo(merged, chunkSize);
+            }
+        }
+
+        // no chunks at all, so every change is new
+        while (change != null) {
+            pending.add(change.getValue());
+            change = remaining.hasNext() ? remaining.next() : null;
+        }
+        pending.moveTo(merged, chunkSize);
+        return merged.toArray(new Chunk[0]);
+    }
+
+    /**
+     * The same as mergeChunks, for the release date order
+     */
+    private DateChunk[] mergeDateChunks(List<DateChange> changes) {
+        if (changes.isEmpty()) {
+            return dateChunks;
+        }
+
+        List<DateChunk> merged = new ArrayList<>(dateChunks.length + changes.size() / chunkSize + 1);
+        ReleaseDates pending = new ReleaseDates(2 * chunkSize);
+        int next = 0;
+
+        for (int c = 0; c < dateChunks.length; c++) {
+            DateChunk chunk = dateChunks[c];
+            DateChunk following = c + 1 < dateChunks.length ? dateChunks[c + 1] : null;
+            if (pending.size == 0 && (next == changes.size()
+                    || following != null && changes.get(next).compareTo(following, 0) >= 0)) {
+                merged.add(chunk);
+                continue;
+            }
+
+            for (int row = 0; row < chunk.ids.length; row++) {
+                while (next < changes.size() && changes.get(next).compareTo(chunk, row) < 0) {
+                    pending.add(changes.get(next++));
+                }
+                if (next < changes.size() && changes.get(next).compareTo(chunk, row) == 0) {
+                    // the movie's old place, which is removed
+                    next++;
+                } else {
+                    pending.add(chunk.releaseDates[row], chunk.ids[row]);
+                }
+            }
+            while (next < changes.size() && (following == null || changes.get(next).compareTo(following, 0) < 0)) {
+                pending.add(changes.get(next++));
+            }
+            if (pending.size >= Math.max(1, chunkSize / 2)) {
+                pending.moveTo(merged, chunkSize);
+            }
+        }
+
+        while (next < changes.size()) {
+            pending.add(changes.get(next++));
+        }
+        pending.moveTo(merged, chunkSize);
+        return merged.toArray(new DateChunk[0]);
+    }
+
+    private void addIfMatches(List<MovieDataModel> page, RowPredicate matches, Chunk chunk, int row) {
+        if (matches.test(chunk, row)) {
+            page.add(chunk.movie(row));
+        }
+    }
+
+    private void addMovieIfMatches(List<MovieDataModel> page, RowPredicate matches, int id) {
+        Chunk chunk = chunks[chunkOf(id)];
+        addIfMatches(page, matches, chunk, Arrays.binarySearch(chunk.ids, id));
+    }
+
+    /**
+     * The chunk an id belongs in: the last chunk starting at or before it, or the first chunk
+     */
+    private int chunkOf(int id) {
+        int index = Arrays.binarySearch(firstIds, id);
+        return index >= 0 ? index : Math.max(0, -index - 2);
+    }
+
+    /**
+     * Row of the first movie of a chunk after an id, which is the end of the chunk if there is none
+     */
+    private static int rowAfter(Chunk chunk, int id) {
+        int row = Arrays.binarySearch(chunk.ids, id);
+        return row >= 0 ? row + 1 : -row - 1;
+    }
+
+    /**
+     * Row of the last movie of a chunk before an id, which is -1 if there is none
+     */
+    private static int rowBefore(Chunk chunk, int id) {
+        int row = Arrays.binarySearch(chunk.ids, id);
+        return row >= 0 ? row - 1 : -row - 2;
+    }
+
+    private int idInReleaseDateOrder(int position) {
+        int c = dateChunkOf(position);
+        return dateChunks[c].ids[position - dateChunkStarts[c]];
+    }
+
+    private long releaseDateInReleaseDateOrder(int position) {
+        int c = dateChunkOf(position);
+        return dateChunks[c].releaseDates[position - dateChunkStarts[c]];
+    }
+
+    private int dateChunkOf(int position) {
+        int index = Arrays.binarySearch(dateChunkStarts, position);
+        return index >= 0 ? index : -index - 2;
+    }
+
+    /**
+     * Position in the release date order of the first movie released after a time
+     */
+    private int firstReleasedAfter(long micros) {
+        int low = 0;
+        int high = size;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (releaseDateInReleaseDateOrder(middle) <= micros) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    private RowPredicate matcher(MovieFilter filter, Integer after, boolean idAscending) {
+        RowPredicate matches = (chunk, row) -> true;
+        if (after != null) {
+            matches = matches.and((chunk, row) -> idAscending ? chunk.ids[row] > after : chunk.ids[row] < after);
+        }
+        if (filter.title() != null && !filter.title().isEmpty()) {
+            String prefix = MovieDataModel.toTitleKey(filter.title());
+            matches = matches.and((chunk, row) -> chunk.titles[row] != null
+                    && MovieDataModel.toTitleKey(chunk.titles[row]).startsWith(prefix));
+        }
+        // a movie with no release date matches neither date condition
+        if (filter.releasedAfter() != null) {
+            long releasedAfter = toMicros(filter.releasedAfter());
+            matches = matches.and((chunk, row) -> chunk.releaseDates[row] != NO_TIME && chunk.releaseDates[row] > releasedAfter);
+        }
+        if (filter.releasedBefore() != null) {
+            long releasedBefore = toMicros(filter.releasedBefore());
+            matches = matches.and((chunk, row) -> chunk.releaseDates[row] != NO_TIME && chunk.releaseDates[row] < releasedBefore);
+        }
+        if (filter.availableOnDvd() != null) {
+            byte dvd = toByte(filter.availableOnDvd());
+            matches = matches.and((chunk, row) -> chunk.availableOnDvd[row] == dvd);
+        }
+        return matches;
+    }
+
+    /**
+     * Order by release date, then by id
+     */
+    private static int compareReleaseDates(long releaseDate, int id, long otherReleaseDate, int otherId) {
+        int compared = Long.compare(releaseDate, otherReleaseDate);
+        return compared != 0 ? compared : Integer.compare(id, otherId);
+    }
+
+    private static long stringBytes(String value) {
+        return value == null ? 0 : STRING_BYTES + value.length();
+    }
+
+    private static long toMicros(LocalDateTime time) {
+        return time == null ? NO_TIME : time.toEpochSecond(ZoneOffset.UTC) * 1_000_000 + time.getNano() / 1_000;
+    }
+
+    private static long toMicros(Instant time) {
+        return time == null ? NO_TIME : time.getEpochSecond() * 1_000_000 + time.getNano() / 1_000;
+    }
+
+    private static LocalDateTime toLocalDateTime(long micros) {
+        return micros == NO_TIME ? null : LocalDateTime.ofEpochSecond(Math.floorDiv(micros, 1_000_000),
+                (int) Math.floorMod(micros, 1_000_000) * 1_000, ZoneOffset.UTC);
+    }
+
+    private static Instant toInstant(long micros) {
+        return micros == NO_TIME ? null
+                : Instant.ofEpochSecond(Math.floorDiv(micros, 1_000_000), Math.floorMod(micros, 1_000_000) * 1_000);
+    }
+
+    private static byte toByte(Boolean value) {
+        return value == null ? DVD_UNKNOWN : value ? DVD_YES : DVD_NO;
+    }
+
+    private static Boolean toBoolean(byte value) {
+        return value == DVD_UNKNOWN ? null : value == DVD_YES;
+    }
+
+    /**
+     * Tests the movie in a row of a chunk
+     */
+    @FunctionalInterface
+    private interface RowPredicate {
+        boolean test(Chunk chunk, int row);
+
+        default RowPredicate and(RowPredicate other) {
+            return (chunk, row) -> test(chunk, row) && other.test(chunk, row);
+        }
+    }
+
+    /**
+     * Consecutive movies in id order, with their share of the catalogue version and footprint
+     */
+    private static final class Chunk {
+        private final int[] ids;
+        private final String[] titles;
+        private final String[] descriptions;
+        private final long[] releaseDates;
+        private final byte[] availableOnDvd;
+        private final long[] versions;
+        private final long[] lastModified;
+        private final long idSum;
+        private final long versionSum;
+        private final long latest;
+        private final long footprintBytes;
+
+        Chunk(Columns columns, int from, int to) {
+            ids = Arrays.copyOfRange(columns.ids, from, to);
+            titles = Arrays.copyOfRange(columns.titles, from, to);
+            descriptions = Arrays.copyOfRange(columns.descriptions, from, to);
+            releaseDates = Arrays.copyOfRange(columns.releaseDates, from, to);
+            availableOnDvd = Arrays.copyOfRange(columns.availableOnDvd, from, to);
+            versions = Arrays.copyOfRange(columns.versions, from, to);
+            lastModified = Arrays.copyOfRange(columns.lastModified, from, to);
+
+            long idTotal = 0;
+            long versionTotal = 0;
+            long latestModified = NO_TIME;
+            long stringBytes = 0;
+            for (int i = 0; i < ids.length; i++) {
+                idTotal += ids[i];
+                versionTotal += versions[i];
+                latestModified = Math.max(latestModified, lastModified[i]);
+                stringBytes += stringBytes(titles[i]) + stringBytes(descriptions[i]);
+            }
+            idSum = idTotal;
+            versionSum = versionTotal;
+            latest = latestModified;
+            footprintBytes = stringBytes + 8L * OBJECT_HEADER_BYTES + 4L * Long.BYTES
+                    + (long) ids.length * (Integer.BYTES + Long.BYTES * 3 + Byte.BYTES + REFERENCE_BYTES * 2);
+        }
+
+        MovieDataModel movie(int row) {
+            return new MovieDataModel(ids[row], titles[row], descriptions[row], toLocalDateTime(releaseDates[row]),
+                    toBoolean(availableOnDvd[row]), versions[row], toInstant(lastModified[row]));
+        }
+    }
+
+    /**
+     * Consecutive movies in release date order, by release date and id
+     */
+    private static final class DateChunk {
+        private final long[] releaseDates;
+        private final int[] ids;
+
+        DateChunk(ReleaseDates from, int start, int end) {
+            releaseDates = Arrays.copyOfRange(from.releaseDates, start, end);
+            ids = Arrays.copyOfRange(from.ids, start, end);
+        }
+
+        long footprintBytes() {
+            return 3L * OBJECT_HEADER_BYTES + (long) ids.length * (Long.BYTES + Integer.BYTES);
+        }
+    }
+
+    /**
+     * A movie's old place in the release date order to remove, or its new place to add
+     */
+    private record DateChange(long releaseDate, int id, boolean added) implements Comparable<DateChange> {
+        int compareTo(DateChunk chunk, int row) {
+            return compareReleaseDates(releaseDate, id, chunk.releaseDates[row], chunk.ids[row]);
+        }
+
+        @Override
+        public int compareTo(DateChange other) {
+            return compareReleaseDates(releaseDate, id, other.releaseDate, other.id);
+        }
+    }
+
+    /**
+     * Collects the columns of new chunks, one movie at a time in ascending id order
+     */
+    private static final class Columns {
+        private int size;
+        private int[] ids;
+        private String[] titles;
+        private String[] descriptions;
+        private long[] releaseDates;
+        private byte[] availableOnDvd;
+        private long[] versions;
+        private long[] lastModified;
+
+        Columns(int capacity) {
+            ids = new int[capacity];
+            titles = new String[capacity];
+            descriptions = new String[capacity];
+            releaseDates = new long[capacity];
+            availableOnDvd = new byte[capacity];
+            versions = new long[capacity];
+            lastModified = new long[capacity];
+        }
+
+        /**
+         * Add a movie, or nothing if it has been deleted
+         */
+        void add(MovieDataModel movie) {
+            if (movie == null) {
+                return;
+            }
+            append(movie.getId());
+            titles[size] = movie.getTitle();
+            descriptions[size] = movie.getDescription();
+            releaseDates[size] = toMicros(movie.getReleaseDate());
+            availableOnDvd[size] = toByte(movie.isAvailableOnDvd());
+            versions[size] = movie.getVersion();
+            lastModified[size] = toMicros(movie.getLastModified());
+            size++;
+        }
+
+        void copy(Chunk from, int row) {
+            append(from.ids[row]);
+            titles[size] = from.titles[row];
+            descriptions[size] = from.descriptions[row];
+            releaseDates[size] = from.releaseDates[row];
+            availableOnDvd[size] = from.availableOnDvd[row];
+            versions[size] = from.versions[row];
+            lastModified[size] = from.lastModified[row];
+            size++;
+        }
+
+        /**
+         * Split the movies collected so far into chunks of about the same size, none larger than chunkSize, and
+         * start again with none
+         */
+        void moveTo(List<Chunk> chunks, int chunkSize) {
+            int count = (size + chunkSize - 1) / chunkSize;
+            for (int i = 0; i < count; i++) {
+                chunks.add(new Chunk(this, (int) ((long) size * i / count), (int) ((long) size * (i + 1) / count)));
+            }
+            size = 0;
+        }
+
+        private void append(int id) {
+            if (size > 0 && id <= ids[size - 1]) {
+                throw new IllegalArgumentException("Movies must be added in ascending id order, but " + id
+                        + " came after " + ids[size - 1]);
+            }
+            if (size == ids.length) {
+                int capacity = Math.max(16, size + (size >> 1));
+                ids = Arrays.copyOf(ids, capacity);
+                titles = Arrays.copyOf(titles, capacity);
+                descriptions = Arrays.copyOf(descriptions, capacity);
+                releaseDates = Arrays.copyOf(releaseDates, capacity);
+                availableOnDvd = Arrays.copyOf(availableOnDvd, capacity);
+                versions = Arrays.copyOf(versions, capacity);
+                lastModified = Arrays.copyOf(lastModified, capacity);
+            }
+            ids[size] = id;
+        }
+    }
+
+    /**
+     * Collects new date chunks, one movie at a time in release date order
+     */
+    private static final class ReleaseDates {
+        private int size;
+        private long[] releaseDates;
+        private int[] ids;
+
+        ReleaseDates(int capacity) {
+            releaseDates = new long[Math.max(16, capacity)];
+            ids = new int[Math.max(16, capacity)];
+        }
+
+        void add(DateChange change) {
+            if (change.added()) {
+                add(change.releaseDate(), change.id());
+            }
+        }
+
+        void add(long releaseDate, int id) {
+            if (size == ids.length) {
+                releaseDates = Arrays.copyOf(releaseDates, size + (size >> 1));
+                ids = Arrays.copyOf(ids, size + (size >> 1));
+            }
+            releaseDates[size] = releaseDate;
+            ids[size] = id;
+            size++;
+        }
+
+        /**
+         * The same as Columns.moveTo
+         */
+        void moveTo(List<DateChunk> chunks, int chunkSize) {
+            int count = (size + chunkSize - 1) / chunkSize;
+            for (int i = 0; i < count; i++) {
+                chunks.add(new DateChunk(this, (int) ((long) size * i / count), (int) ((long) size * (i + 1) / count)));
+            }
+            size = 0;
+        }
+    }
+}
@@ -0,0 +1,283 @@
+package dev.jonclarke.samplerestservice.search;
+
+import dev.jonclarke.samplerestservice.dataaccess.MovieRepository;
+import dev.jonclarke.samplerestservice.events.MovieChangedEvent;
+import dev.jonclarke.samplerestservice.models.MovieDataModel;
+import jakarta.annotation.PreDestroy;
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.analysis.standard.StandardAnalyzer;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.document.StringField;
+import org.apache.lucene.document.TextField;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.index.StoredFields;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.queryparser.classic.MultiFieldQueryParser;
+import org.apache.lucene.queryparser.classic.ParseException;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.ScoreDoc;
+import org.apache.lucene.search.SearcherManager;
+import org.apache.lucene.store.AlreadyClosedException;
+import org.apache.lucene.store.ByteBuffersDirectory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * In-memory Lucene index of movie titles and descriptions, for ranked full-text search.
+ * <p>
+ * The index is built in the background when the application starts, and after that it is kept up to date from
+ * the changes made to movies: the id of each changed movie is queued once the change has been committed, and a
+ * background thread re-reads the queued movies in chunks and updates (or removes) their documents.  Searches
+ * see the changes as soon as they have been applied, without a full rebuild.
+ * <p>
+ * A rebuild reads every movie into a new index and swaps it in once it is complete, so searches carry on against
+ * the old index while it runs.  Rebuilds and updates run on the same thread, so changes made during a rebuild are
+ * applied to the new index afterwards.
+ */
+@Component
+public class MovieSearchIndex {
+
+    private static final Logger log = LoggerFactory.getLogger(MovieSearchIndex.class);
+
+    private static final String ID_FIELD = "id";
+    private static final String TITLE_FIELD = "title";
+    private static final String DESCRIPTION_FIELD = "description";
+    // a match in the title counts for more than a match in the description
+    private static final Map<String, Float> FIELD_BOOSTS = Map.of(TITLE_FIELD, 2.0f, DESCRIPTION_FIELD, 1.0f);
+
+    /**
+     * A Lucene index, and the searcher manager that opens readers on its latest changes
+     */
+    private record Index(IndexWriter writer, SearcherManager searcherManager) implements Closeable {
+        @Override
+        public void close() throws IOException {
+            searcherManager.close();
+            writer.close();
+        }
+    }
+
+    private final MovieRepository repository;
+    private final TransactionTemplate readOnlyTransaction;
+    private final int chunkSize;
+    private final Analyzer analyzer = new StandardAnalyzer();
+    private final ExecutorService executor = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "movie-search-index");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final Set<Integer> pendingIds = ConcurrentHashMap.newKeySet();
+    private final AtomicBoolean updateScheduled = new AtomicBoolean();
+    private volatile Index index;
+
+    public MovieSearchIndex(MovieRepository repository, PlatformTransactionManager transactionManager,
+                            @Value("${movies.search.chunk-size:500}") int chunkSize) throws IOException {
+        this.repository = repository;
+        this.readOnlyTransaction = new TransactionTemplate(transactionManager);
+        this.readOnlyTransaction.setReadOnly(true);
+        this.chunkSize = chunkSize;
+        this.index = createIndex();
+    }
+
+    /**
+     * Find the movies that best match the query, best match first.  The query uses the Lucene query syntax,
+     * so plain words match either field, and it also supports phrases ("..."), title:word, prefixes (wor*) and so on.
+     * @param text query text
+     * @param limit maximum number of ids to return
+     * @return ids of the matching movies in rank order
+     * @throws ParseException if the query is not valid
+     */
+    public List<Integer> search(String text, int limit) throws ParseException {
+        // the parser is not thread safe, but it is cheap to create
+        Query query = new MultiFieldQueryParser(new String[] { TITLE_FIELD, DESCRIPTION_FIELD }, analyzer, FIELD_BOOSTS)
+                .parse(text);
+
+        while (true) {
+            Index current = index;
+            try {
+                return search(current.searcherManager(), query, limit);
+            } catch (AlreadyClosedException e) {
+                // a rebuild swapped the index out underneath the search, so try again on the new one
+                if (current == index) {
+                    throw e;
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+
+    /**
+     * Rebuild the whole index from the database in the background
+     * @return completes with the number of movies indexed once the new index is in use
+     */
+    public CompletableFuture<Long> rebuild() {
+        return CompletableFuture.supplyAsync(this::rebuildIndex, executor);
+    }
+
+    /**
+     * Apply the queued changes in the background
+     * @return completes once every change queued before the call can be seen by searches
+     */
+    public CompletableFuture<Void> refresh() {
+        return CompletableFuture.runAsync(this::applyPendingChanges, executor);
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void onApplicationReady() {
+        rebuild().exceptionally(e -> {
+            log.error("Could not build the movie search index", e);
+            return null;
+        });
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onMovieChanged(MovieChangedEvent event) {
+        pendingIds.add(event.id());
+        if (updateScheduled.compareAndSet(false, true)) {
+            executor.execute(this::applyPendingChanges);
+        }
+    }
+
+    @PreDestroy
+    public void close() throws IOException {
+        executor.shutdownNow();
+        index.close();
+    }
+
+    private List<Integer> search(SearcherManager searcherManager, Query query, int limit) throws IOException {
+        IndexSearcher searcher = searcherManager.acquire();
+        try {
+            ScoreDoc[] hits = searcher.search(query, limit).scoreDocs;
+            StoredFields storedFields = searcher.storedFields();
+            List<Integer> ids = new ArrayList<>(hits.length);
+            for (ScoreDoc hit : hits) {
+                ids.add(Integer.valueOf(storedFields.document(hit.doc, Set.of(ID_FIELD)).get(ID_FIELD)));
+            }
+            return ids;
+        } finally {
+            searcherManager.release(searcher);
+        }
+    }
+
+    private void applyPendingChanges() {
+        // changes queued from here on schedule another run
+        updateScheduled.set(false);
+
+        try {
+            List<Integer> ids = new ArrayList<>(chunkSize);
+            Iterator<Integer> pending = pendingIds.iterator();
+            while (pending.hasNext()) {
+                ids.add(pending.next());
+                pending.remove();
+                if (ids.size() == chunkSize) {
+                    applyChanges(ids);
+                    ids.clear();
+                }
+            }
+            applyChanges(ids);
+            index.searcherManager().maybeRefreshBlocking();
+        } catch (IOException | RuntimeException e) {
+            log.error("Could not update the movie search index", e);
+        }
+    }
+
+    /**
+     * Re-read the movies and replace their documents, removing the documents of any that no longer exist
+     */
+    private void applyChanges(List<Integer> ids) throws IOException {
+        if (ids.isEmpty()) {
+            return;
+        }
+
+        Map<Integer, MovieDataModel> movies = repository.findAllById(ids).stream()
+                .collect(Collectors.toMap(MovieDataModel::getId, Function.identity()));
+        IndexWriter writer = index.writer();
+        for (Integer id : ids) {
+            MovieDataModel movie = movies.get(id);
+            if (movie == null) {
+                writer.deleteDocuments(idTerm(id));
+            } else {
+                writer.updateDocument(idTerm(id), toDocument(movie));
+            }
+        }
+    }
+
+    private long rebuildIndex() {
+        long started = System.nanoTime();
+        try {
+            Index rebuilt = createIndex();
+            AtomicLong count = new AtomicLong();
+            readOnlyTransaction.executeWithoutResult(status -> {
+                try (Stream<MovieDataModel> movies = repository.streamAllByOrderByIdAsc()) {
+                    movies.forEach(movie -> {
+                        try {
+                            rebuilt.writer().addDocument(toDocument(movie));
+                            count.incrementAndGet();
+                        } catch (IOException e) {
+                            throw new UncheckedIOException(e);
+                        }
+                    });
+                }
+            });
+            rebuilt.searcherManager().maybeRefreshBlocking();
+
+            Index old = index;
+            index = rebuilt;
+            old.close();
+
+            log.info("Indexed {} movies for search in {} ms", count.get(), (System.nanoTime() - started) / 1_000_000);
+            return count.get();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private Index createIndex() throws IOException {
+        IndexWriter writer = new IndexWriter(new ByteBuffersDirectory(), new IndexWriterConfig(analyzer));
+        return new Index(writer, new SearcherManager(writer, null));
+    }
+
+    private static Term idTerm(int id) {
+        return new Term(ID_FIELD, Integer.toString(id));
+    }
+
+    private static Document toDocument(MovieDataModel movie) {
+        Document document = new Document();
+        document.add(new StringField(ID_FIELD, Integer.toString(movie.getId()), Field.Store.YES));
+        if (movie.getTitle() != null) {
+            document.add(new TextField(TITLE_FIELD, movie.getTitle(), Field.Store.NO));
+        }
+        if (movie.getDescription() != null) {
+            document.add(new TextField(DESCRIPTION_FIELD, movie.getDescription(), Field.Store.NO));
+        }
+        return document;
+    }
+}
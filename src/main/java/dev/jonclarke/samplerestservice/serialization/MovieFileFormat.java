@@ -0,0 +1,85 @@
+package dev.jonclarke.samplerestservice.serialization;
+
+import org.springframework.http.MediaType;
+
+import java.util.Locale;
+import java.util.Optional;
+
+/**
+ * The file formats movies can be exported and imported in
+ */
+public enum MovieFileFormat {
+    /**
+     * Newline delimited JSON, one movie per line
+     */
+    NDJSON("ndjson", MediaType.APPLICATION_NDJSON),
+    /**
+     * Comma separated values, with a header row naming the columns
+     */
+    CSV("csv", MediaType.parseMediaType(MovieFileSerializer.TEXT_CSV_VALUE));
+
+    private static final String GZIP_EXTENSION = ".gz";
+
+    private final String extension;
+    private final MediaType mediaType;
+
+    MovieFileFormat(String extension, MediaType mediaType) {
+        this.extension = extension;
+        this.mediaType = mediaType;
+    }
+
+    public String getExtension() {
+        return extension;
+    }
+
+    public MediaType getMediaType() {
+        return mediaType;
+    }
+
+    /**
+     * @param name name of the format, as used in a request parameter - ndjson or csv, in any case
+     * @return the format, or empty if there is no format with that name
+     */
+    public static Optional<MovieFileFormat> forName(String name) {
+        for (MovieFileFormat format : values()) {
+            if (format.extension.equalsIgnoreCase(name)) {
+                return Optional.of(format);
+            }
+        }
+        return Optional.empty();
+    }
+
+    /**
+     * @param mediaType content type of a request body, which may carry parameters such as a charset
+     * @return the format, or empty if the media type is not one of the formats
+     */
+    public static Optional<MovieFileFormat> forMediaType(MediaType mediaType) {
+        for (MovieFileFormat format : values()) {
+            if (format.mediaType.equalsTypeAndSubtype(mediaType)) {
+                return Optional.of(format);
+            }
+        }
+        return Optional.empty();
+    }
+
+    /**
+     * @param fileName name of a file, such as movies.csv or movies.ndjson.gz
+     * @return the format given by the file's extension (ignoring any .gz), or empty if it is not one of the formats
+     */
+    public static Optional<MovieFileFormat> forFileName(String fileName) {
+        String name = fileName.toLowerCase(Locale.ROOT);
+        if (isGzipped(name)) {
+            name = name.substring(0, name.length() - GZIP_EXTENSION.length());
+        }
+        int dot = name.lastIndexOf('.');
+        return dot < 0 ? Optional.empty() : forName(name.substring(dot + 1));
+    }
+
+    /**
+     * @param fileName name of a file
+     * @return whether the file is gzip compressed, going by its extension
+     */
+    public static boolean isGzipped(String fileName) {
+        return fileName.toLowerCase(Locale.ROOT).endsWith(GZIP_EXTENSION);
+    }
+}
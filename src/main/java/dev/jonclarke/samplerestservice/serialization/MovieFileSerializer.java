@@ -0,0 +1,111 @@
+package dev.jonclarke.samplerestservice.serialization;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.MappingIterator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SequenceWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.dataformat.csv.CsvMapper;
+import com.fasterxml.jackson.dataformat.csv.CsvParser;
+import com.fasterxml.jackson.dataformat.csv.CsvSchema;
+import dev.jonclarke.samplerestservice.models.MovieDataModel;
+import dev.jonclarke.samplerestservice.models.MovieProjection;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Iterator;
+import java.util.stream.Stream;
+
+/**
+ * Reads and writes movie files, for bulk export and import, as newline delimited JSON or CSV.
+ * Movies are written and read one at a time, so a file is never held in memory however large it is.
+ * The JSON is the same as the API's, and the CSV columns are named after its fields.  A CSV file being read can
+ * have its columns in any order and leave any of them out, and an empty value is read as null.
+ */
+@Component
+public class MovieFileSerializer {
+
+    public static final String TEXT_CSV_VALUE = "text/csv";
+
+    private static final CsvSchema CSV_SCHEMA = buildCsvSchema();
+
+    private final ObjectWriter ndjsonWriter;
+    private final ObjectReader ndjsonReader;
+    private final ObjectWriter csvWriter;
+    private final ObjectReader csvReader;
+
+    public MovieFileSerializer(ObjectMapper jsonMapper, Jackson2ObjectMapperBuilder mapperBuilder) {
+        // the builder's settings are applied without setting its factory, as the builder may be shared
+        CsvMapper csvMapper = new CsvMapper();
+        mapperBuilder.configure(csvMapper);
+
+        this.ndjsonWriter = fileWriter(jsonMapper.writerFor(MovieDataModel.class)).withRootValueSeparator("\n");
+        this.ndjsonReader = jsonMapper.readerFor(MovieDataModel.class);
+        this.csvWriter = fileWriter(csvMapper.writerFor(MovieDataModel.class).with(CSV_SCHEMA));
+        // the columns are taken from the file's header row
+        this.csvReader = csvMapper.readerFor(MovieDataModel.class)
+                .with(CsvSchema.emptySchema().withHeader())
+                .with(CsvParser.Feature.EMPTY_STRING_AS_NULL);
+    }
+
+    /**
+     * Write the movies one after another as they are pulled from the stream.  The output stream is flushed but not
+     * closed.
+     * @param movies movies to write
+     * @param format file format to write
+     * @param out stream to write to
+     * @return number of movies written
+     * @throws IOException if the output cannot be written
+     */
+    public long writeAll(Stream<MovieDataModel> movies, MovieFileFormat format, OutputStream out) throws IOException {
+        long count = 0;
+        try (SequenceWriter writer = (format == MovieFileFormat.CSV ? csvWriter : ndjsonWriter).writeValues(out)) {
+            Iterator<MovieDataModel> iterator = movies.iterator();
+            while (iterator.hasNext()) {
+                writer.write(iterator.next());
+                count++;
+            }
+        }
+
+        // the JSON writer only separates the movies, so end the last line
+        if (format == MovieFileFormat.NDJSON && count > 0) {
+            out.write('\n');
+        }
+        out.flush();
+        return count;
+    }
+
+    /**
+     * Read movies one at a time as the iterator is consumed.  A movie that cannot be read (such as one with a date
+     * in the wrong format) makes nextValue throw, and the iterator moves on to the next movie; a file that is not
+     * valid JSON or CSV makes hasNextValue throw, and nothing more can be read.
+     * @param in file to read
+     * @param format format of the file
+     * @return the movies in the order they appear in the file, to be closed once read
+     * @throws IOException if the file cannot be read
+     */
+    public MappingIterator<MovieDataModel> readAll(InputStream in, MovieFileFormat format) throws IOException {
+        return (format == MovieFileFormat.CSV ? csvReader : ndjsonReader).readValues(in);
+    }
+
+    /**
+     * A writer that leaves the output open and does not flush after every movie
+     */
+    private static ObjectWriter fileWriter(ObjectWriter writer) {
+        return writer.without(SerializationFeature.FLUSH_AFTER_WRITE_VALUE)
+                .without(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+    }
+
+    private static CsvSchema buildCsvSchema() {
+        CsvSchema.Builder schema = CsvSchema.builder();
+        for (String field : MovieProjection.FIELDS) {
+            schema.addColumn(field);
+        }
+        return schema.setUseHeader(true).build();
+    }
+}
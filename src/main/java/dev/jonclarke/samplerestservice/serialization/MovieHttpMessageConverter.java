@@ -0,0 +1,89 @@
+package dev.jonclarke.samplerestservice.serialization;
+
+import dev.jonclarke.samplerestservice.models.MovieDataModel;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.core.ResolvableType;
+import org.springframework.http.HttpInputMessage;
+import org.springframework.http.HttpOutputMessage;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.AbstractGenericHttpMessageConverter;
+import org.springframework.http.converter.HttpMessageNotReadableException;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.lang.reflect.Type;
+import java.util.Collection;
+
+/**
+ * Writes movies, and collections of movies, returned from controllers using the MovieSerializer instead of
+ * Spring's Jackson message converters.  The serializer's mappers and writers are built once and shared, and the
+ * output goes straight to the response stream, so writing a movie allocates little more than Jackson's own
+ * (recycled) buffers.  Spring Boot places HttpMessageConverter beans ahead of its default converters.
+ * Request bodies are still read by the default converters.
+ */
+@Component
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.SERVLET)
+public class MovieHttpMessageConverter extends AbstractGenericHttpMessageConverter<Object> {
+
+    private final MovieSerializer serializer;
+
+    public MovieHttpMessageConverter(MovieSerializer serializer) {
+        super(serializer.getSupportedMediaTypes().toArray(MediaType[]::new));
+        this.serializer = serializer;
+    }
+
+    @Override
+    protected boolean supports(Class<?> clazz) {
+        return MovieDataModel.class.isAssignableFrom(clazz);
+    }
+
+    @Override
+    public boolean canRead(Class<?> clazz, MediaType mediaType) {
+        return false;
+    }
+
+    @Override
+    public boolean canRead(Type type, Class<?> contextClass, MediaType mediaType) {
+        return false;
+    }
+
+    @Override
+    public boolean canWrite(Type type, Class<?> clazz, MediaType mediaType) {
+        return (isMovieCollection(type) || (clazz != null && supports(clazz))) && canWrite(mediaType);
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    protected void writeInternal(Object value, Type type, HttpOutputMessage outputMessage) throws IOException {
+        MediaType mediaType = outputMessage.getHeaders().getContentType();
+        if (value instanceof MovieDataModel movie) {
+            serializer.write(movie, mediaType, outputMessage.getBody());
+        } else {
+            serializer.writeAll(((Collection<MovieDataModel>) value).stream(), mediaType, outputMessage.getBody());
+        }
+    }
+
+    @Override
+    protected Object readInternal(Class<?> clazz, HttpInputMessage inputMessage) {
+        throw new HttpMessageNotReadableException("Movies are not read by this converter", inputMessage);
+    }
+
+    @Override
+    public Object read(Type type, Class<?> contextClass, HttpInputMessage inputMessage) {
+        throw new HttpMessageNotReadableException("Movies are not read by this converter", inputMessage);
+    }
+
+    private static boolean isMovieCollection(Type type) {
+        if (type == null) {
+            return false;
+        }
+
+        ResolvableType resolvedType = ResolvableType.forType(type);
+        if (!Collection.class.isAssignableFrom(resolvedType.toClass())) {
+            return false;
+        }
+
+        Class<?> elementType = resolvedType.asCollection().resolveGeneric(0);
+        return elementType != null && MovieDataModel.class.isAssignableFrom(elementType);
+    }
+}
@@ -0,0 +1,276 @@
+package dev.jonclarke.samplerestservice.serialization;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.databind.ser.impl.SimpleBeanPropertyFilter;
+import com.fasterxml.jackson.databind.ser.impl.SimpleFilterProvider;
+import com.fasterxml.jackson.dataformat.cbor.databind.CBORMapper;
+import com.fasterxml.jackson.dataformat.smile.databind.SmileMapper;
+import com.fasterxml.jackson.dataformat.xml.XmlMapper;
+import com.fasterxml.jackson.dataformat.xml.ser.ToXmlGenerator;
+import dev.jonclarke.samplerestservice.models.MovieDataModel;
+import dev.jonclarke.samplerestservice.models.MovieProjection;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import org.springframework.stereotype.Component;
+import org.springframework.web.HttpMediaTypeNotAcceptableException;
+import org.springframework.web.accept.ContentNegotiationManager;
+import org.springframework.web.context.request.NativeWebRequest;
+
+import javax.xml.namespace.QName;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Serializes movies as JSON, XML, CBOR or Smile outside of the Spring message converters.
+ * Lists are written one element at a time as they are read, rather than being built in memory first, and
+ * the output matches what the Spring message converters produce (an array, or a List element of items in XML).
+ * CBOR and Smile are binary encodings of the same data model as JSON, so they need no separate schema.
+ * Each format has one mapper and one pre-built movie writer, shared by every request, so no writer is created or
+ * configured per response.
+ * Sparse fieldset lists are written from MovieProjections, with a property filter that keeps only the requested fields.
+ * The time spent in Jackson is recorded by format in the movies.serialization timer.  For lists only the time
+ * writing each movie is counted, not the time waiting for the next movie to be read from the database.
+ */
+@Component
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.SERVLET)
+public class MovieSerializer {
+
+    public static final String APPLICATION_SMILE_VALUE = "application/x-jackson-smile";
+    public static final MediaType APPLICATION_SMILE = MediaType.parseMediaType(APPLICATION_SMILE_VALUE);
+
+    private static final QName XML_LIST_ELEMENT = new QName("List");
+    private static final String XML_ITEM_ELEMENT = "item";
+
+    /**
+     * The mapper used for one media type, its movie writer and the timers recording its serialization
+     */
+    private record Format(ObjectMapper mapper, ObjectWriter movieWriter, ObjectWriter projectionWriter,
+                          Timer singleTimer, Timer listTimer) {
+    }
+
+    private final ContentNegotiationManager contentNegotiationManager;
+    private final Map<MediaType, Format> formats = new LinkedHashMap<>();
+    private final List<MediaType> supportedMediaTypes;
+
+    public MovieSerializer(ObjectMapper jsonMapper, Jackson2ObjectMapperBuilder mapperBuilder,
+                           ContentNegotiationManager contentNegotiationManager, MeterRegistry meterRegistry) {
+        this.contentNegotiationManager = contentNegotiationManager;
+        // build each mapper the same way Spring Boot builds the ones used by its message converters.
+        // JSON comes first as it is the default when the client accepts anything
+        addFormat(MediaType.APPLICATION_JSON, "json", jsonMapper, meterRegistry);
+        addFormat(MediaType.APPLICATION_XML, "xml", mapperBuilder.createXmlMapper(true).build(), meterRegistry);
+        addFormat(MediaType.APPLICATION_CBOR, "cbor", configure(new CBORMapper(), mapperBuilder), meterRegistry);
+        addFormat(APPLICATION_SMILE, "smile", configure(new SmileMapper(), mapperBuilder), meterRegistry);
+        this.supportedMediaTypes = List.copyOf(formats.keySet());
+    }
+
+    public List<MediaType> getSupportedMediaTypes() {
+        return supportedMediaTypes;
+    }
+
+    /**
+     * Pick the response media type from the request's Accept header, defaulting to JSON
+     * @param request the current request
+     * @return one of the supported media types
+     * @throws HttpMediaTypeNotAcceptableException if the client accepts none of them
+     */
+    public MediaType negotiate(NativeWebRequest request) throws HttpMediaTypeNotAcceptableException {
+        for (MediaType requested : contentNegotiationManager.resolveMediaTypes(request)) {
+            for (MediaType supported : supportedMediaTypes) {
+                if (requested.isCompatibleWith(supported)) {
+                    return supported;
+                }
+            }
+        }
+
+        throw new HttpMediaTypeNotAcceptableException(supportedMediaTypes);
+    }
+
+    /**
+     * Serialize a single movie
+     * @param movie movie to write
+     * @param mediaType one of the supported media types
+     * @return the serialized movie
+     */
+    public byte[] write(MovieDataModel movie, MediaType mediaType) {
+        Format format = format(mediaType);
+        long started = System.nanoTime();
+        try {
+            return format.movieWriter().writeValueAsBytes(movie);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            format.singleTimer().record(System.nanoTime() - started, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    /**
+     * Serialize a single movie straight to an output stream, which is flushed but not closed
+     * @param movie movie to write
+     * @param mediaType one of the supported media types
+     * @param out stream to write to
+     * @throws IOException if the output cannot be written
+     */
+    public void write(MovieDataModel movie, MediaType mediaType, OutputStream out) throws IOException {
+        Format format = format(mediaType);
+        long started = System.nanoTime();
+        try (JsonGenerator generator = format.mapper().getFactory().createGenerator(out)
+                .disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET)) {
+            format.movieWriter().writeValue(generator, movie);
+        } finally {
+            format.singleTimer().record(System.nanoTime() - started, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    /**
+     * Write the movies as a list, one element at a time as they are pulled from the stream.
+     * The output stream is flushed but not closed.
+     * @param movies movies to write
+     * @param mediaType one of the supported media types
+     * @param out stream to write to
+     * @throws IOException if the output cannot be written
+     */
+    public void writeAll(Stream<MovieDataModel> movies, MediaType mediaType, OutputStream out) throws IOException {
+        Format format = format(mediaType);
+        writeList(movies.iterator(), format, format.movieWriter(), out);
+    }
+
+    /**
+     * Write movie projections as a list, in the same way as writeAll, with only the requested fields of each
+     * @param movies projections to write
+     * @param fields names of the fields to write, from MovieProjection.FIELDS
+     * @param mediaType one of the supported media types
+     * @param out stream to write to
+     * @throws IOException if the output cannot be written
+     */
+    public void writeAllProjections(Stream<MovieProjection> movies, Set<String> fields, MediaType mediaType,
+                                    OutputStream out) throws IOException {
+        Format format = format(mediaType);
+        ObjectWriter writer = format.projectionWriter().with(new SimpleFilterProvider()
+                .addFilter(MovieProjection.FIELDS_FILTER, SimpleBeanPropertyFilter.filterOutAllExcept(fields)));
+        writeList(movies.iterator(), format, writer, out);
+    }
+
+    /**
+     * Read a list of values from a request body.  A JSON array or newline delimited JSON is read one value at a
+     * time as the iterator is consumed, so the whole body is never held in memory.  The XML module cannot iterate
+     * over the items of a root level list, so an XML list is read in one go.
+     * @param in request body
+     * @param mediaType content type of the body - application/json, application/x-ndjson or application/xml
+     * @param type type of each value in the list
+     * @return the values in the order they appear in the body
+     * @throws IOException if the body cannot be read or (for XML) is not valid
+     */
+    public <T> Iterator<T> readAll(InputStream in, MediaType mediaType, Class<T> type) throws IOException {
+        if (MediaType.APPLICATION_XML.isCompatibleWith(mediaType)) {
+            List<T> values = format(MediaType.APPLICATION_XML).mapper().readerForListOf(type).readValue(in);
+            return values == null ? Collections.emptyIterator() : values.iterator();
+        }
+
+        return format(MediaType.APPLICATION_JSON).mapper().readerFor(type).readValues(in);
+    }
+
+    private void addFormat(MediaType mediaType, String name, ObjectMapper mapper, MeterRegistry meterRegistry) {
+        formats.put(mediaType, new Format(mapper,
+                mapper.writerFor(MovieDataModel.class).without(SerializationFeature.FLUSH_AFTER_WRITE_VALUE),
+                mapper.writerFor(MovieProjection.class).without(SerializationFeature.FLUSH_AFTER_WRITE_VALUE),
+                serializationTimer(meterRegistry, name, "single"),
+                serializationTimer(meterRegistry, name, "list")));
+    }
+
+    /**
+     * Apply the builder's settings to a mapper for another format, without setting the builder's factory, as the
+     * builder may be shared
+     */
+    private static ObjectMapper configure(ObjectMapper mapper, Jackson2ObjectMapperBuilder mapperBuilder) {
+        mapperBuilder.configure(mapper);
+        return mapper;
+    }
+
+    private Format format(MediaType mediaType) {
+        Format format = formats.get(mediaType);
+        if (format != null) {
+            return format;
+        }
+
+        // the media type chosen by the message converters may carry parameters, such as a charset
+        for (Map.Entry<MediaType, Format> entry : formats.entrySet()) {
+            if (entry.getKey().equalsTypeAndSubtype(mediaType)) {
+                return entry.getValue();
+            }
+        }
+        return formats.get(MediaType.APPLICATION_JSON);
+    }
+
+    private void writeList(Iterator<?> movies, Format format, ObjectWriter writer, OutputStream out) throws IOException {
+        if (format.mapper() instanceof XmlMapper xmlMapper) {
+            writeXmlList(movies, xmlMapper, format, writer, out);
+        } else {
+            writeArray(movies, format, writer, out);
+        }
+    }
+
+    private void writeArray(Iterator<?> movies, Format format, ObjectWriter writer, OutputStream out) throws IOException {
+        long serializing = 0;
+        try (JsonGenerator generator = format.mapper().getFactory().createGenerator(out)
+                .disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET)) {
+            generator.writeStartArray();
+            while (movies.hasNext()) {
+                Object movie = movies.next();
+                long started = System.nanoTime();
+                writer.writeValue(generator, movie);
+                serializing += System.nanoTime() - started;
+            }
+            generator.writeEndArray();
+        } finally {
+            format.listTimer().record(serializing, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    private void writeXmlList(Iterator<?> movies, XmlMapper xmlMapper, Format format, ObjectWriter writer,
+                              OutputStream out) throws IOException {
+        long serializing = 0;
+        ToXmlGenerator generator = xmlMapper.getFactory().createGenerator(out);
+        generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+        try (generator) {
+            generator.initGenerator();
+            generator.setNextName(XML_LIST_ELEMENT);
+            generator.writeStartObject();
+            while (movies.hasNext()) {
+                Object movie = movies.next();
+                long started = System.nanoTime();
+                // naming the next element stops the writer using the Movie root name for each item
+                generator.writeFieldName(XML_ITEM_ELEMENT);
+                writer.writeValue(generator, movie);
+                serializing += System.nanoTime() - started;
+            }
+            generator.writeEndObject();
+        } finally {
+            format.listTimer().record(serializing, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    private static Timer serializationTimer(MeterRegistry meterRegistry, String format, String operation) {
+        return Timer.builder("movies.serialization")
+                .description("Time spent serializing movies")
+                .tag("format", format)
+                .tag("operation", operation)
+                .register(meterRegistry);
+    }
+}
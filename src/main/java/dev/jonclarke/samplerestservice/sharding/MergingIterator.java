@@ -0,0 +1,52 @@
+package dev.jonclarke.samplerestservice.sharding;
+
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.PriorityQueue;
+
+/**
+ * Merges iterators that are each already in order into a single iterator in that order, holding only the next
+ * item of each one.  The iterators are not read until the first call to hasNext or next.
+ */
+final class MergingIterator<T> implements Iterator<T> {
+
+    private record Head<T>(T item, Iterator<T> source) {
+    }
+
+    private final List<? extends Iterator<T>> sources;
+    private final PriorityQueue<Head<T>> heads;
+    private boolean started;
+
+    MergingIterator(List<? extends Iterator<T>> sources, Comparator<? super T> comparator) {
+        this.sources = sources;
+        this.heads = new PriorityQueue<>(Math.max(1, sources.size()), (a, b) -> comparator.compare(a.item(), b.item()));
+    }
+
+    @Override
+    public boolean hasNext() {
+        if (!started) {
+            started = true;
+            sources.forEach(this::advance);
+        }
+        return !heads.isEmpty();
+    }
+
+    @Override
+    public T next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+
+        Head<T> head = heads.poll();
+        advance(head.source());
+        return head.item();
+    }
+
+    private void advance(Iterator<T> source) {
+        if (source.hasNext()) {
+            heads.add(new Head<>(source.next(), source));
+        }
+    }
+}
@@ -0,0 +1,120 @@
+package dev.jonclarke.samplerestservice.sharding;
+
+import com.zaxxer.hikari.HikariConfig;
+import com.zaxxer.hikari.HikariDataSource;
+import dev.jonclarke.samplerestservice.models.MovieDataModel;
+import org.flywaydb.core.Flyway;
+import org.springframework.boot.jdbc.DatabaseDriver;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.support.incrementer.AbstractSequenceMaxValueIncrementer;
+import org.springframework.jdbc.support.incrementer.H2SequenceMaxValueIncrementer;
+import org.springframework.jdbc.support.incrementer.PostgresSequenceMaxValueIncrementer;
+import org.springframework.transaction.support.TransactionTemplate;
+
+/**
+ * One of the databases of a ShardedMovieStore, with its own connection pool and the same schema as the main
+ * database (migrated by Flyway when the shard is opened).
+ * <p>
+ * A shard hands out the ids of the movies added to it.  Each value read from its id sequence covers a block of
+ * ID_ALLOCATION_SIZE local numbers, and local number n of shard i is global id n * shards + i, so the ids of
+ * different shards never overlap and the shard that owns a movie can be worked out from its id alone.  The sequence is
+ * read with the syntax of the shard's database, worked out from its JDBC URL (H2 or PostgreSQL).
+ */
+final class MovieShard implements AutoCloseable {
+
+    private final int index;
+    private final int shardCount;
+    private final HikariDataSource dataSource;
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final TransactionTemplate readOnlyTransaction;
+    private final AbstractSequenceMaxValueIncrementer idSequence;
+    // the local numbers of the current id block still to be handed out - guarded by this
+    private long nextLocalId;
+    private long blockEnd;
+
+    MovieShard(int index, int shardCount, String url, int poolSize, int fetchSize) {
+        this.index = index;
+        this.shardCount = shardCount;
+        this.idSequence = idSequence(DatabaseDriver.fromJdbcUrl(url));
+
+        HikariConfig config = new HikariConfig();
+        config.setPoolName("movies-shard-" + index);
+        config.setJdbcUrl(url);
+        config.setUsername("sa");
+        config.setMaximumPoolSize(poolSize);
+        config.setMinimumIdle(poolSize);
+        this.dataSource = new HikariDataSource(config);
+
+        try {
+            Flyway.configure().dataSource(dataSource).load().migrate();
+        } catch (RuntimeException e) {
+            dataSource.close();
+            throw e;
+        }
+
+        DataSourceTransactionManager transactionManager = new DataSourceTransactionManager(dataSource);
+        this.jdbcTemplate = new JdbcTemplate(dataSource);
+        this.jdbcTemplate.setFetchSize(fetchSize);
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.readOnlyTransaction = new TransactionTemplate(transactionManager);
+        this.readOnlyTransaction.setReadOnly(true);
+        this.idSequence.setDataSource(dataSource);
+    }
+
+    int getIndex() {
+        return index;
+    }
+
+    JdbcTemplate getJdbcTemplate() {
+        return jdbcTemplate;
+    }
+
+    TransactionTemplate getTransactionTemplate() {
+        return transactionTemplate;
+    }
+
+    TransactionTemplate getReadOnlyTransaction() {
+        return readOnlyTransaction;
+    }
+
+    /**
+     * @return a new id owned by this shard.  Only one thread at a time takes an id, and the sequence is only read
+     * once per block of ids
+     * @throws IllegalStateException if the shard has used every id it can hand out
+     */
+    synchronized int nextId() {
+        if (nextLocalId == blockEnd) {
+            nextLocalId = idSequence.nextLongValue();
+            blockEnd = nextLocalId + MovieDataModel.ID_ALLOCATION_SIZE;
+        }
+
+        long id = nextLocalId * shardCount + index;
+        if (id > Integer.MAX_VALUE) {
+            throw new IllegalStateException("Shard " + index + " has no more movie ids");
+        }
+        nextLocalId++;
+        return (int) id;
+    }
+
+    /**
+     * @return reads the movie id sequence of a shard, once it has been given the shard's data source
+     * @throws IllegalArgumentException if the shard's database is neither H2 nor PostgreSQL
+     */
+    private static AbstractSequenceMaxValueIncrementer idSequence(DatabaseDriver database) {
+        AbstractSequenceMaxValueIncrementer sequence = switch (database) {
+            case H2 -> new H2SequenceMaxValueIncrementer();
+            case POSTGRESQL -> new PostgresSequenceMaxValueIncrementer();
+            default -> throw new IllegalArgumentException("Shards can only be H2 or PostgreSQL databases, not "
+                    + database);
+        };
+        sequence.setIncrementerName(MovieDataModel.ID_SEQUENCE);
+        return sequence;
+    }
+
+    @Override
+    public void close() {
+        dataSource.close();
+    }
+}
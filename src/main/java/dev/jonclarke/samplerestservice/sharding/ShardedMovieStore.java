@@ -0,0 +1,478 @@
+package dev.jonclarke.samplerestservice.sharding;
+
+import dev.jonclarke.samplerestservice.dataaccess.MovieFilter;
+import dev.jonclarke.samplerestservice.dataaccess.MovieSearchRepository;
+import dev.jonclarke.samplerestservice.models.MovieDataModel;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.data.domain.Sort;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.stereotype.Component;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Optional;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Movie storage partitioned across several databases (shards), each with its own connection pool, so writes to
+ * different shards never wait for the same database lock or connection.
+ * <p>
+ * Every movie lives in exactly one shard, worked out from its id (id modulo the number of shards), so finding,
+ * updating or deleting a movie by id goes straight to the shard that owns it.  New movies are spread over the
+ * shards in turn and given an id by that shard (see MovieShard), so ids are unique across every shard without
+ * the shards having to agree on them.  As the owner of an id depends on the number of shards, the number cannot
+ * be changed once movies have been stored.
+ * <p>
+ * Queries that are not by id are sent to every shard at once and the results merged: a page asks each shard for a
+ * whole page in the requested order and keeps the first limit movies of the merged results, and streamAll merges
+ * the shards' cursors as they are read, so the whole catalogue is never held in memory.
+ * <p>
+ * The shards are JDBC only - there is no Hibernate session, change feed or search index in front of them.  When the
+ * store is enabled, MovieController reads and writes movies here instead of the main database, the startup import
+ * loads its file here, and the features that only reach the main database are turned off.
+ */
+@Component
+@ConditionalOnProperty("movies.sharding.enabled")
+public class ShardedMovieStore implements AutoCloseable {
+
+    private static final Logger log = LoggerFactory.getLogger(ShardedMovieStore.class);
+
+    /**
+     * Movies read ahead from each shard by streamAll
+     */
+    static final int STREAM_BUFFER_SIZE = 500;
+
+    private static final String COLUMNS = "id, title, description, release_date, available_on_dvd, version, last_modified";
+    private static final String FIND_BY_ID = "select " + COLUMNS + " from movie_data_model where id = ?";
+    private static final String STREAM_ALL = "select " + COLUMNS + " from movie_data_model order by id";
+    private static final String COUNT = "select count(*) from movie_data_model";
+    private static final String INSERT_MOVIE = "insert into movie_data_model (title, description, release_date, "
+            + "available_on_dvd, last_modified, title_key, id, version) values (?, ?, ?, ?, ?, ?, ?, 0)";
+    private static final int[] INSERT_TYPES = { Types.VARCHAR, Types.VARCHAR, Types.TIMESTAMP, Types.BOOLEAN,
+            Types.TIMESTAMP_WITH_TIMEZONE, Types.VARCHAR, Types.INTEGER };
+    private static final String UPDATE_MOVIE = "update movie_data_model set title = ?, description = ?, "
+            + "release_date = ?, available_on_dvd = ?, last_modified = ?, title_key = ?, version = version + 1 "
+            + "where id = ?";
+    private static final String DELETE_MOVIE = "delete from movie_data_model where id = ?";
+    private static final String AT_VERSION = " and version = ?";
+
+    // marks the end of a shard's rows in streamAll
+    private static final MovieDataModel END = new MovieDataModel();
+
+    private final List<MovieShard> shards;
+    private final AtomicInteger nextShard = new AtomicInteger();
+    private final ExecutorService executor;
+
+    /**
+     * Open (and migrate) every shard
+     * @param shardCount number of shards
+     * @param urlPattern JDBC URL of the shards, with %d where the shard number (from 0) goes
+     * @param poolSize connections in each shard's pool
+     */
+    public ShardedMovieStore(@Value("${movies.sharding.shards:4}") int shardCount,
+                             @Value("${movies.sharding.url:jdbc:h2:mem:movies-shard-%d;DB_CLOSE_DELAY=-1}") String urlPattern,
+                             @Value("${movies.sharding.pool-size:4}") int poolSize) {
+        if (shardCount < 1) {
+            throw new IllegalArgumentException("There must be at least one shard");
+        }
+
+        List<MovieShard> opened = new ArrayList<>(shardCount);
+        try {
+            for (int i = 0; i < shardCount; i++) {
+                opened.add(new MovieShard(i, shardCount, String.format(urlPattern, i), poolSize, STREAM_BUFFER_SIZE));
+            }
+        } catch (RuntimeException e) {
+            opened.forEach(MovieShard::close);
+            throw e;
+        }
+        this.shards = List.copyOf(opened);
+
+        // a thread per shard query in progress - each query holds a connection of its shard, so the pools are the limit
+        AtomicInteger threads = new AtomicInteger();
+        this.executor = Executors.newCachedThreadPool(runnable -> {
+            Thread thread = new Thread(runnable, "movie-shard-" + threads.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        log.info("Opened {} movie shards", shardCount);
+    }
+
+    /**
+     * @return number of shards
+     */
+    public int getShardCount() {
+        return shards.size();
+    }
+
+    /**
+     * @param id movie id
+     * @return the number (from 0) of the shard that owns the id
+     */
+    public int shardOf(int id) {
+        return Math.floorMod(id, shards.size());
+    }
+
+    /**
+     * Add a movie to the next shard in turn
+     * @param movie the movie to add.  Its id, version and last modified time are set.
+     * @return the movie
+     */
+    public MovieDataModel insert(MovieDataModel movie) {
+        MovieShard shard = shards.get(Math.floorMod(nextShard.getAndIncrement(), shards.size()));
+        shard.getJdbcTemplate().update(INSERT_MOVIE, insertValues(shard, movie, now()), INSERT_TYPES);
+        return movie;
+    }
+
+    /**
+     * Add movies, spread over the shards in turn.  Each shard's movies are inserted as one JDBC batch in one
+     * transaction, and the shards are written at the same time.  A failure in one shard does not undo the
+     * inserts of the others.
+     * @param movies the movies to add.  Their ids, versions and last modified times are set.
+     * @return the movies
+     */
+    public List<MovieDataModel> insertAll(List<MovieDataModel> movies) {
+        int first = nextShard.getAndAdd(movies.size());
+        List<List<MovieDataModel>> byShard = IntStream.range(0, shards.size())
+                .<List<MovieDataModel>>mapToObj(shard -> new ArrayList<>())
+                .toList();
+        for (int i = 0; i < movies.size(); i++) {
+            byShard.get(Math.floorMod(first + i, shards.size())).add(movies.get(i));
+        }
+
+        OffsetDateTime lastModified = now();
+        scatter(shard -> {
+            List<MovieDataModel> shardMovies = byShard.get(shard.getIndex());
+            if (!shardMovies.isEmpty()) {
+                List<Object[]> values = shardMovies.stream().map(movie -> insertValues(shard, movie, lastModified)).toList();
+                shard.getTransactionTemplate().executeWithoutResult(status ->
+                        shard.getJdbcTemplate().batchUpdate(INSERT_MOVIE, values, INSERT_TYPES));
+            }
+            return null;
+        });
+        return movies;
+    }
+
+    /**
+     * @param id movie id
+     * @return the movie, read from the shard that owns it
+     */
+    public Optional<MovieDataModel> findById(int id) {
+        return shardFor(id).getJdbcTemplate().query(FIND_BY_ID, ShardedMovieStore::mapMovie, id).stream().findFirst();
+    }
+
+    /**
+     * Replace the title, description, release date and DVD availability of a movie, and increment its version
+     * @param movie the new values, with the id of the movie to update
+     * @param version the version the movie is expected to have, or null to update it whatever its version
+     * @return whether the movie was updated - false if there is no movie with the id, or it is at another version
+     */
+    public boolean update(MovieDataModel movie, Long version) {
+        List<Object> values = new ArrayList<>(List.of(movie.getTitle(), movie.getDescription(), movie.getReleaseDate(),
+                movie.isAvailableOnDvd(), now(), MovieDataModel.toTitleKey(movie.getTitle()), movie.getId()));
+        return update(movie.getId(), UPDATE_MOVIE, values, version);
+    }
+
+    /**
+     * @param id id of the movie to delete
+     * @param version the version the movie is expected to have, or null to delete it whatever its version
+     * @return whether the movie was deleted - false if there is no movie with the id, or it is at another version
+     */
+    public boolean deleteById(int id, Long version) {
+        return update(id, DELETE_MOVIE, new ArrayList<>(List.of(id)), version);
+    }
+
+    /**
+     * @return number of movies in every shard
+     */
+    public long count() {
+        return scatter(shard -> shard.getJdbcTemplate().queryForObject(COUNT, Long.class)).stream()
+                .mapToLong(Long::longValue).sum();
+    }
+
+    /**
+     * Find a page of movies, in the same order as MovieRepository.search.  Every shard is queried at the same time,
+     * each for a whole page, and the results are merged.
+     * @param filter conditions the movies must match
+     * @param sort order to return the movies in, by any of MovieSearchRepository.SORT_PROPERTIES
+     * @param after only movies after this id in the id order, or null for the first page
+     * @param limit maximum number of movies to return
+     * @return the page
+     * @throws IllegalArgumentException if the sort is by any other property
+     */
+    public List<MovieDataModel> search(MovieFilter filter, Sort sort, Integer after, int limit) {
+        ShardQuery query = ShardQuery.of(filter, sort, after, limit);
+        List<List<MovieDataModel>> pages = scatter(shard ->
+                shard.getJdbcTemplate().query(query.sql(), ShardedMovieStore::mapMovie, query.arguments().toArray()));
+
+        MergingIterator<MovieDataModel> merged = new MergingIterator<>(
+                pages.stream().map(List::iterator).toList(), comparator(sort));
+        List<MovieDataModel> page = new ArrayList<>(Math.min(limit, 256));
+        while (page.size() < limit && merged.hasNext()) {
+            page.add(merged.next());
+        }
+        return page;
+    }
+
+    /**
+     * Read every movie in ascending id order.  Each shard is read by a thread of its own, up to STREAM_BUFFER_SIZE
+     * movies ahead of the caller, and the shards are merged as the stream is consumed.
+     * The stream must be closed, which stops the shards being read if it has not been read to the end.
+     * @return every movie
+     */
+    public Stream<MovieDataModel> streamAll() {
+        List<ShardCursor> cursors = shards.stream().map(ShardCursor::new).toList();
+        Iterator<MovieDataModel> merged = new MergingIterator<>(cursors, Comparator.comparingInt(MovieDataModel::getId));
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(merged,
+                        Spliterator.ORDERED | Spliterator.NONNULL | Spliterator.DISTINCT), false)
+                .onClose(() -> cursors.forEach(ShardCursor::close));
+    }
+
+    @PreDestroy
+    @Override
+    public void close() {
+        executor.shutdownNow();
+        shards.forEach(MovieShard::close);
+    }
+
+    private MovieShard shardFor(int id) {
+        return shards.get(shardOf(id));
+    }
+
+    /**
+     * Run an update or delete of one movie on the shard that owns it, only matching the expected version if there is one
+     */
+    private boolean update(int id, String sql, List<Object> values, Long version) {
+        if (version != null) {
+            values.add(version);
+        }
+        return shardFor(id).getJdbcTemplate().update(version == null ? sql : sql + AT_VERSION, values.toArray()) > 0;
+    }
+
+    /**
+     * Run a query on every shard at the same time
+     * @return the result of each shard, in shard order
+     */
+    private <T> List<T> scatter(Function<MovieShard, T> query) {
+        List<CompletableFuture<T>> results = shards.stream()
+                .map(shard -> CompletableFuture.supplyAsync(() -> query.apply(shard), executor))
+                .toList();
+        try {
+            return results.stream().map(CompletableFuture::join).toList();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            throw e;
+        }
+    }
+
+    private static Object[] insertValues(MovieShard shard, MovieDataModel movie, OffsetDateTime lastModified) {
+        movie.setId(shard.nextId());
+        movie.setVersion(0);
+        movie.setLastModified(lastModified.toInstant());
+        return new Object[] { movie.getTitle(), movie.getDescription(), movie.getReleaseDate(), movie.isAvailableOnDvd(),
+                lastModified, MovieDataModel.toTitleKey(movie.getTitle()), movie.getId() };
+    }
+
+    /**
+     * The current time, to the precision of the last modified column
+     */
+    private static OffsetDateTime now() {
+        return Instant.now().truncatedTo(ChronoUnit.MICROS).atOffset(ZoneOffset.UTC);
+    }
+
+    /**
+     * The order search returns movies in, which is the order each shard's query returns them in.  Null release
+     * dates and titles come first in ascending order and last in descending order, as the queries ask for.
+     */
+    static Comparator<MovieDataModel> comparator(Sort sort) {
+        Comparator<MovieDataModel> comparator = (a, b) -> 0;
+        for (Sort.Order order : sort) {
+            Comparator<MovieDataModel> property = switch (order.getProperty()) {
+                case "id" -> null;
+                case "title" -> Comparator.comparing((MovieDataModel movie) -> MovieDataModel.toTitleKey(movie.getTitle()),
+                        Comparator.nullsFirst(Comparator.<String>naturalOrder()));
+                case "releaseDate" -> Comparator.comparing(MovieDataModel::getReleaseDate,
+                        Comparator.nullsFirst(Comparator.<LocalDateTime>naturalOrder()));
+                default -> throw new IllegalArgumentException("Cannot sort movies by " + order.getProperty());
+            };
+            if (property != null) {
+                comparator = comparator.thenComparing(order.isAscending() ? property : property.reversed());
+            }
+        }
+
+        Comparator<MovieDataModel> byId = Comparator.comparingInt(MovieDataModel::getId);
+        return comparator.thenComparing(ShardQuery.idAscending(sort) ? byId : byId.reversed());
+    }
+
+    private static MovieDataModel mapMovie(ResultSet row, int rowNumber) throws SQLException {
+        OffsetDateTime lastModified = row.getObject("last_modified", OffsetDateTime.class);
+        return new MovieDataModel(row.getInt("id"), row.getString("title"), row.getString("description"),
+                row.getObject("release_date", LocalDateTime.class), row.getObject("available_on_dvd", Boolean.class),
+                row.getLong("version"), lastModified == null ? null : lastModified.toInstant());
+    }
+
+    /**
+     * The query each shard runs for a page of search results, with the same conditions as MovieSearchRepositoryImpl
+     */
+    record ShardQuery(String sql, List<Object> arguments) {
+
+        static ShardQuery of(MovieFilter filter, Sort sort, Integer after, int limit) {
+            List<String> conditions = new ArrayList<>();
+            List<Object> arguments = new ArrayList<>();
+            if (filter.title() != null && !filter.title().isEmpty()) {
+                // a range on the title key, so the index can be used
+                String prefix = MovieDataModel.toTitleKey(filter.title());
+                conditions.add("title_key >= ?");
+                arguments.add(prefix);
+                char last = prefix.charAt(prefix.length() - 1);
+                if (last != Character.MAX_VALUE) {
+                    conditions.add("title_key < ?");
+                    arguments.add(prefix.substring(0, prefix.length() - 1) + (char) (last + 1));
+                }
+            }
+            if (filter.releasedAfter() != null) {
+                conditions.add("release_date > ?");
+                arguments.add(filter.releasedAfter());
+            }
+            if (filter.releasedBefore() != null) {
+                conditions.add("release_date < ?");
+                arguments.add(filter.releasedBefore());
+            }
+            if (filter.availableOnDvd() != null) {
+                conditions.add("available_on_dvd = ?");
+                arguments.add(filter.availableOnDvd());
+            }
+            if (after != null) {
+                conditions.add(idAscending(sort) ? "id > ?" : "id < ?");
+                arguments.add(after);
+            }
+
+            List<String> orders = new ArrayList<>();
+            for (Sort.Order order : sort) {
+                if (!MovieSearchRepository.SORT_PROPERTIES.contains(order.getProperty())) {
+                    throw new IllegalArgumentException("Cannot sort movies by " + order.getProperty());
+                }
+                if (!order.getProperty().equals("id")) {
+                    String column = order.getProperty().equals("title") ? "title_key" : "release_date";
+                    orders.add(column + (order.isAscending() ? " asc nulls first" : " desc nulls last"));
+                }
+            }
+            orders.add(idAscending(sort) ? "id asc" : "id desc");
+
+            StringBuilder sql = new StringBuilder("select " + COLUMNS + " from movie_data_model");
+            if (!conditions.isEmpty()) {
+                sql.append(" where ").append(String.join(" and ", conditions));
+            }
+            sql.append(" order by ").append(String.join(", ", orders)).append(" fetch first ? rows only");
+            arguments.add(limit);
+            return new ShardQuery(sql.toString(), List.copyOf(arguments));
+        }
+
+        static boolean idAscending(Sort sort) {
+            Sort.Order order = sort.getOrderFor("id");
+            return order == null || order.isAscending();
+        }
+    }
+
+    /**
+     * One shard's movies for streamAll, read in id order by a thread of its own into a bounded queue
+     */
+    private final class ShardCursor implements Iterator<MovieDataModel> {
+        private final BlockingQueue<MovieDataModel> queue = new ArrayBlockingQueue<>(STREAM_BUFFER_SIZE);
+        private final Future<?> reader;
+        // set before END is queued, so it is seen by the thread that takes END
+        private volatile RuntimeException failure;
+        private MovieDataModel next;
+
+        ShardCursor(MovieShard shard) {
+            this.reader = executor.submit(() -> read(shard));
+        }
+
+        @Override
+        public boolean hasNext() {
+            if (next == null) {
+                try {
+                    next = queue.take();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new CancellationException("Interrupted while reading movie shards");
+                }
+            }
+            if (next == END && failure != null) {
+                throw failure;
+            }
+            return next != END;
+        }
+
+        @Override
+        public MovieDataModel next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            MovieDataModel movie = next;
+            next = null;
+            return movie;
+        }
+
+        void close() {
+            // interrupts the reader if it is waiting for room in the queue, which ends its query
+            reader.cancel(true);
+        }
+
+        private void read(MovieShard shard) {
+            try {
+                shard.getReadOnlyTransaction().executeWithoutResult(status -> shard.getJdbcTemplate().query(STREAM_ALL,
+                        (RowCallbackHandler) row -> put(mapMovie(row, 0))));
+            } catch (CancellationException e) {
+                return;
+            } catch (RuntimeException e) {
+                failure = e;
+            }
+
+            try {
+                queue.put(END);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        private void put(MovieDataModel movie) {
+            try {
+                queue.put(movie);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new CancellationException("Movie stream closed");
+            }
+        }
+    }
+}
@@ -0,0 +1,325 @@
+package dev.jonclarke.samplerestservice.statistics;
+
+import dev.jonclarke.samplerestservice.dataaccess.MovieChangeRepository;
+import dev.jonclarke.samplerestservice.dataaccess.MovieRepository;
+import dev.jonclarke.samplerestservice.events.MovieChangesRecordedEvent;
+import dev.jonclarke.samplerestservice.models.MovieCatalogueStats;
+import dev.jonclarke.samplerestservice.models.MovieCatalogueStats.ReleaseYear;
+import dev.jonclarke.samplerestservice.models.MovieDataModel;
+import dev.jonclarke.samplerestservice.models.MovieProjection;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Queue;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Stream;
+
+/**
+ * Counts of movies by release year and DVD availability, kept up to date as movies are written so that the
+ * statistics can be served without reading the movie table.
+ * <p>
+ * Every movie falls into one group - its release year (or none) and its DVD availability (yes, no or unknown) -
+ * and each group has a LongAdder, so writes on different threads rarely contend on the same counter.  The year
+ * and availability totals are added up from the groups when they are read, which takes time in proportion to
+ * the number of groups rather than the number of movies.  Nothing is held per movie: writers pass the movie as
+ * it was before the change (returned by the statement that made the change) as well as after it, and that is
+ * what takes the movie out of its old group.
+ * <p>
+ * Writers call movieChanged in the transaction that makes the change.  The counters only change once the
+ * transaction has committed, and nothing changes if it is rolled back.  The moves are tagged with the change feed
+ * sequence number that MovieChangeLog gave the transaction's changes.
+ * <p>
+ * The counts start from the changes made since the application started, and are reconciled with the database in
+ * the background once it is ready.  The latest change sequence and every movie are read in one snapshot, so the
+ * counts read are exactly those after the changes up to that sequence, since changes commit in sequence order.  The
+ * new counts replace the old ones in one step, and the moves with a later sequence that committed while the movies
+ * were being read are applied to them again.  Each move notes the counts it was last applied to, so it is applied
+ * to each at most once, and neither writers nor readers take a lock.  Changes made by other instances sharing the
+ * database are not seen until the next reconciliation.
+ */
+@Component
+public class MovieStatistics {
+
+    private static final Logger log = LoggerFactory.getLogger(MovieStatistics.class);
+
+    private static final Set<String> COUNTED_FIELDS = Set.of("id", "releaseDate", "availableOnDvd");
+    // the sequence of a move whose transaction recorded no change, which is treated as later than any other
+    private static final long UNKNOWN_SEQUENCE = Long.MAX_VALUE;
+
+    /**
+     * The movies with the same release year (null if they have none) and DVD availability
+     */
+    private record Group(Integer year, Boolean availableOnDvd) {
+    }
+
+    /**
+     * One set of counts, by group
+     * @param generation incremented by each reconciliation, so a later set of counts has a higher generation
+     * @param since sequence of the last change the counts were read after, so only later moves are applied to them
+     */
+    private record Counts(long generation, long since, ConcurrentHashMap<Group, LongAdder> groups) {
+        LongAdder counter(Group group) {
+            return groups.computeIfAbsent(group, key -> new LongAdder());
+        }
+    }
+
+    /**
+     * A change to the group of one movie, applied to the counts once its transaction commits
+     * @param from the group the movie was in, null if it has been created
+     * @param to the group the movie is now in, null if it has been deleted
+     */
+    private record Move(Group from, Group to, AtomicLong sequence, AtomicReference<Counts> appliedTo) {
+        Move(Group from, Group to) {
+            this(from, to, new AtomicLong(UNKNOWN_SEQUENCE), new AtomicReference<>());
+        }
+
+        /**
+         * Apply the move to a set of counts, unless it was made before they were read or has already been applied
+         * to them or to a later set
+         */
+        void applyTo(Counts counts) {
+            if (sequence.get() <= counts.since()) {
+                return;
+            }
+            Counts applied;
+            do {
+                applied = appliedTo.get();
+                if (applied != null && applied.generation() >= counts.generation()) {
+                    return;
+                }
+            } while (!appliedTo.compareAndSet(applied, counts));
+
+            if (from != null) {
+                counts.counter(from).decrement();
+            }
+            if (to != null) {
+                counts.counter(to).increment();
+            }
+        }
+    }
+
+    private final MovieRepository repository;
+    private final MovieChangeRepository changeRepository;
+    private final TransactionTemplate snapshotTransaction;
+    private final ExecutorService executor = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "movie-statistics");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private volatile Counts counts = new Counts(0, Long.MIN_VALUE, new ConcurrentHashMap<>());
+    // the moves applied while a reconciliation is running, or null when none is
+    private volatile Queue<Move> appliedWhileReconciling;
+    private volatile Instant reconciledAt;
+
+    public MovieStatistics(MovieRepository repository, MovieChangeRepository changeRepository,
+                           PlatformTransactionManager transactionManager) {
+        this.repository = repository;
+        this.changeRepository = changeRepository;
+        this.snapshotTransaction = new TransactionTemplate(transactionManager);
+        this.snapshotTransaction.setReadOnly(true);
+        // every read in the transaction sees the same snapshot, on H2 as well as PostgreSQL
+        this.snapshotTransaction.setIsolationLevel(TransactionDefinition.ISOLATION_SERIALIZABLE);
+    }
+
+    /**
+     * Move a movie from the group it was in to the one it is in now
+     * @param before the movie as it was before the change, or null if it has been created
+     * @param after the movie as it is now stored, or null if it has been deleted
+     */
+    public void movieChanged(MovieDataModel before, MovieDataModel after) {
+        Group from = before == null ? null : groupOf(before.getReleaseDate(), before.isAvailableOnDvd());
+        Group to = after == null ? null : groupOf(after.getReleaseDate(), after.isAvailableOnDvd());
+        record(new Move(from, to));
+    }
+
+    /**
+     * Tag the moves made in the transaction that has just committed with the sequence of its changes.  Published
+     * by MovieChangeLog after the commit, before the moves are applied.
+     */
+    @EventListener
+    public void onChangesRecorded(MovieChangesRecordedEvent event) {
+        @SuppressWarnings("unchecked")
+        List<Move> pending = (List<Move>) TransactionSynchronizationManager.getResource(this);
+        if (pending != null) {
+            pending.forEach(move -> move.sequence().set(event.latestSequence()));
+        }
+    }
+
+    /**
+     * @return the current counts.  Reading them takes no lock and does not touch the database.
+     */
+    public MovieCatalogueStats getStats() {
+        long availableOnDvd = 0;
+        long notAvailableOnDvd = 0;
+        long dvdAvailabilityUnknown = 0;
+        long noReleaseDate = 0;
+        Map<Integer, long[]> years = new TreeMap<>();
+        for (Map.Entry<Group, LongAdder> counter : counts.groups().entrySet()) {
+            long count = counter.getValue().sum();
+            if (count == 0) {
+                continue;
+            }
+
+            Group group = counter.getKey();
+            Boolean dvd = group.availableOnDvd();
+            if (dvd == null) {
+                dvdAvailabilityUnknown += count;
+            } else if (dvd) {
+                availableOnDvd += count;
+            } else {
+                notAvailableOnDvd += count;
+            }
+
+            if (group.year() == null) {
+                noReleaseDate += count;
+            } else {
+                long[] year = years.computeIfAbsent(group.year(), key -> new long[2]);
+                year[0] += count;
+                year[1] += Boolean.TRUE.equals(dvd) ? count : 0;
+            }
+        }
+
+        List<ReleaseYear> releaseYears = new ArrayList<>(years.size());
+        years.forEach((year, totals) -> releaseYears.add(new ReleaseYear(year, totals[0], totals[1])));
+        return new MovieCatalogueStats(availableOnDvd + notAvailableOnDvd + dvdAvailabilityUnknown, availableOnDvd,
+                notAvailableOnDvd, dvdAvailabilityUnknown, noReleaseDate, releaseYears, reconciledAt);
+    }
+
+    /**
+     * Count every movie in the database again, in the background, and replace the counts with the result
+     * @return completes with the number of movies counted
+     */
+    public CompletableFuture<Long> reconcile() {
+        return CompletableFuture.supplyAsync(this::recount, executor);
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void onApplicationReady() {
+        reconcile().exceptionally(e -> {
+            log.error("Could not reconcile the movie statistics", e);
+            return null;
+        });
+    }
+
+    @PreDestroy
+    public void close() {
+        executor.shutdownNow();
+    }
+
+    private long recount() {
+        long started = System.nanoTime();
+        // noted before the snapshot is taken, so every move that commits after it is in the queue
+        Queue<Move> applied = new ConcurrentLinkedQueue<>();
+        appliedWhileReconciling = applied;
+        try {
+            Counts stored = snapshotTransaction.execute(status -> {
+                long since = changeRepository.findLatestSequence();
+                ConcurrentHashMap<Group, LongAdder> groups = new ConcurrentHashMap<>();
+                try (Stream<MovieProjection> movies = repository.streamProjections(COUNTED_FIELDS)) {
+                    movies.forEach(movie -> groups.computeIfAbsent(groupOf(movie.releaseDate(), movie.availableOnDvd()),
+                            key -> new LongAdder()).increment());
+                }
+                return new Counts(counts.generation() + 1, since, groups);
+            });
+            Objects.requireNonNull(stored);
+
+            // a writer that applied its move to the old counts either finds it is in the queue here, or sees the
+            // new counts when it checks them again after adding it
+            counts = stored;
+            applied.forEach(move -> move.applyTo(stored));
+
+            long counted = stored.groups().values().stream().mapToLong(LongAdder::sum).sum();
+            reconciledAt = Instant.now();
+            log.info("Reconciled the movie statistics, counting {} movies up to change {}, in {} ms", counted,
+                    stored.since(), (System.nanoTime() - started) / 1_000_000);
+            return counted;
+        } finally {
+            appliedWhileReconciling = null;
+        }
+    }
+
+    private static Group groupOf(LocalDateTime releaseDate, Boolean availableOnDvd) {
+        return new Group(releaseDate == null ? null : releaseDate.getYear(), availableOnDvd);
+    }
+
+    /**
+     * Apply a move to the counts, and to the new counts if a reconciliation replaces them meanwhile
+     */
+    private void apply(Move move) {
+        Counts current = counts;
+        move.applyTo(current);
+
+        Queue<Move> applied = appliedWhileReconciling;
+        if (applied != null) {
+            applied.add(move);
+        }
+        if (counts != current) {
+            move.applyTo(counts);
+        }
+    }
+
+    /**
+     * Apply a move to the counts when the current transaction commits, or straight away if there is none
+     */
+    private void record(Move move) {
+        if (Objects.equals(move.from(), move.to())) {
+            return;
+        }
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            apply(move);
+            return;
+        }
+
+        pendingMoves().add(move);
+    }
+
+    /**
+     * The moves made in the current transaction.  The first move registers the synchronization that applies them
+     * once the transaction has committed and their sequence is known, or drops them if it does not commit.
+     */
+    @SuppressWarnings("unchecked")
+    private List<Move> pendingMoves() {
+        List<Move> pending = (List<Move>) TransactionSynchronizationManager.getResource(this);
+        if (pending != null) {
+            return pending;
+        }
+
+        List<Move> moves = new ArrayList<>();
+        TransactionSynchronizationManager.bindResource(this, moves);
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCompletion(int status) {
+                // after every afterCommit, so after MovieChangeLog has published the sequence
+                TransactionSynchronizationManager.unbindResourceIfPossible(MovieStatistics.this);
+                if (status == STATUS_COMMITTED) {
+                    moves.forEach(MovieStatistics.this::apply);
+                }
+            }
+        });
+        return moves;
+    }
+}
@@ -0,0 +1,82 @@
+package dev.jonclarke.samplerestservice.transfer;
+
+import dev.jonclarke.samplerestservice.models.MovieDataModel;
+import dev.jonclarke.samplerestservice.serialization.MovieFileFormat;
+import dev.jonclarke.samplerestservice.serialization.MovieFileSerializer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.sql.DataSource;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.LocalDateTime;
+import java.util.stream.Stream;
+
+/**
+ * Writes the whole movie table to a file, for moving the catalogue to another environment.
+ * The rows are read with plain JDBC from a forward-only cursor, fetch-size rows per round trip, and each is written
+ * as soon as it is read, so neither Hibernate nor the size of the table affect the memory used.  The cursor is
+ * opened inside a read-only transaction, which PostgreSQL needs to fetch the rows in batches rather than all at once.
+ * Movies are written in id order, so an export that is interrupted can carry on after the last id written.
+ */
+@Component
+public class MovieExporter {
+
+    private static final Logger log = LoggerFactory.getLogger(MovieExporter.class);
+
+    private static final String EXPORT_QUERY = "select id, title, description, release_date, available_on_dvd "
+            + "from movie_data_model where id > ? order by id";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate readOnlyTransaction;
+    private final MovieFileSerializer serializer;
+
+    public MovieExporter(DataSource dataSource, PlatformTransactionManager transactionManager,
+                         MovieFileSerializer serializer, @Value("${movies.transfer.fetch-size:1000}") int fetchSize) {
+        this.jdbcTemplate = new JdbcTemplate(dataSource);
+        this.jdbcTemplate.setFetchSize(fetchSize);
+        this.readOnlyTransaction = new TransactionTemplate(transactionManager);
+        this.readOnlyTransaction.setReadOnly(true);
+        this.serializer = serializer;
+    }
+
+    /**
+     * Write every movie with an id greater than after, in id order.  The output stream is flushed but not closed.
+     * @param format file format to write
+     * @param after id of the last movie already exported, 0 to export every movie
+     * @param out stream to write to
+     * @return number of movies written
+     * @throws IOException if the output cannot be written
+     */
+    public long export(MovieFileFormat format, int after, OutputStream out) throws IOException {
+        long started = System.nanoTime();
+        Long count;
+        try {
+            count = readOnlyTransaction.execute(status -> {
+                try (Stream<MovieDataModel> movies = jdbcTemplate.queryForStream(EXPORT_QUERY, MovieExporter::mapMovie, after)) {
+                    return serializer.writeAll(movies, format, out);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+
+        log.info("Exported {} movies as {} in {} ms", count, format, (System.nanoTime() - started) / 1_000_000);
+        return count == null ? 0 : count;
+    }
+
+    private static MovieDataModel mapMovie(ResultSet row, int rowNumber) throws SQLException {
+        return new MovieDataModel(row.getInt("id"), row.getString("title"), row.getString("description"),
+                row.getObject("release_date", LocalDateTime.class), row.getObject("available_on_dvd", Boolean.class));
+    }
+}
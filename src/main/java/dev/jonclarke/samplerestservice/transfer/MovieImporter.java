@@ -0,0 +1,370 @@
+package dev.jonclarke.samplerestservice.transfer;
+
+import com.fasterxml.jackson.databind.MappingIterator;
+import dev.jonclarke.samplerestservice.dataaccess.MovieRepository;
+import dev.jonclarke.samplerestservice.events.MovieChangedEvent;
+import dev.jonclarke.samplerestservice.events.MovieChangedEvent.ChangeType;
+import dev.jonclarke.samplerestservice.models.MovieDataModel;
+import dev.jonclarke.samplerestservice.models.MovieImportResult;
+import dev.jonclarke.samplerestservice.serialization.MovieFileFormat;
+import dev.jonclarke.samplerestservice.serialization.MovieFileSerializer;
+import dev.jonclarke.samplerestservice.sharding.ShardedMovieStore;
+import dev.jonclarke.samplerestservice.statistics.MovieStatistics;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceException;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.dao.DataAccessException;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionException;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.sql.DataSource;
+import java.io.IOException;
+import java.io.InputStream;
+import java.sql.Types;
+import java.time.Instant;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.function.BiConsumer;
+
+/**
+ * Loads movies from a file, for moving the catalogue from another environment.
+ * <p>
+ * The file is read one movie at a time and written batch-size movies per transaction, as JDBC batches, so the memory
+ * used does not depend on the size of the file.  Movies keep the id they have in the file: a movie whose id is already
+ * in use replaces the movie with that id, and any other is inserted with it.  Movies with no id are given one from
+ * the id sequence, in blocks read by the importer that lie wholly past every id read from the file so far, so a
+ * movie given an id never clashes with a movie inserted with its own id in the same batch.  Once the file has been
+ * read the id sequence is moved past the largest id imported, so new movies are never given an imported id.
+ * Hibernate allocates ids in blocks, so movies should not be added to other instances while an import with ids is
+ * running.
+ * <p>
+ * As with the batch endpoints, a batch that fails is retried one movie per transaction, so a bad movie only fails
+ * itself.  Every movie imported is recorded in the change feed, so caches, the search index and the read model
+ * pick it up.
+ * <p>
+ * A file can also be imported into the shards of ShardedMovieStore, as new movies given ids by the shards.
+ */
+@Component
+public class MovieImporter {
+
+    private static final Logger log = LoggerFactory.getLogger(MovieImporter.class);
+
+    /**
+     * Most failures described in a result - the rest are only counted
+     */
+    static final int MAX_ERRORS = 100;
+
+    private static final String INSERT_MOVIE = "insert into movie_data_model (title, description, release_date, "
+            + "available_on_dvd, last_modified, title_key, id, version) values (?, ?, ?, ?, ?, ?, ?, 0)";
+    private static final String UPDATE_MOVIE = "update movie_data_model set title = ?, description = ?, "
+            + "release_date = ?, available_on_dvd = ?, last_modified = ?, title_key = ?, version = version + 1 "
+            + "where id = ? and version = ?";
+    private static final int[] INSERT_TYPES = { Types.VARCHAR, Types.VARCHAR, Types.TIMESTAMP, Types.BOOLEAN,
+            Types.TIMESTAMP_WITH_TIMEZONE, Types.VARCHAR, Types.INTEGER };
+    // as the insert, followed by the version the movie was read at
+    private static final int[] UPDATE_TYPES = { Types.VARCHAR, Types.VARCHAR, Types.TIMESTAMP, Types.BOOLEAN,
+            Types.TIMESTAMP_WITH_TIMEZONE, Types.VARCHAR, Types.INTEGER, Types.BIGINT };
+
+    /**
+     * A movie read from the file, the row it was read from (starting at 1, not counting a CSV header), and whether
+     * it had no id in the file, so is to be given one
+     */
+    private record Row(long number, MovieDataModel movie, boolean newId) {
+    }
+
+    /**
+     * What one batch wrote, counted once its transaction has committed
+     */
+    private record BatchResult(int created, int updated, int largestId) {
+    }
+
+    /**
+     * The counts and failures of an import so far
+     */
+    private static class Progress {
+        private long rows;
+        private long created;
+        private long updated;
+        private long failed;
+        private int largestId;
+        private final List<String> errors = new ArrayList<>();
+        // the largest id read from the file so far, and the ids left in the block read for movies with none
+        private int largestIdRead;
+        private long nextNewId;
+        private long newIdBlockEnd;
+
+        void written(BatchResult batch) {
+            created += batch.created();
+            updated += batch.updated();
+            largestId = Math.max(largestId, batch.largestId());
+        }
+
+        void failed(long row, String message) {
+            failed++;
+            if (errors.size() < MAX_ERRORS) {
+                errors.add("Row " + row + ": " + message);
+            }
+        }
+
+        MovieImportResult result() {
+            return new MovieImportResult(rows, created, updated, failed, List.copyOf(errors));
+        }
+    }
+
+    private final MovieRepository repository;
+    private final EntityManager entityManager;
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final ApplicationEventPublisher eventPublisher;
+    private final MovieFileSerializer serializer;
+    private final MovieStatistics statistics;
+    private final int batchSize;
+
+    public MovieImporter(MovieRepository repository, EntityManager entityManager, DataSource dataSource,
+                         PlatformTransactionManager transactionManager, ApplicationEventPublisher eventPublisher,
+                         MovieFileSerializer serializer, MovieStatistics statistics,
+                         @Value("${movies.transfer.batch-size:1000}") int batchSize) {
+        this.repository = repository;
+        this.entityManager = entityManager;
+        this.jdbcTemplate = new JdbcTemplate(dataSource);
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.eventPublisher = eventPublisher;
+        this.serializer = serializer;
+        this.statistics = statistics;
+        this.batchSize = batchSize;
+    }
+
+    /**
+     * Import every movie in a file.  The input stream is closed once it has been read.
+     * @param in file to read
+     * @param format format of the file
+     * @return the number of movies read, created, updated and failed
+     * @throws IOException if the file cannot be opened
+     */
+    public MovieImportResult importMovies(InputStream in, MovieFileFormat format) throws IOException {
+        return importMovies(in, format, this::writeBatch);
+    }
+
+    /**
+     * Import every movie in a file into the shards, as new movies.  Any id in the file is not kept, as each shard
+     * gives out its own ids.  The input stream is closed once it has been read.
+     * @param in file to read
+     * @param format format of the file
+     * @param shards where to add the movies
+     * @return the number of movies read, created and failed
+     * @throws IOException if the file cannot be opened
+     */
+    public MovieImportResult importMovies(InputStream in, MovieFileFormat format, ShardedMovieStore shards)
+            throws IOException {
+        return importMovies(in, format, (batch, progress) -> writeBatch(batch, progress, shards));
+    }
+
+    private MovieImportResult importMovies(InputStream in, MovieFileFormat format,
+                                           BiConsumer<List<Row>, Progress> writer) throws IOException {
+        long started = System.nanoTime();
+        Progress progress = new Progress();
+        List<Row> batch = new ArrayList<>(batchSize);
+
+        try (MappingIterator<MovieDataModel> movies = serializer.readAll(in, format)) {
+            while (true) {
+                try {
+                    if (!movies.hasNextValue()) {
+                        break;
+                    }
+                } catch (IOException | RuntimeException e) {
+                    // the rest of the file cannot be read, so write what has been read so far and report where it stopped
+                    progress.failed(progress.rows + 1, "Could not read file: " + e.getMessage());
+                    break;
+                }
+
+                long row = ++progress.rows;
+                MovieDataModel movie;
+                try {
+                    movie = movies.nextValue();
+                } catch (IOException | RuntimeException e) {
+                    progress.failed(row, "Could not read movie: " + e.getMessage());
+                    continue;
+                }
+                if (movie == null) {
+                    progress.failed(row, "Missing movie");
+                    continue;
+                }
+
+                batch.add(new Row(row, movie, movie.getId() <= 0));
+                if (batch.size() == batchSize) {
+                    writer.accept(batch, progress);
+                    batch.clear();
+                }
+            }
+        }
+
+        writer.accept(batch, progress);
+        if (progress.largestId > 0) {
+            reserveImportedIds(progress.largestId);
+        }
+
+        MovieImportResult result = progress.result();
+        log.info("Imported {} movies from {} rows ({} created, {} updated, {} failed) in {} ms", result.created()
+                + result.updated(), result.rows(), result.created(), result.updated(), result.failed(),
+                (System.nanoTime() - started) / 1_000_000);
+        return result;
+    }
+
+    private void writeBatch(List<Row> batch, Progress progress) {
+        if (batch.isEmpty()) {
+            return;
+        }
+
+        try {
+            progress.written(transactionTemplate.execute(status -> write(batch, progress)));
+        } catch (DataAccessException | PersistenceException | TransactionException e) {
+            if (batch.size() == 1) {
+                progress.failed(batch.get(0).number(), e.getMessage());
+                return;
+            }
+
+            for (Row row : batch) {
+                writeBatch(List.of(row), progress);
+            }
+        }
+    }
+
+    /**
+     * Add one batch of movies to the shards.  Each shard's part of the batch is written in a transaction of its own,
+     * so a batch that fails is not retried, as some of it may have been written.
+     */
+    private void writeBatch(List<Row> batch, Progress progress, ShardedMovieStore shards) {
+        if (batch.isEmpty()) {
+            return;
+        }
+
+        try {
+            shards.insertAll(batch.stream().map(Row::movie).toList());
+            progress.written(new BatchResult(batch.size(), 0, 0));
+        } catch (DataAccessException | TransactionException e) {
+            batch.forEach(row -> progress.failed(row.number(), e.getMessage()));
+        }
+    }
+
+    /**
+     * Write one batch of movies, inside its transaction
+     */
+    private BatchResult write(List<Row> batch, Progress progress) {
+        List<Integer> ids = batch.stream().filter(row -> !row.newId()).map(row -> row.movie().getId()).distinct().toList();
+        ids.forEach(id -> progress.largestIdRead = Math.max(progress.largestIdRead, id));
+        // the movies as they were, to take them out of their old groups in the statistics.  They are not locked: each
+        // update only applies at the version read here, and if a movie has changed since the batch is retried
+        Map<Integer, MovieDataModel> stored = new HashMap<>();
+        if (!ids.isEmpty()) {
+            repository.findAllById(ids).forEach(existing -> stored.put(existing.getId(), existing));
+        }
+
+        OffsetDateTime lastModified = Instant.now().atOffset(ZoneOffset.UTC);
+        List<Object[]> inserts = new ArrayList<>();
+        List<Object[]> updates = new ArrayList<>();
+        List<MovieChangedEvent> changes = new ArrayList<>(batch.size());
+        int largestId = 0;
+        for (Row row : batch) {
+            MovieDataModel movie = row.movie();
+            if (row.newId()) {
+                // a new id each time, in case the movie is being retried after its batch failed
+                movie.setId(nextNewId(progress));
+                inserts.add(insertValues(movie, lastModified));
+                movie.setVersion(0);
+                changes.add(new MovieChangedEvent(ChangeType.CREATED, movie.getId()));
+                statistics.movieChanged(null, movie);
+                continue;
+            }
+
+            // a movie listed twice in the file is inserted the first time and replaced the second
+            MovieDataModel before = stored.put(movie.getId(), movie);
+            if (before == null) {
+                inserts.add(insertValues(movie, lastModified));
+                movie.setVersion(0);
+                changes.add(new MovieChangedEvent(ChangeType.CREATED, movie.getId()));
+                largestId = Math.max(largestId, movie.getId());
+            } else {
+                updates.add(new Object[] { movie.getTitle(), movie.getDescription(), movie.getReleaseDate(),
+                        movie.isAvailableOnDvd(), lastModified, MovieDataModel.toTitleKey(movie.getTitle()), movie.getId(),
+                        before.getVersion() });
+                movie.setVersion(before.getVersion() + 1);
+                changes.add(new MovieChangedEvent(ChangeType.UPDATED, movie.getId()));
+            }
+            statistics.movieChanged(before, movie);
+        }
+
+        // the inserts go first, so a movie inserted and then replaced in the same batch ends up replaced
+        if (!inserts.isEmpty()) {
+            jdbcTemplate.batchUpdate(INSERT_MOVIE, inserts, INSERT_TYPES);
+        }
+        if (!updates.isEmpty()) {
+            int[] updated = jdbcTemplate.batchUpdate(UPDATE_MOVIE, updates, UPDATE_TYPES);
+            if (Arrays.stream(updated).anyMatch(count -> count == 0)) {
+                // changed since it was read, so its old group is not known - the batch is retried a movie at a time
+                throw new OptimisticLockingFailureException("A movie was changed while it was being imported");
+            }
+        }
+        entityManager.clear();
+        changes.forEach(eventPublisher::publishEvent);
+
+        int created = (int) changes.stream().filter(change -> change.type() == ChangeType.CREATED).count();
+        return new BatchResult(created, changes.size() - created, largestId);
+    }
+
+    private static Object[] insertValues(MovieDataModel movie, OffsetDateTime lastModified) {
+        return new Object[] { movie.getTitle(), movie.getDescription(), movie.getReleaseDate(),
+                movie.isAvailableOnDvd(), lastModified, MovieDataModel.toTitleKey(movie.getTitle()), movie.getId() };
+    }
+
+    /**
+     * @return an id for a movie with none in the file, past every id read from the file so far.  A block of ids is
+     * read from the sequence at a time, as Hibernate does, and the rest of a block is dropped once an id in the file
+     * reaches it.
+     */
+    private int nextNewId(Progress progress) {
+        if (progress.nextNewId <= progress.largestIdRead) {
+            progress.nextNewId = progress.newIdBlockEnd;
+        }
+        if (progress.nextNewId == progress.newIdBlockEnd) {
+            long blockEnd = reserveImportedIds(progress.largestIdRead);
+            // the first value of a new sequence is its start, with no block before it
+            progress.nextNewId = Math.max(1, blockEnd - MovieDataModel.ID_ALLOCATION_SIZE + 1);
+            progress.newIdBlockEnd = blockEnd + 1;
+        }
+        return Math.toIntExact(progress.nextNewId++);
+    }
+
+    /**
+     * Move the id sequence past an imported id, if it is not already, and take a block of ids from it.  Hibernate
+     * takes a block of ids at a time, each block ending at the value it reads from the sequence, so the sequence is
+     * moved a whole block past the id.  The sequence is only ever moved forward, as this instance may be part way
+     * through a block already.
+     * @return the last id of the block taken, which lies wholly past the imported id
+     */
+    private long reserveImportedIds(int largestId) {
+        long restartWith = (long) largestId + MovieDataModel.ID_ALLOCATION_SIZE;
+        String nextValueQuery = entityManager.getEntityManagerFactory().unwrap(SessionFactoryImplementor.class)
+                .getJdbcServices().getDialect().getSequenceSupport().getSequenceNextValString(MovieDataModel.ID_SEQUENCE);
+        long next = Objects.requireNonNull(jdbcTemplate.queryForObject(nextValueQuery, Long.class));
+        if (next < restartWith) {
+            jdbcTemplate.execute("alter sequence " + MovieDataModel.ID_SEQUENCE + " restart with " + restartWith);
+            log.info("Moved the movie id sequence to {}, past the largest id imported", restartWith);
+            next = Objects.requireNonNull(jdbcTemplate.queryForObject(nextValueQuery, Long.class));
+        }
+        return next;
+    }
+}
@@ -0,0 +1,83 @@
+package dev.jonclarke.samplerestservice.transfer;
+
+import dev.jonclarke.samplerestservice.dataaccess.MovieRepository;
+import dev.jonclarke.samplerestservice.models.MovieImportResult;
+import dev.jonclarke.samplerestservice.serialization.MovieFileFormat;
+import dev.jonclarke.samplerestservice.sharding.ShardedMovieStore;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.core.io.Resource;
+import org.springframework.core.io.ResourceLoader;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Imports a movie file when the application starts with no movies - the sample movies by default, or an export from
+ * another environment.  The file can be on the classpath (classpath:) or the file system (file:), and its format is
+ * taken from its name: .ndjson or .csv, optionally followed by .gz if it is gzip compressed.
+ * Started with movies.startup.exit-when-ready as well, the application loads the file and stops without serving
+ * any requests.
+ * With movies.sharding.enabled, the file is imported into the shards when they have no movies.
+ */
+@Component
+public class MovieStartupImport implements ApplicationRunner {
+
+    private static final Logger log = LoggerFactory.getLogger(MovieStartupImport.class);
+
+    private static final int GZIP_BUFFER_SIZE = 64 * 1024;
+
+    private final MovieImporter importer;
+    private final MovieRepository repository;
+    private final ResourceLoader resourceLoader;
+    private final String location;
+    // null unless movies.sharding.enabled is set
+    private final ShardedMovieStore shards;
+
+    public MovieStartupImport(MovieImporter importer, MovieRepository repository, ResourceLoader resourceLoader,
+                              @Value("${movies.transfer.startup-file:}") String location,
+                              ObjectProvider<ShardedMovieStore> shards) {
+        this.importer = importer;
+        this.repository = repository;
+        this.resourceLoader = resourceLoader;
+        this.location = location;
+        this.shards = shards.getIfAvailable();
+    }
+
+    @Override
+    public void run(ApplicationArguments args) throws IOException {
+        if (location.isBlank()) {
+            return;
+        }
+
+        // a persistent database keeps the movies from previous runs.  Looking for one movie is cheaper than a count
+        boolean hasMovies = shards != null ? shards.count() > 0
+                : !repository.findByIdGreaterThanOrderByIdAsc(0, PageRequest.ofSize(1)).isEmpty();
+        if (hasMovies) {
+            log.info("Not importing {} as there are movies already", location);
+            return;
+        }
+
+        Resource file = resourceLoader.getResource(location);
+        String fileName = file.getFilename() == null ? location : file.getFilename();
+        MovieFileFormat format = MovieFileFormat.forFileName(fileName).orElseThrow(() -> new IllegalStateException(
+                "Cannot tell the format of " + location + " from its name - expected .ndjson or .csv, optionally followed by .gz"));
+
+        try (InputStream in = MovieFileFormat.isGzipped(fileName)
+                ? new GZIPInputStream(file.getInputStream(), GZIP_BUFFER_SIZE) : file.getInputStream()) {
+            MovieImportResult result = shards != null ? importer.importMovies(in, format, shards)
+                    : importer.importMovies(in, format);
+            if (result.failed() > 0) {
+                log.warn("{} of the {} rows in {} could not be imported: {}", result.failed(), result.rows(), location,
+                        result.errors());
+            }
+        }
+    }
+}
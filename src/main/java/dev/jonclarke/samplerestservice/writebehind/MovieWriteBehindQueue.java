@@ -0,0 +1,207 @@
+package dev.jonclarke.samplerestservice.writebehind;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import dev.jonclarke.samplerestservice.dataaccess.MovieBatchProcessor;
+import dev.jonclarke.samplerestservice.models.MovieBatchResult;
+import dev.jonclarke.samplerestservice.models.MovieDataModel;
+import dev.jonclarke.samplerestservice.writebehind.MovieWriteStatus.State;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Accepts new movies into a bounded in-memory queue and writes them in the background, for clients that load
+ * large numbers of movies and do not need to wait for each one to be written.
+ * <p>
+ * A single writer thread takes every movie waiting in the queue (up to the batch size) and inserts them together
+ * with the MovieBatchProcessor, so under load each transaction and JDBC batch covers many requests.  The result of
+ * each movie is kept for a while under the tracking id it was given when it was accepted.  When the queue is full
+ * new movies are refused rather than queued, so the client backs off instead of the queue growing without limit.
+ * <p>
+ * The status of a movie that has not been written yet is always kept, and there can be no more of those than fit
+ * in the queue plus one batch being written.  Results are kept for the time to live, but only up to a maximum
+ * number, so a high rate of writes cannot fill the heap with them - once that many are held, the results looked up
+ * least are dropped early, and their tracking ids are no longer known.
+ * <p>
+ * On shutdown new movies are refused, and every movie already accepted is written before the writer stops.
+ * Accepted movies are only held in memory, so they are lost if the process is killed without a graceful shutdown.
+ */
+@Component
+@ConditionalOnProperty("movies.write-behind.enabled")
+public class MovieWriteBehindQueue {
+
+    private static final Logger log = LoggerFactory.getLogger(MovieWriteBehindQueue.class);
+
+    private record PendingWrite(String trackingId, MovieDataModel movie) {
+    }
+
+    private final MovieBatchProcessor processor;
+    private final BlockingQueue<PendingWrite> queue;
+    private final int capacity;
+    private final int batchSize;
+    private final Duration shutdownTimeout;
+    // movies accepted but not written yet, bounded by the queue
+    private final Map<String, MovieWriteStatus> inProgress = new ConcurrentHashMap<>();
+    private final Cache<String, MovieWriteStatus> results;
+    private final Counter written;
+    private final Counter failed;
+    private final Counter rejected;
+    private final ExecutorService writer = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "movie-write-behind");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private volatile boolean accepting = true;
+
+    public MovieWriteBehindQueue(MovieBatchProcessor processor,
+                                 @Value("${movies.write-behind.queue-capacity:10000}") int capacity,
+                                 @Value("${movies.write-behind.batch-size:500}") int batchSize,
+                                 @Value("${movies.write-behind.status-time-to-live:10m}") Duration statusTimeToLive,
+                                 @Value("${movies.write-behind.status-maximum-size:100000}") long statusMaximumSize,
+                                 @Value("${movies.write-behind.shutdown-timeout:30s}") Duration shutdownTimeout,
+                                 MeterRegistry meterRegistry) {
+        this.processor = processor;
+        this.queue = new ArrayBlockingQueue<>(capacity);
+        this.capacity = capacity;
+        this.batchSize = batchSize;
+        this.shutdownTimeout = shutdownTimeout;
+        this.results = Caffeine.newBuilder()
+                .expireAfterWrite(statusTimeToLive)
+                .maximumSize(statusMaximumSize)
+                // evict on the writer thread, rather than handing the work to the common pool for every result
+                .executor(Runnable::run)
+                .build();
+        Gauge.builder("movies.write.behind.queued", queue, BlockingQueue::size)
+                .description("Movies waiting to be written")
+                .register(meterRegistry);
+        this.written = writeCounter(meterRegistry, "written");
+        this.failed = writeCounter(meterRegistry, "failed");
+        this.rejected = writeCounter(meterRegistry, "rejected");
+        writer.execute(this::writeQueued);
+    }
+
+    /**
+     * Queue a new movie to be written
+     * @param movie movie to insert.  Any id supplied with it is ignored
+     * @return status of the queued movie, or null if the queue is full or shutting down
+     */
+    public MovieWriteStatus submit(MovieDataModel movie) {
+        if (!accepting) {
+            rejected.increment();
+            return null;
+        }
+
+        PendingWrite write = new PendingWrite(UUID.randomUUID().toString(), movie);
+        MovieWriteStatus status = MovieWriteStatus.queued(write.trackingId());
+        inProgress.put(write.trackingId(), status);
+        // a movie queued as the writer stops is only accepted if the writer takes it
+        if (!queue.offer(write) || (!accepting && queue.remove(write))) {
+            inProgress.remove(write.trackingId());
+            rejected.increment();
+            return null;
+        }
+        return status;
+    }
+
+    /**
+     * @param trackingId id given when the movie was accepted
+     * @return the progress of the movie, or null if it is not known or its result has expired or been dropped
+     */
+    public MovieWriteStatus getStatus(String trackingId) {
+        // the result is recorded before the movie stops being in progress, so one of the two is always found
+        MovieWriteStatus status = inProgress.get(trackingId);
+        return status != null ? status : results.getIfPresent(trackingId);
+    }
+
+    public MovieWriteQueueStats getStats() {
+        return new MovieWriteQueueStats(queue.size(), capacity, (long) written.count(), (long) failed.count(),
+                (long) rejected.count());
+    }
+
+    /**
+     * Stop accepting movies, and wait for those already accepted to be written
+     */
+    @PreDestroy
+    public void close() throws InterruptedException {
+        accepting = false;
+        writer.shutdown();
+        if (!writer.awaitTermination(shutdownTimeout.toMillis(), TimeUnit.MILLISECONDS)) {
+            log.error("{} queued movies were not written before shutdown", queue.size());
+            writer.shutdownNow();
+        }
+    }
+
+    /**
+     * The writer thread.  Runs until the queue has been emptied after shutdown has started.
+     */
+    private void writeQueued() {
+        List<PendingWrite> batch = new ArrayList<>(batchSize);
+        while (true) {
+            try {
+                PendingWrite first = queue.poll(100, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    if (!accepting) {
+                        return;
+                    }
+                    continue;
+                }
+
+                batch.add(first);
+                queue.drainTo(batch, batchSize - 1);
+                write(batch);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (RuntimeException e) {
+                log.error("Could not write {} queued movies", batch.size(), e);
+                batch.forEach(write -> recordResult(write, MovieBatchResult.failed(0, null, e.getMessage())));
+            } finally {
+                batch.clear();
+            }
+        }
+    }
+
+    private void write(List<PendingWrite> batch) {
+        List<MovieBatchResult> results = processor.create(batch.stream().map(PendingWrite::movie).iterator());
+        for (int i = 0; i < batch.size(); i++) {
+            recordResult(batch.get(i), results.get(i));
+        }
+    }
+
+    private void recordResult(PendingWrite write, MovieBatchResult result) {
+        if (result.status() == MovieBatchResult.Status.CREATED) {
+            written.increment();
+            results.put(write.trackingId(), new MovieWriteStatus(write.trackingId(), State.WRITTEN, result.id(), null));
+        } else {
+            failed.increment();
+            results.put(write.trackingId(), new MovieWriteStatus(write.trackingId(), State.FAILED, null, result.message()));
+        }
+        inProgress.remove(write.trackingId());
+    }
+
+    private static Counter writeCounter(MeterRegistry meterRegistry, String result) {
+        return Counter.builder("movies.write.behind.writes")
+                .description("Movies accepted by the write-behind queue, by outcome")
+                .tag("result", result)
+                .register(meterRegistry);
+    }
+}
@@ -0,0 +1,12 @@
+package dev.jonclarke.samplerestservice.writebehind;
+
+/**
+ * Snapshot of the write-behind queue
+ * @param queued number of movies waiting to be written
+ * @param capacity maximum number of movies that can wait before new ones are refused
+ * @param written number of movies written since the application started
+ * @param failed number of movies that could not be written since the application started
+ * @param rejected number of movies refused because the queue was full
+ */
+public record MovieWriteQueueStats(int queued, int capacity, long written, long failed, long rejected) {
+}
@@ -0,0 +1,21 @@
+package dev.jonclarke.samplerestservice.writebehind;
+
+/**
+ * Progress of a movie accepted by the write-behind queue
+ * @param trackingId id given to the client when the movie was accepted
+ * @param state whether the movie is still queued, written or failed
+ * @param id id of the movie once it has been written, null otherwise
+ * @param message reason the write failed, null otherwise
+ */
+public record MovieWriteStatus(String trackingId, State state, Integer id, String message) {
+
+    public enum State {
+        QUEUED,
+        WRITTEN,
+        FAILED
+    }
+
+    static MovieWriteStatus queued(String trackingId) {
+        return new MovieWriteStatus(trackingId, State.QUEUED, null, null);
+    }
+}
@@ -0,0 +1,20 @@
+-- Movies, as mapped by MovieDataModel.  Written in SQL common to H2 and PostgreSQL.
+
+-- each value of the sequence covers a block of 50 ids (MovieDataModel.ID_ALLOCATION_SIZE)
+create sequence movie_id_seq start with 1 increment by 50;
+
+create table movie_data_model (
+    id integer not null,
+    title varchar(255),
+    description varchar(255),
+    release_date timestamp(6),
+    available_on_dvd boolean,
+    version bigint not null,
+    last_modified timestamp(6) with time zone,
+    title_key varchar(255),
+    primary key (id)
+);
+
+create index idx_movie_release_date on movie_data_model (release_date);
+create index idx_movie_dvd_release_date on movie_data_model (available_on_dvd, release_date);
+create index idx_movie_title_key on movie_data_model (title_key);
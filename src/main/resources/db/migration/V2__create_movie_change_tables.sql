@@ -0,0 +1,21 @@
+-- Change feed (transactional outbox).  Every create, update and delete of a movie adds a row to movie_change in the
+-- same transaction, numbered from the single row of movie_change_sequence.  The row is locked from the point the
+-- numbers are taken until the transaction commits, so changes become visible in sequence order.
+
+create table movie_change (
+    sequence bigint not null,
+    movie_id integer not null,
+    change_type varchar(16) not null,
+    changed_at timestamp(6) with time zone not null,
+    primary key (sequence)
+);
+
+create index idx_movie_change_changed_at on movie_change (changed_at);
+
+create table movie_change_sequence (
+    id integer not null,
+    last_sequence bigint not null,
+    primary key (id)
+);
+
+insert into movie_change_sequence (id, last_sequence) values (1, 0);
@@ -0,0 +1,181 @@
+package dev.jonclarke.samplerestservice;
+
+import static org.hamcrest.Matchers.*;
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.when;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
+
+import dev.jonclarke.samplerestservice.dataaccess.MovieBatchProcessor;
+import dev.jonclarke.samplerestservice.models.MovieBatchResult;
+import dev.jonclarke.samplerestservice.models.MovieBatchResult.Status;
+import dev.jonclarke.samplerestservice.models.MovieDataModel;
+import dev.jonclarke.samplerestservice.serialization.MovieSerializer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.mockito.invocation.InvocationOnMock;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.context.annotation.Import;
+import org.springframework.http.MediaType;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.request.MockHttpServletRequestBuilder;
+import org.springframework.test.web.servlet.request.MockMvcRequestBuilders;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * Unit Tests for the MovieBatchController.
+ * The batch processor is mocked to report every item it is given as successful, so these tests cover
+ * reading each supported request format and writing the results.
+ */
+@WebMvcTest(MovieBatchController.class)
+@Import({MovieSerializer.class, SimpleMeterRegistry.class})
+public class MovieBatchControllerTest {
+    @Autowired
+    private MockMvc mockMvc;
+    @MockBean
+    private MovieBatchProcessor processor;
+
+    //******************************************************************
+    // Add unit tests
+    //******************************************************************
+
+    @Test
+    public void addBatch_JsonArray_ExpectResultPerItem() throws Exception {
+        List<MovieDataModel> received = new ArrayList<>();
+        when(processor.create(any())).thenAnswer(invocation -> succeed(invocation, Status.CREATED, received));
+
+        MockHttpServletRequestBuilder mockRequest = MockMvcRequestBuilders.post("/movies/batch")
+                .contentType(MediaType.APPLICATION_JSON)
+                .accept(MediaType.APPLICATION_JSON)
+                .content("[{\"title\": \"title 1\"}, {\"title\": \"title 2\"}]");
+
+        this.mockMvc.perform(mockRequest)
+                .andExpect(status().isOk())
+                .andExpect(content().contentType(MediaType.APPLICATION_JSON))
+                .andExpect(jsonPath("$", hasSize(2)))
+                .andExpect(jsonPath("$[0].index", is(0)))
+                .andExpect(jsonPath("$[0].status", is("CREATED")))
+                .andExpect(jsonPath("$[1].index", is(1)));
+
+        assertEquals(List.of("title 1", "title 2"), received.stream().map(MovieDataModel::getTitle).toList());
+    }
+
+    @Test
+    public void addBatch_NdJson_ExpectResultPerItem() throws Exception {
+        List<MovieDataModel> received = new ArrayList<>();
+        when(processor.create(any())).thenAnswer(invocation -> succeed(invocation, Status.CREATED, received));
+
+        MockHttpServletRequestBuilder mockRequest = MockMvcRequestBuilders.post("/movies/batch")
+                .contentType(MediaType.APPLICATION_NDJSON)
+                .accept(MediaType.APPLICATION_JSON)
+                .content("{\"title\": \"title 1\"}\n{\"title\": \"title 2\"}\n{\"title\": \"title 3\"}\n");
+
+        this.mockMvc.perform(mockRequest)
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$", hasSize(3)));
+
+        assertEquals(List.of("title 1", "title 2", "title 3"), received.stream().map(MovieDataModel::getTitle).toList());
+    }
+
+    @Test
+    public void addBatchAsXml_XmlList_ExpectResultPerItemInXmlObject() throws Exception {
+        List<MovieDataModel> received = new ArrayList<>();
+        when(processor.create(any())).thenAnswer(invocation -> succeed(invocation, Status.CREATED, received));
+
+        MockHttpServletRequestBuilder mockRequest = MockMvcRequestBuilders.post("/movies/batch")
+                .contentType(MediaType.APPLICATION_XML)
+                .accept(MediaType.APPLICATION_XML)
+                .content("<List><item><title>title 1</title></item><item><title>title 2</title></item></List>");
+
+        this.mockMvc.perform(mockRequest)
+                .andExpect(status().isOk())
+                .andExpect(content().contentType(MediaType.APPLICATION_XML))
+                .andExpect(xpath("/List/*").nodeCount(is(2)))
+                .andExpect(xpath("/List/item[2]/status").string(is("CREATED")));
+
+        assertEquals(List.of("title 1", "title 2"), received.stream().map(MovieDataModel::getTitle).toList());
+    }
+
+    @Test
+    public void addBatch_PassInvalidBody_ExpectFailure() throws Exception {
+        MockHttpServletRequestBuilder mockRequest = MockMvcRequestBuilders.post("/movies/batch")
+                .contentType(MediaType.APPLICATION_JSON)
+                .accept(MediaType.APPLICATION_JSON)
+                .content("INVALID");
+
+        this.mockMvc.perform(mockRequest)
+                .andExpect(status().isBadRequest())
+                .andExpect(result ->
+                        assertTrue(result.getResolvedException() instanceof InvalidMovieBatchException));
+    }
+
+    //******************************************************************
+    // Update unit tests
+    //******************************************************************
+
+    @Test
+    public void updateBatch_JsonArray_ExpectResultPerItem() throws Exception {
+        List<MovieDataModel> received = new ArrayList<>();
+        when(processor.update(any())).thenAnswer(invocation -> succeed(invocation, Status.UPDATED, received));
+
+        MockHttpServletRequestBuilder mockRequest = MockMvcRequestBuilders.put("/movies/batch")
+                .contentType(MediaType.APPLICATION_JSON)
+                .accept(MediaType.APPLICATION_JSON)
+                .content("[{\"id\": 123, \"title\": \"new title\"}]");
+
+        this.mockMvc.perform(mockRequest)
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$", hasSize(1)))
+                .andExpect(jsonPath("$[0].status", is("UPDATED")));
+
+        assertEquals(123, received.get(0).getId());
+    }
+
+    //******************************************************************
+    // Delete unit tests
+    //******************************************************************
+
+    @Test
+    public void deleteBatch_JsonArrayOfIds_ExpectResultPerItem() throws Exception {
+        List<Integer> received = new ArrayList<>();
+        when(processor.delete(any())).thenAnswer(invocation -> succeed(invocation, Status.DELETED, received));
+
+        MockHttpServletRequestBuilder mockRequest = MockMvcRequestBuilders.delete("/movies/batch")
+                .contentType(MediaType.APPLICATION_JSON)
+                .accept(MediaType.APPLICATION_JSON)
+                .content("[123, 456]");
+
+        this.mockMvc.perform(mockRequest)
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$", hasSize(2)))
+                .andExpect(jsonPath("$[1].status", is("DELETED")));
+
+        assertEquals(List.of(123, 456), received);
+    }
+
+    //******************************************************************
+    // helper methods
+    //******************************************************************
+
+    /**
+     * Answer a call to the batch processor by reporting every item as successful
+     * @param invocation the mocked call, whose only argument is the iterator of items
+     * @param status status to report for each item
+     * @param received list the items are collected into, so the test can check what was read from the request
+     * @return one result per item
+     */
+    private static <T> List<MovieBatchResult> succeed(InvocationOnMock invocation, Status status, List<T> received) {
+        Iterator<T> items = invocation.getArgument(0);
+        List<MovieBatchResult> results = new ArrayList<>();
+        while (items.hasNext()) {
+            received.add(items.next());
+            results.add(MovieBatchResult.of(results.size(), null, status));
+        }
+        return results;
+    }
+}
@@ -0,0 +1,161 @@
+package dev.jonclarke.samplerestservice;
+
+import static org.hamcrest.Matchers.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
+
+import dev.jonclarke.samplerestservice.changefeed.MovieChangeFeed;
+import dev.jonclarke.samplerestservice.events.MovieChangedEvent.ChangeType;
+import dev.jonclarke.samplerestservice.models.MovieChange;
+import dev.jonclarke.samplerestservice.serialization.MovieSerializer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.context.annotation.Import;
+import org.springframework.http.MediaType;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.web.context.request.async.DeferredResult;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+
+/**
+ * Unit Tests for the MovieChangeController.
+ * The change feed is mocked, so these tests cover the request checks and the position the feed is read from.
+ */
+@WebMvcTest(MovieChangeController.class)
+@Import({MovieSerializer.class, SimpleMeterRegistry.class})
+public class MovieChangeControllerTest {
+    @Autowired
+    private MockMvc mockMvc;
+    @MockBean
+    private MovieChangeFeed changeFeed;
+
+    //******************************************************************
+    // Long-poll unit tests
+    //******************************************************************
+
+    @Test
+    public void getChanges_ChangesAfterSince_ExpectChangesInOrder() throws Exception {
+        when(changeFeed.getOldestAvailableSequence()).thenReturn(1L);
+        when(changeFeed.getLatestSequence()).thenReturn(12L);
+        when(changeFeed.poll(10, MovieChangeController.DEFAULT_CHANGE_COUNT,
+                Duration.ofSeconds(MovieChangeController.DEFAULT_WAIT_SECONDS)))
+                .thenReturn(result(List.of(buildChange(11, ChangeType.CREATED), buildChange(12, ChangeType.DELETED))));
+
+        MvcResult result = this.mockMvc.perform(get("/movies/changes?since=10"))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+
+        this.mockMvc.perform(asyncDispatch(result))
+                .andExpect(status().isOk())
+                .andExpect(content().contentType(MediaType.APPLICATION_JSON))
+                .andExpect(jsonPath("$", hasSize(2)))
+                .andExpect(jsonPath("$[0].sequence", is(11)))
+                .andExpect(jsonPath("$[0].changeType", is("CREATED")))
+                .andExpect(jsonPath("$[1].sequence", is(12)))
+                .andExpect(jsonPath("$[1].changeType", is("DELETED")));
+    }
+
+    @Test
+    public void getChanges_NoSince_ExpectPollFromLatest() throws Exception {
+        when(changeFeed.getLatestSequence()).thenReturn(42L);
+        when(changeFeed.poll(42, 5, Duration.ZERO)).thenReturn(result(List.of()));
+
+        MvcResult result = this.mockMvc.perform(get("/movies/changes?limit=5&wait=0"))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+
+        this.mockMvc.perform(asyncDispatch(result))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$", hasSize(0)));
+        verify(changeFeed, never()).getOldestAvailableSequence();
+    }
+
+    @Test
+    public void getChanges_SinceOlderThanChangesHeld_ExpectGone() throws Exception {
+        when(changeFeed.getOldestAvailableSequence()).thenReturn(100L);
+        when(changeFeed.getLatestSequence()).thenReturn(150L);
+
+        this.mockMvc.perform(get("/movies/changes?since=50"))
+                .andExpect(status().isGone());
+        verify(changeFeed, never()).poll(anyLong(), anyInt(), any());
+    }
+
+    @Test
+    public void getChanges_SinceAfterLatest_ExpectGone() throws Exception {
+        when(changeFeed.getOldestAvailableSequence()).thenReturn(1L);
+        when(changeFeed.getLatestSequence()).thenReturn(10L);
+
+        this.mockMvc.perform(get("/movies/changes?since=11"))
+                .andExpect(status().isGone());
+    }
+
+    @Test
+    public void getChanges_InvalidLimitOrWait_ExpectBadRequest() throws Exception {
+        this.mockMvc.perform(get("/movies/changes?since=1&limit=0"))
+                .andExpect(status().isBadRequest());
+        this.mockMvc.perform(get("/movies/changes?since=1&limit=" + (MovieChangeController.MAX_CHANGE_COUNT + 1)))
+                .andExpect(status().isBadRequest());
+        this.mockMvc.perform(get("/movies/changes?since=1&wait=" + (MovieChangeController.MAX_WAIT_SECONDS + 1)))
+                .andExpect(status().isBadRequest());
+        this.mockMvc.perform(get("/movies/changes?since=-1"))
+                .andExpect(status().isBadRequest());
+    }
+
+    //******************************************************************
+    // Event stream unit tests
+    //******************************************************************
+
+    @Test
+    public void streamChanges_LastEventId_ExpectStreamFromLastEventId() throws Exception {
+        when(changeFeed.getOldestAvailableSequence()).thenReturn(1L);
+        when(changeFeed.getLatestSequence()).thenReturn(30L);
+        when(changeFeed.subscribe(anyLong())).thenReturn(new SseEmitter());
+
+        this.mockMvc.perform(get("/movies/changes?since=5")
+                        .accept(MediaType.TEXT_EVENT_STREAM)
+                        .header("Last-Event-ID", "20"))
+                .andExpect(request().asyncStarted());
+        verify(changeFeed).subscribe(20);
+    }
+
+    //******************************************************************
+    // Latest sequence unit tests
+    //******************************************************************
+
+    @Test
+    public void getLatestSequence_ExpectLatestFromFeed() throws Exception {
+        when(changeFeed.getLatestSequence()).thenReturn(77L);
+
+        this.mockMvc.perform(get("/movies/changes/latest"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.sequence", is(77)));
+    }
+
+    //******************************************************************
+    // helper methods
+    //******************************************************************
+
+    private static DeferredResult<List<MovieChange>> result(List<MovieChange> changes) {
+        DeferredResult<List<MovieChange>> result = new DeferredResult<>();
+        result.setResult(changes);
+        return result;
+    }
+
+    private static MovieChange buildChange(long sequence, ChangeType changeType) {
+        return new MovieChange(sequence, (int) sequence, changeType, Instant.parse("2023-01-01T00:00:00Z"));
+    }
+}
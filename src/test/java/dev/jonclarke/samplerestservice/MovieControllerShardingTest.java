@@ -0,0 +1,201 @@
+package dev.jonclarke.samplerestservice;
+
+import static org.hamcrest.Matchers.*;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.isNull;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
+import static org.mockito.Mockito.when;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.*;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
+
+import dev.jonclarke.samplerestservice.caching.MovieResponseCache;
+import dev.jonclarke.samplerestservice.caching.RequestCoalescer;
+import dev.jonclarke.samplerestservice.dataaccess.MovieFilter;
+import dev.jonclarke.samplerestservice.dataaccess.MovieRepository;
+import dev.jonclarke.samplerestservice.models.MovieDataModel;
+import dev.jonclarke.samplerestservice.serialization.MovieSerializer;
+import dev.jonclarke.samplerestservice.sharding.ShardedMovieStore;
+import dev.jonclarke.samplerestservice.statistics.MovieStatistics;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.context.annotation.Import;
+import org.springframework.data.domain.Sort;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Optional;
+import java.util.stream.Stream;
+
+/**
+ * Unit Tests for the MovieController with sharding enabled.
+ * Tests cover that every read and write goes to the ShardedMovieStore rather than the main database, and that the
+ * statistics are not kept for sharded movies.
+ */
+@WebMvcTest(MovieController.class)
+@Import({MovieSerializer.class, MovieResponseCache.class, RequestCoalescer.class, SimpleMeterRegistry.class})
+public class MovieControllerShardingTest {
+    private static final MovieFilter NO_FILTER = new MovieFilter(null, null, null, null);
+
+    @Autowired
+    private MockMvc mockMvc;
+    @MockBean
+    private ShardedMovieStore shards;
+    @MockBean
+    private MovieRepository repository;
+    @MockBean
+    private PlatformTransactionManager transactionManager;
+    @MockBean
+    private MovieStatistics statistics;
+
+    //******************************************************************
+    // Read unit tests
+    //******************************************************************
+
+    @Test
+    public void listAll_Sharded_ExpectMoviesStreamedFromShardsWithoutETag() throws Exception {
+        when(shards.streamAll()).thenReturn(Stream.of(buildMovie(1, "Movie 1", 0), buildMovie(6, "Movie 6", 2)));
+
+        mockMvc.perform(get("/movies"))
+                .andExpect(status().isOk())
+                .andExpect(header().doesNotExist(HttpHeaders.ETAG))
+                .andExpect(jsonPath("$", hasSize(2)))
+                .andExpect(jsonPath("$[0].id", is(1)))
+                .andExpect(jsonPath("$[1].id", is(6)));
+
+        verifyNoInteractions(repository);
+    }
+
+    @Test
+    public void listPage_Sharded_ExpectPageSearchedInShards() throws Exception {
+        when(shards.search(NO_FILTER, Sort.by("id"), 4, 2))
+                .thenReturn(List.of(buildMovie(5, "Movie 5", 0), buildMovie(6, "Movie 6", 0)));
+
+        mockMvc.perform(get("/movies?limit=2&after=4"))
+                .andExpect(status().isOk())
+                .andExpect(header().exists(HttpHeaders.ETAG))
+                .andExpect(header().string(HttpHeaders.LINK, containsString("after=6")))
+                .andExpect(jsonPath("$", hasSize(2)))
+                .andExpect(jsonPath("$[0].id", is(5)));
+
+        verifyNoInteractions(repository);
+    }
+
+    @Test
+    public void getSingle_Sharded_ExpectMovieReadFromShard() throws Exception {
+        when(shards.findById(7)).thenReturn(Optional.of(buildMovie(7, "Movie 7", 3)));
+
+        mockMvc.perform(get("/movies/7"))
+                .andExpect(status().isOk())
+                .andExpect(header().string(HttpHeaders.ETAG, "\"3-json\""))
+                .andExpect(jsonPath("$.title", is("Movie 7")));
+
+        verifyNoInteractions(repository);
+    }
+
+    @Test
+    public void getSingle_ShardedMissing_ExpectNotFound() throws Exception {
+        when(shards.findById(7)).thenReturn(Optional.empty());
+
+        mockMvc.perform(get("/movies/7"))
+                .andExpect(status().isNotFound());
+    }
+
+    @Test
+    public void getStats_Sharded_ExpectNotFound() throws Exception {
+        mockMvc.perform(get("/movies/stats"))
+                .andExpect(status().isNotFound());
+
+        verifyNoInteractions(statistics);
+    }
+
+    //******************************************************************
+    // Write unit tests
+    //******************************************************************
+
+    @Test
+    public void add_Sharded_ExpectMovieInsertedInShard() throws Exception {
+        when(shards.insert(any())).thenAnswer(invocation -> {
+            MovieDataModel movie = invocation.getArgument(0);
+            movie.setId(9);
+            return movie;
+        });
+
+        mockMvc.perform(post("/movies")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"title\":\"New\",\"description\":\"A new movie\",\"availableOnDvd\":true}"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.id", is(9)));
+
+        verifyNoInteractions(repository, statistics);
+    }
+
+    @Test
+    public void update_ShardedAtOtherVersion_ExpectPreconditionFailed() throws Exception {
+        when(shards.update(any(), eq(2L))).thenReturn(false);
+        when(shards.findById(7)).thenReturn(Optional.of(buildMovie(7, "Movie 7", 3)));
+
+        mockMvc.perform(put("/movies/7")
+                        .header(HttpHeaders.IF_MATCH, "\"2-json\"")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"title\":\"Changed\",\"availableOnDvd\":true}"))
+                .andExpect(status().isPreconditionFailed());
+
+        verifyNoInteractions(repository, statistics);
+    }
+
+    @Test
+    public void patch_Sharded_ExpectOnlySuppliedFieldsChanged() throws Exception {
+        MovieDataModel stored = buildMovie(7, "Movie 7", 3);
+        MovieDataModel patched = buildMovie(7, "Patched", 4);
+        when(shards.findById(7)).thenReturn(Optional.of(stored), Optional.of(patched));
+        when(shards.update(any(), eq(3L))).thenReturn(true);
+
+        mockMvc.perform(patch("/movies/7")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"title\":\"Patched\"}"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.title", is("Patched")))
+                .andExpect(jsonPath("$.version", is(4)));
+
+        ArgumentCaptor<MovieDataModel> written = ArgumentCaptor.forClass(MovieDataModel.class);
+        verify(shards).update(written.capture(), eq(3L));
+        assertEquals("Patched", written.getValue().getTitle());
+        assertEquals("Description of Movie 7", written.getValue().getDescription());
+        verifyNoInteractions(repository, statistics);
+    }
+
+    @Test
+    public void delete_Sharded_ExpectMovieDeletedFromShard() throws Exception {
+        when(shards.deleteById(7, null)).thenReturn(true);
+
+        mockMvc.perform(delete("/movies/7"))
+                .andExpect(status().isOk());
+
+        verify(shards).deleteById(eq(7), isNull());
+        verifyNoInteractions(repository, statistics);
+    }
+
+    @Test
+    public void delete_ShardedMissing_ExpectNotFound() throws Exception {
+        when(shards.deleteById(7, null)).thenReturn(false);
+
+        mockMvc.perform(delete("/movies/7"))
+                .andExpect(status().isNotFound());
+    }
+
+    private static MovieDataModel buildMovie(int id, String title, long version) {
+        return new MovieDataModel(id, title, "Description of " + title, LocalDateTime.of(2020, 1, 1, 0, 0), true,
+                version, null);
+    }
+}
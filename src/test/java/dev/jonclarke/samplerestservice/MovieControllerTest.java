@@ -2,38 +2,76 @@ package dev.jonclarke.samplerestservice;
 
 import static org.hamcrest.Matchers.*;
 import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.isNull;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
 import static org.mockito.Mockito.when;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.dataformat.cbor.databind.CBORMapper;
+import com.fasterxml.jackson.dataformat.smile.databind.SmileMapper;
 import com.fasterxml.jackson.dataformat.xml.XmlMapper;
 import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import dev.jonclarke.samplerestservice.caching.MovieCacheStats;
+import dev.jonclarke.samplerestservice.caching.MovieResponseCache;
+import dev.jonclarke.samplerestservice.caching.RequestCoalescer;
+import dev.jonclarke.samplerestservice.dataaccess.MovieFilter;
 import dev.jonclarke.samplerestservice.dataaccess.MovieRepository;
+import dev.jonclarke.samplerestservice.models.MovieCatalogueStats;
+import dev.jonclarke.samplerestservice.models.MovieCatalogueStats.ReleaseYear;
+import dev.jonclarke.samplerestservice.models.MovieCatalogueVersion;
 import dev.jonclarke.samplerestservice.models.MovieDataModel;
+import dev.jonclarke.samplerestservice.models.MovieProjection;
+import dev.jonclarke.samplerestservice.readmodel.MovieReadModel;
+import dev.jonclarke.samplerestservice.readmodel.MovieReadModelStats;
+import dev.jonclarke.samplerestservice.readmodel.MovieSnapshot;
+import dev.jonclarke.samplerestservice.serialization.MovieSerializer;
+import dev.jonclarke.samplerestservice.statistics.MovieStatistics;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
 import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.context.annotation.Import;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Sort;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.MediaType;
 import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.transaction.PlatformTransactionManager;
 import org.springframework.test.web.servlet.request.MockHttpServletRequestBuilder;
 import org.springframework.test.web.servlet.request.MockMvcRequestBuilders;
 
+import java.time.Instant;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
-import java.util.Collections;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Optional;
+import java.util.Set;
+import java.util.stream.Stream;
 
 /**
  * Unit Tests for the MovieController.
  * Tests cover all methods available in the controller
- * Tests cover using all methods with json and xml
+ * Tests cover using all methods with json and xml, and reading movies as cbor and smile
  */
 @WebMvcTest(MovieController.class)
+@Import({MovieSerializer.class, MovieResponseCache.class, RequestCoalescer.class, SimpleMeterRegistry.class})
 public class MovieControllerTest {
+    private static final MovieCatalogueVersion EMPTY_CATALOGUE = new MovieCatalogueVersion(0L, 0L, 0L, null);
+
     @Autowired
     private MockMvc mockMvc;
     @Autowired
@@ -41,6 +79,16 @@ public class MovieControllerTest {
     XmlMapper xmlMapper;
     @MockBean
     private MovieRepository repository;
+    @MockBean
+    private PlatformTransactionManager transactionManager;
+    @MockBean
+    private MovieReadModel readModel;
+    @MockBean
+    private MovieStatistics statistics;
+    @Autowired
+    private MovieResponseCache cache;
+    @Autowired
+    private MeterRegistry meterRegistry;
 
     public MovieControllerTest() {
         // We can't autowire the xmlMapper, so we have to create it manually
@@ -49,13 +97,20 @@ public class MovieControllerTest {
         xmlMapper.disable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS);
     }
 
+    @BeforeEach
+    public void clearCache() {
+        // the application context (and so the cache) is shared between tests
+        cache.invalidateAll();
+    }
+
     //******************************************************************
     // List all unit tests
     //******************************************************************
 
     @Test
     public void listAll_EmptyDataSet_ExpectEmptyJsonObject() throws Exception {
-        when(repository.findAll()).thenReturn(Collections.emptyList());
+        when(repository.findCatalogueVersion()).thenReturn(EMPTY_CATALOGUE);
+        when(repository.streamAllByOrderByIdAsc()).thenReturn(Stream.empty());
 
         mockMvc.perform(get("/movies"))
                 .andExpect(status().isOk())
@@ -64,7 +119,8 @@ public class MovieControllerTest {
     }
     @Test
     public void listAllAsXml_EmptyDataSet_ExpectEmptyXmlObject() throws Exception {
-        when(repository.findAll()).thenReturn(Collections.emptyList());
+        when(repository.findCatalogueVersion()).thenReturn(EMPTY_CATALOGUE);
+        when(repository.streamAllByOrderByIdAsc()).thenReturn(Stream.empty());
 
         MockHttpServletRequestBuilder mockRequest = MockMvcRequestBuilders.get("/movies")
                 .contentType(MediaType.APPLICATION_XML)
@@ -80,7 +136,8 @@ public class MovieControllerTest {
     public void listAll_DataSetContainsOneItem_ExpectDataInJsonObject() throws Exception {
         MovieDataModel item = buildMovie(123, "test title", "test description", LocalDateTime.now(), false);
         List<MovieDataModel> items = List.of(item);
-        when(repository.findAll()).thenReturn(items);
+        when(repository.findCatalogueVersion()).thenReturn(EMPTY_CATALOGUE);
+        when(repository.streamAllByOrderByIdAsc()).thenReturn(items.stream());
 
         this.mockMvc.perform(get("/movies"))
                 .andExpect(status().isOk())
@@ -97,7 +154,8 @@ public class MovieControllerTest {
     public void listAllAsXml_DataSetContainsOneItem_ExpectDataInXmlObject() throws Exception {
         MovieDataModel item = buildMovie(123, "test title", "test description", LocalDateTime.now(), false);
         List<MovieDataModel> items = List.of(item);
-        when(repository.findAll()).thenReturn(items);
+        when(repository.findCatalogueVersion()).thenReturn(EMPTY_CATALOGUE);
+        when(repository.streamAllByOrderByIdAsc()).thenReturn(items.stream());
 
         MockHttpServletRequestBuilder mockRequest = MockMvcRequestBuilders.get("/movies")
                 .contentType(MediaType.APPLICATION_XML)
@@ -114,6 +172,172 @@ public class MovieControllerTest {
                 .andExpect(xpath("/List/item[1]/availableOnDvd").string(is(item.isAvailableOnDvd().toString())));
     }
 
+    //******************************************************************
+    // List page unit tests
+    //******************************************************************
+
+    @Test
+    public void listPage_FullPageReturned_ExpectItemsAndNextLink() throws Exception {
+        MovieDataModel item1 = buildMovie(123, "test title 1", "test description 1", LocalDateTime.now(), false);
+        MovieDataModel item2 = buildMovie(124, "test title 2", "test description 2", LocalDateTime.now(), true);
+        when(repository.findByIdGreaterThanOrderByIdAsc(100, PageRequest.ofSize(2))).thenReturn(List.of(item1, item2));
+
+        this.mockMvc.perform(get("/movies?limit=2&after=100"))
+                .andExpect(status().isOk())
+                .andExpect(content().contentType(MediaType.APPLICATION_JSON))
+                .andExpect(header().string(HttpHeaders.LINK, "<http://localhost/movies?limit=2&after=124>; rel=\"next\""))
+                .andExpect(jsonPath("$", hasSize(2)))
+                .andExpect(jsonPath("$[0].id", is(item1.getId())))
+                .andExpect(jsonPath("$[1].id", is(item2.getId())));
+    }
+
+    @Test
+    public void listPageAsXml_FullPageReturned_ExpectItemsInXmlObject() throws Exception {
+        MovieDataModel item = buildMovie(123, "test title", "test description", LocalDateTime.now(), false);
+        when(repository.findByIdGreaterThanOrderByIdAsc(0, PageRequest.ofSize(1))).thenReturn(List.of(item));
+
+        MockHttpServletRequestBuilder mockRequest = MockMvcRequestBuilders.get("/movies?limit=1")
+                .contentType(MediaType.APPLICATION_XML)
+                .accept(MediaType.APPLICATION_XML);
+
+        mockMvc.perform(mockRequest)
+                .andExpect(status().isOk())
+                .andExpect(content().contentType(MediaType.APPLICATION_XML))
+                .andExpect(xpath("/List/*").nodeCount(is(1)))
+                .andExpect(xpath("/List/item[1]/id").string(is("" + item.getId())))
+                .andExpect(xpath("/List/item[1]/title").string(is(item.getTitle())));
+    }
+
+    @Test
+    public void listPage_LastPageReturned_ExpectNoNextLink() throws Exception {
+        MovieDataModel item = buildMovie(123, "test title", "test description", LocalDateTime.now(), false);
+        when(repository.findByIdGreaterThanOrderByIdAsc(100, PageRequest.ofSize(MovieController.DEFAULT_PAGE_SIZE)))
+                .thenReturn(List.of(item));
+
+        this.mockMvc.perform(get("/movies?after=100"))
+                .andExpect(status().isOk())
+                .andExpect(header().doesNotExist(HttpHeaders.LINK))
+                .andExpect(jsonPath("$", hasSize(1)));
+    }
+
+    @Test
+    public void listPage_LimitTooLarge_ExpectBadRequest() throws Exception {
+        this.mockMvc.perform(get("/movies?limit=" + (MovieController.MAX_PAGE_SIZE + 1)))
+                .andExpect(status().isBadRequest())
+                .andExpect(result ->
+                        assertTrue(result.getResolvedException() instanceof InvalidMovieQueryException));
+    }
+
+    //******************************************************************
+    // Sparse fieldset unit tests
+    //******************************************************************
+
+    @Test
+    public void listAll_IdAndTitleFields_ExpectOnlyRequestedFields() throws Exception {
+        Set<String> fields = new LinkedHashSet<>(List.of("id", "title"));
+        when(repository.findCatalogueVersion()).thenReturn(EMPTY_CATALOGUE);
+        when(repository.streamProjections(fields)).thenReturn(Stream.of(
+                new MovieProjection(123, "test title", null, null, null, null)));
+
+        this.mockMvc.perform(get("/movies?fields=title,id"))
+                .andExpect(status().isOk())
+                .andExpect(content().contentType(MediaType.APPLICATION_JSON))
+                .andExpect(content().json("[{\"id\": 123, \"title\": \"test title\"}]", true));
+        verify(repository, never()).streamAllByOrderByIdAsc();
+    }
+
+    @Test
+    public void listPageAsXml_TitleField_ExpectOnlyTitleAndNextLink() throws Exception {
+        when(repository.searchProjections(Set.of("title"), new MovieFilter(null, null, null, null), Sort.by("id"), null, 1))
+                .thenReturn(List.of(new MovieProjection(123, "test title", null, null, null, 4L)));
+
+        MockHttpServletRequestBuilder mockRequest = MockMvcRequestBuilders.get("/movies?fields=title&limit=1")
+                .accept(MediaType.APPLICATION_XML);
+
+        mockMvc.perform(mockRequest)
+                .andExpect(status().isOk())
+                .andExpect(header().string(HttpHeaders.LINK, "<http://localhost/movies?fields=title&limit=1&after=123>; rel=\"next\""))
+                .andExpect(xpath("/List/item[1]/title").string(is("test title")))
+                .andExpect(xpath("/List/item[1]/id").doesNotExist())
+                .andExpect(xpath("/List/item[1]/version").doesNotExist());
+    }
+
+    @Test
+    public void listAll_EveryField_ExpectFullMoviesFromEntities() throws Exception {
+        MovieDataModel item = buildMovie(123, "test title", "test description", LocalDateTime.now(), false);
+        when(repository.findCatalogueVersion()).thenReturn(EMPTY_CATALOGUE);
+        when(repository.streamAllByOrderByIdAsc()).thenReturn(Stream.of(item));
+
+        this.mockMvc.perform(get("/movies?fields=id,title,description,releaseDate,availableOnDvd"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$[0].description", is(item.getDescription())));
+    }
+
+    @Test
+    public void listAll_UnknownField_ExpectBadRequest() throws Exception {
+        this.mockMvc.perform(get("/movies?fields=id,version"))
+                .andExpect(status().isBadRequest())
+                .andExpect(result ->
+                        assertTrue(result.getResolvedException() instanceof InvalidMovieQueryException));
+    }
+
+    //******************************************************************
+    // Search unit tests
+    //******************************************************************
+
+    @Test
+    public void listSearch_FiltersAndSort_ExpectMatchingItemsFromSearch() throws Exception {
+        MovieDataModel item = buildMovie(123, "test title", "test description", LocalDateTime.now(), true);
+        MovieFilter filter = new MovieFilter("test", LocalDateTime.of(2023, 1, 1, 0, 0), null, true);
+        when(repository.search(filter, Sort.by(Sort.Direction.DESC, "releaseDate"), null, MovieController.DEFAULT_PAGE_SIZE))
+                .thenReturn(List.of(item));
+
+        this.mockMvc.perform(get("/movies?title=test&releasedAfter=2023-01-01T00:00:00&availableOnDvd=true&sort=releaseDate,desc"))
+                .andExpect(status().isOk())
+                .andExpect(content().contentType(MediaType.APPLICATION_JSON))
+                .andExpect(header().doesNotExist(HttpHeaders.LINK))
+                .andExpect(jsonPath("$", hasSize(1)))
+                .andExpect(jsonPath("$[0].id", is(item.getId())))
+                .andExpect(jsonPath("$[0].titleKey").doesNotExist());
+    }
+
+    @Test
+    public void listSearchAsXml_FullPageSortedById_ExpectNextLinkKeepingFilters() throws Exception {
+        MovieDataModel item = buildMovie(123, "test title", "test description", LocalDateTime.now(), false);
+        when(repository.search(new MovieFilter(null, null, null, false), Sort.by("id"), 100, 1)).thenReturn(List.of(item));
+
+        MockHttpServletRequestBuilder mockRequest = MockMvcRequestBuilders.get("/movies?availableOnDvd=false&limit=1&after=100")
+                .accept(MediaType.APPLICATION_XML);
+
+        mockMvc.perform(mockRequest)
+                .andExpect(status().isOk())
+                .andExpect(header().string(HttpHeaders.LINK,
+                        "<http://localhost/movies?availableOnDvd=false&limit=1&after=123>; rel=\"next\""))
+                .andExpect(xpath("/List/item[1]/id").string(is("" + item.getId())));
+    }
+
+    @Test
+    public void listSearch_UnknownSortProperty_ExpectBadRequest() throws Exception {
+        this.mockMvc.perform(get("/movies?sort=description"))
+                .andExpect(status().isBadRequest())
+                .andExpect(result ->
+                        assertTrue(result.getResolvedException() instanceof InvalidMovieQueryException));
+    }
+
+    @Test
+    public void listSearch_AfterWithoutSortingById_ExpectBadRequest() throws Exception {
+        this.mockMvc.perform(get("/movies?sort=title&after=100"))
+                .andExpect(status().isBadRequest())
+                .andExpect(result ->
+                        assertTrue(result.getResolvedException() instanceof InvalidMovieQueryException));
+    }
+
+    @Test
+    public void listSearch_InvalidReleaseDate_ExpectBadRequest() throws Exception {
+        this.mockMvc.perform(get("/movies?releasedAfter=yesterday"))
+                .andExpect(status().isBadRequest());
+    }
+
     //******************************************************************
     // Get one unit tests
     //******************************************************************
@@ -155,6 +379,48 @@ public class MovieControllerTest {
                 .andExpect(xpath("/Movie[1]/availableOnDvd").string(is(itemToReturn.isAvailableOnDvd().toString())));
     }
 
+    @Test
+    public void getOneAsCbor_RequestAnItemById_ExpectDataInCborObject() throws Exception {
+        MovieDataModel itemToReturn = buildMovie(456, "test title", "test description", LocalDateTime.of(2001, 5, 4, 10, 30), false);
+        when(repository.findById(itemToReturn.getId())).thenReturn(Optional.of(itemToReturn));
+
+        byte[] body = mockMvc.perform(get("/movies/" + itemToReturn.getId()).accept(MediaType.APPLICATION_CBOR))
+                .andExpect(status().isOk())
+                .andExpect(content().contentType(MediaType.APPLICATION_CBOR))
+                .andExpect(header().string(HttpHeaders.ETAG, "\"0-cbor\""))
+                .andReturn().getResponse().getContentAsByteArray();
+
+        MovieDataModel movie = new CBORMapper().registerModule(new JavaTimeModule()).readValue(body, MovieDataModel.class);
+        assertEquals(itemToReturn.getId(), movie.getId());
+        assertEquals(itemToReturn.getTitle(), movie.getTitle());
+        assertEquals(itemToReturn.getDescription(), movie.getDescription());
+        assertEquals(itemToReturn.getReleaseDate(), movie.getReleaseDate());
+        assertEquals(itemToReturn.isAvailableOnDvd(), movie.isAvailableOnDvd());
+    }
+
+    @Test
+    public void listAllAsSmile_DataSetContainsTwoItems_ExpectDataInSmileArray() throws Exception {
+        MovieDataModel item1 = buildMovie(123, "test title 1", "test description 1", LocalDateTime.of(2001, 5, 4, 10, 30), false);
+        MovieDataModel item2 = buildMovie(124, "test title 2", "test description 2", LocalDateTime.of(2002, 6, 5, 11, 45), true);
+        when(repository.findCatalogueVersion()).thenReturn(EMPTY_CATALOGUE);
+        when(repository.streamAllByOrderByIdAsc()).thenReturn(Stream.of(item1, item2));
+
+        byte[] body = mockMvc.perform(get("/movies").accept(MovieSerializer.APPLICATION_SMILE))
+                .andExpect(status().isOk())
+                .andExpect(content().contentType(MovieSerializer.APPLICATION_SMILE))
+                .andReturn().getResponse().getContentAsByteArray();
+
+        List<MovieDataModel> movies = new SmileMapper().registerModule(new JavaTimeModule())
+                .readerForListOf(MovieDataModel.class).readValue(body);
+        assertEquals(2, movies.size());
+        assertEquals(item1.getId(), movies.get(0).getId());
+        assertEquals(item1.getTitle(), movies.get(0).getTitle());
+        assertEquals(item1.getReleaseDate(), movies.get(0).getReleaseDate());
+        assertEquals(item2.getId(), movies.get(1).getId());
+        assertEquals(item2.getDescription(), movies.get(1).getDescription());
+        assertEquals(item2.isAvailableOnDvd(), movies.get(1).isAvailableOnDvd());
+    }
+
     @Test
     public void getOne_RequestAnInvalidItem_Expect404Error() throws Exception {
         when(repository.findById(123)).thenReturn(Optional.empty());
@@ -163,6 +429,93 @@ public class MovieControllerTest {
                 .andExpect(status().isNotFound());
     }
 
+    //******************************************************************
+    // Cache unit tests
+    //******************************************************************
+
+    @Test
+    public void getOne_RequestSameItemTwice_ExpectSecondRequestServedFromCache() throws Exception {
+        MovieDataModel itemToReturn = buildMovie(456, "test title", "test description", LocalDateTime.now(), false);
+        when(repository.findById(itemToReturn.getId())).thenReturn(Optional.of(itemToReturn));
+        // the counters are cumulative for the life of the cache, so compare against their starting values
+        MovieCacheStats statsBefore = cache.getStats();
+
+        for (int i = 0; i < 2; i++) {
+            this.mockMvc.perform(get("/movies/" + itemToReturn.getId()))
+                    .andExpect(status().isOk())
+                    .andExpect(jsonPath("$.title", is(itemToReturn.getTitle())));
+        }
+
+        verify(repository, times(1)).findById(itemToReturn.getId());
+        assertEquals(statsBefore.hitCount() + 1, cache.getStats().hitCount());
+        assertEquals(statsBefore.missCount() + 1, cache.getStats().missCount());
+    }
+
+    @Test
+    public void getOne_RequestSameItemAsJsonAndXml_ExpectEachMediaTypeCachedSeparately() throws Exception {
+        MovieDataModel itemToReturn = buildMovie(456, "test title", "test description", LocalDateTime.now(), false);
+        when(repository.findById(itemToReturn.getId())).thenReturn(Optional.of(itemToReturn));
+
+        this.mockMvc.perform(get("/movies/" + itemToReturn.getId()))
+                .andExpect(status().isOk())
+                .andExpect(content().contentType(MediaType.APPLICATION_JSON));
+        this.mockMvc.perform(get("/movies/" + itemToReturn.getId()).accept(MediaType.APPLICATION_XML))
+                .andExpect(status().isOk())
+                .andExpect(content().contentType(MediaType.APPLICATION_XML))
+                .andExpect(xpath("/Movie[1]/title").string(is(itemToReturn.getTitle())));
+
+        verify(repository, times(2)).findById(itemToReturn.getId());
+    }
+
+    @Test
+    public void getOne_ItemUpdatedAfterBeingCached_ExpectUpdatedItem() throws Exception {
+        MovieDataModel originalItem = buildMovie(123, "test title", "test description", LocalDateTime.now(), false);
+        MovieDataModel itemToSave = buildMovie(123, "new title", "new description", LocalDateTime.now(), true);
+        when(repository.findById(originalItem.getId())).thenReturn(Optional.of(originalItem));
+        when(repository.updateReturningPrevious(eq(itemToSave.getId()), eq(itemToSave.getTitle()), eq(itemToSave.getDescription()),
+                eq(itemToSave.getReleaseDate()), eq(itemToSave.isAvailableOnDvd()), isNull(), any())).thenReturn(Optional.of(originalItem));
+
+        this.mockMvc.perform(get("/movies/" + originalItem.getId()))
+                .andExpect(jsonPath("$.title", is(originalItem.getTitle())));
+
+        this.mockMvc.perform(MockMvcRequestBuilders.put("/movies/" + itemToSave.getId())
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(this.jsonMapper.writeValueAsString(itemToSave)))
+                .andExpect(status().isOk());
+        when(repository.findById(originalItem.getId())).thenReturn(Optional.of(itemToSave));
+
+        this.mockMvc.perform(get("/movies/" + originalItem.getId()))
+                .andExpect(jsonPath("$.title", is(itemToSave.getTitle())));
+    }
+
+    @Test
+    public void getOne_RequestAsJsonAndXml_ExpectSerializationTimedByFormat() throws Exception {
+        MovieDataModel item = buildMovie(123, "test title", "test description", LocalDateTime.now(), false);
+        when(repository.findById(item.getId())).thenReturn(Optional.of(item));
+        long jsonCount = serializationTimer("json").count();
+        long xmlCount = serializationTimer("xml").count();
+
+        this.mockMvc.perform(get("/movies/" + item.getId())).andExpect(status().isOk());
+        this.mockMvc.perform(get("/movies/" + item.getId()).accept(MediaType.APPLICATION_XML)).andExpect(status().isOk());
+        // served from the cache, so not serialized again
+        this.mockMvc.perform(get("/movies/" + item.getId())).andExpect(status().isOk());
+
+        assertEquals(jsonCount + 1, serializationTimer("json").count());
+        assertEquals(xmlCount + 1, serializationTimer("xml").count());
+    }
+
+    @Test
+    public void cacheStats_RequestStats_ExpectCountersInJsonObject() throws Exception {
+        this.mockMvc.perform(get("/movies/cache/stats"))
+                .andExpect(status().isOk())
+                .andExpect(content().contentType(MediaType.APPLICATION_JSON))
+                .andExpect(jsonPath("$.size", notNullValue()))
+                .andExpect(jsonPath("$.hitCount", notNullValue()))
+                .andExpect(jsonPath("$.missCount", notNullValue()))
+                .andExpect(jsonPath("$.evictionCount", notNullValue()))
+                .andExpect(jsonPath("$.hitRate", notNullValue()));
+    }
+
     //******************************************************************
     // Add unit tests
     //******************************************************************
@@ -231,8 +584,8 @@ public class MovieControllerTest {
         MovieDataModel originalItem = buildMovie(123, "test title", "test description", LocalDateTime.now(), false);
         MovieDataModel itemToSave = buildMovie(123, "new title", "new description", LocalDateTime.now(), true);
 
-        when(repository.findById(originalItem.getId())).thenReturn(Optional.of(originalItem));
-        when(repository.save(itemToSave)).thenReturn(itemToSave);
+        when(repository.updateReturningPrevious(eq(originalItem.getId()), eq(itemToSave.getTitle()), eq(itemToSave.getDescription()),
+                eq(itemToSave.getReleaseDate()), eq(itemToSave.isAvailableOnDvd()), isNull(), any())).thenReturn(Optional.of(originalItem));
 
         MockHttpServletRequestBuilder mockRequest = MockMvcRequestBuilders.put("/movies/" + itemToSave.getId())
                 .contentType(MediaType.APPLICATION_JSON)
@@ -266,8 +619,8 @@ public class MovieControllerTest {
         MovieDataModel originalItem = buildMovie(123, "test title", "test description", LocalDateTime.now(), false);
         MovieDataModel itemToSave = buildMovie(456, "new title", "new description", LocalDateTime.now(), true);
 
-        when(repository.findById(originalItem.getId())).thenReturn(Optional.of(originalItem));
-        when(repository.save(itemToSave)).thenReturn(itemToSave);
+        when(repository.updateReturningPrevious(eq(originalItem.getId()), eq(itemToSave.getTitle()), eq(itemToSave.getDescription()),
+                eq(itemToSave.getReleaseDate()), eq(itemToSave.isAvailableOnDvd()), isNull(), any())).thenReturn(Optional.of(originalItem));
 
         MockHttpServletRequestBuilder mockRequest = MockMvcRequestBuilders.put("/movies/" + itemToSave.getId())
                 .contentType(MediaType.APPLICATION_JSON)
@@ -287,8 +640,8 @@ public class MovieControllerTest {
         MovieDataModel originalItem = buildMovie(123, "test title", "test description", LocalDateTime.now(), false);
         MovieDataModel itemToSave = buildMovie(123, "new title", "new description", LocalDateTime.now(), true);
 
-        when(repository.findById(originalItem.getId())).thenReturn(Optional.of(originalItem));
-        when(repository.save(itemToSave)).thenReturn(itemToSave);
+        when(repository.updateReturningPrevious(eq(originalItem.getId()), eq(itemToSave.getTitle()), eq(itemToSave.getDescription()),
+                eq(itemToSave.getReleaseDate()), eq(itemToSave.isAvailableOnDvd()), isNull(), any())).thenReturn(Optional.of(originalItem));
 
         MockHttpServletRequestBuilder mockRequest = MockMvcRequestBuilders.put("/movies/" + itemToSave.getId())
                 .contentType(MediaType.APPLICATION_XML)
@@ -306,6 +659,65 @@ public class MovieControllerTest {
                 .andExpect(xpath("/Movie[1]/availableOnDvd").string(is(itemToSave.isAvailableOnDvd().toString())));
     }
 
+    //******************************************************************
+    // Partial update unit tests
+    //******************************************************************
+
+    @Test
+    public void patch_OnlyTitleSupplied_ExpectOnlyTitlePassedToUpdateAndUpdatedItemReturned() throws Exception {
+        MovieDataModel updatedItem = buildMovie(123, "new title", "test description", LocalDateTime.now(), false);
+        MovieDataModel originalItem = buildMovie(123, "test title", "test description", updatedItem.getReleaseDate(), false);
+
+        when(repository.patchReturningPrevious(eq(updatedItem.getId()), eq(updatedItem.getTitle()), isNull(), isNull(),
+                isNull(), isNull(), any())).thenReturn(Optional.of(originalItem));
+
+        MockHttpServletRequestBuilder mockRequest = MockMvcRequestBuilders.patch("/movies/" + updatedItem.getId())
+                .contentType(MediaType.APPLICATION_JSON)
+                .accept(MediaType.APPLICATION_JSON)
+                .content("{\"title\": \"" + updatedItem.getTitle() + "\"}");
+
+        this.mockMvc.perform(mockRequest)
+                .andExpect(status().isOk())
+                .andExpect(content().contentType(MediaType.APPLICATION_JSON))
+                .andExpect(jsonPath("$.id", is(updatedItem.getId())))
+                .andExpect(jsonPath("$.title", is(updatedItem.getTitle())))
+                .andExpect(jsonPath("$.description", is(updatedItem.getDescription())))
+                .andExpect(jsonPath("$.availableOnDvd", is(updatedItem.isAvailableOnDvd())));
+    }
+
+    @Test
+    public void patchAsXml_OnlyAvailableOnDvdSupplied_ExpectUpdatedItemInXmlObject() throws Exception {
+        MovieDataModel updatedItem = buildMovie(123, "test title", "test description", LocalDateTime.now(), true);
+        MovieDataModel originalItem = buildMovie(123, "test title", "test description", updatedItem.getReleaseDate(), false);
+
+        when(repository.patchReturningPrevious(eq(updatedItem.getId()), isNull(), isNull(), isNull(), eq(true),
+                isNull(), any())).thenReturn(Optional.of(originalItem));
+
+        MockHttpServletRequestBuilder mockRequest = MockMvcRequestBuilders.patch("/movies/" + updatedItem.getId())
+                .contentType(MediaType.APPLICATION_XML)
+                .accept(MediaType.APPLICATION_XML)
+                .content("<Movie><availableOnDvd>true</availableOnDvd></Movie>");
+
+        mockMvc.perform(mockRequest)
+                .andExpect(status().isOk())
+                .andExpect(content().contentType(MediaType.APPLICATION_XML))
+                .andExpect(xpath("/Movie[1]/title").string(is(updatedItem.getTitle())))
+                .andExpect(xpath("/Movie[1]/availableOnDvd").string(is("true")));
+    }
+
+    @Test
+    public void patch_InvalidId_ExpectFailure() throws Exception {
+        MockHttpServletRequestBuilder mockRequest = MockMvcRequestBuilders.patch("/movies/456")
+                .contentType(MediaType.APPLICATION_JSON)
+                .accept(MediaType.APPLICATION_JSON)
+                .content("{\"title\": \"new title\"}");
+
+        this.mockMvc.perform(mockRequest)
+                .andExpect(status().isNotFound())
+                .andExpect(result ->
+                        assertTrue(result.getResolvedException() instanceof MovieNotFoundException));
+    }
+
     //******************************************************************
     // delete unit tests
     //******************************************************************
@@ -314,13 +726,16 @@ public class MovieControllerTest {
     public void delete_DeleteValidItem_ExpectSuccess() throws Exception {
         MovieDataModel movieToDelete = buildMovie(123, "test title", "test description", LocalDateTime.now(), false);
 
-        when(repository.findById(movieToDelete.getId())).thenReturn(Optional.of(movieToDelete));
+        when(repository.deleteReturningPrevious(movieToDelete.getId(), null)).thenReturn(Optional.of(movieToDelete));
 
         MockHttpServletRequestBuilder mockRequest = MockMvcRequestBuilders.delete("/movies/" + movieToDelete.getId())
                 .contentType(MediaType.APPLICATION_JSON);
 
         this.mockMvc.perform(mockRequest)
                 .andExpect(status().isOk());
+
+        // the movie as it was before, so the statistics can take it out of its group
+        verify(statistics).movieChanged(movieToDelete, null);
     }
 
     @Test
@@ -328,7 +743,7 @@ public class MovieControllerTest {
         MovieDataModel movieToDelete = buildMovie(123, "test title", "test description", LocalDateTime.now(), false);
         int invalidId = 456;
 
-        when(repository.findById(movieToDelete.getId())).thenReturn(Optional.of(movieToDelete));
+        when(repository.deleteReturningPrevious(movieToDelete.getId(), null)).thenReturn(Optional.of(movieToDelete));
 
         MockHttpServletRequestBuilder mockRequest = MockMvcRequestBuilders.delete("/movies/" + invalidId)
                 .contentType(MediaType.APPLICATION_JSON);
@@ -339,13 +754,15 @@ public class MovieControllerTest {
                         assertTrue(result.getResolvedException() instanceof MovieNotFoundException))
                 .andExpect(result ->
                         assertEquals("Could not find movie " + invalidId, result.getResolvedException().getMessage()));
+
+        verify(statistics, never()).movieChanged(any(), any());
     }
 
     @Test
     public void deleteAsXml_DeleteValidItem_ExpectSuccess() throws Exception {
         MovieDataModel movieToDelete = buildMovie(123, "test title", "test description", LocalDateTime.now(), false);
 
-        when(repository.findById(movieToDelete.getId())).thenReturn(Optional.of(movieToDelete));
+        when(repository.deleteReturningPrevious(movieToDelete.getId(), null)).thenReturn(Optional.of(movieToDelete));
 
         MockHttpServletRequestBuilder mockRequest = MockMvcRequestBuilders.delete("/movies/" + movieToDelete.getId())
                 .contentType(MediaType.APPLICATION_XML);
@@ -354,6 +771,245 @@ public class MovieControllerTest {
                 .andExpect(status().isOk());
     }
 
+    //******************************************************************
+    // Conditional request unit tests
+    //******************************************************************
+
+    @Test
+    public void getOne_RequestAnItemById_ExpectETagAndLastModifiedHeaders() throws Exception {
+        MovieDataModel item = buildMovie(123, "test title", "test description", LocalDateTime.now(), false);
+        item.setVersion(3);
+        item.setLastModified(Instant.parse("2023-06-01T10:15:30Z"));
+        when(repository.findById(item.getId())).thenReturn(Optional.of(item));
+
+        this.mockMvc.perform(get("/movies/" + item.getId()))
+                .andExpect(status().isOk())
+                .andExpect(header().string(HttpHeaders.ETAG, "\"3-json\""))
+                .andExpect(header().string(HttpHeaders.LAST_MODIFIED, "Thu, 01 Jun 2023 10:15:30 GMT"))
+                .andExpect(jsonPath("$.version").doesNotExist());
+
+        this.mockMvc.perform(get("/movies/" + item.getId()).accept(MediaType.APPLICATION_XML))
+                .andExpect(status().isOk())
+                .andExpect(header().string(HttpHeaders.ETAG, "\"3-xml\""));
+    }
+
+    @Test
+    public void getOne_IfNoneMatchCurrentVersion_ExpectNotModified() throws Exception {
+        MovieDataModel item = buildMovie(123, "test title", "test description", LocalDateTime.now(), false);
+        item.setVersion(3);
+        when(repository.findById(item.getId())).thenReturn(Optional.of(item));
+
+        this.mockMvc.perform(get("/movies/" + item.getId()).header(HttpHeaders.IF_NONE_MATCH, "\"3-json\""))
+                .andExpect(status().isNotModified())
+                .andExpect(header().string(HttpHeaders.ETAG, "\"3-json\""))
+                .andExpect(content().string(""));
+
+        this.mockMvc.perform(get("/movies/" + item.getId()).header(HttpHeaders.IF_NONE_MATCH, "\"2-json\""))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.title", is(item.getTitle())));
+    }
+
+    @Test
+    public void getOne_IfModifiedSinceLastModified_ExpectNotModified() throws Exception {
+        MovieDataModel item = buildMovie(123, "test title", "test description", LocalDateTime.now(), false);
+        item.setLastModified(Instant.parse("2023-06-01T10:15:30Z"));
+        when(repository.findById(item.getId())).thenReturn(Optional.of(item));
+
+        this.mockMvc.perform(get("/movies/" + item.getId()).header(HttpHeaders.IF_MODIFIED_SINCE, "Thu, 01 Jun 2023 10:15:30 GMT"))
+                .andExpect(status().isNotModified());
+
+        this.mockMvc.perform(get("/movies/" + item.getId()).header(HttpHeaders.IF_MODIFIED_SINCE, "Thu, 01 Jun 2023 10:15:29 GMT"))
+                .andExpect(status().isOk());
+    }
+
+    @Test
+    public void listAll_IfNoneMatchCurrentETag_ExpectNotModifiedWithoutReadingMovies() throws Exception {
+        when(repository.findCatalogueVersion()).thenReturn(EMPTY_CATALOGUE);
+        when(repository.streamAllByOrderByIdAsc()).thenReturn(Stream.empty());
+
+        String etag = this.mockMvc.perform(get("/movies"))
+                .andExpect(status().isOk())
+                .andReturn().getResponse().getHeader(HttpHeaders.ETAG);
+        assertNotNull(etag);
+
+        this.mockMvc.perform(get("/movies").header(HttpHeaders.IF_NONE_MATCH, etag))
+                .andExpect(status().isNotModified());
+
+        verify(repository, times(1)).streamAllByOrderByIdAsc();
+    }
+
+    @Test
+    public void listPage_ItemUpdated_ExpectNewETag() throws Exception {
+        MovieDataModel item = buildMovie(123, "test title", "test description", LocalDateTime.now(), false);
+        when(repository.findByIdGreaterThanOrderByIdAsc(0, PageRequest.ofSize(10))).thenReturn(List.of(item));
+
+        String etag = this.mockMvc.perform(get("/movies?limit=10"))
+                .andReturn().getResponse().getHeader(HttpHeaders.ETAG);
+        this.mockMvc.perform(get("/movies?limit=10").header(HttpHeaders.IF_NONE_MATCH, etag))
+                .andExpect(status().isNotModified());
+
+        item.setVersion(1);
+        this.mockMvc.perform(get("/movies?limit=10").header(HttpHeaders.IF_NONE_MATCH, etag))
+                .andExpect(status().isOk())
+                .andExpect(header().string(HttpHeaders.ETAG, not(etag)));
+    }
+
+    @Test
+    public void update_IfMatchCurrentVersion_ExpectSuccess() throws Exception {
+        MovieDataModel itemToSave = buildMovie(123, "new title", "new description", LocalDateTime.now(), true);
+        when(repository.updateReturningPrevious(eq(itemToSave.getId()), eq(itemToSave.getTitle()), eq(itemToSave.getDescription()),
+                eq(itemToSave.getReleaseDate()), eq(itemToSave.isAvailableOnDvd()), eq(3L), any())).thenReturn(Optional.of(itemToSave));
+
+        this.mockMvc.perform(MockMvcRequestBuilders.put("/movies/" + itemToSave.getId())
+                        .header(HttpHeaders.IF_MATCH, "\"3-json\"")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(this.jsonMapper.writeValueAsString(itemToSave)))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.title", is(itemToSave.getTitle())));
+    }
+
+    @Test
+    public void update_IfMatchOldVersion_ExpectPreconditionFailed() throws Exception {
+        MovieDataModel itemToSave = buildMovie(123, "new title", "new description", LocalDateTime.now(), true);
+        when(repository.updateReturningPrevious(eq(itemToSave.getId()), eq(itemToSave.getTitle()), eq(itemToSave.getDescription()),
+                eq(itemToSave.getReleaseDate()), eq(itemToSave.isAvailableOnDvd()), eq(2L), any())).thenReturn(Optional.empty());
+        when(repository.existsById(itemToSave.getId())).thenReturn(true);
+
+        this.mockMvc.perform(MockMvcRequestBuilders.put("/movies/" + itemToSave.getId())
+                        .header(HttpHeaders.IF_MATCH, "\"2-json\"")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(this.jsonMapper.writeValueAsString(itemToSave)))
+                .andExpect(status().isPreconditionFailed())
+                .andExpect(result ->
+                        assertTrue(result.getResolvedException() instanceof MovieChangedException));
+    }
+
+    @Test
+    public void delete_IfMatchOldVersion_ExpectPreconditionFailed() throws Exception {
+        when(repository.deleteReturningPrevious(123, 2L)).thenReturn(Optional.empty());
+        when(repository.existsById(123)).thenReturn(true);
+
+        this.mockMvc.perform(MockMvcRequestBuilders.delete("/movies/123").header(HttpHeaders.IF_MATCH, "\"2-xml\""))
+                .andExpect(status().isPreconditionFailed());
+
+        verify(repository, never()).deleteReturningPrevious(123, null);
+    }
+
+    @Test
+    public void delete_IfMatchMissingMovie_ExpectNotFound() throws Exception {
+        when(repository.deleteReturningPrevious(456, 2L)).thenReturn(Optional.empty());
+        when(repository.existsById(456)).thenReturn(false);
+
+        this.mockMvc.perform(MockMvcRequestBuilders.delete("/movies/456").header(HttpHeaders.IF_MATCH, "\"2-json\""))
+                .andExpect(status().isNotFound());
+    }
+
+    @Test
+    public void delete_IfMatchWeakETag_ExpectPreconditionFailed() throws Exception {
+        when(repository.existsById(123)).thenReturn(true);
+
+        this.mockMvc.perform(MockMvcRequestBuilders.delete("/movies/123").header(HttpHeaders.IF_MATCH, "W/\"2-json\""))
+                .andExpect(status().isPreconditionFailed());
+
+        verify(repository, times(1)).deleteReturningPrevious(123, -1L);
+    }
+
+    //******************************************************************
+    // Read model unit tests
+    //******************************************************************
+
+    @Test
+    public void listAll_ReadModelLoaded_ExpectMoviesFromSnapshotWithoutDatabase() throws Exception {
+        MovieDataModel first = buildMovie(1, "first title", "first description", LocalDateTime.of(2023, 1, 1, 0, 0), true);
+        MovieDataModel second = buildMovie(2, "second title", "second description", LocalDateTime.of(2022, 1, 1, 0, 0), false);
+        when(readModel.getSnapshot()).thenReturn(MovieSnapshot.of(Stream.of(first, second)));
+
+        this.mockMvc.perform(get("/movies"))
+                .andExpect(status().isOk())
+                .andExpect(header().exists(HttpHeaders.ETAG))
+                .andExpect(jsonPath("$", hasSize(2)))
+                .andExpect(jsonPath("$[0].id", is(1)))
+                .andExpect(jsonPath("$[1].title", is("second title")));
+
+        verify(repository, never()).findCatalogueVersion();
+        verify(repository, never()).streamAllByOrderByIdAsc();
+    }
+
+    @Test
+    public void listSearch_ReadModelLoadedSortedByReleaseDate_ExpectPageFromSnapshot() throws Exception {
+        MovieDataModel first = buildMovie(1, "first title", "first description", LocalDateTime.of(2023, 1, 1, 0, 0), true);
+        MovieDataModel second = buildMovie(2, "second title", "second description", LocalDateTime.of(2022, 1, 1, 0, 0), true);
+        MovieDataModel third = buildMovie(3, "third title", "third description", LocalDateTime.of(2021, 1, 1, 0, 0), false);
+        when(readModel.getSnapshot()).thenReturn(MovieSnapshot.of(Stream.of(first, second, third)));
+
+        this.mockMvc.perform(get("/movies?availableOnDvd=true&sort=releaseDate&fields=title"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$", hasSize(2)))
+                .andExpect(jsonPath("$[0].title", is("second title")))
+                .andExpect(jsonPath("$[0].id").doesNotExist())
+                .andExpect(jsonPath("$[1].title", is("first title")));
+
+        verify(repository, never()).searchProjections(any(), any(), any(), any(), anyInt());
+    }
+
+    @Test
+    public void listSearch_ReadModelLoadedSortedByTitle_ExpectSearchInDatabase() throws Exception {
+        MovieDataModel item = buildMovie(123, "test title", "test description", LocalDateTime.now(), true);
+        when(readModel.getSnapshot()).thenReturn(MovieSnapshot.empty());
+        when(repository.search(new MovieFilter(null, null, null, null), Sort.by("title"), null, MovieController.DEFAULT_PAGE_SIZE))
+                .thenReturn(List.of(item));
+
+        this.mockMvc.perform(get("/movies?sort=title"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$", hasSize(1)))
+                .andExpect(jsonPath("$[0].id", is(item.getId())));
+    }
+
+    @Test
+    public void getOne_ReadModelLoaded_ExpectMovieFromSnapshotWithoutDatabase() throws Exception {
+        MovieDataModel item = new MovieDataModel(123, "test title", "test description",
+                LocalDateTime.of(2023, 1, 1, 1, 10, 10), true, 4, Instant.parse("2023-06-01T10:15:30Z"));
+        when(readModel.getSnapshot()).thenReturn(MovieSnapshot.of(Stream.of(item)));
+
+        this.mockMvc.perform(get("/movies/123"))
+                .andExpect(status().isOk())
+                .andExpect(header().string(HttpHeaders.ETAG, MovieETags.forMovie(4, MediaType.APPLICATION_JSON)))
+                .andExpect(header().exists(HttpHeaders.LAST_MODIFIED))
+                .andExpect(jsonPath("$.title", is("test title")));
+        this.mockMvc.perform(get("/movies/124"))
+                .andExpect(status().isNotFound());
+
+        verify(repository, never()).findById(any());
+    }
+
+    @Test
+    public void readModelStats_RequestStats_ExpectSizeAndFootprint() throws Exception {
+        when(readModel.getStats()).thenReturn(new MovieReadModelStats(true, 2, 1024, 17, Instant.now()));
+
+        this.mockMvc.perform(get("/movies/read-model/stats"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.loaded", is(true)))
+                .andExpect(jsonPath("$.size", is(2)))
+                .andExpect(jsonPath("$.footprintBytes", is(1024)))
+                .andExpect(jsonPath("$.appliedSequence", is(17)));
+    }
+
+    @Test
+    public void stats_RequestStats_ExpectCountsFromStatisticsWithoutReadingMovies() throws Exception {
+        when(statistics.getStats()).thenReturn(new MovieCatalogueStats(3, 2, 1, 0, 1,
+                List.of(new ReleaseYear(2022, 1, 1), new ReleaseYear(2023, 1, 0)), Instant.now()));
+
+        this.mockMvc.perform(get("/movies/stats"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.total", is(3)))
+                .andExpect(jsonPath("$.availableOnDvd", is(2)))
+                .andExpect(jsonPath("$.noReleaseDate", is(1)))
+                .andExpect(jsonPath("$.releaseYears[1].year", is(2023)))
+                .andExpect(jsonPath("$.releaseYears[1].movies", is(1)));
+
+        verifyNoInteractions(repository);
+    }
+
     //******************************************************************
     // helper methods
     //******************************************************************
@@ -379,6 +1035,10 @@ public class MovieControllerTest {
         };
     }
 
+    private Timer serializationTimer(String format) {
+        return meterRegistry.get("movies.serialization").tag("format", format).tag("operation", "single").timer();
+    }
+
     /**
      * Format the LocalDateTime object for comparison.  The internal LocalDateTime.toString() formats the milliseconds
      * to 9 places and pads with zeros but the format from jsonPath is only to 7, meaning the 2 don't match
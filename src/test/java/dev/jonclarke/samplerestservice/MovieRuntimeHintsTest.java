@@ -0,0 +1,50 @@
+package dev.jonclarke.samplerestservice;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import dev.jonclarke.samplerestservice.models.MovieCatalogueVersion;
+import dev.jonclarke.samplerestservice.models.MovieDataModel;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.aot.hint.MemberCategory;
+import org.springframework.aot.hint.RuntimeHints;
+import org.springframework.aot.hint.TypeReference;
+import org.springframework.aot.hint.predicate.RuntimeHintsPredicates;
+
+/**
+ * Unit Tests for the MovieRuntimeHints.
+ * Tests cover the hints the native image needs that Spring's AOT processing does not register itself.
+ */
+public class MovieRuntimeHintsTest {
+    private RuntimeHints hints;
+
+    @BeforeEach
+    public void registerHints() {
+        hints = new RuntimeHints();
+        new MovieRuntimeHints().registerHints(hints, getClass().getClassLoader());
+    }
+
+    @Test
+    public void registerHints_MovieDataModel_ExpectPropertiesAndConstructorsRegistered() throws Exception {
+        assertTrue(RuntimeHintsPredicates.reflection()
+                .onMethod(MovieDataModel.class.getMethod("getTitle")).test(hints));
+        assertTrue(RuntimeHintsPredicates.reflection()
+                .onMethod(MovieDataModel.class.getMethod("setTitle", String.class)).test(hints));
+        assertTrue(RuntimeHintsPredicates.reflection()
+                .onType(MovieDataModel.class).withMemberCategory(MemberCategory.INVOKE_DECLARED_CONSTRUCTORS).test(hints));
+        assertTrue(RuntimeHintsPredicates.reflection()
+                .onType(MovieCatalogueVersion.class).withMemberCategory(MemberCategory.INVOKE_DECLARED_CONSTRUCTORS).test(hints));
+    }
+
+    @Test
+    public void registerHints_JacksonXml_ExpectStaxFactoriesRegistered() {
+        assertTrue(RuntimeHintsPredicates.resource().forResource("META-INF/services/javax.xml.stream.XMLOutputFactory").test(hints));
+        assertTrue(RuntimeHintsPredicates.reflection()
+                .onType(TypeReference.of("com.ctc.wstx.stax.WstxOutputFactory")).test(hints));
+    }
+
+    @Test
+    public void registerHints_SampleMovies_ExpectResourceRegistered() {
+        assertTrue(RuntimeHintsPredicates.resource().forResource("sample-movies.ndjson").test(hints));
+    }
+}
@@ -0,0 +1,115 @@
+package dev.jonclarke.samplerestservice;
+
+import static org.hamcrest.Matchers.*;
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
+
+import dev.jonclarke.samplerestservice.dataaccess.MovieRepository;
+import dev.jonclarke.samplerestservice.models.MovieDataModel;
+import dev.jonclarke.samplerestservice.search.MovieSearchIndex;
+import dev.jonclarke.samplerestservice.serialization.MovieSerializer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.apache.lucene.queryparser.classic.ParseException;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.context.annotation.Import;
+import org.springframework.http.MediaType;
+import org.springframework.test.web.servlet.MockMvc;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+/**
+ * Unit Tests for the MovieSearchController.
+ * The search index is mocked, so these tests cover putting the movies it finds into rank order and the request checks.
+ */
+@WebMvcTest(MovieSearchController.class)
+@Import({MovieSerializer.class, SimpleMeterRegistry.class})
+public class MovieSearchControllerTest {
+    @Autowired
+    private MockMvc mockMvc;
+    @MockBean
+    private MovieSearchIndex searchIndex;
+    @MockBean
+    private MovieRepository repository;
+
+    //******************************************************************
+    // Search unit tests
+    //******************************************************************
+
+    @Test
+    public void search_IndexFindsMovies_ExpectMoviesInRankOrder() throws Exception {
+        MovieDataModel first = buildMovie(2, "space title");
+        MovieDataModel second = buildMovie(1, "other title");
+        when(searchIndex.search("space", MovieSearchController.DEFAULT_RESULT_COUNT)).thenReturn(List.of(2, 1));
+        when(repository.findAllById(List.of(2, 1))).thenReturn(List.of(second, first));
+
+        this.mockMvc.perform(get("/movies/search?q=space"))
+                .andExpect(status().isOk())
+                .andExpect(content().contentType(MediaType.APPLICATION_JSON))
+                .andExpect(jsonPath("$", hasSize(2)))
+                .andExpect(jsonPath("$[0].id", is(first.getId())))
+                .andExpect(jsonPath("$[1].id", is(second.getId())));
+    }
+
+    @Test
+    public void searchAsXml_MovieDeletedSinceIndexed_ExpectDeletedMovieSkipped() throws Exception {
+        MovieDataModel movie = buildMovie(1, "space title");
+        when(searchIndex.search("space", 5)).thenReturn(List.of(3, 1));
+        when(repository.findAllById(List.of(3, 1))).thenReturn(List.of(movie));
+
+        this.mockMvc.perform(get("/movies/search?q=space&limit=5").accept(MediaType.APPLICATION_XML))
+                .andExpect(status().isOk())
+                .andExpect(content().contentType(MediaType.APPLICATION_XML))
+                .andExpect(xpath("/List/*").nodeCount(is(1)))
+                .andExpect(xpath("/List/item[1]/id").string(is("1")));
+    }
+
+    @Test
+    public void search_InvalidQuery_ExpectBadRequest() throws Exception {
+        when(searchIndex.search("title:", MovieSearchController.DEFAULT_RESULT_COUNT)).thenThrow(new ParseException("bad query"));
+
+        this.mockMvc.perform(get("/movies/search?q=title:"))
+                .andExpect(status().isBadRequest())
+                .andExpect(result ->
+                        assertTrue(result.getResolvedException() instanceof InvalidMovieQueryException));
+    }
+
+    @Test
+    public void search_NoQuery_ExpectBadRequest() throws Exception {
+        this.mockMvc.perform(get("/movies/search"))
+                .andExpect(status().isBadRequest());
+    }
+
+    @Test
+    public void search_LimitTooLarge_ExpectBadRequest() throws Exception {
+        this.mockMvc.perform(get("/movies/search?q=space&limit=" + (MovieController.MAX_PAGE_SIZE + 1)))
+                .andExpect(status().isBadRequest());
+    }
+
+    //******************************************************************
+    // Rebuild unit tests
+    //******************************************************************
+
+    @Test
+    public void rebuild_Requested_ExpectAcceptedAndRebuildStarted() throws Exception {
+        this.mockMvc.perform(post("/movies/search/rebuild"))
+                .andExpect(status().isAccepted());
+
+        verify(searchIndex).rebuild();
+    }
+
+    //******************************************************************
+    // helper methods
+    //******************************************************************
+
+    private MovieDataModel buildMovie(int id, String title) {
+        return new MovieDataModel(id, title, "test description", LocalDateTime.of(2023, 1, 1, 1, 10, 10), false);
+    }
+}
@@ -0,0 +1,154 @@
+package dev.jonclarke.samplerestservice;
+
+import static org.hamcrest.Matchers.*;
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
+import static org.mockito.Mockito.when;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
+
+import dev.jonclarke.samplerestservice.models.MovieImportResult;
+import dev.jonclarke.samplerestservice.serialization.MovieFileFormat;
+import dev.jonclarke.samplerestservice.transfer.MovieExporter;
+import dev.jonclarke.samplerestservice.transfer.MovieImporter;
+import org.junit.jupiter.api.Test;
+import org.mockito.invocation.InvocationOnMock;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.test.web.servlet.request.MockHttpServletRequestBuilder;
+import org.springframework.test.web.servlet.request.MockMvcRequestBuilders;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Unit Tests for the MovieTransferController.
+ * The exporter and importer are mocked, so these tests cover choosing the file format, compression and headers.
+ */
+@WebMvcTest(MovieTransferController.class)
+public class MovieTransferControllerTest {
+    private static final String FILE_CONTENTS = "id,title\n1,title 1\n";
+
+    @Autowired
+    private MockMvc mockMvc;
+    @MockBean
+    private MovieExporter exporter;
+    @MockBean
+    private MovieImporter importer;
+
+    //******************************************************************
+    // Export unit tests
+    //******************************************************************
+
+    @Test
+    public void exportMovies_NoParameters_ExpectEveryMovieAsNdjsonAttachment() throws Exception {
+        when(exporter.export(any(), anyInt(), any())).thenAnswer(MovieTransferControllerTest::writeFile);
+
+        this.mockMvc.perform(MockMvcRequestBuilders.get("/movies/export"))
+                .andExpect(status().isOk())
+                .andExpect(content().contentTypeCompatibleWith(MediaType.APPLICATION_NDJSON))
+                .andExpect(header().string(HttpHeaders.CONTENT_DISPOSITION, containsString("filename=\"movies.ndjson\"")))
+                .andExpect(header().doesNotExist(HttpHeaders.CONTENT_ENCODING))
+                .andExpect(content().string(FILE_CONTENTS));
+
+        verify(exporter).export(eq(MovieFileFormat.NDJSON), eq(0), any());
+    }
+
+    @Test
+    public void exportMovies_CsvGzipAfter_ExpectCompressedCsvFromCursor() throws Exception {
+        when(exporter.export(any(), anyInt(), any())).thenAnswer(MovieTransferControllerTest::writeFile);
+
+        MvcResult result = this.mockMvc.perform(MockMvcRequestBuilders.get("/movies/export?format=csv&gzip=true&after=123"))
+                .andExpect(status().isOk())
+                .andExpect(content().contentTypeCompatibleWith("text/csv"))
+                .andExpect(header().string(HttpHeaders.CONTENT_DISPOSITION, containsString("filename=\"movies.csv.gz\"")))
+                .andExpect(header().string(HttpHeaders.CONTENT_ENCODING, "gzip"))
+                .andReturn();
+
+        try (InputStream in = new GZIPInputStream(new ByteArrayInputStream(result.getResponse().getContentAsByteArray()))) {
+            assertEquals(FILE_CONTENTS, new String(in.readAllBytes(), StandardCharsets.UTF_8));
+        }
+        verify(exporter).export(eq(MovieFileFormat.CSV), eq(123), any());
+    }
+
+    @Test
+    public void exportMovies_UnknownFormat_ExpectBadRequest() throws Exception {
+        this.mockMvc.perform(MockMvcRequestBuilders.get("/movies/export?format=xlsx"))
+                .andExpect(status().isBadRequest())
+                .andExpect(result ->
+                        assertTrue(result.getResolvedException() instanceof InvalidMovieQueryException));
+
+        verifyNoInteractions(exporter);
+    }
+
+    //******************************************************************
+    // Import unit tests
+    //******************************************************************
+
+    @Test
+    public void importMovies_GzippedCsv_ExpectFileDecompressedAndCountsReturned() throws Exception {
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+        try (OutputStream out = new GZIPOutputStream(compressed)) {
+            out.write(FILE_CONTENTS.getBytes(StandardCharsets.UTF_8));
+        }
+        StringBuilder received = new StringBuilder();
+        when(importer.importMovies(any(), eq(MovieFileFormat.CSV))).thenAnswer(invocation -> {
+            received.append(new String(invocation.getArgument(0, InputStream.class).readAllBytes(), StandardCharsets.UTF_8));
+            return new MovieImportResult(2, 1, 0, 1, List.of("Row 2: Missing movie"));
+        });
+
+        MockHttpServletRequestBuilder mockRequest = MockMvcRequestBuilders.post("/movies/import")
+                .contentType("text/csv")
+                .header(HttpHeaders.CONTENT_ENCODING, "gzip")
+                .accept(MediaType.APPLICATION_JSON)
+                .content(compressed.toByteArray());
+
+        this.mockMvc.perform(mockRequest)
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.rows", is(2)))
+                .andExpect(jsonPath("$.created", is(1)))
+                .andExpect(jsonPath("$.failed", is(1)))
+                .andExpect(jsonPath("$.errors[0]", is("Row 2: Missing movie")));
+
+        assertEquals(FILE_CONTENTS, received.toString());
+    }
+
+    @Test
+    public void importMovies_UnsupportedContentType_ExpectUnsupportedMediaType() throws Exception {
+        MockHttpServletRequestBuilder mockRequest = MockMvcRequestBuilders.post("/movies/import")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content("[]");
+
+        this.mockMvc.perform(mockRequest)
+                .andExpect(status().isUnsupportedMediaType());
+
+        verifyNoInteractions(importer);
+    }
+
+    //******************************************************************
+    // helper methods
+    //******************************************************************
+
+    /**
+     * Answer a call to the exporter by writing a small file to the output stream it was given
+     */
+    private static Long writeFile(InvocationOnMock invocation) throws IOException {
+        invocation.getArgument(2, OutputStream.class).write(FILE_CONTENTS.getBytes(StandardCharsets.UTF_8));
+        return 1L;
+    }
+}
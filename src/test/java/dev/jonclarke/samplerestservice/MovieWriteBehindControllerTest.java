@@ -0,0 +1,128 @@
+package dev.jonclarke.samplerestservice;
+
+import static org.hamcrest.Matchers.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.verifyNoInteractions;
+import static org.mockito.Mockito.when;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
+
+import dev.jonclarke.samplerestservice.serialization.MovieSerializer;
+import dev.jonclarke.samplerestservice.writebehind.MovieWriteBehindQueue;
+import dev.jonclarke.samplerestservice.writebehind.MovieWriteQueueStats;
+import dev.jonclarke.samplerestservice.writebehind.MovieWriteStatus;
+import dev.jonclarke.samplerestservice.writebehind.MovieWriteStatus.State;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.context.annotation.Import;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.test.web.servlet.MockMvc;
+
+/**
+ * Unit Tests for the MovieWriteBehindController.
+ * The write-behind queue is mocked, so these tests cover the responses for accepted, refused and tracked movies.
+ */
+@WebMvcTest(value = MovieWriteBehindController.class, properties = "movies.write-behind.enabled=true")
+@Import({MovieSerializer.class, SimpleMeterRegistry.class})
+public class MovieWriteBehindControllerTest {
+    private static final String MOVIE_JSON =
+            "{\"title\": \"test title\", \"description\": \"test description\", \"releaseDate\": \"2023-01-01T01:10:10\", \"availableOnDvd\": true}";
+
+    @Autowired
+    private MockMvc mockMvc;
+    @MockBean
+    private MovieWriteBehindQueue writeBehindQueue;
+
+    //******************************************************************
+    // Add unit tests
+    //******************************************************************
+
+    @Test
+    public void add_QueueHasSpace_ExpectAcceptedWithStatusLocation() throws Exception {
+        when(writeBehindQueue.submit(any())).thenReturn(new MovieWriteStatus("abc", State.QUEUED, null, null));
+
+        this.mockMvc.perform(post("/movies")
+                        .header("Prefer", "respond-async")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .accept(MediaType.APPLICATION_JSON)
+                        .content(MOVIE_JSON))
+                .andExpect(status().isAccepted())
+                .andExpect(header().string(HttpHeaders.LOCATION, endsWith("/movies/writes/abc")))
+                .andExpect(header().string("Preference-Applied", "respond-async"))
+                .andExpect(jsonPath("$.trackingId", is("abc")))
+                .andExpect(jsonPath("$.state", is("QUEUED")));
+    }
+
+    @Test
+    public void add_RespondAsyncAmongOtherPreferences_ExpectAccepted() throws Exception {
+        when(writeBehindQueue.submit(any())).thenReturn(new MovieWriteStatus("abc", State.QUEUED, null, null));
+
+        for (String prefer : new String[] { "respond-async, wait=5", "handling=lenient, Respond-Async",
+                "return=minimal; foo=\"bar\", respond-async;param" }) {
+            this.mockMvc.perform(post("/movies")
+                            .header("Prefer", prefer)
+                            .contentType(MediaType.APPLICATION_JSON)
+                            .content(MOVIE_JSON))
+                    .andExpect(status().isAccepted());
+        }
+    }
+
+    @Test
+    public void add_OtherPreferencesOnly_ExpectNotQueued() throws Exception {
+        this.mockMvc.perform(post("/movies")
+                        .header("Prefer", "return=minimal, respond-async-later")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(MOVIE_JSON))
+                .andExpect(status().is4xxClientError());
+
+        verifyNoInteractions(writeBehindQueue);
+    }
+
+    @Test
+    public void add_QueueFull_ExpectServiceUnavailableWithRetryAfter() throws Exception {
+        when(writeBehindQueue.submit(any())).thenReturn(null);
+
+        this.mockMvc.perform(post("/movies")
+                        .header("Prefer", "respond-async")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(MOVIE_JSON))
+                .andExpect(status().isServiceUnavailable())
+                .andExpect(header().string(HttpHeaders.RETRY_AFTER, MovieWriteBehindController.RETRY_AFTER_SECONDS));
+    }
+
+    //******************************************************************
+    // Status unit tests
+    //******************************************************************
+
+    @Test
+    public void getWriteStatus_Written_ExpectMovieId() throws Exception {
+        when(writeBehindQueue.getStatus("abc")).thenReturn(new MovieWriteStatus("abc", State.WRITTEN, 42, null));
+
+        this.mockMvc.perform(get("/movies/writes/abc"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.state", is("WRITTEN")))
+                .andExpect(jsonPath("$.id", is(42)));
+    }
+
+    @Test
+    public void getWriteStatus_UnknownTrackingId_ExpectNotFound() throws Exception {
+        this.mockMvc.perform(get("/movies/writes/unknown"))
+                .andExpect(status().isNotFound());
+    }
+
+    @Test
+    public void getWriteQueueStats_ExpectStatsFromQueue() throws Exception {
+        when(writeBehindQueue.getStats()).thenReturn(new MovieWriteQueueStats(3, 10000, 20, 1, 2));
+
+        this.mockMvc.perform(get("/movies/writes"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.queued", is(3)))
+                .andExpect(jsonPath("$.capacity", is(10000)))
+                .andExpect(jsonPath("$.rejected", is(2)));
+    }
+}
@@ -0,0 +1,182 @@
+package dev.jonclarke.samplerestservice;
+
+import static org.hamcrest.Matchers.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.when;
+
+import dev.jonclarke.samplerestservice.dataaccess.ReactiveMovieRepository;
+import dev.jonclarke.samplerestservice.models.MovieDataModel;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.reactive.WebFluxTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.http.MediaType;
+import org.springframework.test.web.reactive.server.WebTestClient;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+
+import java.time.LocalDateTime;
+
+/**
+ * Unit Tests for the ReactiveMovieController.
+ * Tests cover all methods available in the controller, including each of the streaming formats for the list
+ */
+@WebFluxTest(ReactiveMovieController.class)
+public class ReactiveMovieControllerTest {
+    @Autowired
+    private WebTestClient webTestClient;
+    @MockBean
+    private ReactiveMovieRepository repository;
+
+    //******************************************************************
+    // List all unit tests
+    //******************************************************************
+
+    @Test
+    public void listAll_DataSetContainsTwoItems_ExpectDataInJsonArray() {
+        MovieDataModel item1 = buildMovie(123, "test title 1");
+        MovieDataModel item2 = buildMovie(124, "test title 2");
+        when(repository.findAll()).thenReturn(Flux.just(item1, item2));
+
+        webTestClient.get().uri("/movies")
+                .exchange()
+                .expectStatus().isOk()
+                .expectHeader().contentType(MediaType.APPLICATION_JSON)
+                .expectBody()
+                .jsonPath("$.length()").isEqualTo(2)
+                .jsonPath("$[0].id").isEqualTo(item1.getId())
+                .jsonPath("$[1].title").isEqualTo(item2.getTitle());
+    }
+
+    @Test
+    public void listAllAsNdJson_DataSetContainsTwoItems_ExpectOneItemPerLine() {
+        MovieDataModel item1 = buildMovie(123, "test title 1");
+        MovieDataModel item2 = buildMovie(124, "test title 2");
+        when(repository.findAll()).thenReturn(Flux.just(item1, item2));
+
+        Flux<MovieDataModel> body = webTestClient.get().uri("/movies")
+                .accept(MediaType.APPLICATION_NDJSON)
+                .exchange()
+                .expectStatus().isOk()
+                .expectHeader().contentTypeCompatibleWith(MediaType.APPLICATION_NDJSON)
+                .returnResult(MovieDataModel.class)
+                .getResponseBody();
+
+        StepVerifier.create(body)
+                .expectNextMatches(movie -> movie.getId() == item1.getId())
+                .expectNextMatches(movie -> movie.getId() == item2.getId())
+                .verifyComplete();
+    }
+
+    @Test
+    public void listAllAsEventStream_DataSetContainsOneItem_ExpectEventWithMovieId() {
+        MovieDataModel item = buildMovie(123, "test title");
+        when(repository.findAll()).thenReturn(Flux.just(item));
+
+        webTestClient.get().uri("/movies")
+                .accept(MediaType.TEXT_EVENT_STREAM)
+                .exchange()
+                .expectStatus().isOk()
+                .expectHeader().contentTypeCompatibleWith(MediaType.TEXT_EVENT_STREAM)
+                .expectBody(String.class)
+                .value(containsString("id:" + item.getId()))
+                .value(containsString("\"title\":\"" + item.getTitle() + "\""));
+    }
+
+    //******************************************************************
+    // Get one unit tests
+    //******************************************************************
+
+    @Test
+    public void getOne_RequestAnItemById_ExpectDataInJsonObject() {
+        MovieDataModel item = buildMovie(456, "test title");
+        when(repository.findById(item.getId())).thenReturn(Mono.just(item));
+
+        webTestClient.get().uri("/movies/" + item.getId())
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody()
+                .jsonPath("$.id").isEqualTo(item.getId())
+                .jsonPath("$.title").isEqualTo(item.getTitle());
+    }
+
+    @Test
+    public void getOne_RequestAnInvalidItem_Expect404Error() {
+        when(repository.findById(123)).thenReturn(Mono.empty());
+
+        webTestClient.get().uri("/movies/123")
+                .exchange()
+                .expectStatus().isNotFound();
+    }
+
+    //******************************************************************
+    // Add, update and delete unit tests
+    //******************************************************************
+
+    @Test
+    public void add_SaveValidItem_ExpectSavedItemWithId() {
+        MovieDataModel savedItem = buildMovie(789, "test title");
+        when(repository.insert(any())).thenReturn(Mono.just(savedItem));
+
+        webTestClient.post().uri("/movies")
+                .contentType(MediaType.APPLICATION_JSON)
+                .bodyValue("{\"title\": \"test title\"}")
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody()
+                .jsonPath("$.id").isEqualTo(savedItem.getId());
+    }
+
+    @Test
+    public void update_SaveValidItem_ExpectSuccess() {
+        when(repository.updateById(eq(123), any())).thenReturn(Mono.just(1L));
+
+        webTestClient.put().uri("/movies/123")
+                .contentType(MediaType.APPLICATION_JSON)
+                .bodyValue("{\"title\": \"new title\"}")
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody()
+                .jsonPath("$.id").isEqualTo(123)
+                .jsonPath("$.title").isEqualTo("new title");
+    }
+
+    @Test
+    public void update_InvalidId_ExpectFailure() {
+        when(repository.updateById(eq(456), any())).thenReturn(Mono.just(0L));
+
+        webTestClient.put().uri("/movies/456")
+                .contentType(MediaType.APPLICATION_JSON)
+                .bodyValue("{\"title\": \"new title\"}")
+                .exchange()
+                .expectStatus().isNotFound();
+    }
+
+    @Test
+    public void delete_DeleteValidItem_ExpectSuccess() {
+        when(repository.deleteById(123)).thenReturn(Mono.just(1L));
+
+        webTestClient.delete().uri("/movies/123")
+                .exchange()
+                .expectStatus().isOk();
+    }
+
+    @Test
+    public void delete_InvalidId_ExpectFailure() {
+        when(repository.deleteById(456)).thenReturn(Mono.just(0L));
+
+        webTestClient.delete().uri("/movies/456")
+                .exchange()
+                .expectStatus().isNotFound();
+    }
+
+    //******************************************************************
+    // helper methods
+    //******************************************************************
+
+    private MovieDataModel buildMovie(int id, String title) {
+        return new MovieDataModel(id, title, "test description", LocalDateTime.of(2023, 1, 1, 1, 10, 10), false);
+    }
+}
@@ -0,0 +1,194 @@
+package dev.jonclarke.samplerestservice.caching;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import dev.jonclarke.samplerestservice.events.MovieChangedEvent;
+import dev.jonclarke.samplerestservice.events.MovieChangedEvent.ChangeType;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Unit Tests for the RequestCoalescer.
+ * Tests cover concurrent requests sharing one read, failures being shared, reads not being kept afterwards and
+ * reads in progress being forgotten when a movie changes.
+ */
+public class RequestCoalescerTest {
+    private final MeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final RequestCoalescer coalescer = new RequestCoalescer(true, meterRegistry);
+
+    //******************************************************************
+    // Coalescing unit tests
+    //******************************************************************
+
+    @Test
+    public void execute_ConcurrentRequestsForSameKey_ExpectOneReadSharedByAll() throws Exception {
+        int followers = 7;
+        AtomicInteger reads = new AtomicInteger();
+        CountDownLatch readStarted = new CountDownLatch(1);
+        CountDownLatch finishRead = new CountDownLatch(1);
+
+        ExecutorService executor = Executors.newFixedThreadPool(followers + 1);
+        try {
+            List<Future<String>> results = new ArrayList<>();
+            results.add(executor.submit(() -> coalescer.execute("movie", 1, () -> {
+                readStarted.countDown();
+                await(finishRead);
+                return "movie " + reads.incrementAndGet();
+            })));
+            assertTrue(readStarted.await(5, TimeUnit.SECONDS));
+
+            for (int i = 0; i < followers; i++) {
+                results.add(executor.submit(() -> coalescer.execute("movie", 1, () -> "movie " + reads.incrementAndGet())));
+            }
+            // release the read once every follower is waiting for it
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+            while (count("movie", "coalesced") < followers && System.nanoTime() < deadline) {
+                Thread.sleep(1);
+            }
+            finishRead.countDown();
+
+            for (Future<String> result : results) {
+                assertEquals("movie 1", result.get(5, TimeUnit.SECONDS));
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        assertEquals(1, reads.get());
+        assertEquals(1, count("movie", "loaded"));
+        assertEquals(followers, count("movie", "coalesced"));
+    }
+
+    @Test
+    public void execute_ReadFails_ExpectSameExceptionForWaitingRequests() throws Exception {
+        CountDownLatch readStarted = new CountDownLatch(1);
+        CountDownLatch finishRead = new CountDownLatch(1);
+        IllegalStateException failure = new IllegalStateException("read failed");
+
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            Future<Object> leader = executor.submit(() -> coalescer.execute("page", "key", () -> {
+                readStarted.countDown();
+                await(finishRead);
+                throw failure;
+            }));
+            assertTrue(readStarted.await(5, TimeUnit.SECONDS));
+            Future<Object> follower = executor.submit(() -> coalescer.execute("page", "key", () -> "not read"));
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+            while (count("page", "coalesced") < 1 && System.nanoTime() < deadline) {
+                Thread.sleep(1);
+            }
+            finishRead.countDown();
+
+            assertSame(failure, assertThrows(ExecutionException.class, () -> leader.get(5, TimeUnit.SECONDS)).getCause());
+            assertSame(failure, assertThrows(ExecutionException.class, () -> follower.get(5, TimeUnit.SECONDS)).getCause());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void execute_SequentialRequestsAndDifferentKeys_ExpectEachRead() {
+        AtomicInteger reads = new AtomicInteger();
+
+        List<Integer> results = List.of(
+                coalescer.execute("movie", 1, reads::incrementAndGet),
+                coalescer.execute("movie", 1, reads::incrementAndGet),
+                coalescer.execute("movie", 2, reads::incrementAndGet),
+                // the same key for a different operation is a different read
+                coalescer.execute("page", 1, reads::incrementAndGet));
+
+        assertEquals(List.of(1, 2, 3, 4), results);
+
+        assertEquals(3, count("movie", "loaded"));
+        assertEquals(0, count("movie", "coalesced"));
+    }
+
+    @Test
+    public void execute_MovieChangedWhileReading_ExpectLaterRequestsReadAgain() throws Exception {
+        AtomicInteger reads = new AtomicInteger();
+        CountDownLatch readStarted = new CountDownLatch(1);
+        CountDownLatch finishRead = new CountDownLatch(1);
+
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            Future<String> before = executor.submit(() -> coalescer.execute("movie", 1, () -> {
+                readStarted.countDown();
+                await(finishRead);
+                return "movie " + reads.incrementAndGet();
+            }));
+            assertTrue(readStarted.await(5, TimeUnit.SECONDS));
+
+            coalescer.onMovieChanged(new MovieChangedEvent(ChangeType.UPDATED, 1));
+
+            // a read that started after the change, while the older one is still in progress
+            CountDownLatch secondReadStarted = new CountDownLatch(1);
+            CountDownLatch finishSecondRead = new CountDownLatch(1);
+            Future<String> after = executor.submit(() -> coalescer.execute("movie", 1, () -> {
+                secondReadStarted.countDown();
+                await(finishSecondRead);
+                return "movie " + reads.incrementAndGet();
+            }));
+            assertTrue(secondReadStarted.await(5, TimeUnit.SECONDS));
+            finishRead.countDown();
+            assertEquals("movie 1", before.get(5, TimeUnit.SECONDS));
+
+            // the older read finishing must not take the newer one out of the map
+            Future<String> joined = executor.submit(() -> coalescer.execute("movie", 1, () -> "not read"));
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+            while (count("movie", "coalesced") < 1 && System.nanoTime() < deadline) {
+                Thread.sleep(1);
+            }
+            finishSecondRead.countDown();
+
+            assertEquals("movie 2", after.get(5, TimeUnit.SECONDS));
+            assertEquals("movie 2", joined.get(5, TimeUnit.SECONDS));
+        } finally {
+            executor.shutdownNow();
+        }
+
+        assertEquals(2, count("movie", "loaded"));
+        assertEquals(1, count("movie", "coalesced"));
+    }
+
+    @Test
+    public void execute_Disabled_ExpectEveryRequestRead() {
+        RequestCoalescer disabled = new RequestCoalescer(false, meterRegistry);
+        AtomicInteger reads = new AtomicInteger();
+
+        List<Integer> results = List.of(
+                disabled.execute("movie", 1, reads::incrementAndGet),
+                disabled.execute("movie", 1, reads::incrementAndGet));
+
+        assertEquals(List.of(1, 2), results);
+        assertNull(meterRegistry.find("movies.read.coalescing").counter());
+    }
+
+    //******************************************************************
+    // helper methods
+    //******************************************************************
+
+    private double count(String operation, String result) {
+        return meterRegistry.counter("movies.read.coalescing", "operation", operation, "result", result).count();
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            assertTrue(latch.await(5, TimeUnit.SECONDS));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(e);
+        }
+    }
+}
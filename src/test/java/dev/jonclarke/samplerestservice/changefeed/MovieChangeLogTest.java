@@ -0,0 +1,122 @@
+package dev.jonclarke.samplerestservice.changefeed;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import dev.jonclarke.samplerestservice.dataaccess.MovieChangeRepository;
+import dev.jonclarke.samplerestservice.events.MovieChangedEvent;
+import dev.jonclarke.samplerestservice.events.MovieChangedEvent.ChangeType;
+import dev.jonclarke.samplerestservice.models.MovieChange;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.context.annotation.Import;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Instant;
+import java.util.List;
+
+/**
+ * Unit Tests for the MovieChangeLog, run against the embedded database.
+ * Changes are recorded as their transaction commits, so the tests do not run inside a test transaction.
+ */
+@DataJpaTest(properties = "movies.changes.retention=1h")
+@Import(MovieChangeLog.class)
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+public class MovieChangeLogTest {
+    @Autowired
+    private MovieChangeLog changeLog;
+    @Autowired
+    private MovieChangeRepository repository;
+    @Autowired
+    private ApplicationEventPublisher eventPublisher;
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @AfterEach
+    public void deleteChanges() {
+        repository.deleteAll();
+    }
+
+    //******************************************************************
+    // Record unit tests
+    //******************************************************************
+
+    @Test
+    public void onMovieChanged_ChangesInCommittedTransaction_ExpectRecordedInOrder() {
+        long since = repository.findLatestSequence();
+
+        transactionTemplate.executeWithoutResult(status -> {
+            eventPublisher.publishEvent(new MovieChangedEvent(ChangeType.CREATED, 1));
+            eventPublisher.publishEvent(new MovieChangedEvent(ChangeType.UPDATED, 1));
+            eventPublisher.publishEvent(new MovieChangedEvent(ChangeType.DELETED, 2));
+        });
+
+        List<MovieChange> changes = repository.findBySequenceGreaterThanOrderBySequenceAsc(since, PageRequest.ofSize(10));
+        assertEquals(3, changes.size());
+        assertEquals(since + 1, changes.get(0).getSequence());
+        assertEquals(ChangeType.CREATED, changes.get(0).getChangeType());
+        assertEquals(1, changes.get(0).getMovieId());
+        assertEquals(ChangeType.UPDATED, changes.get(1).getChangeType());
+        assertEquals(since + 3, changes.get(2).getSequence());
+        assertEquals(ChangeType.DELETED, changes.get(2).getChangeType());
+        assertEquals(2, changes.get(2).getMovieId());
+        assertEquals(since + 3, repository.findLatestSequence());
+    }
+
+    @Test
+    public void onMovieChanged_TransactionRolledBack_ExpectNothingRecorded() {
+        long since = repository.findLatestSequence();
+
+        transactionTemplate.executeWithoutResult(status -> {
+            eventPublisher.publishEvent(new MovieChangedEvent(ChangeType.CREATED, 1));
+            status.setRollbackOnly();
+        });
+
+        assertTrue(repository.findBySequenceGreaterThanOrderBySequenceAsc(since, PageRequest.ofSize(10)).isEmpty());
+        assertEquals(since, repository.findLatestSequence());
+    }
+
+    @Test
+    public void recordSeparately_OutsideTransaction_ExpectRecorded() {
+        long since = repository.findLatestSequence();
+
+        changeLog.recordSeparately(new MovieChangedEvent(ChangeType.CREATED, 5)).join();
+
+        List<MovieChange> changes = repository.findBySequenceGreaterThanOrderBySequenceAsc(since, PageRequest.ofSize(10));
+        assertEquals(1, changes.size());
+        assertEquals(5, changes.get(0).getMovieId());
+    }
+
+    @Test
+    public void onMovieChanged_SeparateTransactions_ExpectSequencesContinue() {
+        long since = repository.findLatestSequence();
+
+        transactionTemplate.executeWithoutResult(status ->
+                eventPublisher.publishEvent(new MovieChangedEvent(ChangeType.CREATED, 1)));
+        transactionTemplate.executeWithoutResult(status ->
+                eventPublisher.publishEvent(new MovieChangedEvent(ChangeType.CREATED, 2)));
+
+        List<Long> sequences = repository.findBySequenceGreaterThanOrderBySequenceAsc(since, PageRequest.ofSize(10))
+                .stream().map(MovieChange::getSequence).toList();
+        assertEquals(List.of(since + 1, since + 2), sequences);
+    }
+
+    //******************************************************************
+    // Retention unit tests
+    //******************************************************************
+
+    @Test
+    public void deleteExpired_ChangesOlderThanRetention_ExpectOnlyThoseDeleted() {
+        repository.saveAndFlush(new MovieChange(1_000_001, 1, ChangeType.CREATED, Instant.now().minusSeconds(7200)));
+        repository.saveAndFlush(new MovieChange(1_000_002, 1, ChangeType.UPDATED, Instant.now()));
+
+        assertEquals(1, changeLog.deleteExpired());
+        assertFalse(repository.existsById(1_000_001L));
+        assertTrue(repository.existsById(1_000_002L));
+    }
+}
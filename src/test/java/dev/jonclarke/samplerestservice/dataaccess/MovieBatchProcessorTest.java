@@ -0,0 +1,152 @@
+package dev.jonclarke.samplerestservice.dataaccess;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import dev.jonclarke.samplerestservice.models.MovieBatchResult;
+import dev.jonclarke.samplerestservice.models.MovieBatchResult.Status;
+import dev.jonclarke.samplerestservice.models.MovieDataModel;
+import dev.jonclarke.samplerestservice.statistics.MovieStatistics;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDateTime;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * Unit Tests for the MovieBatchProcessor, run against the embedded database.
+ * The chunk size is reduced so the tests cover requests that span several chunks.
+ * Each chunk is committed in its own transaction, so the tests do not run inside a test transaction.
+ */
+@DataJpaTest(properties = "movies.batch.chunk-size=2")
+@Import({MovieBatchProcessor.class, MovieStatistics.class})
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+public class MovieBatchProcessorTest {
+    @Autowired
+    private MovieBatchProcessor processor;
+    @Autowired
+    private MovieRepository repository;
+
+    @AfterEach
+    public void deleteMovies() {
+        repository.deleteAll();
+    }
+
+    //******************************************************************
+    // Create unit tests
+    //******************************************************************
+
+    @Test
+    public void create_ValidItemsAcrossChunks_ExpectAllCreated() {
+        List<MovieBatchResult> results = processor.create(List.of(
+                buildMovie("title 1"), buildMovie("title 2"), buildMovie("title 3")).iterator());
+
+        assertEquals(3, results.size());
+        for (int i = 0; i < results.size(); i++) {
+            assertEquals(i, results.get(i).index());
+            assertEquals(Status.CREATED, results.get(i).status());
+            assertTrue(repository.existsById(results.get(i).id()));
+        }
+        assertEquals(3, repository.count());
+    }
+
+    @Test
+    public void create_OneItemTooLongForDatabase_ExpectOnlyThatItemFailed() {
+        List<MovieBatchResult> results = processor.create(List.of(
+                buildMovie("title 1"), buildMovie("x".repeat(1000)), buildMovie("title 3")).iterator());
+
+        assertEquals(Status.CREATED, results.get(0).status());
+        assertEquals(Status.FAILED, results.get(1).status());
+        assertNotNull(results.get(1).message());
+        assertEquals(Status.CREATED, results.get(2).status());
+        assertEquals(2, repository.count());
+    }
+
+    @Test
+    public void create_MissingItem_ExpectOnlyThatItemFailed() {
+        List<MovieBatchResult> results = processor.create(Arrays.asList(buildMovie("title 1"), null).iterator());
+
+        assertEquals(Status.CREATED, results.get(0).status());
+        assertEquals(Status.FAILED, results.get(1).status());
+        assertEquals(1, repository.count());
+    }
+
+    @Test
+    public void create_ReadFailsPartWay_ExpectItemsReadSoFarCreatedAndFailureReported() {
+        Iterator<MovieDataModel> movies = new Iterator<>() {
+            private int count = 0;
+
+            @Override
+            public boolean hasNext() {
+                return true;
+            }
+
+            @Override
+            public MovieDataModel next() {
+                if (count++ == 3) {
+                    throw new IllegalStateException("bad item");
+                }
+                return buildMovie("title " + count);
+            }
+        };
+
+        List<MovieBatchResult> results = processor.create(movies);
+
+        assertEquals(4, results.size());
+        assertEquals(Status.FAILED, results.get(3).status());
+        assertEquals(3, repository.count());
+    }
+
+    //******************************************************************
+    // Update unit tests
+    //******************************************************************
+
+    @Test
+    public void update_ExistingAndMissingIds_ExpectUpdatedAndNotFound() {
+        MovieDataModel existing = repository.save(buildMovie("old title"));
+        MovieDataModel update = buildMovie("new title");
+        update.setId(existing.getId());
+        MovieDataModel missing = buildMovie("missing title");
+        missing.setId(existing.getId() + 1000);
+
+        List<MovieBatchResult> results = processor.update(List.of(update, missing).iterator());
+
+        assertEquals(Status.UPDATED, results.get(0).status());
+        assertEquals(Status.NOT_FOUND, results.get(1).status());
+        assertEquals("new title", repository.findById(existing.getId()).orElseThrow().getTitle());
+    }
+
+    //******************************************************************
+    // Delete unit tests
+    //******************************************************************
+
+    @Test
+    public void delete_ExistingAndMissingIds_ExpectDeletedAndNotFound() {
+        MovieDataModel existing1 = repository.save(buildMovie("title 1"));
+        MovieDataModel existing2 = repository.save(buildMovie("title 2"));
+        MovieDataModel kept = repository.save(buildMovie("title 3"));
+
+        List<MovieBatchResult> results = processor.delete(
+                List.of(existing1.getId(), kept.getId() + 1000, existing2.getId(), existing1.getId()).iterator());
+
+        assertEquals(Status.DELETED, results.get(0).status());
+        assertEquals(Status.NOT_FOUND, results.get(1).status());
+        assertEquals(Status.DELETED, results.get(2).status());
+        assertEquals(Status.NOT_FOUND, results.get(3).status());
+        assertEquals(List.of(kept.getId()), repository.findAll().stream().map(MovieDataModel::getId).toList());
+    }
+
+    //******************************************************************
+    // helper methods
+    //******************************************************************
+
+    private MovieDataModel buildMovie(String title) {
+        return new MovieDataModel(title, "test description", LocalDateTime.now(), false);
+    }
+}
@@ -0,0 +1,94 @@
+package dev.jonclarke.samplerestservice.dataaccess;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import dev.jonclarke.samplerestservice.models.MovieDataModel;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.autoconfigure.orm.jpa.TestEntityManager;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Unit Tests for the Flyway schema migrations, run against H2 in its PostgreSQL compatibility mode as a local
+ * stand-in for PostgreSQL, so the migrations are checked against PostgreSQL's syntax without a PostgreSQL server.
+ * Hibernate does not create any of the schema, so the tests also check the migrated schema matches the entity.
+ */
+@DataJpaTest(properties = {
+        "spring.datasource.url=jdbc:h2:mem:migration;MODE=PostgreSQL;DATABASE_TO_LOWER=TRUE;DEFAULT_NULL_ORDERING=HIGH",
+        "spring.datasource.username=sa"
+})
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+public class MovieSchemaMigrationTest {
+    @Autowired
+    private MovieRepository repository;
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+    @Autowired
+    private TestEntityManager entityManager;
+
+    //******************************************************************
+    // Migration unit tests
+    //******************************************************************
+
+    @Test
+    public void migrate_EmptyDatabase_ExpectEveryMigrationApplied() {
+        Integer failed = jdbcTemplate.queryForObject(
+                "select count(*) from flyway_schema_history where not success", Integer.class);
+        Integer applied = jdbcTemplate.queryForObject(
+                "select count(*) from flyway_schema_history where version is not null", Integer.class);
+
+        assertEquals(0, failed);
+        assertTrue(applied > 0);
+    }
+
+    @Test
+    public void migrate_EmptyDatabase_ExpectIndexesCreated() {
+        List<String> indexes = jdbcTemplate.queryForList(
+                "select index_name from information_schema.indexes where table_name = 'movie_data_model'", String.class);
+
+        assertTrue(indexes.contains("idx_movie_release_date"));
+        assertTrue(indexes.contains("idx_movie_dvd_release_date"));
+        assertTrue(indexes.contains("idx_movie_title_key"));
+    }
+
+    //******************************************************************
+    // Entity mapping unit tests
+    //******************************************************************
+
+    @Test
+    public void saveAll_MoreMoviesThanOneIdBlock_ExpectUniqueIdsFromSequence() {
+        List<MovieDataModel> movies = new ArrayList<>();
+        for (int i = 1; i <= MovieDataModel.ID_ALLOCATION_SIZE + 1; i++) {
+            movies.add(new MovieDataModel("Movie " + i, "Movie " + i + " Description", LocalDateTime.now(), i % 2 == 0));
+        }
+
+        List<Integer> ids = repository.saveAll(movies).stream().map(MovieDataModel::getId).distinct().toList();
+        repository.flush();
+
+        assertEquals(movies.size(), ids.size());
+        assertEquals(movies.size(), repository.count());
+    }
+
+    @Test
+    public void save_NewMovie_ExpectEveryColumnReadBack() {
+        LocalDateTime releaseDate = LocalDateTime.of(2023, 1, 1, 1, 10, 10);
+        MovieDataModel saved = repository.saveAndFlush(new MovieDataModel("Test Title", "test description", releaseDate, true));
+
+        // read the row back rather than the instance held by the persistence context
+        entityManager.clear();
+
+        MovieDataModel movie = repository.findById(saved.getId()).orElseThrow();
+        assertEquals("Test Title", movie.getTitle());
+        assertEquals("test description", movie.getDescription());
+        assertEquals(releaseDate, movie.getReleaseDate());
+        assertTrue(movie.isAvailableOnDvd());
+        assertEquals("test title", movie.getTitleKey());
+        assertNotNull(movie.getLastModified());
+    }
+}
@@ -0,0 +1,198 @@
+package dev.jonclarke.samplerestservice.dataaccess;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+import static org.junit.jupiter.api.Assertions.*;
+
+import dev.jonclarke.samplerestservice.models.MovieDataModel;
+import dev.jonclarke.samplerestservice.models.MovieProjection;
+import org.hibernate.resource.jdbc.spi.StatementInspector;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.data.domain.Sort;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.stream.Stream;
+
+/**
+ * Unit Tests for the movie search queries, run against the embedded database seeded with a large number of movies.
+ * As well as checking the results, each test asks the database for the plan of the query Hibernate actually ran and
+ * checks it is answered from the expected index rather than a full scan of the table.
+ * Hibernate is told to inline the criteria values, so the captured SQL can be explained without binding parameters.
+ */
+@DataJpaTest(properties = {
+        "spring.jpa.properties.hibernate.criteria.value_handling_mode=inline",
+        "spring.jpa.properties.hibernate.session_factory.statement_inspector="
+                + "dev.jonclarke.samplerestservice.dataaccess.MovieSearchRepositoryTest$StatementCapture"
+})
+public class MovieSearchRepositoryTest {
+
+    private static final int MOVIE_COUNT = 50_000;
+    private static final LocalDateTime FIRST_RELEASE_DATE = LocalDateTime.of(1950, 1, 1, 0, 0);
+
+    /**
+     * Records the SQL of every statement Hibernate runs
+     */
+    public static class StatementCapture implements StatementInspector {
+        static final List<String> statements = new CopyOnWriteArrayList<>();
+
+        @Override
+        public String inspect(String sql) {
+            statements.add(sql);
+            return sql;
+        }
+    }
+
+    @Autowired
+    private MovieRepository repository;
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @BeforeEach
+    public void seedMovies() {
+        // movie i is released i days after the first release date, and every third movie is on DVD
+        List<Object[]> rows = new ArrayList<>(MOVIE_COUNT);
+        Timestamp now = Timestamp.from(Instant.now());
+        for (int i = 1; i <= MOVIE_COUNT; i++) {
+            String title = "Movie " + i;
+            rows.add(new Object[] { i, title, MovieDataModel.toTitleKey(title), title + " Description",
+                    FIRST_RELEASE_DATE.plusDays(i), i % 3 == 0, now });
+        }
+        jdbcTemplate.batchUpdate("insert into movie_data_model "
+                + "(id, title, title_key, description, release_date, available_on_dvd, version, last_modified) "
+                + "values (?, ?, ?, ?, ?, ?, 0, ?)", rows);
+        // let the optimizer see how the values are distributed
+        jdbcTemplate.execute("ANALYZE");
+        StatementCapture.statements.clear();
+    }
+
+    //******************************************************************
+    // Title unit tests
+    //******************************************************************
+
+    @Test
+    public void search_TitlePrefixInAnyCase_ExpectMatchingMoviesFromTitleIndex() {
+        List<MovieDataModel> movies = repository.search(new MovieFilter("MOVIE 4999", null, null, null),
+                Sort.by("title"), null, 100);
+
+        // Movie 4999 and Movie 49990 to Movie 49999
+        assertEquals(11, movies.size());
+        assertEquals("Movie 4999", movies.get(0).getTitle());
+        movies.forEach(movie -> assertThat(movie.getTitle(), startsWith("Movie 4999")));
+        assertPlanUsesIndex("idx_movie_title_key");
+    }
+
+    //******************************************************************
+    // Release date unit tests
+    //******************************************************************
+
+    @Test
+    public void search_ReleasedBetween_ExpectMoviesInRangeFromReleaseDateIndex() {
+        LocalDateTime after = FIRST_RELEASE_DATE.plusDays(40_000);
+        LocalDateTime before = FIRST_RELEASE_DATE.plusDays(40_011);
+        List<MovieDataModel> movies = repository.search(new MovieFilter(null, after, before, null),
+                Sort.by(Sort.Direction.DESC, "releaseDate"), null, 100);
+
+        assertEquals(10, movies.size());
+        assertEquals(40_010, movies.get(0).getId());
+        assertEquals(40_001, movies.get(9).getId());
+        assertPlanUsesIndex("idx_movie_release_date");
+    }
+
+    //******************************************************************
+    // DVD availability unit tests
+    //******************************************************************
+
+    @Test
+    public void search_AvailableOnDvdReleasedAfter_ExpectMatchingMoviesFromDvdIndex() {
+        LocalDateTime after = FIRST_RELEASE_DATE.plusDays(MOVIE_COUNT - 30);
+        List<MovieDataModel> movies = repository.search(new MovieFilter(null, after, null, true),
+                Sort.by("releaseDate"), null, 100);
+
+        assertEquals(10, movies.size());
+        movies.forEach(movie -> {
+            assertTrue(movie.isAvailableOnDvd());
+            assertThat(movie.getReleaseDate(), greaterThan(after));
+        });
+        assertPlanUsesIndex("idx_movie_dvd_release_date");
+    }
+
+    //******************************************************************
+    // Keyset unit tests
+    //******************************************************************
+
+    @Test
+    public void search_AfterIdDescending_ExpectNextMoviesDownFromCursor() {
+        List<MovieDataModel> movies = repository.search(new MovieFilter(null, null, null, false),
+                Sort.by(Sort.Direction.DESC, "id"), 100, 3);
+
+        assertEquals(List.of(98, 97, 95), movies.stream().map(MovieDataModel::getId).toList());
+    }
+
+    //******************************************************************
+    // Projection unit tests
+    //******************************************************************
+
+    @Test
+    public void searchProjections_IdAndTitle_ExpectOnlyThoseColumnsSelected() {
+        List<MovieProjection> movies = repository.searchProjections(Set.of("id", "title"),
+                new MovieFilter("MOVIE 4999", null, null, null), Sort.by("title"), null, 100);
+
+        assertEquals(11, movies.size());
+        assertEquals("Movie 4999", movies.get(0).title());
+        assertEquals(4999, movies.get(0).id());
+        assertNull(movies.get(0).description());
+        assertNotNull(movies.get(0).version());
+        String sql = lastMovieStatement().toLowerCase();
+        assertThat(sql, not(containsString("description")));
+        assertThat(sql, not(containsString("release_date")));
+        assertPlanUsesIndex("idx_movie_title_key");
+    }
+
+    @Test
+    public void streamProjections_Title_ExpectEveryMovieInIdOrderWithOnlyTitle() {
+        List<MovieProjection> movies;
+        try (Stream<MovieProjection> stream = repository.streamProjections(Set.of("title"))) {
+            movies = stream.toList();
+        }
+
+        assertEquals(MOVIE_COUNT, movies.size());
+        assertEquals("Movie 1", movies.get(0).title());
+        assertEquals("Movie " + MOVIE_COUNT, movies.get(MOVIE_COUNT - 1).title());
+        assertNull(movies.get(0).id());
+        assertThat(lastMovieStatement().toLowerCase(), not(containsString("description")));
+    }
+
+    //******************************************************************
+    // helper methods
+    //******************************************************************
+
+    private String lastMovieStatement() {
+        return StatementCapture.statements.stream()
+                .filter(statement -> statement.toLowerCase().contains("from movie_data_model"))
+                .reduce((first, second) -> second)
+                .orElseThrow();
+    }
+
+    /**
+     * Explain the last movie query Hibernate ran and check the plan reads from the index rather than scanning the table
+     * @param index name of the index that should be used
+     */
+    private void assertPlanUsesIndex(String index) {
+        String sql = lastMovieStatement();
+        // only the row limit is still a parameter
+        String plan = jdbcTemplate.queryForObject("EXPLAIN " + sql.replace("?", "100"), String.class);
+
+        assertThat(plan, containsStringIgnoringCase(index));
+        assertThat(plan, not(containsStringIgnoringCase("tableScan")));
+    }
+}
@@ -0,0 +1,112 @@
+package dev.jonclarke.samplerestservice.dataaccess;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import dev.jonclarke.samplerestservice.models.MovieDataModel;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Unit Tests for the updates and deletes that return the movie as it was, run against the embedded database.
+ * Tests cover that the previous values come back from the same statement that makes the change, and that a movie
+ * at another version is left alone.
+ */
+@DataJpaTest
+public class MovieWriteRepositoryTest {
+
+    private static final LocalDateTime RELEASE_DATE = LocalDateTime.of(2020, 5, 1, 0, 0);
+
+    @Autowired
+    private MovieRepository repository;
+
+    //******************************************************************
+    // Update unit tests
+    //******************************************************************
+
+    @Test
+    public void updateReturningPrevious_ExistingMovie_ExpectPreviousReturnedAndMovieReplaced() {
+        MovieDataModel stored = repository.saveAndFlush(new MovieDataModel("Old title", "Old description", RELEASE_DATE, false));
+        Instant lastModified = Instant.now().truncatedTo(ChronoUnit.MICROS);
+
+        Optional<MovieDataModel> previous = repository.updateReturningPrevious(stored.getId(), "New title",
+                "New description", RELEASE_DATE.plusYears(1), true, null, lastModified);
+
+        assertTrue(previous.isPresent());
+        assertEquals("Old title", previous.get().getTitle());
+        assertEquals(RELEASE_DATE, previous.get().getReleaseDate());
+        assertEquals(false, previous.get().isAvailableOnDvd());
+        assertEquals(0, previous.get().getVersion());
+
+        MovieDataModel updated = repository.findById(stored.getId()).orElseThrow();
+        assertEquals("New title", updated.getTitle());
+        assertEquals("new title", updated.getTitleKey());
+        assertEquals(RELEASE_DATE.plusYears(1), updated.getReleaseDate());
+        assertEquals(1, updated.getVersion());
+        assertEquals(lastModified, updated.getLastModified());
+    }
+
+    @Test
+    public void updateReturningPrevious_OtherVersion_ExpectEmptyAndMovieUnchanged() {
+        MovieDataModel stored = repository.saveAndFlush(new MovieDataModel("Old title", "Old description", RELEASE_DATE, false));
+
+        Optional<MovieDataModel> previous = repository.updateReturningPrevious(stored.getId(), "New title",
+                "New description", RELEASE_DATE, true, 5L, Instant.now());
+
+        assertTrue(previous.isEmpty());
+        assertEquals("Old title", repository.findById(stored.getId()).orElseThrow().getTitle());
+    }
+
+    @Test
+    public void patchReturningPrevious_OnlyReleaseDateSupplied_ExpectOtherFieldsKept() {
+        MovieDataModel stored = repository.saveAndFlush(new MovieDataModel("Title", "Description", RELEASE_DATE, true));
+
+        Optional<MovieDataModel> previous = repository.patchReturningPrevious(stored.getId(), null, null,
+                RELEASE_DATE.plusYears(2), null, 0L, Instant.now());
+
+        assertEquals(RELEASE_DATE, previous.orElseThrow().getReleaseDate());
+        MovieDataModel patched = repository.findById(stored.getId()).orElseThrow();
+        assertEquals("Title", patched.getTitle());
+        assertEquals("Description", patched.getDescription());
+        assertEquals(RELEASE_DATE.plusYears(2), patched.getReleaseDate());
+        assertEquals(true, patched.isAvailableOnDvd());
+        assertEquals(1, patched.getVersion());
+    }
+
+    //******************************************************************
+    // Delete unit tests
+    //******************************************************************
+
+    @Test
+    public void deleteReturningPrevious_ExistingMovie_ExpectPreviousReturnedAndMovieDeleted() {
+        MovieDataModel stored = repository.saveAndFlush(new MovieDataModel("Title", "Description", RELEASE_DATE, true));
+
+        Optional<MovieDataModel> previous = repository.deleteReturningPrevious(stored.getId(), null);
+
+        assertEquals("Title", previous.orElseThrow().getTitle());
+        assertFalse(repository.existsById(stored.getId()));
+    }
+
+    @Test
+    public void deleteReturningPrevious_MissingMovie_ExpectEmpty() {
+        assertTrue(repository.deleteReturningPrevious(999_999, null).isEmpty());
+    }
+
+    @Test
+    public void deleteAllReturningPrevious_SomeMissing_ExpectOnlyDeletedMoviesReturned() {
+        MovieDataModel first = repository.saveAndFlush(new MovieDataModel("First", "Description", RELEASE_DATE, true));
+        MovieDataModel second = repository.saveAndFlush(new MovieDataModel("Second", "Description", null, false));
+
+        List<MovieDataModel> previous = repository.deleteAllReturningPrevious(List.of(first.getId(), second.getId(), 999_999));
+
+        assertEquals(List.of("First", "Second"), previous.stream().map(MovieDataModel::getTitle).sorted().toList());
+        assertFalse(repository.existsById(first.getId()));
+        assertFalse(repository.existsById(second.getId()));
+    }
+}
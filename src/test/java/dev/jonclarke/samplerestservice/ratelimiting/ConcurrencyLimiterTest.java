@@ -0,0 +1,130 @@
+package dev.jonclarke.samplerestservice.ratelimiting;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Unit Tests for the ConcurrencyLimiter.
+ * Tests cover the limit holding when many threads start and finish requests at once, and the adaptive limit.
+ */
+public class ConcurrencyLimiterTest {
+    private static final long TARGET_LATENCY = TimeUnit.MILLISECONDS.toNanos(100);
+
+    //******************************************************************
+    // Fixed limit unit tests
+    //******************************************************************
+
+    @Test
+    public void tryAcquire_LimitReached_ExpectRefusedUntilReleased() {
+        ConcurrencyLimiter limiter = new ConcurrencyLimiter(2);
+
+        assertTrue(limiter.tryAcquire());
+        assertTrue(limiter.tryAcquire());
+        assertFalse(limiter.tryAcquire());
+
+        limiter.release(0);
+
+        assertTrue(limiter.tryAcquire());
+        assertEquals(2, limiter.getInFlight());
+    }
+
+    @Test
+    public void tryAcquire_ManyThreadsAtOnce_ExpectLimitNeverExceeded() throws Exception {
+        int limit = 8;
+        int threads = 32;
+        int requestsPerThread = 2_000;
+        ConcurrencyLimiter limiter = new ConcurrencyLimiter(limit);
+        AtomicInteger running = new AtomicInteger();
+        AtomicInteger mostRunning = new AtomicInteger();
+
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<Integer>> results = new ArrayList<>();
+        try {
+            for (int t = 0; t < threads; t++) {
+                results.add(executor.submit(() -> {
+                    start.await();
+                    int allowed = 0;
+                    for (int i = 0; i < requestsPerThread; i++) {
+                        if (limiter.tryAcquire()) {
+                            allowed++;
+                            mostRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+                            Thread.onSpinWait();
+                            running.decrementAndGet();
+                            limiter.release(0);
+                        }
+                    }
+                    return allowed;
+                }));
+            }
+            start.countDown();
+
+            int allowed = 0;
+            for (Future<Integer> result : results) {
+                allowed += result.get(30, TimeUnit.SECONDS);
+            }
+
+            assertTrue(allowed > 0);
+            assertTrue(mostRunning.get() <= limit, "at most " + limit + " running, but saw " + mostRunning.get());
+            assertEquals(0, limiter.getInFlight());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    //******************************************************************
+    // Adaptive limit unit tests
+    //******************************************************************
+
+    @Test
+    public void release_SlowerThanTarget_ExpectLimitCutToMinimum() {
+        ConcurrencyLimiter limiter = new ConcurrencyLimiter(5, 100, TARGET_LATENCY);
+
+        for (int i = 0; i < 100; i++) {
+            assertTrue(limiter.tryAcquire());
+            limiter.release(TARGET_LATENCY * 2);
+        }
+
+        assertEquals(5, limiter.getLimit());
+    }
+
+    @Test
+    public void release_OnTimeWhileBusy_ExpectLimitRaisedToMaximum() {
+        ConcurrencyLimiter limiter = new ConcurrencyLimiter(2, 10, TARGET_LATENCY);
+        assertTrue(limiter.tryAcquire());
+        limiter.release(TARGET_LATENCY * 2);
+        assertEquals(9, limiter.getLimit());
+
+        for (int i = 0; i < 20; i++) {
+            // fill the limiter, so the limit is what holds requests back
+            while (limiter.getInFlight() < limiter.getLimit()) {
+                assertTrue(limiter.tryAcquire());
+            }
+            limiter.release(TARGET_LATENCY / 2);
+        }
+
+        assertEquals(10, limiter.getLimit());
+    }
+
+    @Test
+    public void release_OnTimeWhileQuiet_ExpectLimitUnchanged() {
+        ConcurrencyLimiter limiter = new ConcurrencyLimiter(2, 10, TARGET_LATENCY);
+        assertTrue(limiter.tryAcquire());
+        limiter.release(TARGET_LATENCY * 2);
+
+        assertTrue(limiter.tryAcquire());
+        limiter.release(TARGET_LATENCY / 2);
+
+        assertEquals(9, limiter.getLimit());
+    }
+}
@@ -0,0 +1,235 @@
+package dev.jonclarke.samplerestservice.ratelimiting;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.mock.web.MockFilterChain;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Unit Tests for the LoadSheddingFilter.
+ * The buckets refill so slowly that a refused request stays refused for the length of a test.
+ */
+public class LoadSheddingFilterTest {
+    private static final double SLOW_RATE = 0.001;
+
+    private final MeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    //******************************************************************
+    // Client rate unit tests
+    //******************************************************************
+
+    @Test
+    public void filter_ClientOverItsRate_ExpectTooManyRequestsWithRetryAfter() throws Exception {
+        LoadSheddingFilter filter = buildFilter(new TokenBucket(1000, 1000), new ConcurrencyLimiter(10), 2);
+
+        assertEquals(HttpStatus.OK.value(), perform(filter, "client-1").getStatus());
+        assertEquals(HttpStatus.OK.value(), perform(filter, "client-1").getStatus());
+        MockHttpServletResponse response = perform(filter, "client-1");
+
+        assertEquals(HttpStatus.TOO_MANY_REQUESTS.value(), response.getStatus());
+        assertNotNull(response.getHeader(HttpHeaders.RETRY_AFTER));
+        assertTrue(Long.parseLong(response.getHeader(HttpHeaders.RETRY_AFTER)) >= 1);
+        assertEquals(1, shedCount("client_rate"));
+    }
+
+    @Test
+    public void filter_OneClientOverItsRate_ExpectOtherClientsAllowed() throws Exception {
+        LoadSheddingFilter filter = buildFilter(new TokenBucket(1000, 1000), new ConcurrencyLimiter(10), 1);
+
+        assertEquals(HttpStatus.OK.value(), perform(filter, "client-1").getStatus());
+        assertEquals(HttpStatus.TOO_MANY_REQUESTS.value(), perform(filter, "client-1").getStatus());
+
+        assertEquals(HttpStatus.OK.value(), perform(filter, "client-2").getStatus());
+    }
+
+    @Test
+    public void filter_NoClientHeaderConfigured_ExpectClientIdentifiedByAddressWhateverItSends() throws Exception {
+        LoadSheddingFilter filter = new LoadSheddingFilter(new TokenBucket(1000, 1000), new ConcurrencyLimiter(10),
+                new ConcurrencyLimiter(1), SLOW_RATE, 1, "", meterRegistry);
+
+        assertEquals(HttpStatus.OK.value(), perform(filter, "client-1").getStatus());
+        // a new id from the same address gets the same bucket
+        assertEquals(HttpStatus.TOO_MANY_REQUESTS.value(), perform(filter, "client-2").getStatus());
+    }
+
+    //******************************************************************
+    // Global limit unit tests
+    //******************************************************************
+
+    @Test
+    public void filter_GlobalRateUsedUp_ExpectServiceUnavailableWithRetryAfter() throws Exception {
+        LoadSheddingFilter filter = buildFilter(new TokenBucket(SLOW_RATE, 1), new ConcurrencyLimiter(10), 100);
+
+        assertEquals(HttpStatus.OK.value(), perform(filter, "client-1").getStatus());
+        MockHttpServletResponse response = perform(filter, "client-2");
+
+        assertEquals(HttpStatus.SERVICE_UNAVAILABLE.value(), response.getStatus());
+        assertNotNull(response.getHeader(HttpHeaders.RETRY_AFTER));
+        assertEquals(1, shedCount("global_rate"));
+    }
+
+    @Test
+    public void filter_GlobalRateUsedUp_ExpectClientPermitGivenBack() throws Exception {
+        AtomicLong clock = new AtomicLong();
+        LoadSheddingFilter filter = buildFilter(new TokenBucket(1, 1, clock::get), new ConcurrencyLimiter(10), 1);
+        assertEquals(HttpStatus.OK.value(), perform(filter, "client-1").getStatus());
+        assertEquals(HttpStatus.SERVICE_UNAVAILABLE.value(), perform(filter, "client-2").getStatus());
+
+        clock.addAndGet(TimeUnit.SECONDS.toNanos(1));
+
+        // client-2's one permit was not used up by the refused request
+        assertEquals(HttpStatus.OK.value(), perform(filter, "client-2").getStatus());
+    }
+
+    @Test
+    public void filter_ConcurrencyLimitReached_ExpectServiceUnavailableWithoutCallingController() throws Exception {
+        ConcurrencyLimiter limiter = new ConcurrencyLimiter(1);
+        LoadSheddingFilter filter = buildFilter(new TokenBucket(1000, 1000), limiter, 100);
+        // a request still in progress
+        assertTrue(limiter.tryAcquire());
+
+        MockFilterChain chain = new MockFilterChain();
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        filter.doFilter(buildRequest("client-1"), response, chain);
+
+        assertEquals(HttpStatus.SERVICE_UNAVAILABLE.value(), response.getStatus());
+        assertEquals("1", response.getHeader(HttpHeaders.RETRY_AFTER));
+        assertNull(chain.getRequest());
+        assertEquals(1, shedCount("concurrency"));
+    }
+
+    @Test
+    public void filter_ConcurrencyLimitReached_ExpectClientAndGlobalPermitsGivenBack() throws Exception {
+        ConcurrencyLimiter limiter = new ConcurrencyLimiter(1);
+        LoadSheddingFilter filter = buildFilter(new TokenBucket(SLOW_RATE, 1), limiter, 1);
+        assertTrue(limiter.tryAcquire());
+        assertEquals(HttpStatus.SERVICE_UNAVAILABLE.value(), perform(filter, "client-1").getStatus());
+
+        limiter.release(0);
+
+        assertEquals(HttpStatus.OK.value(), perform(filter, "client-1").getStatus());
+    }
+
+    @Test
+    public void filter_RequestAllowed_ExpectConcurrencySlotReleased() throws Exception {
+        ConcurrencyLimiter limiter = new ConcurrencyLimiter(1);
+        LoadSheddingFilter filter = buildFilter(new TokenBucket(1000, 1000), limiter, 100);
+
+        assertEquals(HttpStatus.OK.value(), perform(filter, "client-1").getStatus());
+        assertEquals(HttpStatus.OK.value(), perform(filter, "client-1").getStatus());
+
+        assertEquals(0, limiter.getInFlight());
+    }
+
+    //******************************************************************
+    // Bulk request unit tests
+    //******************************************************************
+
+    @Test
+    public void filter_SlowBulkRequest_ExpectAdaptiveLimitUnchanged() throws Exception {
+        ConcurrencyLimiter limiter = new ConcurrencyLimiter(4, 10, 1);
+        LoadSheddingFilter filter = buildFilter(new TokenBucket(1000, 1000), limiter, new ConcurrencyLimiter(2), 100);
+
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/movies/export");
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        // every request is slower than the 1ns target
+        filter.doFilter(request, response, new MockFilterChain());
+
+        assertEquals(HttpStatus.OK.value(), response.getStatus());
+        assertEquals(10, limiter.getLimit());
+    }
+
+    @Test
+    public void filter_BulkLimitReached_ExpectBulkRequestRefusedAndPointReadsAllowed() throws Exception {
+        ConcurrencyLimiter bulkLimiter = new ConcurrencyLimiter(1);
+        LoadSheddingFilter filter = buildFilter(new TokenBucket(1000, 1000), new ConcurrencyLimiter(10), bulkLimiter, 100);
+        // an export still in progress
+        assertTrue(bulkLimiter.tryAcquire());
+
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        filter.doFilter(new MockHttpServletRequest("GET", "/movies"), response, new MockFilterChain());
+        assertEquals(HttpStatus.SERVICE_UNAVAILABLE.value(), response.getStatus());
+        assertEquals(1, shedCount("bulk_concurrency"));
+
+        assertEquals(HttpStatus.OK.value(), perform(filter, "client-1").getStatus());
+    }
+
+    @Test
+    public void filter_AsyncBulkRequest_ExpectPermitHeldUntilComplete() throws Exception {
+        LoadSheddingFilter filter = buildFilter(new TokenBucket(1000, 1000), new ConcurrencyLimiter(10),
+                new ConcurrencyLimiter(1), 10);
+        MockHttpServletRequest poll = buildRequest("client-1");
+        poll.setRequestURI("/movies/changes");
+        poll.setAsyncSupported(true);
+
+        filter.doFilter(poll, new MockHttpServletResponse(), (request, response) -> request.startAsync());
+
+        MockHttpServletRequest export = buildRequest("client-2");
+        export.setRequestURI("/movies/export");
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        filter.doFilter(export, response, new MockFilterChain());
+        assertEquals(HttpStatus.SERVICE_UNAVAILABLE.value(), response.getStatus());
+
+        poll.getAsyncContext().complete();
+        response = new MockHttpServletResponse();
+        filter.doFilter(export, response, new MockFilterChain());
+        assertEquals(HttpStatus.OK.value(), response.getStatus());
+    }
+
+    @Test
+    public void isBulk_EachKindOfRequest_ExpectStreamsAndBulkEndpointsOnly() {
+        assertTrue(LoadSheddingFilter.isBulk(new MockHttpServletRequest("GET", "/movies")));
+        assertTrue(LoadSheddingFilter.isBulk(new MockHttpServletRequest("POST", "/movies/import")));
+        assertTrue(LoadSheddingFilter.isBulk(new MockHttpServletRequest("PUT", "/movies/batch")));
+        MockHttpServletRequest stream = new MockHttpServletRequest("GET", "/movies/changes");
+        stream.addHeader(HttpHeaders.ACCEPT, "text/event-stream");
+        assertTrue(LoadSheddingFilter.isBulk(stream));
+        assertTrue(LoadSheddingFilter.isBulk(new MockHttpServletRequest("GET", "/movies/changes")));
+
+        MockHttpServletRequest page = new MockHttpServletRequest("GET", "/movies");
+        page.setParameter("availableOnDvd", "true");
+        assertFalse(LoadSheddingFilter.isBulk(page));
+        assertFalse(LoadSheddingFilter.isBulk(new MockHttpServletRequest("POST", "/movies")));
+        assertFalse(LoadSheddingFilter.isBulk(new MockHttpServletRequest("GET", "/movies/5")));
+        assertFalse(LoadSheddingFilter.isBulk(new MockHttpServletRequest("GET", "/movies/changes/latest")));
+    }
+
+    //******************************************************************
+    // helper methods
+    //******************************************************************
+
+    private LoadSheddingFilter buildFilter(TokenBucket globalBucket, ConcurrencyLimiter limiter, int clientBurst) {
+        return buildFilter(globalBucket, limiter, new ConcurrencyLimiter(1), clientBurst);
+    }
+
+    private LoadSheddingFilter buildFilter(TokenBucket globalBucket, ConcurrencyLimiter limiter,
+                                           ConcurrencyLimiter bulkLimiter, int clientBurst) {
+        return new LoadSheddingFilter(globalBucket, limiter, bulkLimiter, SLOW_RATE, clientBurst, "X-Client-Id",
+                meterRegistry);
+    }
+
+    private MockHttpServletResponse perform(LoadSheddingFilter filter, String client) throws Exception {
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        filter.doFilter(buildRequest(client), response, new MockFilterChain());
+        return response;
+    }
+
+    private MockHttpServletRequest buildRequest(String client) {
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/movies/1");
+        request.addHeader("X-Client-Id", client);
+        return request;
+    }
+
+    private double shedCount(String reason) {
+        return meterRegistry.get("movies.requests.shed").tag("reason", reason).counter().count();
+    }
+}
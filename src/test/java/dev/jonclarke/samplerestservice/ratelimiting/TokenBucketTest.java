@@ -0,0 +1,136 @@
+package dev.jonclarke.samplerestservice.ratelimiting;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Unit Tests for the TokenBucket.
+ * The bucket is given a clock the tests control, so the tests do not depend on how quickly they run.
+ */
+public class TokenBucketTest {
+    private static final long ONE_SECOND = TimeUnit.SECONDS.toNanos(1);
+
+    private final AtomicLong clock = new AtomicLong(1_000 * ONE_SECOND);
+
+    //******************************************************************
+    // Acquire unit tests
+    //******************************************************************
+
+    @Test
+    public void tryAcquire_FullBucket_ExpectBurstAllowedThenRefused() {
+        TokenBucket bucket = new TokenBucket(10, 5, clock::get);
+
+        for (int i = 0; i < 5; i++) {
+            assertEquals(0, bucket.tryAcquire());
+        }
+        long wait = bucket.tryAcquire();
+
+        // one permit is added every 100ms
+        assertTrue(wait > 0);
+        assertTrue(wait <= ONE_SECOND / 10);
+    }
+
+    @Test
+    public void tryAcquire_EmptyBucketAfterRefillInterval_ExpectOnePermit() {
+        TokenBucket bucket = new TokenBucket(10, 1, clock::get);
+        assertEquals(0, bucket.tryAcquire());
+        assertTrue(bucket.tryAcquire() > 0);
+
+        clock.addAndGet(ONE_SECOND / 10);
+
+        assertEquals(0, bucket.tryAcquire());
+        assertTrue(bucket.tryAcquire() > 0);
+    }
+
+    @Test
+    public void tryAcquire_IdleForLongerThanBurst_ExpectNoMoreThanBurst() {
+        TokenBucket bucket = new TokenBucket(10, 3, clock::get);
+
+        clock.addAndGet(60 * ONE_SECOND);
+
+        for (int i = 0; i < 3; i++) {
+            assertEquals(0, bucket.tryAcquire());
+        }
+        assertTrue(bucket.tryAcquire() > 0);
+    }
+
+    @Test
+    public void refund_EmptyBucket_ExpectPermitAvailableAgain() {
+        TokenBucket bucket = new TokenBucket(10, 1, clock::get);
+        assertEquals(0, bucket.tryAcquire());
+        assertTrue(bucket.tryAcquire() > 0);
+
+        bucket.refund();
+
+        assertEquals(0, bucket.tryAcquire());
+        assertTrue(bucket.tryAcquire() > 0);
+    }
+
+    @Test
+    public void refund_FullBucket_ExpectNoMoreThanBurst() {
+        TokenBucket bucket = new TokenBucket(10, 2, clock::get);
+
+        bucket.refund();
+        bucket.refund();
+
+        assertEquals(0, bucket.tryAcquire());
+        assertEquals(0, bucket.tryAcquire());
+        assertTrue(bucket.tryAcquire() > 0);
+    }
+
+    //******************************************************************
+    // Concurrency unit tests
+    //******************************************************************
+
+    @Test
+    public void tryAcquire_ManyThreadsAtOnce_ExpectExactlyBurstAllowed() throws Exception {
+        int burst = 1_000;
+        int threads = 16;
+        int attemptsPerThread = 500;
+        TokenBucket bucket = new TokenBucket(1, burst, clock::get);
+
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<Integer>> results = new ArrayList<>();
+        try {
+            for (int t = 0; t < threads; t++) {
+                results.add(executor.submit(() -> {
+                    start.await();
+                    int allowed = 0;
+                    for (int i = 0; i < attemptsPerThread; i++) {
+                        if (bucket.tryAcquire() == 0) {
+                            allowed++;
+                        }
+                    }
+                    return allowed;
+                }));
+            }
+            start.countDown();
+
+            int allowed = 0;
+            for (Future<Integer> result : results) {
+                allowed += result.get(30, TimeUnit.SECONDS);
+            }
+
+            // the clock does not move, so no permit is added while the threads compete for the burst
+            assertEquals(burst, allowed);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void constructor_ZeroRate_ExpectException() {
+        assertThrows(IllegalArgumentException.class, () -> new TokenBucket(0, 1));
+    }
+}
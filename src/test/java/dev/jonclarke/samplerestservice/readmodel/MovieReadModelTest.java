@@ -0,0 +1,122 @@
+package dev.jonclarke.samplerestservice.readmodel;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import dev.jonclarke.samplerestservice.changefeed.MovieChangeLog;
+import dev.jonclarke.samplerestservice.dataaccess.MovieChangeRepository;
+import dev.jonclarke.samplerestservice.dataaccess.MovieRepository;
+import dev.jonclarke.samplerestservice.events.MovieChangedEvent;
+import dev.jonclarke.samplerestservice.events.MovieChangedEvent.ChangeType;
+import dev.jonclarke.samplerestservice.models.MovieDataModel;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.context.annotation.Import;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDateTime;
+import java.util.function.Supplier;
+
+/**
+ * Unit Tests for the MovieReadModel, run against the embedded database.
+ * The read model follows the change feed on its own thread, so the tests commit their changes through the
+ * MovieChangeLog rather than running in a test transaction.
+ */
+@DataJpaTest(properties = "movies.read-model.enabled=true")
+@Import({MovieReadModel.class, MovieChangeLog.class, SimpleMeterRegistry.class})
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+public class MovieReadModelTest {
+    @Autowired
+    private MovieReadModel readModel;
+    @Autowired
+    private MovieRepository repository;
+    @Autowired
+    private MovieChangeRepository changeRepository;
+    @Autowired
+    private ApplicationEventPublisher eventPublisher;
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @AfterEach
+    public void deleteMovies() {
+        repository.deleteAll();
+        changeRepository.deleteAll();
+        readModel.reload().join();
+    }
+
+    //******************************************************************
+    // Load unit tests
+    //******************************************************************
+
+    @Test
+    public void reload_ExistingMovies_ExpectEveryMovieInSnapshot() {
+        MovieDataModel first = repository.save(buildMovie("First Movie"));
+        MovieDataModel second = repository.save(buildMovie("Second Movie"));
+
+        assertEquals(2, readModel.reload().join());
+
+        MovieSnapshot snapshot = readModel.getSnapshot();
+        assertEquals("First Movie", snapshot.find(first.getId()).getTitle());
+        assertEquals(second.getVersion(), snapshot.find(second.getId()).getVersion());
+        assertEquals(repository.findCatalogueVersion(), snapshot.getCatalogueVersion());
+
+        MovieReadModelStats stats = readModel.getStats();
+        assertTrue(stats.loaded());
+        assertEquals(2, stats.size());
+        assertTrue(stats.footprintBytes() > 0);
+        assertEquals(changeRepository.findLatestSequence(), stats.appliedSequence());
+    }
+
+    //******************************************************************
+    // Change unit tests
+    //******************************************************************
+
+    @Test
+    public void refresh_CreatedUpdatedAndDeleted_ExpectSnapshotFollowsChangeFeed() {
+        readModel.reload().join();
+        MovieSnapshot empty = readModel.getSnapshot();
+
+        MovieDataModel movie = commit(ChangeType.CREATED, () -> repository.save(buildMovie("Space Station")));
+        readModel.refresh().join();
+        assertEquals("Space Station", readModel.getSnapshot().find(movie.getId()).getTitle());
+        assertNull(empty.find(movie.getId()));
+
+        movie.setTitle("Moon Base");
+        MovieDataModel updated = commit(ChangeType.UPDATED, () -> repository.save(movie));
+        readModel.refresh().join();
+        assertEquals("Moon Base", readModel.getSnapshot().find(movie.getId()).getTitle());
+        assertEquals(updated.getVersion(), readModel.getSnapshot().find(movie.getId()).getVersion());
+
+        commit(ChangeType.DELETED, () -> {
+            repository.deleteById(movie.getId());
+            return movie;
+        });
+        readModel.refresh().join();
+        assertNull(readModel.getSnapshot().find(movie.getId()));
+        assertEquals(changeRepository.findLatestSequence(), readModel.getStats().appliedSequence());
+    }
+
+    //******************************************************************
+    // helper methods
+    //******************************************************************
+
+    /**
+     * Make a change and record it in the change feed, in one transaction
+     */
+    private MovieDataModel commit(ChangeType type, Supplier<MovieDataModel> change) {
+        return transactionTemplate.execute(status -> {
+            MovieDataModel movie = change.get();
+            eventPublisher.publishEvent(new MovieChangedEvent(type, movie.getId()));
+            return movie;
+        });
+    }
+
+    private MovieDataModel buildMovie(String title) {
+        return new MovieDataModel(title, title + " Description", LocalDateTime.of(2023, 1, 1, 1, 10, 10), true);
+    }
+}
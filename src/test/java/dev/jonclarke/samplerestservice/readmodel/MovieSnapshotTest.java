@@ -0,0 +1,206 @@
+package dev.jonclarke.samplerestservice.readmodel;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import dev.jonclarke.samplerestservice.dataaccess.MovieFilter;
+import dev.jonclarke.samplerestservice.models.MovieCatalogueVersion;
+import dev.jonclarke.samplerestservice.models.MovieDataModel;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.domain.Sort;
+
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Random;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.stream.Stream;
+
+/**
+ * Unit Tests for the MovieSnapshot.
+ * Tests cover lookups, pages in each supported order, and merging changes into a new snapshot, including changes
+ * that split, empty and merge chunks.
+ */
+public class MovieSnapshotTest {
+    private static final MovieFilter NO_FILTER = new MovieFilter(null, null, null, null);
+    private static final LocalDateTime RELEASED = LocalDateTime.of(2023, 1, 1, 1, 10, 10, 123_456_000);
+
+    //******************************************************************
+    // Lookup unit tests
+    //******************************************************************
+
+    @Test
+    public void find_ExistingAndMissingIds_ExpectMovieWithEveryFieldOrNull() {
+        Instant lastModified = Instant.parse("2023-06-01T10:15:30.654321Z");
+        MovieSnapshot snapshot = MovieSnapshot.of(Stream.of(
+                new MovieDataModel(5, "Test Title", "test description", RELEASED, true, 3, lastModified),
+                new MovieDataModel(9, null, null, null, null, 0, null)));
+
+        MovieDataModel movie = snapshot.find(5);
+        assertEquals("Test Title", movie.getTitle());
+        assertEquals("test description", movie.getDescription());
+        assertEquals(RELEASED, movie.getReleaseDate());
+        assertTrue(movie.isAvailableOnDvd());
+        assertEquals(3, movie.getVersion());
+        assertEquals(lastModified, movie.getLastModified());
+
+        MovieDataModel empty = snapshot.find(9);
+        assertNull(empty.getTitle());
+        assertNull(empty.getReleaseDate());
+        assertNull(empty.isAvailableOnDvd());
+        assertNull(empty.getLastModified());
+
+        assertNull(snapshot.find(6));
+        assertEquals(2, snapshot.size());
+        assertTrue(snapshot.getFootprintBytes() > 0);
+    }
+
+    @Test
+    public void of_MoviesOutOfIdOrder_ExpectIllegalArgumentException() {
+        assertThrows(IllegalArgumentException.class, () -> MovieSnapshot.of(Stream.of(buildMovie(2, 0), buildMovie(1, 0))));
+    }
+
+    @Test
+    public void getCatalogueVersion_Movies_ExpectSameSummaryAsAggregateQuery() {
+        Instant latest = Instant.parse("2023-06-02T00:00:00Z");
+        MovieSnapshot snapshot = MovieSnapshot.of(Stream.of(
+                new MovieDataModel(1, "a", "a", RELEASED, true, 2, Instant.parse("2023-06-01T00:00:00Z")),
+                new MovieDataModel(4, "b", "b", RELEASED, false, 5, latest)));
+
+        assertEquals(new MovieCatalogueVersion(2L, 5L, 7L, latest), snapshot.getCatalogueVersion());
+        assertEquals(new MovieCatalogueVersion(0L, 0L, 0L, null), MovieSnapshot.empty().getCatalogueVersion());
+    }
+
+    //******************************************************************
+    // Page unit tests
+    //******************************************************************
+
+    @Test
+    public void page_SortedById_ExpectKeysetPagesInBothDirections() {
+        MovieSnapshot snapshot = MovieSnapshot.of(Stream.of(buildMovie(1, 0), buildMovie(3, 0), buildMovie(5, 0), buildMovie(7, 0)));
+
+        assertEquals(List.of(1, 3), ids(snapshot.page(NO_FILTER, Sort.by("id"), null, 2)));
+        assertEquals(List.of(5, 7), ids(snapshot.page(NO_FILTER, Sort.by("id"), 3, 2)));
+        assertEquals(List.of(5, 7), ids(snapshot.page(NO_FILTER, Sort.by("id"), 4, 10)));
+        assertEquals(List.of(7, 5), ids(snapshot.page(NO_FILTER, Sort.by(Sort.Direction.DESC, "id"), null, 2)));
+        assertEquals(List.of(3, 1), ids(snapshot.page(NO_FILTER, Sort.by(Sort.Direction.DESC, "id"), 5, 10)));
+    }
+
+    @Test
+    public void page_SortedByReleaseDate_ExpectTiesInAscendingIdOrderBothWays() {
+        MovieSnapshot snapshot = MovieSnapshot.of(Stream.of(buildMovie(1, 2), buildMovie(2, 1), buildMovie(3, 2), buildMovie(4, 3)));
+
+        assertEquals(List.of(2, 1, 3, 4), ids(snapshot.page(NO_FILTER, Sort.by("releaseDate"), null, 10)));
+        assertEquals(List.of(4, 1, 3, 2),
+                ids(snapshot.page(NO_FILTER, Sort.by(Sort.Direction.DESC, "releaseDate"), null, 10)));
+        assertEquals(List.of(4, 1), ids(snapshot.page(NO_FILTER, Sort.by(Sort.Direction.DESC, "releaseDate"), null, 2)));
+    }
+
+    @Test
+    public void page_Filters_ExpectOnlyMatchingMovies() {
+        MovieSnapshot snapshot = MovieSnapshot.of(Stream.of(
+                new MovieDataModel(1, "Space Station", "d", RELEASED.plusDays(1), true),
+                new MovieDataModel(2, "space race", "d", RELEASED.plusDays(2), false),
+                new MovieDataModel(3, "Spaced Out", "d", RELEASED.plusDays(3), true),
+                new MovieDataModel(4, "Ocean Drift", "d", RELEASED.plusDays(4), true),
+                new MovieDataModel(5, "Space Unknown", "d", null, true)));
+
+        assertEquals(List.of(1, 2, 3, 5), ids(snapshot.page(new MovieFilter("SPACE", null, null, null), Sort.by("id"), null, 10)));
+        assertEquals(List.of(1, 3, 5), ids(snapshot.page(new MovieFilter("space", null, null, true), Sort.by("id"), null, 10)));
+        MovieFilter releasedBetween = new MovieFilter(null, RELEASED.plusDays(1), RELEASED.plusDays(4), null);
+        assertEquals(List.of(2, 3), ids(snapshot.page(releasedBetween, Sort.by("id"), null, 10)));
+        assertEquals(List.of(3, 2), ids(snapshot.page(releasedBetween, Sort.by(Sort.Direction.DESC, "releaseDate"), null, 10)));
+        MovieFilter releasedBefore = new MovieFilter(null, null, RELEASED.plusDays(3), null);
+        assertEquals(List.of(1, 2), ids(snapshot.page(releasedBefore, Sort.by("releaseDate"), null, 10)));
+    }
+
+    @Test
+    public void page_SortedByTitle_ExpectIllegalArgumentException() {
+        assertFalse(MovieSnapshot.canSort(Sort.by("title")));
+        assertThrows(IllegalArgumentException.class,
+                () -> MovieSnapshot.empty().page(NO_FILTER, Sort.by("title"), null, 10));
+    }
+
+    //******************************************************************
+    // Change unit tests
+    //******************************************************************
+
+    @Test
+    public void withChanges_AddUpdateAndDelete_ExpectNewSnapshotAndOriginalUnchanged() {
+        MovieSnapshot original = MovieSnapshot.of(Stream.of(buildMovie(2, 1), buildMovie(4, 2), buildMovie(6, 3)));
+
+        SortedMap<Integer, MovieDataModel> changes = new TreeMap<>();
+        changes.put(1, buildMovie(1, 5));
+        changes.put(4, null);
+        changes.put(6, buildMovie(6, 0));
+        changes.put(8, buildMovie(8, 2));
+        changes.put(9, null);
+        MovieSnapshot changed = original.withChanges(changes);
+
+        assertEquals(List.of(1, 2, 6, 8), ids(changed.all().toList()));
+        assertEquals(List.of(6, 2, 8, 1), ids(changed.page(NO_FILTER, Sort.by("releaseDate"), null, 10)));
+        assertEquals(RELEASED, changed.find(6).getReleaseDate());
+        assertNull(changed.find(4));
+
+        assertEquals(List.of(2, 4, 6), ids(original.all().toList()));
+        assertEquals(List.of(2, 4, 6), ids(original.page(NO_FILTER, Sort.by("releaseDate"), null, 10)));
+        assertSame(original, original.withChanges(new TreeMap<>()));
+    }
+
+    @Test
+    public void withChanges_ManyBatchesWithSmallChunks_ExpectSameAsSnapshotBuiltFromScratch() {
+        Random random = new Random(42);
+        TreeMap<Integer, MovieDataModel> expected = new TreeMap<>();
+        for (int id = 1; id <= 50; id++) {
+            expected.put(id, buildMovie(id, random.nextInt(10)));
+        }
+        MovieSnapshot snapshot = MovieSnapshot.of(expected.values().stream(), 4);
+
+        for (int batch = 0; batch < 200; batch++) {
+            // mostly small batches, with the odd large one that adds or deletes whole chunks
+            SortedMap<Integer, MovieDataModel> changes = new TreeMap<>();
+            int size = batch % 10 == 0 ? 30 : 3;
+            for (int i = 0; i < size; i++) {
+                int id = 1 + random.nextInt(100);
+                changes.put(id, random.nextInt(3) == 0 ? null
+                        : new MovieDataModel(id, "Movie " + id, "d", random.nextInt(5) == 0 ? null : RELEASED.plusDays(random.nextInt(10)),
+                                random.nextBoolean(), batch, Instant.ofEpochSecond(batch)));
+            }
+            snapshot = snapshot.withChanges(changes);
+            changes.forEach((id, movie) -> {
+                if (movie == null) {
+                    expected.remove(id);
+                } else {
+                    expected.put(id, movie);
+                }
+            });
+
+            MovieSnapshot rebuilt = MovieSnapshot.of(expected.values().stream(), 4);
+            assertEquals(ids(rebuilt.all().toList()), ids(snapshot.all().toList()));
+            assertEquals(rebuilt.size(), snapshot.size());
+            assertEquals(rebuilt.getCatalogueVersion(), snapshot.getCatalogueVersion());
+            assertEquals(ids(rebuilt.page(NO_FILTER, Sort.by("releaseDate"), null, 200)),
+                    ids(snapshot.page(NO_FILTER, Sort.by("releaseDate"), null, 200)));
+            assertEquals(ids(rebuilt.page(NO_FILTER, Sort.by(Sort.Direction.DESC, "releaseDate"), null, 200)),
+                    ids(snapshot.page(NO_FILTER, Sort.by(Sort.Direction.DESC, "releaseDate"), null, 200)));
+            MovieFilter releasedBetween = new MovieFilter(null, RELEASED.plusDays(2), RELEASED.plusDays(7), true);
+            assertEquals(ids(rebuilt.page(releasedBetween, Sort.by(Sort.Direction.DESC, "id"), 60, 5)),
+                    ids(snapshot.page(releasedBetween, Sort.by(Sort.Direction.DESC, "id"), 60, 5)));
+        }
+    }
+
+    //******************************************************************
+    // helper methods
+    //******************************************************************
+
+    /**
+     * Build a movie released a number of days after RELEASED
+     */
+    private MovieDataModel buildMovie(int id, int days) {
+        return new MovieDataModel(id, "Movie " + id, "Movie " + id + " Description", RELEASED.plusDays(days), id % 2 == 0);
+    }
+
+    private List<Integer> ids(List<MovieDataModel> movies) {
+        return movies.stream().map(MovieDataModel::getId).toList();
+    }
+}
@@ -0,0 +1,97 @@
+package dev.jonclarke.samplerestservice.search;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import dev.jonclarke.samplerestservice.dataaccess.MovieRepository;
+import dev.jonclarke.samplerestservice.events.MovieChangedEvent;
+import dev.jonclarke.samplerestservice.events.MovieChangedEvent.ChangeType;
+import dev.jonclarke.samplerestservice.models.MovieDataModel;
+import org.apache.lucene.queryparser.classic.ParseException;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+/**
+ * Unit Tests for the MovieSearchIndex, run against the embedded database.
+ * The index reads movies on its own thread, so the tests commit their movies rather than running in a test transaction.
+ */
+@DataJpaTest
+@Import(MovieSearchIndex.class)
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+public class MovieSearchIndexTest {
+    @Autowired
+    private MovieSearchIndex searchIndex;
+    @Autowired
+    private MovieRepository repository;
+
+    @AfterEach
+    public void deleteMovies() {
+        repository.deleteAll();
+        searchIndex.rebuild().join();
+    }
+
+    //******************************************************************
+    // Rebuild unit tests
+    //******************************************************************
+
+    @Test
+    public void rebuild_ExistingMovies_ExpectTitleMatchesRankedFirst() throws Exception {
+        MovieDataModel inDescription = repository.save(buildMovie("Ocean Drift", "A voyage to outer space"));
+        MovieDataModel inTitle = repository.save(buildMovie("Space Station", "Life on board"));
+        repository.save(buildMovie("Desert Road", "A long drive"));
+
+        assertEquals(3L, searchIndex.rebuild().join());
+
+        assertEquals(List.of(inTitle.getId(), inDescription.getId()), searchIndex.search("space", 10));
+        assertEquals(List.of(inDescription.getId()), searchIndex.search("\"outer space\"", 10));
+        assertEquals(List.of(), searchIndex.search("jungle", 10));
+    }
+
+    //******************************************************************
+    // Incremental update unit tests
+    //******************************************************************
+
+    @Test
+    public void onMovieChanged_CreatedUpdatedAndDeleted_ExpectIndexFollowsChanges() throws Exception {
+        MovieDataModel movie = repository.save(buildMovie("Space Station", "Life on board"));
+        searchIndex.onMovieChanged(new MovieChangedEvent(ChangeType.CREATED, movie.getId()));
+        searchIndex.refresh().join();
+        assertEquals(List.of(movie.getId()), searchIndex.search("station", 10));
+
+        movie.setTitle("Moon Base");
+        repository.save(movie);
+        searchIndex.onMovieChanged(new MovieChangedEvent(ChangeType.UPDATED, movie.getId()));
+        searchIndex.refresh().join();
+        assertEquals(List.of(), searchIndex.search("station", 10));
+        assertEquals(List.of(movie.getId()), searchIndex.search("moon", 10));
+
+        repository.deleteById(movie.getId());
+        searchIndex.onMovieChanged(new MovieChangedEvent(ChangeType.DELETED, movie.getId()));
+        searchIndex.refresh().join();
+        assertEquals(List.of(), searchIndex.search("moon", 10));
+    }
+
+    //******************************************************************
+    // Query unit tests
+    //******************************************************************
+
+    @Test
+    public void search_InvalidQuery_ExpectParseException() {
+        assertThrows(ParseException.class, () -> searchIndex.search("title:(space", 10));
+    }
+
+    //******************************************************************
+    // helper methods
+    //******************************************************************
+
+    private MovieDataModel buildMovie(String title, String description) {
+        return new MovieDataModel(title, description, LocalDateTime.of(2023, 1, 1, 1, 10, 10), true);
+    }
+}
@@ -0,0 +1,102 @@
+package dev.jonclarke.samplerestservice.serialization;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import com.fasterxml.jackson.databind.SerializationFeature;
+import dev.jonclarke.samplerestservice.models.MovieDataModel;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.core.ResolvableType;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import org.springframework.http.converter.json.MappingJackson2HttpMessageConverter;
+import org.springframework.http.converter.xml.MappingJackson2XmlHttpMessageConverter;
+import org.springframework.mock.http.MockHttpOutputMessage;
+import org.springframework.web.accept.ContentNegotiationManager;
+
+import java.lang.reflect.Type;
+import java.time.LocalDateTime;
+import java.util.List;
+
+/**
+ * Unit Tests for the MovieHttpMessageConverter.
+ * Tests cover which types it writes, and that its output is the same as Spring's Jackson message converters.
+ */
+public class MovieHttpMessageConverterTest {
+    private static final Type MOVIE_LIST = ResolvableType.forClassWithGenerics(List.class, MovieDataModel.class).getType();
+
+    private final MovieHttpMessageConverter converter = new MovieHttpMessageConverter(new MovieSerializer(
+            mapperBuilder().build(), mapperBuilder(), new ContentNegotiationManager(), new SimpleMeterRegistry()));
+
+    //******************************************************************
+    // Supported type unit tests
+    //******************************************************************
+
+    @Test
+    public void canWrite_MovieAndMovieList_ExpectTrue() {
+        assertTrue(converter.canWrite(MovieDataModel.class, MovieDataModel.class, MediaType.APPLICATION_XML));
+        assertTrue(converter.canWrite(MOVIE_LIST, List.class, MediaType.APPLICATION_JSON));
+    }
+
+    @Test
+    public void canWrite_OtherTypes_ExpectFalse() {
+        Type stringList = ResolvableType.forClassWithGenerics(List.class, String.class).getType();
+
+        assertFalse(converter.canWrite(stringList, List.class, MediaType.APPLICATION_JSON));
+        assertFalse(converter.canWrite(String.class, String.class, MediaType.APPLICATION_JSON));
+        assertFalse(converter.canWrite(MovieDataModel.class, MovieDataModel.class, MediaType.TEXT_PLAIN));
+    }
+
+    @Test
+    public void canRead_Movie_ExpectFalse() {
+        assertFalse(converter.canRead(MovieDataModel.class, MediaType.APPLICATION_JSON));
+        assertFalse(converter.canRead(MOVIE_LIST, null, MediaType.APPLICATION_JSON));
+    }
+
+    //******************************************************************
+    // Write unit tests
+    //******************************************************************
+
+    @Test
+    public void write_MovieAsJson_ExpectSameOutputAsJacksonConverter() throws Exception {
+        MovieDataModel movie = buildMovie(1);
+
+        MockHttpOutputMessage expected = new MockHttpOutputMessage();
+        new MappingJackson2HttpMessageConverter(mapperBuilder().build())
+                .write(movie, MovieDataModel.class, MediaType.APPLICATION_JSON, expected);
+        MockHttpOutputMessage actual = new MockHttpOutputMessage();
+        converter.write(movie, MovieDataModel.class, MediaType.APPLICATION_JSON, actual);
+
+        assertEquals(expected.getBodyAsString(), actual.getBodyAsString());
+        assertEquals(MediaType.APPLICATION_JSON, actual.getHeaders().getContentType());
+    }
+
+    @Test
+    public void write_MovieListAsXml_ExpectSameOutputAsJacksonConverter() throws Exception {
+        List<MovieDataModel> movies = List.of(buildMovie(1), buildMovie(2));
+
+        MockHttpOutputMessage expected = new MockHttpOutputMessage();
+        new MappingJackson2XmlHttpMessageConverter(mapperBuilder().createXmlMapper(true).build())
+                .write(movies, MOVIE_LIST, MediaType.APPLICATION_XML, expected);
+        MockHttpOutputMessage actual = new MockHttpOutputMessage();
+        converter.write(movies, MOVIE_LIST, MediaType.APPLICATION_XML, actual);
+
+        assertEquals(expected.getBodyAsString(), actual.getBodyAsString());
+    }
+
+    //******************************************************************
+    // helper methods
+    //******************************************************************
+
+    /**
+     * Build a mapper builder configured the same way Spring Boot configures the application's mappers
+     */
+    private static Jackson2ObjectMapperBuilder mapperBuilder() {
+        return Jackson2ObjectMapperBuilder.json().featuresToDisable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS);
+    }
+
+    private MovieDataModel buildMovie(int id) {
+        return new MovieDataModel(id, "Movie " + id, "Movie " + id + " Description",
+                LocalDateTime.of(2023, 1, 1, 1, 10, 10).plusDays(id), id % 2 == 0);
+    }
+}
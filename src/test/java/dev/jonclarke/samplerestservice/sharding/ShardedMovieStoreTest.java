@@ -0,0 +1,192 @@
+package dev.jonclarke.samplerestservice.sharding;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import dev.jonclarke.samplerestservice.dataaccess.MovieFilter;
+import dev.jonclarke.samplerestservice.models.MovieDataModel;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.domain.Sort;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+/**
+ * Unit Tests for the ShardedMovieStore, run against three embedded in-memory databases that are dropped after
+ * each test.  Tests cover id allocation and routing, and that queries across the shards return movies in the
+ * same order as a single database would.
+ */
+public class ShardedMovieStoreTest {
+    private static final int SHARDS = 3;
+    private static final MovieFilter NO_FILTER = new MovieFilter(null, null, null, null);
+
+    private ShardedMovieStore store;
+
+    @BeforeEach
+    public void openShards() {
+        // without DB_CLOSE_DELAY each database is dropped when its pool is closed
+        store = new ShardedMovieStore(SHARDS, "jdbc:h2:mem:shard-test-" + UUID.randomUUID() + "-%d", 2);
+    }
+
+    @AfterEach
+    public void closeShards() {
+        store.close();
+    }
+
+    //******************************************************************
+    // Single movie unit tests
+    //******************************************************************
+
+    @Test
+    public void insert_SeveralMovies_ExpectUniqueIdsSpreadOverEveryShard() {
+        List<MovieDataModel> movies = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            movies.add(store.insert(buildMovie("title " + i, i)));
+        }
+
+        Set<Integer> ids = movies.stream().map(MovieDataModel::getId).collect(Collectors.toSet());
+        assertEquals(10, ids.size());
+        assertEquals(Set.of(0, 1, 2), ids.stream().map(store::shardOf).collect(Collectors.toSet()));
+        for (MovieDataModel movie : movies) {
+            assertEquals(movie, store.findById(movie.getId()).orElseThrow());
+            assertEquals(0, movie.getVersion());
+            assertNotNull(movie.getLastModified());
+        }
+        assertEquals(10, store.count());
+    }
+
+    @Test
+    public void open_UnsupportedDatabase_ExpectIllegalArgumentException() {
+        assertThrows(IllegalArgumentException.class,
+                () -> new ShardedMovieStore(1, "jdbc:sqlite:shard-test-%d.db", 1).close());
+    }
+
+    @Test
+    public void findById_MissingId_ExpectEmpty() {
+        MovieDataModel movie = store.insert(buildMovie("title 1", 1));
+
+        assertTrue(store.findById(movie.getId() + 1).isEmpty());
+    }
+
+    @Test
+    public void update_ExpectedVersion_ExpectUpdatedAndVersionIncremented() {
+        MovieDataModel movie = store.insert(buildMovie("old title", 1));
+        MovieDataModel changed = new MovieDataModel(movie.getId(), "new title", null, null, false);
+
+        assertFalse(store.update(changed, 5L));
+        assertTrue(store.update(changed, 0L));
+
+        MovieDataModel updated = store.findById(movie.getId()).orElseThrow();
+        assertEquals(changed, updated);
+        assertEquals(1, updated.getVersion());
+    }
+
+    @Test
+    public void deleteById_ExistingAndMissingIds_ExpectOnlyExistingDeleted() {
+        MovieDataModel movie = store.insert(buildMovie("title 1", 1));
+
+        assertFalse(store.deleteById(movie.getId(), 1L));
+        assertTrue(store.deleteById(movie.getId(), null));
+        assertFalse(store.deleteById(movie.getId(), null));
+        assertTrue(store.findById(movie.getId()).isEmpty());
+    }
+
+    //******************************************************************
+    // Scatter-gather unit tests
+    //******************************************************************
+
+    @Test
+    public void insertAll_ThenStreamAll_ExpectEveryMovieInIdOrder() {
+        List<MovieDataModel> movies = store.insertAll(IntStream.range(0, 100)
+                .mapToObj(i -> buildMovie("title " + i, i)).toList());
+
+        List<MovieDataModel> streamed;
+        try (Stream<MovieDataModel> all = store.streamAll()) {
+            streamed = all.toList();
+        }
+
+        assertEquals(movies.stream().sorted(Comparator.comparingInt(MovieDataModel::getId)).toList(), streamed);
+        assertEquals(100, new HashSet<>(movies.stream().map(MovieDataModel::getId).toList()).size());
+    }
+
+    @Test
+    public void streamAll_ClosedBeforeTheEnd_ExpectShardsStillUsable() {
+        store.insertAll(IntStream.range(0, 3 * ShardedMovieStore.STREAM_BUFFER_SIZE)
+                .mapToObj(i -> buildMovie("title " + i, i)).toList());
+
+        try (Stream<MovieDataModel> all = store.streamAll()) {
+            assertEquals(10, all.limit(10).count());
+        }
+
+        // each read was stopped and its connection returned to the pool
+        for (int i = 0; i < 5; i++) {
+            assertEquals(3 * ShardedMovieStore.STREAM_BUFFER_SIZE, store.count());
+        }
+    }
+
+    @Test
+    public void search_FilterAndReleaseDateDescending_ExpectSameOrderAsOneDatabase() {
+        List<MovieDataModel> movies = store.insertAll(IntStream.range(0, 30)
+                .mapToObj(i -> buildMovie("title " + i, i % 7)).toList());
+        movies.get(2).setReleaseDate(null);
+        store.update(movies.get(2), null);
+
+        List<MovieDataModel> page = store.search(new MovieFilter(null, null, null, true),
+                Sort.by(Sort.Order.desc("releaseDate")), null, 8);
+
+        // newest first, ties in id order, and the movie with no release date last
+        List<MovieDataModel> expected = movies.stream()
+                .filter(MovieDataModel::isAvailableOnDvd)
+                .sorted(Comparator.comparing(MovieDataModel::getReleaseDate,
+                                Comparator.nullsLast(Comparator.<LocalDateTime>reverseOrder()))
+                        .thenComparing(MovieDataModel::getId))
+                .limit(8)
+                .toList();
+        assertEquals(expected, page);
+    }
+
+    @Test
+    public void search_TitlePrefixAfterId_ExpectNextPageInIdOrder() {
+        List<MovieDataModel> movies = store.insertAll(List.of(buildMovie("Alpha", 1), buildMovie("alpine", 2),
+                buildMovie("Beta", 3), buildMovie("ALPS", 4), buildMovie("Alpaca", 5)));
+        List<Integer> alpIds = Stream.of(0, 1, 3, 4).map(i -> movies.get(i).getId()).sorted().toList();
+
+        List<MovieDataModel> firstPage = store.search(new MovieFilter("alp", null, null, null), Sort.by("id"), null, 2);
+        List<MovieDataModel> secondPage = store.search(new MovieFilter("alp", null, null, null), Sort.by("id"),
+                firstPage.get(1).getId(), 2);
+
+        assertEquals(alpIds.subList(0, 2), firstPage.stream().map(MovieDataModel::getId).toList());
+        assertEquals(alpIds.subList(2, 4), secondPage.stream().map(MovieDataModel::getId).toList());
+    }
+
+    @Test
+    public void search_SortByTitle_ExpectCaseInsensitiveOrderAcrossShards() {
+        store.insertAll(List.of(buildMovie("charlie", 1), buildMovie("Alpha", 2), buildMovie("bravo", 3),
+                buildMovie("Delta", 4), buildMovie("ALPHA", 5)));
+
+        List<MovieDataModel> page = store.search(NO_FILTER, Sort.by("title"), null, 10);
+
+        assertEquals(List.of("Alpha", "ALPHA", "bravo", "charlie", "Delta"),
+                page.stream().map(MovieDataModel::getTitle).toList());
+    }
+
+    @Test
+    public void search_UnknownSortProperty_ExpectIllegalArgumentException() {
+        assertThrows(IllegalArgumentException.class, () -> store.search(NO_FILTER, Sort.by("description"), null, 10));
+    }
+
+    // helper methods
+    private static MovieDataModel buildMovie(String title, int day) {
+        return new MovieDataModel(title, title + " description", LocalDateTime.of(2023, 1, 1, 1, 10, 10).plusDays(day),
+                day % 2 == 0);
+    }
+}
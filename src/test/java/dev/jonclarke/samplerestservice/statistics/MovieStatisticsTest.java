@@ -0,0 +1,172 @@
+package dev.jonclarke.samplerestservice.statistics;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import dev.jonclarke.samplerestservice.dataaccess.MovieChangeRepository;
+import dev.jonclarke.samplerestservice.dataaccess.MovieRepository;
+import dev.jonclarke.samplerestservice.events.MovieChangesRecordedEvent;
+import dev.jonclarke.samplerestservice.models.MovieCatalogueStats;
+import dev.jonclarke.samplerestservice.models.MovieCatalogueStats.ReleaseYear;
+import dev.jonclarke.samplerestservice.models.MovieDataModel;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+/**
+ * Unit Tests for the MovieStatistics, run against the embedded database.
+ * A new MovieStatistics is created for each test, so the counts start from nothing.  The tests use transactions
+ * of their own to cover counts changing on commit and not on rollback, so they do not run inside a test transaction.
+ */
+@DataJpaTest
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+public class MovieStatisticsTest {
+    @Autowired
+    private MovieRepository repository;
+    @Autowired
+    private MovieChangeRepository changeRepository;
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    private MovieStatistics statistics;
+    private TransactionTemplate transactionTemplate;
+
+    @BeforeEach
+    public void createStatistics() {
+        statistics = new MovieStatistics(repository, changeRepository, transactionManager);
+        transactionTemplate = new TransactionTemplate(transactionManager);
+    }
+
+    @AfterEach
+    public void deleteMovies() {
+        statistics.close();
+        repository.deleteAll();
+    }
+
+    //******************************************************************
+    // Write unit tests
+    //******************************************************************
+
+    @Test
+    public void movieChanged_SeveralMoviesCreated_ExpectCountsByYearAndDvd() {
+        statistics.movieChanged(null, buildMovie(1, 2022, true));
+        statistics.movieChanged(null, buildMovie(2, 2023, true));
+        statistics.movieChanged(null, buildMovie(3, 2023, false));
+        statistics.movieChanged(null, new MovieDataModel(4, "no date", null, null, null));
+
+        MovieCatalogueStats stats = statistics.getStats();
+        assertEquals(4, stats.total());
+        assertEquals(2, stats.availableOnDvd());
+        assertEquals(1, stats.notAvailableOnDvd());
+        assertEquals(1, stats.dvdAvailabilityUnknown());
+        assertEquals(1, stats.noReleaseDate());
+        assertEquals(List.of(new ReleaseYear(2022, 1, 1), new ReleaseYear(2023, 2, 1)), stats.releaseYears());
+        assertNull(stats.reconciledAt());
+    }
+
+    @Test
+    public void movieChanged_UpdatedToAnotherYear_ExpectMovedBetweenYears() {
+        statistics.movieChanged(null, buildMovie(1, 2022, true));
+        statistics.movieChanged(buildMovie(1, 2022, true), buildMovie(1, 2023, false));
+
+        MovieCatalogueStats stats = statistics.getStats();
+        assertEquals(1, stats.total());
+        assertEquals(0, stats.availableOnDvd());
+        assertEquals(List.of(new ReleaseYear(2023, 1, 0)), stats.releaseYears());
+    }
+
+    @Test
+    public void movieChanged_Deleted_ExpectRemovedFromItsGroup() {
+        statistics.movieChanged(null, buildMovie(1, 2022, true));
+        statistics.movieChanged(null, buildMovie(2, 2022, true));
+
+        statistics.movieChanged(buildMovie(1, 2022, true), null);
+        // a movie that was not there to begin with changes nothing
+        statistics.movieChanged(null, null);
+
+        assertEquals(List.of(new ReleaseYear(2022, 1, 1)), statistics.getStats().releaseYears());
+    }
+
+    @Test
+    public void movieChanged_InTransaction_ExpectCountedOnlyOnceCommitted() {
+        transactionTemplate.executeWithoutResult(status -> {
+            statistics.movieChanged(null, buildMovie(1, 2022, true));
+            statistics.movieChanged(null, buildMovie(2, 2022, false));
+
+            assertEquals(0, statistics.getStats().total());
+        });
+
+        assertEquals(2, statistics.getStats().total());
+    }
+
+    @Test
+    public void movieChanged_ChangesRecordedInTransaction_ExpectCountedOnceCommitted() {
+        transactionTemplate.executeWithoutResult(status -> {
+            statistics.movieChanged(null, buildMovie(1, 2022, true));
+            // as MovieChangeLog publishes once the transaction has committed
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    statistics.onChangesRecorded(new MovieChangesRecordedEvent(changeRepository.findLatestSequence()));
+                }
+            });
+        });
+
+        assertEquals(List.of(new ReleaseYear(2022, 1, 1)), statistics.getStats().releaseYears());
+    }
+
+    @Test
+    public void movieChanged_TransactionRolledBack_ExpectCountsUnchanged() {
+        statistics.movieChanged(null, buildMovie(1, 2022, true));
+        statistics.movieChanged(null, buildMovie(2, 2022, true));
+
+        transactionTemplate.executeWithoutResult(status -> {
+            statistics.movieChanged(buildMovie(1, 2022, true), buildMovie(1, 2023, false));
+            statistics.movieChanged(buildMovie(2, 2022, true), null);
+            statistics.movieChanged(null, buildMovie(3, 2024, true));
+            status.setRollbackOnly();
+        });
+
+        assertEquals(List.of(new ReleaseYear(2022, 2, 2)), statistics.getStats().releaseYears());
+    }
+
+    //******************************************************************
+    // Reconcile unit tests
+    //******************************************************************
+
+    @Test
+    public void reconcile_MoviesInDatabase_ExpectCountsReplacedByDatabaseCounts() {
+        MovieDataModel counted = repository.save(new MovieDataModel("title 1", null, LocalDateTime.of(2022, 5, 1, 0, 0), true));
+        repository.save(new MovieDataModel("title 2", null, LocalDateTime.of(2023, 5, 1, 0, 0), false));
+        repository.save(new MovieDataModel("title 3", null, LocalDateTime.of(2023, 6, 1, 0, 0), true));
+        statistics.movieChanged(null, counted);
+        // counted, but not in the database
+        statistics.movieChanged(null, buildMovie(99, 2020, false));
+
+        assertEquals(3L, statistics.reconcile().join());
+
+        MovieCatalogueStats stats = statistics.getStats();
+        assertEquals(3, stats.total());
+        assertEquals(List.of(new ReleaseYear(2022, 1, 1), new ReleaseYear(2023, 2, 1)), stats.releaseYears());
+        assertNotNull(stats.reconciledAt());
+
+        // reconciling again counts the same movies
+        assertEquals(3L, statistics.reconcile().join());
+        assertEquals(3, statistics.getStats().total());
+    }
+
+    // helper methods
+    private static MovieDataModel buildMovie(int id, int year, boolean availableOnDvd) {
+        return new MovieDataModel(id, "title " + id, null, LocalDateTime.of(year, 1, 1, 1, 10, 10), availableOnDvd);
+    }
+}
@@ -0,0 +1,227 @@
+package dev.jonclarke.samplerestservice.transfer;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+import static org.junit.jupiter.api.Assertions.*;
+
+import dev.jonclarke.samplerestservice.dataaccess.MovieRepository;
+import dev.jonclarke.samplerestservice.models.MovieDataModel;
+import dev.jonclarke.samplerestservice.models.MovieImportResult;
+import dev.jonclarke.samplerestservice.serialization.MovieFileFormat;
+import dev.jonclarke.samplerestservice.serialization.MovieFileSerializer;
+import dev.jonclarke.samplerestservice.sharding.ShardedMovieStore;
+import dev.jonclarke.samplerestservice.statistics.MovieStatistics;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.ImportAutoConfiguration;
+import org.springframework.boot.autoconfigure.jackson.JacksonAutoConfiguration;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.data.domain.Sort;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Unit Tests for the MovieImporter and MovieExporter, run against the embedded database.
+ * The batch size is reduced so the tests cover files that span several batches.
+ * Each batch is committed in its own transaction, so the tests do not run inside a test transaction.
+ */
+@DataJpaTest(properties = "movies.transfer.batch-size=2")
+@Import({MovieImporter.class, MovieExporter.class, MovieFileSerializer.class, MovieStatistics.class})
+@ImportAutoConfiguration(JacksonAutoConfiguration.class)
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+public class MovieImporterTest {
+    @Autowired
+    private MovieImporter importer;
+    @Autowired
+    private MovieExporter exporter;
+    @Autowired
+    private MovieRepository repository;
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @AfterEach
+    public void deleteMovies() {
+        repository.deleteAll();
+    }
+
+    //******************************************************************
+    // Import unit tests
+    //******************************************************************
+
+    @Test
+    public void importMovies_NdjsonWithIds_ExpectIdsKeptAndSequenceMovedPastThem() throws IOException {
+        MovieImportResult result = importMovies(MovieFileFormat.NDJSON, """
+                {"id": 100001, "title": "title 1", "releaseDate": "2023-01-01T01:10:10", "availableOnDvd": true}
+                {"id": 100002, "title": "title 2", "releaseDate": "2023-12-31T23:59:59", "availableOnDvd": false}
+                {"id": 100003, "title": "title 3"}
+                """);
+
+        assertEquals(new MovieImportResult(3, 3, 0, 0, List.of()), result);
+        MovieDataModel movie = repository.findById(100001).orElseThrow();
+        assertEquals("title 1", movie.getTitle());
+        assertEquals(LocalDateTime.of(2023, 1, 1, 1, 10, 10), movie.getReleaseDate());
+        assertTrue(movie.isAvailableOnDvd());
+        assertNotNull(movie.getLastModified());
+        assertEquals("title 3", repository.findById(100003).orElseThrow().getTitle());
+
+        // the id sequence has been moved a whole block of ids past the imported ids
+        Long next = jdbcTemplate.queryForObject("select next value for movie_id_seq", Long.class);
+        assertThat(next - MovieDataModel.ID_ALLOCATION_SIZE, greaterThanOrEqualTo(100003L));
+    }
+
+    @Test
+    public void importMovies_ExistingId_ExpectMovieReplaced() throws IOException {
+        MovieDataModel existing = repository.save(buildMovie("old title"));
+
+        MovieImportResult result = importMovies(MovieFileFormat.NDJSON,
+                "{\"id\": " + existing.getId() + ", \"title\": \"new title\"}\n");
+
+        assertEquals(new MovieImportResult(1, 0, 1, 0, List.of()), result);
+        MovieDataModel movie = repository.findById(existing.getId()).orElseThrow();
+        assertEquals("new title", movie.getTitle());
+        assertEquals("new title", movie.getTitleKey());
+        assertEquals(existing.getVersion() + 1, movie.getVersion());
+    }
+
+    @Test
+    public void importMovies_CsvWithoutIds_ExpectMoviesCreatedWithNewIds() throws IOException {
+        MovieImportResult result = importMovies(MovieFileFormat.CSV, """
+                availableOnDvd,title,releaseDate
+                true,title 1,2023-01-01T01:10:10
+                ,"title, 2",
+                false,title 3,2023-12-31T23:59:59
+                """);
+
+        assertEquals(new MovieImportResult(3, 3, 0, 0, List.of()), result);
+        List<MovieDataModel> movies = repository.findAll(Sort.by("id"));
+        assertEquals(List.of("title 1", "title, 2", "title 3"), movies.stream().map(MovieDataModel::getTitle).toList());
+        assertNull(movies.get(1).isAvailableOnDvd());
+        assertNull(movies.get(1).getReleaseDate());
+        assertTrue(movies.stream().allMatch(movie -> movie.getId() > 0));
+    }
+
+    @Test
+    public void importMovies_UnreadableRow_ExpectOnlyThatRowFailed() throws IOException {
+        MovieImportResult result = importMovies(MovieFileFormat.NDJSON, """
+                {"title": "title 1"}
+                {"title": "title 2", "releaseDate": "not a date"}
+                {"title": "title 3"}
+                """);
+
+        assertEquals(3, result.rows());
+        assertEquals(2, result.created());
+        assertEquals(1, result.failed());
+        assertThat(result.errors().get(0), startsWith("Row 2: "));
+        assertEquals(2, repository.count());
+    }
+
+    @Test
+    public void importMovies_TitleTooLongForDatabase_ExpectOnlyThatRowFailed() throws IOException {
+        MovieImportResult result = importMovies(MovieFileFormat.NDJSON,
+                "{\"title\": \"title 1\"}\n{\"title\": \"" + "x".repeat(1000) + "\"}\n{\"title\": \"title 3\"}\n");
+
+        assertEquals(2, result.created());
+        assertEquals(1, result.failed());
+        assertThat(result.errors().get(0), startsWith("Row 2: "));
+        assertEquals(2, repository.count());
+    }
+
+    @Test
+    public void importMovies_IdInFileThatSequenceWouldGiveOut_ExpectBothMoviesCreated() throws IOException {
+        // the id the next block from the sequence starts with, used by a movie later in the same batch
+        Long next = jdbcTemplate.queryForObject("select next value for movie_id_seq", Long.class);
+        long clashingId = next + 1;
+
+        MovieImportResult result = importMovies(MovieFileFormat.NDJSON, """
+                {"title": "no id"}
+                {"id": %d, "title": "own id"}
+                """.formatted(clashingId));
+
+        assertEquals(new MovieImportResult(2, 2, 0, 0, List.of()), result);
+        assertEquals("own id", repository.findById((int) clashingId).orElseThrow().getTitle());
+        MovieDataModel given = repository.findAll().stream()
+                .filter(movie -> movie.getTitle().equals("no id"))
+                .findFirst().orElseThrow();
+        assertThat(given.getId(), greaterThan((int) clashingId));
+    }
+
+    @Test
+    public void importMovies_IntoShards_ExpectMoviesAddedToShardsOnly() throws IOException {
+        String file = """
+                {"id": 100001, "title": "title 1", "releaseDate": "2023-01-01T01:10:10", "availableOnDvd": true}
+                {"title": "title 2"}
+                {"title": "title 3"}
+                """;
+        MovieImportResult result;
+        String url = "jdbc:h2:mem:import-test-" + UUID.randomUUID() + "-%d";
+        try (ShardedMovieStore shards = new ShardedMovieStore(2, url, 1)) {
+            result = importer.importMovies(new ByteArrayInputStream(file.getBytes(StandardCharsets.UTF_8)),
+                    MovieFileFormat.NDJSON, shards);
+
+            assertEquals(3, shards.count());
+            // the shards give out their own ids
+            assertTrue(shards.findById(100001).isEmpty());
+        }
+
+        assertEquals(new MovieImportResult(3, 3, 0, 0, List.of()), result);
+        assertEquals(0, repository.count());
+    }
+
+    //******************************************************************
+    // Export unit tests
+    //******************************************************************
+
+    @Test
+    public void export_ThenImportIntoEmptyTable_ExpectSameMovies() throws IOException {
+        repository.save(buildMovie("title 1"));
+        repository.save(new MovieDataModel("title, \"2\"", null, null, false));
+        List<MovieDataModel> exported = repository.findAll(Sort.by("id"));
+
+        for (MovieFileFormat format : MovieFileFormat.values()) {
+            ByteArrayOutputStream file = new ByteArrayOutputStream();
+            assertEquals(2, exporter.export(format, 0, file));
+            repository.deleteAll();
+
+            MovieImportResult result = importer.importMovies(new ByteArrayInputStream(file.toByteArray()), format);
+
+            assertEquals(new MovieImportResult(2, 2, 0, 0, List.of()), result);
+            assertEquals(exported, repository.findAll(Sort.by("id")));
+        }
+    }
+
+    @Test
+    public void export_After_ExpectOnlyLaterMoviesInIdOrder() throws IOException {
+        MovieDataModel first = repository.save(buildMovie("title 1"));
+        repository.save(buildMovie("title 2"));
+        repository.save(buildMovie("title 3"));
+
+        ByteArrayOutputStream file = new ByteArrayOutputStream();
+        long count = exporter.export(MovieFileFormat.NDJSON, first.getId(), file);
+
+        String[] lines = file.toString(StandardCharsets.UTF_8).split("\n");
+        assertEquals(2, count);
+        assertEquals(2, lines.length);
+        assertThat(lines[0], containsString("\"title\":\"title 2\""));
+        assertThat(lines[1], containsString("\"title\":\"title 3\""));
+    }
+
+    // helper methods
+    private MovieImportResult importMovies(MovieFileFormat format, String file) throws IOException {
+        return importer.importMovies(new ByteArrayInputStream(file.getBytes(StandardCharsets.UTF_8)), format);
+    }
+
+    private static MovieDataModel buildMovie(String title) {
+        return new MovieDataModel(title, title + " description", LocalDateTime.of(2023, 1, 1, 1, 10, 10), true);
+    }
+}
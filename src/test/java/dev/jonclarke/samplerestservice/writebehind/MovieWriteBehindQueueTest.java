@@ -0,0 +1,184 @@
+package dev.jonclarke.samplerestservice.writebehind;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import dev.jonclarke.samplerestservice.dataaccess.MovieBatchProcessor;
+import dev.jonclarke.samplerestservice.models.MovieBatchResult;
+import dev.jonclarke.samplerestservice.models.MovieBatchResult.Status;
+import dev.jonclarke.samplerestservice.models.MovieDataModel;
+import dev.jonclarke.samplerestservice.writebehind.MovieWriteStatus.State;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Unit Tests for the MovieWriteBehindQueue.
+ * The batch processor is mocked, so these tests cover queueing, the tracked results, backpressure and shutdown.
+ */
+public class MovieWriteBehindQueueTest {
+
+    private final MovieBatchProcessor processor = mock(MovieBatchProcessor.class);
+    private final AtomicInteger nextId = new AtomicInteger(1);
+
+    //******************************************************************
+    // Submit unit tests
+    //******************************************************************
+
+    @Test
+    public void submit_ValidMovie_ExpectQueuedThenWritten() throws Exception {
+        when(processor.create(any())).thenAnswer(invocation -> createAll(invocation.getArgument(0)));
+        MovieWriteBehindQueue queue = buildQueue(10);
+
+        MovieWriteStatus status = queue.submit(buildMovie("title 1"));
+        queue.close();
+
+        assertEquals(State.QUEUED, status.state());
+        MovieWriteStatus written = queue.getStatus(status.trackingId());
+        assertEquals(State.WRITTEN, written.state());
+        assertEquals(1, written.id());
+        assertEquals(1, queue.getStats().written());
+    }
+
+    @Test
+    public void submit_WriteFails_ExpectFailedWithMessage() throws Exception {
+        when(processor.create(any())).thenAnswer(invocation -> {
+            Iterator<MovieDataModel> movies = invocation.getArgument(0);
+            movies.next();
+            return List.of(MovieBatchResult.failed(0, null, "value too long"));
+        });
+        MovieWriteBehindQueue queue = buildQueue(10);
+
+        MovieWriteStatus status = queue.submit(buildMovie("title 1"));
+        queue.close();
+
+        MovieWriteStatus failed = queue.getStatus(status.trackingId());
+        assertEquals(State.FAILED, failed.state());
+        assertEquals("value too long", failed.message());
+        assertEquals(1, queue.getStats().failed());
+    }
+
+    @Test
+    public void submit_QueueFull_ExpectRejected() throws Exception {
+        CountDownLatch writing = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        when(processor.create(any())).thenAnswer(invocation -> {
+            writing.countDown();
+            release.await();
+            return createAll(invocation.getArgument(0));
+        });
+        MovieWriteBehindQueue queue = buildQueue(1);
+
+        // the writer takes the first movie and is held, so the second fills the queue
+        assertNotNull(queue.submit(buildMovie("title 1")));
+        assertTrue(writing.await(5, TimeUnit.SECONDS));
+        assertNotNull(queue.submit(buildMovie("title 2")));
+        assertNull(queue.submit(buildMovie("title 3")));
+        assertEquals(1, queue.getStats().rejected());
+
+        release.countDown();
+        queue.close();
+        assertEquals(2, queue.getStats().written());
+    }
+
+    //******************************************************************
+    // Shutdown unit tests
+    //******************************************************************
+
+    @Test
+    public void close_MoviesQueued_ExpectAllWrittenInBatches() throws Exception {
+        List<Integer> batchSizes = new ArrayList<>();
+        CountDownLatch release = new CountDownLatch(1);
+        when(processor.create(any())).thenAnswer(invocation -> {
+            release.await();
+            List<MovieBatchResult> results = createAll(invocation.getArgument(0));
+            batchSizes.add(results.size());
+            return results;
+        });
+        MovieWriteBehindQueue queue = buildQueue(100);
+
+        List<MovieWriteStatus> accepted = new ArrayList<>();
+        for (int i = 0; i < 25; i++) {
+            accepted.add(queue.submit(buildMovie("title " + i)));
+        }
+        release.countDown();
+        queue.close();
+
+        for (MovieWriteStatus status : accepted) {
+            assertEquals(State.WRITTEN, queue.getStatus(status.trackingId()).state());
+        }
+        assertEquals(25, batchSizes.stream().mapToInt(Integer::intValue).sum());
+        assertTrue(batchSizes.size() < 25);
+    }
+
+    @Test
+    public void getStatus_MoreResultsThanMaximum_ExpectQueuedKeptAndResultsBounded() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        when(processor.create(any())).thenAnswer(invocation -> {
+            release.await();
+            return createAll(invocation.getArgument(0));
+        });
+        MovieWriteBehindQueue queue = buildQueue(100, 5);
+
+        List<MovieWriteStatus> accepted = new ArrayList<>();
+        for (int i = 0; i < 40; i++) {
+            accepted.add(queue.submit(buildMovie("title " + i)));
+        }
+
+        // none has been written, so every status is kept whatever the maximum
+        for (MovieWriteStatus status : accepted) {
+            assertEquals(State.QUEUED, queue.getStatus(status.trackingId()).state());
+        }
+
+        release.countDown();
+        queue.close();
+
+        long known = accepted.stream().filter(status -> queue.getStatus(status.trackingId()) != null).count();
+        assertTrue(known <= 5);
+        assertEquals(40, queue.getStats().written());
+    }
+
+    @Test
+    public void submit_AfterClose_ExpectRejected() throws Exception {
+        MovieWriteBehindQueue queue = buildQueue(10);
+        queue.close();
+
+        assertNull(queue.submit(buildMovie("title 1")));
+    }
+
+    //******************************************************************
+    // helper methods
+    //******************************************************************
+
+    private MovieWriteBehindQueue buildQueue(int capacity) {
+        return buildQueue(capacity, 1000);
+    }
+
+    private MovieWriteBehindQueue buildQueue(int capacity, long statusMaximumSize) {
+        return new MovieWriteBehindQueue(processor, capacity, 10, Duration.ofMinutes(1), statusMaximumSize,
+                Duration.ofSeconds(10), new SimpleMeterRegistry());
+    }
+
+    private List<MovieBatchResult> createAll(Iterator<MovieDataModel> movies) {
+        List<MovieBatchResult> results = new ArrayList<>();
+        while (movies.hasNext()) {
+            movies.next();
+            results.add(MovieBatchResult.of(results.size(), nextId.getAndIncrement(), Status.CREATED));
+        }
+        return results;
+    }
+
+    private MovieDataModel buildMovie(String title) {
+        return new MovieDataModel(title, title + " Description", LocalDateTime.of(2023, 1, 1, 1, 10, 10), true);
+    }
+}